@@ -0,0 +1,277 @@
+package org.ajwcc.pduUtils.gsm3040;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.smslib.BenchmarkFixtures;
+
+/**
+ * The <code>PduUtils</code> conversions under the generator and the parser:
+ * GSM 7-bit text to packed septets and back, UCS-2 text to octets and back,
+ * and octets to hexadecimal PDU text and back, all on the
+ * <code>BenchmarkFixtures</code> texts. The <code>legacy</code> variants
+ * are the alphabet scans and <code>BitSet</code> packing the GSM 7-bit
+ * lookup tables replaced, and the per-byte <code>Integer</code> parsing and
+ * formatting the hex tables replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PduUtilsBenchmark
+{
+	private byte[] septets;
+
+	private byte[] ucs2;
+
+	private byte[] octets;
+
+	private String hex;
+
+	private Legacy legacy;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		this.legacy = new Legacy();
+		this.septets = encodeSeptets();
+		this.ucs2 = encodeUcs2();
+		this.hex = BenchmarkFixtures.inboundPdus("gsm7").get(0);
+		this.octets = PduUtils.pduToBytes(this.hex);
+		if (!BenchmarkFixtures.GSM7_TEXT.equals(decodeSeptets()) || !BenchmarkFixtures.UCS2_TEXT.equals(decodeUcs2()) || !this.hex.equals(encodeHex())) throw new IllegalStateException("Conversions do not round-trip.");
+		if (!BenchmarkFixtures.GSM7_TEXT.equals(legacyDecodeSeptets()) || !Arrays.equals(this.septets, legacyEncodeSeptets()) || !Arrays.equals(this.septets, encodeSeptetsSinglePass()) || !this.hex.equals(legacyEncodeHex()) || !Arrays.equals(this.octets, legacyDecodeHex())) throw new IllegalStateException("Variants disagree.");
+	}
+
+	@Benchmark
+	public byte[] encodeSeptets()
+	{
+		return PduUtils.encode7bitUserData(null, PduUtils.stringToUnencodedSeptets(BenchmarkFixtures.GSM7_TEXT));
+	}
+
+	@Benchmark
+	public String decodeSeptets()
+	{
+		return PduUtils.decode7bitEncoding(null, this.septets);
+	}
+
+	@Benchmark
+	public byte[] encodeSeptetsSinglePass()
+	{
+		return PduUtils.stringToEncodedSeptets(BenchmarkFixtures.GSM7_TEXT);
+	}
+
+	@Benchmark
+	public byte[] legacyEncodeSeptets()
+	{
+		return this.legacy.pack(this.legacy.toSeptets(BenchmarkFixtures.GSM7_TEXT));
+	}
+
+	@Benchmark
+	public String legacyDecodeSeptets()
+	{
+		return this.legacy.toString(this.legacy.unpack(this.septets));
+	}
+
+	@Benchmark
+	public byte[] encodeUcs2()
+	{
+		return PduUtils.encodeUcs2UserData(BenchmarkFixtures.UCS2_TEXT);
+	}
+
+	@Benchmark
+	public String decodeUcs2()
+	{
+		return PduUtils.decodeUcs2Encoding(null, this.ucs2);
+	}
+
+	@Benchmark
+	public String encodeHex()
+	{
+		return PduUtils.bytesToPdu(this.octets);
+	}
+
+	@Benchmark
+	public byte[] decodeHex()
+	{
+		return PduUtils.pduToBytes(this.hex);
+	}
+
+	@Benchmark
+	public String legacyEncodeHex()
+	{
+		StringBuffer sb = new StringBuffer();
+		for (int i = 0; i < this.octets.length; i++)
+		{
+			String s = Integer.toHexString(this.octets[i] & 0xFF);
+			sb.append((s.length() == 1 ? "0" + s : s).toUpperCase());
+		}
+		return sb.toString();
+	}
+
+	@Benchmark
+	public byte[] legacyDecodeHex()
+	{
+		byte[] bytes = new byte[this.hex.length() / 2];
+		for (int i = 0; i < this.hex.length(); i += 2)
+			bytes[i / 2] = (byte) (Integer.parseInt(this.hex.substring(i, i + 2), 16));
+		return bytes;
+	}
+
+	/**
+	 * The GSM 7-bit conversions as they were, on the alphabets of
+	 * <code>PduUtils</code>.
+	 */
+	private static class Legacy
+	{
+		private final char[][] grcAlphabetRemapping;
+
+		private final char[] extAlphabet;
+
+		private final String[] extBytes;
+
+		private final char[] stdAlphabet;
+
+		Legacy() throws Exception
+		{
+			this.grcAlphabetRemapping = (char[][]) field("grcAlphabetRemapping");
+			this.extAlphabet = (char[]) field("extAlphabet");
+			this.extBytes = (String[]) field("extBytes");
+			this.stdAlphabet = (char[]) field("stdAlphabet");
+		}
+
+		private static Object field(String name) throws Exception
+		{
+			Field f = PduUtils.class.getDeclaredField(name);
+			f.setAccessible(true);
+			return f.get(null);
+		}
+
+		byte[] toSeptets(String s)
+		{
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			int i, j, index;
+			char ch;
+			s = s.replace('\u00C7', '\u00E7');
+			for (i = 0; i < s.length(); i++)
+			{
+				ch = s.charAt(i);
+				index = -1;
+				for (j = 0; j < this.extAlphabet.length; j++)
+					if (this.extAlphabet[j] == ch)
+					{
+						index = j;
+						break;
+					}
+				if (index != -1)
+				{
+					baos.write((byte) Integer.parseInt(this.extBytes[index].substring(0, 2), 16));
+					baos.write((byte) Integer.parseInt(this.extBytes[index].substring(2, 4), 16));
+				}
+				else
+				{
+					for (j = 0; j < this.stdAlphabet.length; j++)
+						if (this.stdAlphabet[j] == ch)
+						{
+							index = j;
+							baos.write((byte) j);
+							break;
+						}
+					if (index == -1)
+					{
+						for (j = 0; j < this.grcAlphabetRemapping.length; j++)
+							if (this.grcAlphabetRemapping[j][0] == ch)
+							{
+								index = j;
+								ch = this.grcAlphabetRemapping[j][1];
+								break;
+							}
+						if (index != -1)
+						{
+							for (j = 0; j < this.stdAlphabet.length; j++)
+								if (this.stdAlphabet[j] == ch)
+								{
+									baos.write((byte) j);
+									break;
+								}
+						}
+						else baos.write((byte) ' ');
+					}
+				}
+			}
+			return baos.toByteArray();
+		}
+
+		byte[] pack(byte[] septets)
+		{
+			BitSet bits = new BitSet();
+			for (int i = 0; i < septets.length; i++)
+				for (int j = 0; j < 7; j++)
+					if ((septets[i] & (1 << j)) != 0) bits.set((i * 7) + j);
+			byte[] octets = new byte[septets.length * 7 / 8 + ((septets.length * 7 % 8 != 0) ? 1 : 0)];
+			for (int i = 0; i < octets.length; i++)
+				for (int j = 0; j < 8; j++)
+					octets[i] |= (byte) ((bits.get((i * 8) + j) ? 1 : 0) << j);
+			return octets;
+		}
+
+		byte[] unpack(byte[] octets)
+		{
+			BitSet bitSet = new BitSet(octets.length * 8);
+			int value1 = 0;
+			for (int i = 0; i < octets.length; i++)
+				for (int j = 0; j < 8; j++)
+				{
+					value1 = (i * 8) + j;
+					if ((octets[i] & (1 << j)) != 0) bitSet.set(value1);
+				}
+			value1++;
+			int value2 = value1 / 7 + ((value1 % 7 != 0) ? 1 : 0);
+			if (value2 == 0) value2++;
+			byte[] newBytes = new byte[value2];
+			for (int i = 0; i < value2; i++)
+				for (int j = 0; j < 7; j++)
+					if ((value1 + 1) > (i * 7 + j) && bitSet.get(i * 7 + j)) newBytes[i] |= (byte) (1 << j);
+			if (octets.length * 8 % 7 > 0 && newBytes[newBytes.length - 1] == 0)
+			{
+				byte[] retVal = new byte[newBytes.length - 1];
+				System.arraycopy(newBytes, 0, retVal, 0, retVal.length);
+				return retVal;
+			}
+			return newBytes;
+		}
+
+		String toString(byte[] bytes)
+		{
+			StringBuffer text = new StringBuffer();
+			for (int i = 0; i < bytes.length; i++)
+			{
+				if (bytes[i] == 0x1b)
+				{
+					if (i < bytes.length - 1)
+					{
+						String extChar = "1b" + Integer.toHexString(bytes[++i]);
+						for (int j = 0; j < this.extBytes.length; j++)
+							if (this.extBytes[j].equalsIgnoreCase(extChar)) text.append(this.extAlphabet[j]);
+					}
+				}
+				else text.append(this.stdAlphabet[bytes[i]]);
+			}
+			return text.toString();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib;
+
+import java.net.URL;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import org.ajwcc.pduUtils.gsm3040.PduFactory;
+import org.ajwcc.pduUtils.gsm3040.PduGenerator;
+import org.ajwcc.pduUtils.gsm3040.PduUtils;
+import org.ajwcc.pduUtils.gsm3040.SmsDeliveryPdu;
+import org.ajwcc.pduUtils.gsm3040.SmsSubmitPdu;
+import org.ajwcc.pduUtils.gsm3040.ie.InformationElementFactory;
+import org.smslib.Message.MessageEncodings;
+import org.smslib.OutboundWapSIMessage.WapSISignals;
+
+/**
+ * Messages shared by the benchmarks, one of each kind a gateway typically
+ * handles:
+ * <ul>
+ * <li><code>gsm7</code>: a full single-part GSM 7-bit text, with a few
+ * characters from the extension table.</li>
+ * <li><code>ucs2</code>: a single-part Greek text, sent as UCS-2.</li>
+ * <li><code>concat</code>: a 400 character GSM 7-bit text, three parts.</li>
+ * <li><code>wapsi</code>: a WAP Service Indication, 8-bit data on the WAP
+ * push port.</li>
+ * </ul>
+ * The inbound variants are the SMS-DELIVER PDUs a modem would list for the
+ * same content, as they appear in a <code>+CMGL</code> response.
+ */
+public final class BenchmarkFixtures
+{
+	public static final String SMSC = "+306942190000";
+
+	public static final String RECIPIENT = "+306974000000";
+
+	public static final String ORIGINATOR = "+306945000000";
+
+	public static final String GSM7_TEXT = "Order #A-20931 dispatched [2 items], arriving {Tue}. Track: smslib.org/t/20931 or reply STOP to opt out. Fee ~\u20ac0.00 ^_^ Thanks for shopping with us! :-)";
+
+	public static final String UCS2_TEXT = "\u0393\u03b5\u03b9\u03b1 \u03c3\u03b1\u03c2! \u0397 \u03c0\u03b1\u03c1\u03b1\u03b3\u03b3\u03b5\u03bb\u03af\u03b1 \u03c3\u03b1\u03c2 \u03b1\u03c0\u03bf\u03c3\u03c4\u03ac\u03bb\u03b8\u03b7\u03ba\u03b5 \u03ba\u03b1\u03b9 \u03b8\u03b1 \u03c0\u03b1\u03c1\u03b1\u03b4\u03bf\u03b8\u03b5\u03af \u03b1\u03cd\u03c1\u03b9\u03bf.";
+
+	public static final String[] KINDS = { "gsm7", "ucs2", "concat", "wapsi" };
+
+	private BenchmarkFixtures()
+	{
+	}
+
+	/**
+	 * Returns the text of a concatenated message: <code>length</code>
+	 * characters of GSM 7-bit text.
+	 */
+	public static String longText(int length)
+	{
+		StringBuffer b = new StringBuffer(length);
+		while (b.length() < length)
+			b.append(GSM7_TEXT);
+		b.setLength(length);
+		return b.toString();
+	}
+
+	/**
+	 * Returns a new outbound message of the given kind.
+	 */
+	public static OutboundMessage outbound(String kind) throws Exception
+	{
+		OutboundMessage msg;
+		if ("gsm7".equals(kind)) msg = new OutboundMessage(RECIPIENT, GSM7_TEXT);
+		else if ("ucs2".equals(kind))
+		{
+			msg = new OutboundMessage(RECIPIENT, UCS2_TEXT);
+			msg.setEncoding(MessageEncodings.ENCUCS2);
+		}
+		else if ("concat".equals(kind)) msg = new OutboundMessage(RECIPIENT, longText(400));
+		else if ("wapsi".equals(kind)) msg = new OutboundWapSIMessage(RECIPIENT, new URL("http://smslib.org/downloads/smslib-3.5.4.zip"), "SMSLib 3.5.4 is out", new Date(System.currentTimeMillis() + 86400000L), WapSISignals.MEDIUM);
+		else throw new IllegalArgumentException("Unknown fixture: " + kind);
+		msg.setGatewayId("*");
+		return msg;
+	}
+
+	/**
+	 * Returns the SMS-DELIVER PDUs for a message of the given kind, one per
+	 * part, including the SMSC information.
+	 */
+	public static List<String> inboundPdus(String kind) throws Exception
+	{
+		OutboundMessage msg = outbound(kind);
+		SmsSubmitPdu submit = msg.createPduObject();
+		msg.initPduObject(submit, SMSC);
+		SmsDeliveryPdu pdu = PduFactory.newSmsDeliveryPdu(0);
+		pdu.setSmscInfoLength(submit.getSmscInfoLength());
+		pdu.setSmscAddress(SMSC);
+		pdu.setSmscAddressType(PduUtils.getAddressTypeFor(SMSC));
+		pdu.setAddress(ORIGINATOR);
+		pdu.setAddressType(PduUtils.getAddressTypeFor(ORIGINATOR));
+		pdu.setProtocolIdentifier(0);
+		pdu.setDataCodingScheme(submit.getDataCodingScheme());
+		pdu.setTimestamp(Calendar.getInstance());
+		if (submit.isPortedMessage()) pdu.addInformationElement(InformationElementFactory.generatePortInfo(submit.getDestPort(), submit.getSrcPort()));
+		if (submit.isBinary()) pdu.setDataBytes(submit.getDataBytes());
+		else pdu.setDecodedText(submit.getDecodedText());
+		return new PduGenerator().generatePduList(pdu, 42);
+	}
+}
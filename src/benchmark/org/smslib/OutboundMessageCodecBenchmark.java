@@ -0,0 +1,124 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URL;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.smslib.OutboundWapSIMessage.WapSISignals;
+
+/**
+ * Compares <code>OutboundMessageCodec</code> with Java serialization, which
+ * the queue managers used before. The encoded size of each kind of message
+ * is printed at the end of every trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutboundMessageCodecBenchmark
+{
+	@Param({ "text", "binary", "wapsi" })
+	public String kind;
+
+	private OutboundMessage message;
+
+	private byte[] encoded;
+
+	private byte[] serialized;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		if ("binary".equals(this.kind)) this.message = new OutboundBinaryMessage("+306974000000", new byte[100]);
+		else if ("wapsi".equals(this.kind)) this.message = new OutboundWapSIMessage("+306974000000", new URL("http://smslib.org/"), "SMSLib", new Date(System.currentTimeMillis() + 3600000), WapSISignals.HIGH);
+		else this.message = new OutboundMessage("+306974000000", "Hello from SMSLib! This is a typical notification text of moderate length.");
+		this.message.setGatewayId("modem.com1");
+		this.message.setPriority(1);
+		this.message.setStatusReport(true);
+		this.encoded = OutboundMessageCodec.encode(this.message);
+		this.serialized = serialize(this.message);
+	}
+
+	@TearDown(Level.Trial)
+	public void printSizes()
+	{
+		System.out.println();
+		System.out.println("Bytes per " + this.kind + " message: codec=" + this.encoded.length + ", serialization=" + this.serialized.length);
+	}
+
+	@Benchmark
+	public byte[] codecEncode() throws IOException
+	{
+		return OutboundMessageCodec.encode(this.message);
+	}
+
+	@Benchmark
+	public OutboundMessage codecDecode() throws IOException
+	{
+		return OutboundMessageCodec.decode(this.encoded);
+	}
+
+	@Benchmark
+	public byte[] serializationEncode() throws IOException
+	{
+		return serialize(this.message);
+	}
+
+	@Benchmark
+	public Object serializationDecode() throws Exception
+	{
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(this.serialized));
+		Object o = in.readObject();
+		in.close();
+		return o;
+	}
+
+	private static byte[] serialize(OutboundMessage message) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(message);
+		out.close();
+		return bytes.toByteArray();
+	}
+}
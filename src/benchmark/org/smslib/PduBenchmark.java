@@ -0,0 +1,130 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.ajwcc.pduUtils.gsm3040.PduGenerator;
+import org.ajwcc.pduUtils.gsm3040.PduParser;
+import org.ajwcc.pduUtils.gsm3040.PduUtils;
+import org.ajwcc.pduUtils.gsm3040.SmsDeliveryPdu;
+import org.ajwcc.pduUtils.gsm3040.SmsSubmitPdu;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The PDU work on the send and receive paths, for each kind of message in
+ * <code>BenchmarkFixtures</code>: <code>getPdus</code> is what
+ * <code>ModemGateway</code> calls for every outbound message,
+ * <code>generate</code> is the generator alone on a prepared PDU, and
+ * <code>parse</code> is what the gateway does with every listed inbound
+ * PDU: parse it and build the inbound message. The <code>Bytes</code>
+ * variants skip the hex text that only AT command gateways need.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PduBenchmark
+{
+	@Param({ "gsm7", "ucs2", "concat", "wapsi" })
+	public String kind;
+
+	private OutboundMessage message;
+
+	private SmsSubmitPdu submit;
+
+	private String[] inbound;
+
+	private byte[][] inboundBytes;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		this.message = BenchmarkFixtures.outbound(this.kind);
+		this.submit = this.message.createPduObject();
+		this.message.initPduObject(this.submit, BenchmarkFixtures.SMSC);
+		List<String> pdus = BenchmarkFixtures.inboundPdus(this.kind);
+		this.inbound = pdus.toArray(new String[pdus.size()]);
+		this.inboundBytes = new byte[this.inbound.length][];
+		for (int i = 0; i < this.inbound.length; i++)
+			this.inboundBytes[i] = PduUtils.pduToBytes(this.inbound[i]);
+		int parts = ("concat".equals(this.kind) ? 3 : 1);
+		if (this.message.getPdus(BenchmarkFixtures.SMSC, 1).size() != parts || this.inbound.length != parts) throw new IllegalStateException("Fixture " + this.kind + " does not have " + parts + " part(s).");
+		if (!generate().equals(generate())) throw new IllegalStateException("The generator is not repeatable.");
+	}
+
+	@Benchmark
+	public List<String> getPdus()
+	{
+		return this.message.getPdus(BenchmarkFixtures.SMSC, 1);
+	}
+
+	@Benchmark
+	public List<byte[]> getPduBytes()
+	{
+		return this.message.getPduBytes(BenchmarkFixtures.SMSC, 1);
+	}
+
+	@Benchmark
+	public List<String> generate()
+	{
+		return new PduGenerator().generatePduList(this.submit, 1);
+	}
+
+	@Benchmark
+	public void parse(Blackhole bh)
+	{
+		PduParser parser = new PduParser();
+		for (int i = 0; i < this.inbound.length; i++)
+		{
+			SmsDeliveryPdu pdu = (SmsDeliveryPdu) parser.parsePdu(this.inbound[i]);
+			if (pdu.isBinary()) bh.consume(new InboundBinaryMessage(pdu, i + 1, "SM"));
+			else bh.consume(new InboundMessage(pdu, i + 1, "SM"));
+		}
+	}
+
+	@Benchmark
+	public void parseBytes(Blackhole bh)
+	{
+		PduParser parser = new PduParser();
+		for (int i = 0; i < this.inboundBytes.length; i++)
+		{
+			SmsDeliveryPdu pdu = (SmsDeliveryPdu) parser.parsePdu(this.inboundBytes[i]);
+			if (pdu.isBinary()) bh.consume(new InboundBinaryMessage(pdu, i + 1, "SM"));
+			else bh.consume(new InboundMessage(pdu, i + 1, "SM"));
+		}
+	}
+}
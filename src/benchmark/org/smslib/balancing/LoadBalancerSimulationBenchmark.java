@@ -0,0 +1,161 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.balancing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.smslib.AGateway;
+import org.smslib.BenchmarkFixtures;
+import org.smslib.OutboundMessage;
+import org.smslib.test.TestGateway;
+
+/**
+ * Simulates 16 producers sending through a mix of gateways, each able to
+ * send <code>slots</code> messages at a time, taking <code>millis</code> per
+ * message: an SMPP bind (8 slots, 2 ms), an HTTP gateway (4 slots, 10 ms), a
+ * modem (1 slot, 80 ms, i.e. AT+CMGS scaled down a hundred times) and a
+ * broken gateway failing 90% of its messages quickly (2 slots, 1 ms). The
+ * <code>sent</code> and <code>failed</code> counters are the messages per
+ * second which went through and which failed; <code>balancer</code> selects
+ * <code>RoundRobinLoadBalancer</code>, <code>AdaptiveLoadBalancer</code> or
+ * <code>WeightedLoadBalancer</code>, the latter with measured weights and the
+ * slots as concurrent-send caps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+public class LoadBalancerSimulationBenchmark
+{
+	@Param({ "RoundRobinLoadBalancer", "AdaptiveLoadBalancer", "WeightedLoadBalancer" })
+	public String balancer;
+
+	private LoadBalancer loadBalancer;
+
+	private List<AGateway> gateways;
+
+	private List<SimulatedGateway> simulated;
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		if ("AdaptiveLoadBalancer".equals(this.balancer)) this.loadBalancer = new AdaptiveLoadBalancer();
+		else if ("WeightedLoadBalancer".equals(this.balancer))
+		{
+			WeightedLoadBalancer weighted = new WeightedLoadBalancer();
+			weighted.setMeasuredWeights(true);
+			this.loadBalancer = weighted;
+		}
+		else this.loadBalancer = new RoundRobinLoadBalancer();
+		this.gateways = new ArrayList<AGateway>();
+		this.simulated = new ArrayList<SimulatedGateway>();
+		add("smpp", 8, 2, 0);
+		add("http", 4, 10, 0);
+		add("modem", 1, 80, 0);
+		add("broken", 2, 1, 0.9);
+	}
+
+	private void add(String id, int slots, int millis, double failureRate)
+	{
+		AGateway gateway = new TestGateway(id);
+		gateway.setMaxInFlight(slots);
+		this.gateways.add(gateway);
+		this.simulated.add(new SimulatedGateway(slots, millis, failureRate));
+	}
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Outcomes
+	{
+		public long sent;
+
+		public long failed;
+
+		final Random random = new Random();
+
+		final OutboundMessage message = new OutboundMessage(BenchmarkFixtures.RECIPIENT, "Hello");
+	}
+
+	@Benchmark
+	public boolean send(Outcomes outcomes) throws InterruptedException
+	{
+		AGateway gateway = this.loadBalancer.balance(outcomes.message, this.gateways);
+		SimulatedGateway simulation = this.simulated.get(this.gateways.indexOf(gateway));
+		this.loadBalancer.sendStarted(gateway, outcomes.message);
+		long start = System.nanoTime();
+		boolean sent = simulation.send(outcomes.random);
+		this.loadBalancer.sendCompleted(gateway, outcomes.message, sent, System.nanoTime() - start);
+		if (sent) outcomes.sent++;
+		else outcomes.failed++;
+		return sent;
+	}
+
+	static class SimulatedGateway
+	{
+		private final Semaphore slots;
+
+		private final int millis;
+
+		private final double failureRate;
+
+		SimulatedGateway(int mySlots, int myMillis, double myFailureRate)
+		{
+			this.slots = new Semaphore(mySlots, true);
+			this.millis = myMillis;
+			this.failureRate = myFailureRate;
+		}
+
+		boolean send(Random random) throws InterruptedException
+		{
+			this.slots.acquire();
+			try
+			{
+				Thread.sleep(this.millis);
+				return (random.nextDouble() >= this.failureRate);
+			}
+			finally
+			{
+				this.slots.release();
+			}
+		}
+	}
+}
@@ -0,0 +1,225 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.modem;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.smslib.Service;
+
+/**
+ * Feeds a recorded modem session through the reader buffer and splits it
+ * into responses the way <code>AModemDriver.getResponse()</code> does. The
+ * <code>legacy</code> variant is the synchronized, byte-at-a-time queue the
+ * driver used before <code>ByteRingBuffer</code>; <code>framer</code> is what
+ * the driver does now. The data arrives in chunks
+ * of <code>chunk</code> bytes, as a serial port would deliver it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModemResponseBenchmark
+{
+	/** A typical polling cycle: status queries, a message listing and a few URCs. */
+	private static final String[] SESSION = { "\r\nOK\r\n", "\r\n+CSQ: 21,99\r\n\r\nOK\r\n", "\r\n+CREG: 0,1\r\n\r\nOK\r\n", "\r\n+CBC: 0,87\r\n\r\nOK\r\n", "\r\n+CMTI: \"SM\",3\r\n", "\r\n+CMGL: 1,1,,24\r\n07910326040011F0040B910346992452F000003150813134328004D4F29C0E\r\n+CMGL: 2,1,,160\r\n07910326040011F0040B910346992452F00000315081314353809FD4F29C0E9A36A72076793E0F9FCB2E97DB5D76D3EB72D0BC5E9693C3F3A0B71A34AFB7D7E9B7A9CE9EA6E5B09C5E06BDCD20B3BB2C0FB3D9F379B95C9ECB6E35EBF29C0E8AB9C9E3F0B99E968FDF6E10BC3C2E83DA6F36A80E6287DFE4B00B543EB14F3D0A0E1E6EAE94B9C2DCAEB3C6E66E90BC5EAEC3F4F7B8EE2E9BC970BB0C0AC1CBF932\r\n\r\nOK\r\n", "\r\n+CDSI: \"SR\",4\r\n", "\r\n+CMGS: 118\r\n\r\nOK\r\n", "\r\n+CMS ERROR: 500\r\n", "\r\n+CUSD: 0,\"Balance 12.50\",15\r\n" };
+
+	private static final String[] TERMINATORS = { "OK", "ERROR", "+CMS ERROR", "+CME ERROR", "+CMTI", "+CDSI", "+CUSD" };
+
+	@Param({ "16", "256" })
+	public int chunk;
+
+	private byte[] traffic;
+
+	private int responses;
+
+	private ByteRingBuffer ring;
+
+	private LegacyQueue legacy;
+
+	private ResponseFramer framer;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		StringBuffer b = new StringBuffer();
+		for (int i = 0; i < SESSION.length; i++)
+			b.append(SESSION[i]);
+		this.traffic = b.toString().getBytes("ISO-8859-1");
+		this.ring = new ByteRingBuffer(Service.getInstance().getSettings().SERIAL_BUFFER_SIZE);
+		this.legacy = new LegacyQueue();
+		this.framer = new ResponseFramer(new IPModemGateway("modem", "127.0.0.1", 2000, "", "").getATHandler());
+		this.responses = ring();
+		if ((this.responses != legacy()) || (this.responses != framer())) throw new IllegalStateException("Variants disagree.");
+	}
+
+	@Benchmark
+	public int ring() throws InterruptedException
+	{
+		for (int off = 0; off < this.traffic.length; off += this.chunk)
+			this.ring.put(this.traffic, off, Math.min(this.chunk, this.traffic.length - off));
+		int count = 0;
+		StringBuffer buffer = new StringBuffer(256);
+		int c;
+		while (this.ring.size() > 0)
+		{
+			while (((c = this.ring.peek(0)) == 0x0a) || (c == 0x0d))
+				this.ring.skip(1);
+			if (c == -1) break;
+			int length = this.ring.indexOf(0x0a, 0, 0);
+			this.ring.take(buffer, length);
+			this.ring.skip(1);
+			if (isFinal(buffer))
+			{
+				count++;
+				buffer = new StringBuffer(256);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Like {@link #ring()}, but with the lines classified by the driver's
+	 * <code>ResponseFramer</code>.
+	 */
+	@Benchmark
+	public int framer() throws InterruptedException
+	{
+		for (int off = 0; off < this.traffic.length; off += this.chunk)
+			this.ring.put(this.traffic, off, Math.min(this.chunk, this.traffic.length - off));
+		int count = 0;
+		int c;
+		this.framer.reset();
+		while (this.ring.size() > 0)
+		{
+			while (((c = this.ring.peek(0)) == 0x0a) || (c == 0x0d))
+				this.ring.skip(1);
+			if (c == -1) break;
+			int kind = this.framer.takeLine(this.ring, this.ring.indexOf(0x0a, 0, 0));
+			if (kind == ResponseFramer.UNSOLICITED) this.framer.dropLine();
+			if (kind != ResponseFramer.INTERMEDIATE)
+			{
+				count++;
+				this.framer.reset();
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	public int legacy() throws InterruptedException
+	{
+		for (int off = 0; off < this.traffic.length; off += this.chunk)
+		{
+			int end = Math.min(off + this.chunk, this.traffic.length);
+			for (int i = off; i < end; i++)
+				this.legacy.put(this.traffic[i]);
+		}
+		int count = 0;
+		StringBuffer buffer = new StringBuffer(Service.getInstance().getSettings().SERIAL_BUFFER_SIZE);
+		byte c;
+		while (!this.legacy.isEmpty())
+		{
+			while ((this.legacy.peek() == 0x0a) || (this.legacy.peek() == 0x0d))
+				this.legacy.get();
+			if (this.legacy.isEmpty()) break;
+			while (true)
+			{
+				c = this.legacy.get();
+				if (System.getProperty("smslib.dumpqueues") != null) System.out.println((int) c);
+				if (c != 0x0a) buffer.append((char) c);
+				else break;
+			}
+			if (isFinal(buffer))
+			{
+				count++;
+				buffer = new StringBuffer(Service.getInstance().getSettings().SERIAL_BUFFER_SIZE);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Stands in for the AT handler's terminator check: a final result code
+	 * or an unsolicited result code ends the response.
+	 */
+	private static boolean isFinal(StringBuffer buffer)
+	{
+		int start = buffer.lastIndexOf("\r", buffer.length() - 2) + 1;
+		for (int i = 0; i < TERMINATORS.length; i++)
+			if (buffer.indexOf(TERMINATORS[i], start) == start) return true;
+		return false;
+	}
+
+	/**
+	 * The reader queue as it was: one synchronized call and one
+	 * <code>notifyAll()</code> per byte, with the buffer size looked up on
+	 * every call.
+	 */
+	private static class LegacyQueue
+	{
+		byte[] buffer = new byte[Service.getInstance().getSettings().SERIAL_BUFFER_SIZE];
+
+		int bufferStart, bufferEnd;
+
+		public synchronized void put(byte c)
+		{
+			this.buffer[this.bufferEnd] = c;
+			this.bufferEnd++;
+			if (this.bufferEnd == Service.getInstance().getSettings().SERIAL_BUFFER_SIZE) this.bufferEnd = 0;
+			if (System.getProperty("smslib.dumpqueues") != null) System.out.println((int) c);
+			notifyAll();
+		}
+
+		public synchronized byte get() throws InterruptedException
+		{
+			if (this.bufferStart == this.bufferEnd) wait(1);
+			byte c = this.buffer[this.bufferStart];
+			this.bufferStart++;
+			if (this.bufferStart == Service.getInstance().getSettings().SERIAL_BUFFER_SIZE) this.bufferStart = 0;
+			return c;
+		}
+
+		public synchronized byte peek()
+		{
+			if (this.bufferStart == this.bufferEnd) return -1;
+			return this.buffer[this.bufferStart];
+		}
+
+		public synchronized boolean isEmpty()
+		{
+			return (this.bufferStart == this.bufferEnd);
+		}
+	}
+}
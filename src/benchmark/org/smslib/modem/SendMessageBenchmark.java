@@ -0,0 +1,109 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.modem;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.smslib.Service;
+
+/**
+ * Measures the time to send one message through <code>AT+CMGS</code> against
+ * a {@link VirtualModem}, with the fixed waits of the original send path
+ * (<code>prompt=false</code>) and with <code>AT_WAIT_PROMPT</code>. The
+ * modem prompts after <code>promptLatency</code> ms and acknowledges the
+ * message <code>submitLatency</code> ms after the Ctrl-Z.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class SendMessageBenchmark
+{
+	private static final String PDU = "0011000B916407281553F80000AA0AE8329BFD4697D9EC37";
+
+	@Param({ "false", "true" })
+	public boolean prompt;
+
+	@Param({ "10" })
+	public int promptLatency;
+
+	@Param({ "100" })
+	public int submitLatency;
+
+	private VirtualModem modem;
+
+	private NIOModemGateway gateway;
+
+	private NIOModemDriver driver;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		Service.getInstance().getSettings().AT_WAIT_PROMPT = this.prompt;
+		this.modem = new VirtualModem();
+		this.modem.setCommandLatency(this.promptLatency);
+		this.modem.setSubmitLatency(this.submitLatency);
+		this.gateway = new NIOModemGateway("modem", "127.0.0.1", this.modem.listen(), "", "");
+		this.gateway.setIpProtocol(ModemGateway.IPProtocols.RAW);
+		this.driver = (NIOModemDriver) this.gateway.getDriver();
+		this.driver.connectPort();
+		this.driver.setConnected(true);
+		synchronized (this.driver.getSYNCCommander())
+		{
+			this.driver.write("ATE0\r");
+			this.driver.getResponse();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception
+	{
+		this.driver.setConnected(false);
+		this.driver.disconnectPort();
+		this.modem.close();
+	}
+
+	@Benchmark
+	public int send() throws Exception
+	{
+		synchronized (this.driver.getSYNCCommander())
+		{
+			int refNo = this.gateway.getATHandler().sendMessage(23, PDU, null, null);
+			if (refNo < 0) throw new IllegalStateException("Message not sent.");
+			return refNo;
+		}
+	}
+}
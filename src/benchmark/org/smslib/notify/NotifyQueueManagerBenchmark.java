@@ -0,0 +1,101 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.notify;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.smslib.AGateway;
+import org.smslib.BenchmarkFixtures;
+import org.smslib.IOutboundMessageNotification;
+import org.smslib.OutboundMessage;
+import org.smslib.Service;
+import org.smslib.test.TestGateway;
+
+/**
+ * Measures how long <code>NotifyQueueManager</code> takes to hand
+ * <code>burst</code> outbound message notifications, queued at once, to the
+ * application's callback. This is the delay between a gateway finishing a
+ * send and the application hearing about it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotifyQueueManagerBenchmark
+{
+	@Param({ "1", "10" })
+	public int burst;
+
+	private final Semaphore delivered = new Semaphore(0);
+
+	private NotifyQueueManager manager;
+
+	private AGateway gateway;
+
+	private OutboundMessage message;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		Service.getInstance().setOutboundMessageNotification(new IOutboundMessageNotification()
+		{
+			public void process(AGateway g, OutboundMessage msg)
+			{
+				NotifyQueueManagerBenchmark.this.delivered.release();
+			}
+		});
+		this.gateway = new TestGateway("gateway");
+		this.message = BenchmarkFixtures.outbound("gsm7");
+		this.manager = new NotifyQueueManager();
+		this.manager.start();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		this.manager.cancel();
+		Service.getInstance().setOutboundMessageNotification(null);
+	}
+
+	@Benchmark
+	public void dispatch() throws InterruptedException
+	{
+		for (int i = 0; i < this.burst; i++)
+			this.manager.getNotifyQueue().add(new OutboundMessageNotification(this.gateway, this.message));
+		this.delivered.acquire(this.burst);
+	}
+}
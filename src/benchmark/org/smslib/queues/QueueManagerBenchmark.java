@@ -0,0 +1,122 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.queues;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.smslib.BenchmarkFixtures;
+import org.smslib.OutboundMessage;
+
+/**
+ * Queues a message and polls it back, as <code>Service.queueMessage()</code>
+ * and the gateway's queue thread do. <code>store</code> selects the queue
+ * manager: <code>DefaultQueueManager</code> in memory only
+ * (<code>memory</code>) or with a queue directory (<code>disk</code>),
+ * <code>JournalQueueManager</code> or <code>MappedQueueManager</code>.
+ * <code>backlog</code> is the number of messages already pending for the
+ * gateway, at a lower priority.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueManagerBenchmark
+{
+	private static final String GATEWAY = "modem.com1";
+
+	@Param({ "memory", "disk", "journal", "mapped" })
+	public String store;
+
+	@Param({ "0", "1000" })
+	public int backlog;
+
+	private File directory;
+
+	private AbstractQueueManager queue;
+
+	private OutboundMessage message;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		if ("memory".equals(this.store)) this.queue = new DefaultQueueManager();
+		else
+		{
+			this.directory = File.createTempFile("smslib", "queue");
+			if (!this.directory.delete() || !this.directory.mkdir()) throw new IllegalStateException("Cannot create " + this.directory);
+			if ("journal".equals(this.store)) this.queue = new JournalQueueManager(this.directory.getPath());
+			else if ("mapped".equals(this.store)) this.queue = new MappedQueueManager(this.directory.getPath());
+			else this.queue = new DefaultQueueManager(this.directory.getPath());
+		}
+		for (int i = 0; i < this.backlog; i++)
+			this.queue.queueMessage(newMessage(-1));
+		this.message = newMessage(1);
+		if (queueAndPoll() != this.message) throw new IllegalStateException("The new message was not polled first.");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		this.queue.removeAllPendingMessages();
+		if (this.queue instanceof JournalQueueManager) this.queue.stop();
+		else if (this.queue instanceof MappedQueueManager) ((MappedQueueManager) this.queue).close();
+		if (this.directory != null) delete(this.directory);
+	}
+
+	@Benchmark
+	public OutboundMessage queueAndPoll()
+	{
+		this.queue.queueMessage(this.message);
+		return this.queue.pollPendingMessage(GATEWAY);
+	}
+
+	private static OutboundMessage newMessage(int priority) throws Exception
+	{
+		OutboundMessage msg = BenchmarkFixtures.outbound("gsm7");
+		msg.setGatewayId(GATEWAY);
+		msg.setPriority(priority);
+		return msg;
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null) for (int i = 0; i < children.length; i++)
+			delete(children[i]);
+		file.delete();
+	}
+}
@@ -0,0 +1,164 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.routing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.smslib.AGateway;
+import org.smslib.AGateway.GatewayStatuses;
+import org.smslib.OutboundMessage;
+import org.smslib.test.TestGateway;
+
+/**
+ * Finds the gateways for a destination number among <code>prefixes</code>
+ * routes spread over 30 gateways: 200 is an operator table, 100000 a number
+ * portability dump. <code>lookup</code> uses <code>PrefixTrie</code>,
+ * <code>legacyLookup</code> compares the number with every prefix, as an
+ * <code>ARouter.customRoute()</code> subclass had to. <code>route</code>
+ * routes a message through <code>PrefixRouter</code>, the 30 gateways
+ * included.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrefixRouterBenchmark
+{
+	private static final int GATEWAYS = 30;
+
+	@Param({ "200", "100000" })
+	public int prefixes;
+
+	private PrefixTrie trie;
+
+	private String[] legacyPrefixes;
+
+	private String[] legacyIds;
+
+	private String[] numbers;
+
+	private int next;
+
+	private PrefixRouter router;
+
+	private List<AGateway> gateways;
+
+	private OutboundMessage[] messages;
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		Random random = new Random(42);
+		Map<String, String[]> routes = new HashMap<String, String[]>();
+		while (routes.size() < this.prefixes)
+		{
+			// Operator codes are short, ported numbers are whole MSISDNs.
+			String prefix = (this.prefixes <= 1000 ? "30" + (690 + random.nextInt(10)) + random.nextInt(1000) : "3069" + (1000000 + random.nextInt(9000000)));
+			routes.put(prefix, new String[] { "gateway" + random.nextInt(GATEWAYS) });
+		}
+		this.trie = new PrefixTrie(routes);
+		this.legacyPrefixes = routes.keySet().toArray(new String[0]);
+		this.legacyIds = new String[this.legacyPrefixes.length];
+		for (int i = 0; i < this.legacyPrefixes.length; i++)
+			this.legacyIds[i] = routes.get(this.legacyPrefixes[i])[0];
+		this.numbers = new String[1024];
+		this.messages = new OutboundMessage[this.numbers.length];
+		for (int i = 0; i < this.numbers.length; i++)
+		{
+			String prefix = this.legacyPrefixes[random.nextInt(this.legacyPrefixes.length)];
+			this.numbers[i] = "+" + prefix + "0000000000".substring(0, Math.max(0, 12 - prefix.length()));
+			this.messages[i] = new OutboundMessage(this.numbers[i], "Hello");
+		}
+		this.router = new PrefixRouter(this.trie);
+		this.gateways = new ArrayList<AGateway>();
+		for (int i = 0; i < GATEWAYS; i++)
+		{
+			TestGateway gateway = new TestGateway("gateway" + i);
+			gateway.setStatus(GatewayStatuses.STARTED);
+			gateway.setOutbound(true);
+			this.gateways.add(gateway);
+		}
+		for (String number : this.numbers)
+		{
+			Set<String> ids = this.trie.lookup(number);
+			if (ids == null || !ids.contains(legacyLookupOf(number))) throw new IllegalStateException("Variants disagree.");
+		}
+	}
+
+	private String nextNumber()
+	{
+		return this.numbers[this.next++ & (this.numbers.length - 1)];
+	}
+
+	private String legacyLookupOf(String number)
+	{
+		String best = null;
+		int bestLength = 0;
+		for (int i = 0; i < this.legacyPrefixes.length; i++)
+		{
+			String prefix = this.legacyPrefixes[i];
+			if (prefix.length() > bestLength && number.startsWith(prefix, 1))
+			{
+				best = this.legacyIds[i];
+				bestLength = prefix.length();
+			}
+		}
+		return best;
+	}
+
+	@Benchmark
+	public Set<String> lookup()
+	{
+		return this.trie.lookup(nextNumber());
+	}
+
+	@Benchmark
+	public String legacyLookup()
+	{
+		return legacyLookupOf(nextNumber());
+	}
+
+	@Benchmark
+	public Object route()
+	{
+		return this.router.route(this.messages[this.next++ & (this.messages.length - 1)], this.gateways);
+	}
+}
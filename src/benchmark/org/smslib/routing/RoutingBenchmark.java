@@ -0,0 +1,150 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.routing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.smslib.AGateway;
+import org.smslib.AGateway.GatewayStatuses;
+import org.smslib.BenchmarkFixtures;
+import org.smslib.OutboundMessage;
+import org.smslib.balancing.LoadBalancer;
+import org.smslib.balancing.RoundRobinLoadBalancer;
+import org.smslib.test.TestGateway;
+
+/**
+ * Picks the gateway for a message the way
+ * <code>Service.routeMessage()</code> does for every send: the router over
+ * all gateways, then <code>RoundRobinLoadBalancer</code> over the
+ * candidates. <code>router</code> selects <code>Router</code>, the
+ * <code>Service</code> default, <code>RuleRouter</code> with a prefix and a
+ * cost rule which keep all candidates, <code>DefaultRouter</code>, the
+ * <code>ARouter</code> implementation, or <code>RoutingTable</code>, the
+ * snapshot the <code>Service</code> looks up for routers without custom
+ * routing. Half of the gateways are stopped or inbound only, so the router
+ * has work to do. The <code>contended</code> variant runs from four threads
+ * sharing the router and the balancer, as the gateway queue threads do
+ * through <code>Service</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark
+{
+	@Param({ "2", "8", "32" })
+	public int gateways;
+
+	@Param({ "Router", "RuleRouter", "DefaultRouter", "RoutingTable" })
+	public String router;
+
+	private List<AGateway> all;
+
+	private Router serviceRouter;
+
+	private ARouter abstractRouter;
+
+	private RoutingTable table;
+
+	private LoadBalancer balancer;
+
+	private OutboundMessage message;
+
+	private Collection<AGateway> candidates;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		this.all = new ArrayList<AGateway>();
+		for (int i = 0; i < this.gateways; i++)
+		{
+			TestGateway gateway = new TestGateway("gateway" + i);
+			gateway.setStatus((i % 4 == 1) ? GatewayStatuses.STOPPED : GatewayStatuses.STARTED);
+			gateway.setOutbound(i % 4 != 3);
+			this.all.add(gateway);
+		}
+		if ("Router".equals(this.router)) this.serviceRouter = new Router();
+		else if ("RuleRouter".equals(this.router))
+		{
+			String[] ids = new String[this.gateways];
+			Map<String, Integer> costs = new HashMap<String, Integer>();
+			for (int i = 0; i < this.gateways; i++)
+			{
+				ids[i] = "gateway" + i;
+				costs.put(ids[i], 1);
+			}
+			this.serviceRouter = new RuleRouter(new PrefixRule(BenchmarkFixtures.RECIPIENT.substring(0, 5), ids), new CostRule(costs));
+		}
+		else if ("DefaultRouter".equals(this.router)) this.abstractRouter = new DefaultRouter();
+		else this.table = new RoutingTable(this.all);
+		this.balancer = new RoundRobinLoadBalancer();
+		this.message = BenchmarkFixtures.outbound("gsm7");
+		this.candidates = new ArrayList<AGateway>(route());
+		if (this.candidates.size() != this.gateways / 2) throw new IllegalStateException("Expected " + (this.gateways / 2) + " candidates, got " + this.candidates.size() + ".");
+	}
+
+	@Benchmark
+	public Collection<AGateway> route()
+	{
+		if (this.table != null) return this.table.lookup(this.message.getGatewayId());
+		if (this.serviceRouter != null) return this.serviceRouter.route(this.message, this.all);
+		return this.abstractRouter.route(this.message, this.all);
+	}
+
+	@Benchmark
+	public AGateway balance()
+	{
+		return this.balancer.balance(this.message, this.candidates);
+	}
+
+	@Benchmark
+	public AGateway routeAndBalance()
+	{
+		return this.balancer.balance(this.message, route());
+	}
+
+	@Benchmark
+	@Threads(4)
+	public AGateway contended()
+	{
+		return routeAndBalance();
+	}
+}
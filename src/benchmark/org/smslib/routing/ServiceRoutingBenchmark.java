@@ -0,0 +1,116 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.smslib.AGateway;
+import org.smslib.AGateway.GatewayStatuses;
+import org.smslib.BenchmarkFixtures;
+import org.smslib.OutboundMessage;
+import org.smslib.Service;
+import org.smslib.test.TestGateway;
+
+/**
+ * Calls <code>Service.routeMessage()</code> from 32 producer threads at once,
+ * as many gateway queue threads and application threads sending directly do.
+ * <code>path</code> selects <code>snapshot</code>, the default
+ * <code>Router</code> answered from the routing table, or
+ * <code>locked</code>, a router with custom routing, which the Service
+ * still routes one message at a time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(32)
+public class ServiceRoutingBenchmark
+{
+	@Param({ "2", "8", "32" })
+	public int gateways;
+
+	@Param({ "snapshot", "locked" })
+	public String path;
+
+	private List<AGateway> all;
+
+	private OutboundMessage message;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		Service service = Service.getInstance();
+		this.all = new ArrayList<AGateway>();
+		for (int i = 0; i < this.gateways; i++)
+		{
+			TestGateway gateway = new TestGateway("gateway" + i);
+			gateway.setStatus((i % 4 == 1) ? GatewayStatuses.STOPPED : GatewayStatuses.STARTED);
+			gateway.setOutbound(i % 4 != 3);
+			service.addGateway(gateway);
+			this.all.add(gateway);
+		}
+		if ("locked".equals(this.path)) service.setRouter(new Router()
+		{
+			@Override
+			public void customRouting(OutboundMessage msg)
+			{
+				super.customRouting(msg);
+			}
+		});
+		else service.setRouter(new Router());
+		this.message = BenchmarkFixtures.outbound("gsm7");
+		if (service.getRouter().isTableRouting() != "snapshot".equals(this.path)) throw new IllegalStateException("Wrong routing path.");
+		if (service.getRoutingTable().lookup("*").size() != this.gateways / 2) throw new IllegalStateException("Expected " + (this.gateways / 2) + " candidates.");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception
+	{
+		Service service = Service.getInstance();
+		for (AGateway gateway : this.all)
+			service.removeGateway(gateway);
+		service.setRouter(new Router());
+	}
+
+	@Benchmark
+	public AGateway routeMessage()
+	{
+		return Service.getInstance().routeMessage(this.message);
+	}
+}
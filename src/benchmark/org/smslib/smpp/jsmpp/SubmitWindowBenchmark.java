@@ -0,0 +1,246 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.smpp.jsmpp;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.smslib.BenchmarkFixtures;
+import org.smslib.OutboundMessage;
+import org.smslib.SubmitFuture;
+import org.smslib.smpp.BindAttributes;
+import org.smslib.smpp.BindAttributes.BindType;
+
+/**
+ * Submits batches of messages through a <code>JSMPPGateway</code> bound to a
+ * local stand-in SMSC, which answers each submit_sm after
+ * <code>latency</code> milliseconds. <code>window</code> is the number of
+ * submit_sm kept outstanding; the score is in messages per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubmitWindowBenchmark
+{
+	private static final int BATCH = 64;
+
+	@Param({ "1", "4", "16" })
+	public int window;
+
+	@Param({ "20" })
+	public int latency;
+
+	private SmscStandIn smsc;
+
+	private JSMPPGateway gateway;
+
+	private List<OutboundMessage> batch;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		this.smsc = new SmscStandIn(this.latency);
+		this.gateway = new JSMPPGateway("smpp", "127.0.0.1", this.smsc.getPort(), new BindAttributes("smslib", "smslib", "cp", BindType.TRANSMITTER));
+		this.gateway.setWindowSize(this.window);
+		this.gateway.startGateway();
+		this.batch = new ArrayList<OutboundMessage>(BATCH);
+		for (int i = 0; i < BATCH; i++)
+			this.batch.add(new OutboundMessage(BenchmarkFixtures.RECIPIENT, "Hello"));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception
+	{
+		this.gateway.stopGateway();
+		this.smsc.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int submitBatch() throws Exception
+	{
+		int sent = 0;
+		for (SubmitFuture future : this.gateway.submitAll(this.batch))
+		{
+			future.get(10, TimeUnit.SECONDS);
+			if (future.isSent()) sent++;
+		}
+		if (sent != BATCH) throw new IllegalStateException("Only " + sent + " of " + BATCH + " messages sent.");
+		return sent;
+	}
+
+	/**
+	 * Binds anyone, and answers each submit_sm after a fixed latency.
+	 */
+	static class SmscStandIn implements Runnable
+	{
+		private final ServerSocket server;
+
+		private final long latency;
+
+		private final ScheduledExecutorService responder = Executors.newSingleThreadScheduledExecutor();
+
+		private final List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+
+		private final AtomicInteger messageId = new AtomicInteger();
+
+		SmscStandIn(long latency) throws IOException
+		{
+			this.server = new ServerSocket(0);
+			this.latency = latency;
+			Thread thread = new Thread(this, "SMSC stand-in");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		int getPort()
+		{
+			return this.server.getLocalPort();
+		}
+
+		public void run()
+		{
+			try
+			{
+				while (true)
+				{
+					final Socket socket = this.server.accept();
+					this.sockets.add(socket);
+					Thread thread = new Thread(new Runnable()
+					{
+						public void run()
+						{
+							serve(socket);
+						}
+					}, "SMSC stand-in connection");
+					thread.setDaemon(true);
+					thread.start();
+				}
+			}
+			catch (IOException e)
+			{
+				// Server closed.
+			}
+		}
+
+		void close() throws IOException
+		{
+			this.responder.shutdownNow();
+			this.server.close();
+			for (Socket socket : this.sockets)
+				socket.close();
+		}
+
+		void serve(Socket socket)
+		{
+			try
+			{
+				DataInputStream in = new DataInputStream(socket.getInputStream());
+				final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				while (true)
+				{
+					int length = in.readInt();
+					int id = in.readInt();
+					in.readInt();
+					final int sequence = in.readInt();
+					in.readFully(new byte[length - 16]);
+					// JSMPP expects sc_interface_version in the bind response.
+					if (id == 0x00000002) respond(out, 0x80000002, sequence, "SMSC", new byte[] { 0x02, 0x10, 0x00, 0x01, 0x34 });
+					else if (id == 0x00000015) respond(out, 0x80000015, sequence, null, null);
+					else if (id == 0x00000006)
+					{
+						respond(out, 0x80000006, sequence, null, null);
+						socket.close();
+						return;
+					}
+					else if (id == 0x00000004)
+					{
+						final String text = "M" + this.messageId.incrementAndGet();
+						this.responder.schedule(new Runnable()
+						{
+							public void run()
+							{
+								respond(out, 0x80000004, sequence, text, null);
+							}
+						}, this.latency, TimeUnit.MILLISECONDS);
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				// Connection closed.
+			}
+		}
+
+		static void respond(DataOutputStream out, int id, int sequence, String text, byte[] tlvs)
+		{
+			synchronized (out)
+			{
+				try
+				{
+					out.writeInt(16 + (text == null ? 0 : text.length() + 1) + (tlvs == null ? 0 : tlvs.length));
+					out.writeInt(id);
+					out.writeInt(0);
+					out.writeInt(sequence);
+					if (text != null)
+					{
+						out.write(text.getBytes("ISO-8859-1"));
+						out.write(0);
+					}
+					if (tlvs != null) out.write(tlvs);
+					out.flush();
+				}
+				catch (IOException e)
+				{
+					// Connection closed.
+				}
+			}
+		}
+	}
+}
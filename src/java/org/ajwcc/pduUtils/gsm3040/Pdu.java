@@ -552,16 +552,35 @@ public abstract class Pdu
 	}
 
 	// PDU MANAGEMENT
+	// the raw PDU is kept as it was given, as hex or as octets,
+	// and converted to the other form only when asked for
 	private String rawPdu;
 
+	private byte[] rawPduBytes;
+
 	public String getRawPdu()
 	{
+		if ((rawPdu == null) && (rawPduBytes != null)) rawPdu = PduUtils.bytesToPdu(rawPduBytes);
 		return rawPdu;
 	}
 
+	// NOTE: the array is not copied, do not modify it
+	public byte[] getRawPduBytes()
+	{
+		if ((rawPduBytes == null) && (rawPdu != null)) rawPduBytes = PduUtils.pduToBytes(rawPdu);
+		return rawPduBytes;
+	}
+
 	public void setRawPdu(String rawPdu)
 	{
 		this.rawPdu = rawPdu;
+		this.rawPduBytes = null;
+	}
+
+	public void setRawPdu(byte[] rawPdu)
+	{
+		this.rawPduBytes = rawPdu;
+		this.rawPdu = null;
 	}
 
 	@Override
@@ -572,7 +591,7 @@ public abstract class Pdu
 		sb.append("<< " + getClass().getSimpleName() + " >>");
 		sb.append("\n");
 		sb.append("Raw Pdu: ");
-		sb.append(rawPdu);
+		sb.append(getRawPdu());
 		sb.append("\n");
 		sb.append("\n");
 		// smsc info        
@@ -100,8 +100,7 @@ public class PduGenerator
 		switch (PduUtils.extractAddressType(addressType))
 		{
 			case PduUtils.ADDRESS_TYPE_ALPHANUMERIC:
-				byte[] textSeptets = PduUtils.stringToUnencodedSeptets(address);
-				byte[] alphaNumBytes = PduUtils.encode7bitUserData(null, textSeptets);
+				byte[] alphaNumBytes = PduUtils.stringToEncodedSeptets(address);
 				// ADDRESS LENGTH - should be the semi-octet count
 				//                - this type is not used for SMSCInfo
 				baos.write(alphaNumBytes.length * 2);
@@ -451,6 +450,15 @@ public class PduGenerator
 		return pduList;
 	}
 
+	// same as generatePduList(), as octets instead of hex strings
+	public List<byte[]> generatePduBytesList(Pdu pdu, int mpRefNo)
+	{
+		ArrayList<byte[]> pduList = new ArrayList<byte[]>();
+		for (int i = 1; i <= pdu.getMpMaxNo(); i++)
+			pduList.add(generatePduBytes(pdu, mpRefNo, i));
+		return pduList;
+	}
+
 	public String generatePduString(Pdu pdu)
 	{
 		return generatePduString(pdu, -1, -1);
@@ -460,6 +468,16 @@ public class PduGenerator
 	//       assuming that the message is multipart, this will be ignored if the
 	//       message is not a concat message
 	public String generatePduString(Pdu pdu, int mpRefNo, int partNo)
+	{
+		return PduUtils.bytesToPdu(generatePduBytes(pdu, mpRefNo, partNo));
+	}
+
+	public byte[] generatePduBytes(Pdu pdu)
+	{
+		return generatePduBytes(pdu, -1, -1);
+	}
+
+	public byte[] generatePduBytes(Pdu pdu, int mpRefNo, int partNo)
 	{
 		try
 		{
@@ -487,7 +505,7 @@ public class PduGenerator
 			{
 				pduBytes[firstOctetPosition] = (byte) (pdu.getFirstOctet() & 0xFF);
 			}
-			return PduUtils.bytesToPdu(pduBytes);
+			return pduBytes;
 		}
 		catch (Exception e)
 		{
@@ -1,6 +1,7 @@
 
 package org.ajwcc.pduUtils.gsm3040;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 import org.ajwcc.pduUtils.gsm3040.ie.*;
 
@@ -170,11 +171,33 @@ public class PduParser
 	public Pdu parsePdu(String rawPdu)
 	{
 		// encode pdu to byte[] for easier processing
-		pduByteArray = PduUtils.pduToBytes(rawPdu);
+		Pdu pdu = parse(PduUtils.pduToBytes(rawPdu));
+		pdu.setRawPdu(rawPdu);
+		return pdu;
+	}
+
+	// NOTE: the array is kept as the raw pdu, do not modify it afterwards
+	public Pdu parsePdu(byte[] rawPdu)
+	{
+		Pdu pdu = parse(rawPdu);
+		pdu.setRawPdu(rawPdu);
+		return pdu;
+	}
+
+	// parses the remaining bytes of the buffer
+	public Pdu parsePdu(ByteBuffer rawPdu)
+	{
+		byte[] bytes = new byte[rawPdu.remaining()];
+		rawPdu.get(bytes);
+		return parsePdu(bytes);
+	}
+
+	private Pdu parse(byte[] rawPdu)
+	{
+		pduByteArray = rawPdu;
 		position = 0;
 		// parse start and determine what type of pdu it is
 		Pdu pdu = parseStart();
-		pdu.setRawPdu(rawPdu);
 		// parse depending on the pdu type
 		switch (pdu.getTpMti())
 		{
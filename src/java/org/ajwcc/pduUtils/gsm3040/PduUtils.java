@@ -296,6 +296,83 @@ public class PduUtils
 			'\u00E0', // LATIN SMALL LETTER A WITH GRAVE
 	};
 
+	// ==================================================
+	// GSM ALPHABET LOOKUP TABLES
+	// ==================================================
+	// built once from the alphabets above
+	// CHAR_TO_SEPTET: the septet for each char, or 0x1bXX for
+	//                 extension table chars; unknown chars map to a space
+	// EXT_SEPTET_TO_CHAR: the char for each septet following a 0x1b,
+	//                     or 0 if the extension table has none
+	private static final short[] CHAR_TO_SEPTET = createCharToSeptetTable();
+
+	private static final char[] EXT_SEPTET_TO_CHAR = createExtSeptetToCharTable();
+
+	private static short[] createCharToSeptetTable()
+	{
+		int size = 0;
+		for (int i = 0; i < stdAlphabet.length; i++)
+			size = Math.max(size, stdAlphabet[i] + 1);
+		for (int i = 0; i < extAlphabet.length; i++)
+			size = Math.max(size, extAlphabet[i] + 1);
+		for (int i = 0; i < grcAlphabetRemapping.length; i++)
+			size = Math.max(size, grcAlphabetRemapping[i][0] + 1);
+		short[] table = new short[size];
+		// lowest priority first: unknown chars, Greek remappings,
+		// the standard table, the extension table
+		Arrays.fill(table, (short) ' ');
+		for (int i = 0; i < grcAlphabetRemapping.length; i++)
+			table[grcAlphabetRemapping[i][0]] = (short) indexOf(stdAlphabet, grcAlphabetRemapping[i][1]);
+		for (int i = stdAlphabet.length - 1; i >= 0; i--)
+			table[stdAlphabet[i]] = (short) i;
+		for (int i = 0; i < extAlphabet.length; i++)
+			table[extAlphabet[i]] = (short) Integer.parseInt(extBytes[i], 16);
+		// LATIN CAPITAL LETTER C WITH CEDILLA is sent as the small letter
+		table['\u00C7'] = table['\u00E7'];
+		return table;
+	}
+
+	private static char[] createExtSeptetToCharTable()
+	{
+		char[] table = new char[128];
+		for (int i = 0; i < extBytes.length; i++)
+			table[Integer.parseInt(extBytes[i].substring(2, 4), 16)] = extAlphabet[i];
+		return table;
+	}
+
+	private static int indexOf(char[] alphabet, char c)
+	{
+		for (int i = 0; i < alphabet.length; i++)
+			if (alphabet[i] == c) return i;
+		throw new IllegalArgumentException("Not in the alphabet: " + c);
+	}
+
+	// the septet, or 0x1bXX, for a char
+	private static int septetFor(char c)
+	{
+		return (c < CHAR_TO_SEPTET.length ? CHAR_TO_SEPTET[c] : ' ');
+	}
+
+	// ==================================================
+	// HEX CODEC TABLES
+	// ==================================================
+	// PDUs are written in upper case, read in either case
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	private static final byte[] HEX_VALUES = createHexValueTable();
+
+	private static byte[] createHexValueTable()
+	{
+		byte[] table = new byte['f' + 1];
+		Arrays.fill(table, (byte) -1);
+		for (int i = 0; i < 16; i++)
+		{
+			table[HEX_DIGITS[i]] = (byte) i;
+			table[Character.toLowerCase(HEX_DIGITS[i])] = (byte) i;
+		}
+		return table;
+	}
+
 	// ==================================================
 	// FIRST OCTET CONSTANTS
 	// ==================================================
@@ -785,100 +862,86 @@ public class PduUtils
 	// from Java String to Pdu
 	public static String stringToPdu(String txt)
 	{
-		byte[] txtBytes = stringToUnencodedSeptets(txt);
-		return bytesToPdu(unencodedSeptetsToEncodedSeptets(txtBytes));
+		return bytesToPdu(stringToEncodedSeptets(txt));
 	}
 
 	// from Java String to uncompressed septets (GSM characters)
 	public static byte[] stringToUnencodedSeptets(String s)
 	{
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		int i, j, index;
-		char ch;
-		s = s.replace('\u00C7', // LATIN CAPITAL LETTER C WITH CEDILLA
-				'\u00E7' // LATIN SMALL LETTER C WITH CEDILLA
-		);
-		for (i = 0; i < s.length(); i++)
+		int length = s.length();
+		byte[] septets = new byte[length];
+		int count = 0;
+		for (int i = 0; i < length; i++)
 		{
-			ch = s.charAt(i);
-			index = -1;
-			for (j = 0; j < extAlphabet.length; j++)
-				if (extAlphabet[j] == ch)
-				{
-					index = j;
-					break;
-				}
-			if (index != -1) // An extended char...
+			int septet = septetFor(s.charAt(i));
+			if (septet > 0x7f)
 			{
-				baos.write((byte) Integer.parseInt(extBytes[index].substring(0, 2), 16));
-				baos.write((byte) Integer.parseInt(extBytes[index].substring(2, 4), 16));
-			}
-			else
-			// Maybe a standard char...
-			{
-				index = -1;
-				for (j = 0; j < stdAlphabet.length; j++)
-					if (stdAlphabet[j] == ch)
-					{
-						index = j;
-						baos.write((byte) j);
-						break;
-					}
-				if (index == -1) // Maybe a Greek Char...
-				{
-					for (j = 0; j < grcAlphabetRemapping.length; j++)
-						if (grcAlphabetRemapping[j][0] == ch)
-						{
-							index = j;
-							ch = grcAlphabetRemapping[j][1];
-							break;
-						}
-					if (index != -1)
-					{
-						for (j = 0; j < stdAlphabet.length; j++)
-							if (stdAlphabet[j] == ch)
-							{
-								index = j;
-								baos.write((byte) j);
-								break;
-							}
-					}
-					else
-					// Unknown char replacement...
-					{
-						baos.write((byte) ' ');
-					}
-				}
+				// an extended char, takes two septets
+				if (septets.length < count + (length - i) + 1) septets = copyOf(septets, septets.length + (length - i) + 8);
+				septets[count++] = 0x1b;
 			}
+			septets[count++] = (byte) septet;
 		}
-		return baos.toByteArray();
+		return (count == septets.length ? septets : copyOf(septets, count));
 	}
 
-	// from compress unencoded septets
-	public static byte[] unencodedSeptetsToEncodedSeptets(byte[] septetBytes)
+	// the number of septets a Java String takes in the GSM alphabet,
+	// same as stringToUnencodedSeptets(s).length
+	public static int getSeptetCount(String s)
+	{
+		int length = s.length();
+		int numSeptets = length;
+		for (int i = 0; i < length; i++)
+			if (septetFor(s.charAt(i)) > 0x7f) numSeptets++;
+		return numSeptets;
+	}
+
+	// from Java String straight to compressed septets, same as
+	// unencodedSeptetsToEncodedSeptets(stringToUnencodedSeptets(s))
+	public static byte[] stringToEncodedSeptets(String s)
 	{
-		byte[] txtBytes;
-		byte[] txtSeptets;
-		int txtBytesLen;
-		BitSet bits;
-		int i, j;
-		txtBytes = septetBytes;
-		txtBytesLen = txtBytes.length;
-		bits = new BitSet();
-		for (i = 0; i < txtBytesLen; i++)
-			for (j = 0; j < 7; j++)
-				if ((txtBytes[i] & (1 << j)) != 0) bits.set((i * 7) + j);
-		// big diff here
-		int encodedSeptetByteArrayLength = txtBytesLen * 7 / 8 + ((txtBytesLen * 7 % 8 != 0) ? 1 : 0);
-		txtSeptets = new byte[encodedSeptetByteArrayLength];
-		for (i = 0; i < encodedSeptetByteArrayLength; i++)
+		int length = s.length();
+		int numSeptets = getSeptetCount(s);
+		byte[] octets = new byte[(numSeptets * 7 + 7) / 8];
+		int bit = 0;
+		for (int i = 0; i < length; i++)
 		{
-			for (j = 0; j < 8; j++)
+			int septet = septetFor(s.charAt(i));
+			if (septet > 0x7f)
 			{
-				txtSeptets[i] |= (byte) ((bits.get((i * 8) + j) ? 1 : 0) << j);
+				packSeptet(octets, bit, 0x1b);
+				bit += 7;
 			}
+			packSeptet(octets, bit, septet);
+			bit += 7;
 		}
-		return txtSeptets;
+		return octets;
+	}
+
+	// writes the low 7 bits of septet at bit position bit
+	private static void packSeptet(byte[] octets, int bit, int septet)
+	{
+		int value = septet & 0x7f;
+		int index = bit >>> 3;
+		int shift = bit & 7;
+		octets[index] |= (byte) (value << shift);
+		if (shift > 1) octets[index + 1] |= (byte) (value >>> (8 - shift));
+	}
+
+	// from compress unencoded septets
+	public static byte[] unencodedSeptetsToEncodedSeptets(byte[] septetBytes)
+	{
+		byte[] octets = new byte[(septetBytes.length * 7 + 7) / 8];
+		for (int i = 0; i < septetBytes.length; i++)
+			packSeptet(octets, i * 7, septetBytes[i]);
+		return octets;
+	}
+
+	private static byte[] copyOf(byte[] bytes, int length)
+	{
+		byte[] copy = new byte[length];
+		System.arraycopy(bytes, 0, copy, 0, Math.min(bytes.length, length));
+		return copy;
 	}
 
 	public static int getNumMultiCharsInSeptets(byte[] bytes)
@@ -898,11 +961,9 @@ public class PduUtils
 	// from GSM characters to java string
 	public static String unencodedSeptetsToString(byte[] bytes)
 	{
-		StringBuffer text;
-		String extChar;
-		int i, j;
-		text = new StringBuffer();
-		for (i = 0; i < bytes.length; i++)
+		char[] text = new char[bytes.length];
+		int count = 0;
+		for (int i = 0; i < bytes.length; i++)
 		{
 			if (bytes[i] == 0x1b)
 			{
@@ -912,17 +973,17 @@ public class PduUtils
 				//         partial PDUs e.g. via toString()
 				if (i < bytes.length - 1)
 				{
-					extChar = "1b" + Integer.toHexString(bytes[++i]);
-					for (j = 0; j < extBytes.length; j++)
-						if (extBytes[j].equalsIgnoreCase(extChar)) text.append(extAlphabet[j]);
+					int ext = bytes[++i];
+					// extension codes without a char are dropped
+					if ((ext >= 0) && (EXT_SEPTET_TO_CHAR[ext] != 0)) text[count++] = EXT_SEPTET_TO_CHAR[ext];
 				}
 			}
 			else
 			{
-				text.append(stdAlphabet[bytes[i]]);
+				text[count++] = stdAlphabet[bytes[i]];
 			}
 		}
-		return text.toString();
+		return new String(text, 0, count);
 	}
 
 	public static String encodedSeptetsToString(byte[] encodedSeptets)
@@ -944,38 +1005,20 @@ public class PduUtils
 
 	public static byte[] encodedSeptetsToUnencodedSeptets(byte[] octetBytes, boolean discardLast)
 	{
-		byte newBytes[];
-		BitSet bitSet;
-		int i, j, value1, value2;
-		bitSet = new BitSet(octetBytes.length * 8);
-		value1 = 0;
-		for (i = 0; i < octetBytes.length; i++)
-			for (j = 0; j < 8; j++)
-			{
-				value1 = (i * 8) + j;
-				if ((octetBytes[i] & (1 << j)) != 0) bitSet.set(value1);
-			}
-		value1++;
-		// this is a bit count NOT a byte count
-		value2 = value1 / 7 + ((value1 % 7 != 0) ? 1 : 0); // big diff here
-		//System.out.println(octetBytes.length);
-		//System.out.println(value1+" --> "+value2);
-		if (value2 == 0) value2++;
-		newBytes = new byte[value2];
-		for (i = 0; i < value2; i++)
+		int length = octetBytes.length;
+		if (length == 0) return new byte[1];
+		int numSeptets = (length * 8 + 6) / 7;
+		byte[] newBytes = new byte[numSeptets];
+		for (int i = 0; i < numSeptets; i++)
 		{
-			for (j = 0; j < 7; j++)
-			{
-				if ((value1 + 1) > (i * 7 + j))
-				{
-					if (bitSet.get(i * 7 + j))
-					{
-						newBytes[i] |= (byte) (1 << j);
-					}
-				}
-			}
+			int bit = i * 7;
+			int index = bit >>> 3;
+			int shift = bit & 7;
+			int value = (octetBytes[index] & 0xFF) >>> shift;
+			if ((shift > 1) && (index + 1 < length)) value |= (octetBytes[index + 1] & 0xFF) << (8 - shift);
+			newBytes[i] = (byte) (value & 0x7f);
 		}
-		if (discardLast && octetBytes.length * 8 % 7 > 0)
+		if (discardLast && length * 8 % 7 > 0)
 		{
 			// when decoding a 7bit encoded string 
 			// the last septet may become 0, this should be discarded
@@ -983,12 +1026,7 @@ public class PduUtils
 			// original string
 			// this is only done for decoding 7bit encoded text NOT for
 			// reversing octets to septets (e.g. for the encoding the UDH)
-			if (newBytes[newBytes.length - 1] == 0)
-			{
-				byte[] retVal = new byte[newBytes.length - 1];
-				System.arraycopy(newBytes, 0, retVal, 0, retVal.length);
-				return retVal;
-			}
+			if (newBytes[newBytes.length - 1] == 0) return copyOf(newBytes, newBytes.length - 1);
 		}
 		return newBytes;
 	}
@@ -996,14 +1034,29 @@ public class PduUtils
 	// converts a PDU style string to a byte array
 	public static byte[] pduToBytes(String s)
 	{
-		byte[] bytes = new byte[s.length() / 2];
-		for (int i = 0; i < s.length(); i += 2)
+		return pduToBytes(s, 0, s.length());
+	}
+
+	// converts the PDU style chars from start to end to a byte array
+	public static byte[] pduToBytes(CharSequence s, int start, int end)
+	{
+		if ((end - start) % 2 != 0) throw new NumberFormatException("Odd number of hex digits: " + s.subSequence(start, end));
+		byte[] bytes = new byte[(end - start) / 2];
+		for (int i = start, j = 0; i < end; i += 2, j++)
 		{
-			bytes[i / 2] = (byte) (Integer.parseInt(s.substring(i, i + 2), 16));
+			int hi = hexValue(s.charAt(i));
+			int lo = hexValue(s.charAt(i + 1));
+			if ((hi | lo) < 0) throw new NumberFormatException("Invalid hex digits: " + s.subSequence(i, i + 2));
+			bytes[j] = (byte) ((hi << 4) | lo);
 		}
 		return bytes;
 	}
 
+	private static int hexValue(char c)
+	{
+		return (c < HEX_VALUES.length ? HEX_VALUES[c] : -1);
+	}
+
 	// converts a PDU style string to a bit string
 	public static String pduToBits(String pduString)
 	{
@@ -1013,12 +1066,20 @@ public class PduUtils
 	// converts a byte array to PDU style string
 	public static String bytesToPdu(byte[] bytes)
 	{
-		StringBuffer sb = new StringBuffer();
-		for (int i = 0; i < bytes.length; i++)
+		return bytesToPdu(bytes, 0, bytes.length);
+	}
+
+	// converts length bytes from offset to PDU style string
+	public static String bytesToPdu(byte[] bytes, int offset, int length)
+	{
+		char[] chars = new char[length * 2];
+		for (int i = 0; i < length; i++)
 		{
-			sb.append(byteToPdu(bytes[i] & 0xFF));
+			int b = bytes[offset + i];
+			chars[i * 2] = HEX_DIGITS[(b >>> 4) & 0x0F];
+			chars[i * 2 + 1] = HEX_DIGITS[b & 0x0F];
 		}
-		return sb.toString();
+		return new String(chars);
 	}
 
 	// converts a byte array to a bit string
@@ -1053,13 +1114,6 @@ public class PduUtils
 
 	public static String byteToPdu(int b)
 	{
-		StringBuffer sb = new StringBuffer();
-		String s = Integer.toHexString(b & 0xFF);
-		if (s.length() == 1)
-		{
-			sb.append("0");
-		}
-		sb.append(s);
-		return sb.toString().toUpperCase();
+		return new String(new char[] { HEX_DIGITS[(b >>> 4) & 0x0F], HEX_DIGITS[b & 0x0F] });
 	}
 }
@@ -21,15 +21,25 @@
 package org.smslib;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.smslib.InboundMessage.MessageClasses;
 import org.smslib.OutboundMessage.FailureCauses;
 import org.smslib.OutboundMessage.MessageStatuses;
 import org.smslib.StatusReportMessage.DeliveryStatuses;
+import org.smslib.balancing.LoadBalancer;
 import org.smslib.helper.Logger;
 import org.smslib.notify.GatewayStatusNotification;
 import org.smslib.notify.OutboundMessageNotification;
+import org.smslib.queues.AbstractQueueManager;
+import org.smslib.threading.AServiceScheduler;
 import org.smslib.threading.AServiceThread;
+import org.smslib.throttling.TokenBucket;
 
 /**
  * Abstract class representing a Gateway, i.e. an interface capable of sending
@@ -58,6 +68,23 @@ public abstract class AGateway
 		STOPPED, STOPPING, STARTING, STARTED, FAILURE, RESTART
 	}
 
+	/**
+	 * Enumeration representing the ways a gateway takes messages from its
+	 * queue.
+	 */
+	public enum DispatchModes
+	{
+		/**
+		 * The gateway polls its queue once every queue scheduling interval.
+		 */
+		POLLING,
+		/**
+		 * The gateway waits on its queue and sends queued messages back to
+		 * back. It backs off only after a failure.
+		 */
+		EVENT
+	}
+
 	public enum AsyncEvents
 	{
 		DELETE, NOTHING, INBOUNDMESSAGE, INBOUNDSTATUSREPORTMESSAGE, INBOUNDCALL, USSDRESPONSE
@@ -88,7 +115,7 @@ public abstract class AGateway
 
 	private boolean inbound;
 
-	private boolean outbound;
+	private volatile boolean outbound;
 
 	private Protocols protocol;
 
@@ -98,12 +125,30 @@ public abstract class AGateway
 
 	private int deliveryErrorCode;
 
-	protected GatewayStatuses status;
+	protected volatile GatewayStatuses status;
 
 	protected int restartCount;
 
 	private QueueManager queueManager;
 
+	private Semaphore dispatchWindow;
+
+	private AtomicInteger dispatchFailures;
+
+	private AtomicBoolean dispatchFailed;
+
+	private DispatchModes dispatchMode;
+
+	private int maxInFlight;
+
+	private volatile int weight;
+
+	private volatile TokenBucket rateLimit;
+
+	private ConcurrentLinkedQueue<SubmitFuture> submissions;
+
+	private AtomicInteger submitWorkers;
+
 	public AGateway(String id)
 	{
 		this.gatewayId = id;
@@ -117,11 +162,17 @@ public abstract class AGateway
 		this.deliveryErrorCode = -1;
 		this.status = GatewayStatuses.STOPPED;
 		this.restartCount = 0;
+		this.dispatchMode = DispatchModes.POLLING;
+		this.maxInFlight = 1;
+		this.weight = 1;
+		this.submissions = new ConcurrentLinkedQueue<SubmitFuture>();
+		this.submitWorkers = new AtomicInteger();
 	}
 
 	public void setAttributes(int myAttributes)
 	{
 		this.attributes = myAttributes;
+		Service.getInstance().refreshRoutingTable();
 	}
 
 	public int getAttributes()
@@ -175,7 +226,11 @@ public abstract class AGateway
 	 */
 	public void setOutbound(boolean value)
 	{
-		if ((this.attributes & GatewayAttributes.SEND) != 0) this.outbound = value;
+		if ((this.attributes & GatewayAttributes.SEND) != 0)
+		{
+			this.outbound = value;
+			Service.getInstance().refreshRoutingTable();
+		}
 	}
 
 	/**
@@ -236,6 +291,7 @@ public abstract class AGateway
 	{
 		Service.getInstance().getNotifyQueueManager().getNotifyQueue().add(new GatewayStatusNotification(getMyself(), getStatus(), myStatus));
 		this.status = myStatus;
+		Service.getInstance().refreshRoutingTable();
 	}
 
 	/**
@@ -250,7 +306,10 @@ public abstract class AGateway
 
 	public void incInboundMessageCount()
 	{
-		this.statistics.inbound++;
+		synchronized (this.statistics)
+		{
+			this.statistics.inbound++;
+		}
 	}
 
 	/**
@@ -265,7 +324,10 @@ public abstract class AGateway
 
 	public void incOutboundMessageCount()
 	{
-		this.statistics.outbound++;
+		synchronized (this.statistics)
+		{
+			this.statistics.outbound++;
+		}
 	}
 
 	/**
@@ -293,9 +355,139 @@ public abstract class AGateway
 		this.from = myFrom;
 	}
 
+	/**
+	 * Returns the way the gateway takes messages from its queue.
+	 * 
+	 * @return The dispatch mode.
+	 * @see #setDispatchMode(DispatchModes)
+	 */
+	public DispatchModes getDispatchMode()
+	{
+		return this.dispatchMode;
+	}
+
+	/**
+	 * Sets the way the gateway takes messages from its queue. Takes effect the
+	 * next time the gateway is started.
+	 * 
+	 * @param myDispatchMode
+	 *            The dispatch mode (default POLLING).
+	 * @see DispatchModes
+	 */
+	public void setDispatchMode(DispatchModes myDispatchMode)
+	{
+		this.dispatchMode = myDispatchMode;
+	}
+
+	/**
+	 * Returns the maximum number of messages the gateway sends concurrently.
+	 * 
+	 * @return The maximum number of messages in flight.
+	 * @see #setMaxInFlight(int)
+	 */
+	public int getMaxInFlight()
+	{
+		return this.maxInFlight;
+	}
+
+	/**
+	 * Sets the maximum number of messages the gateway sends concurrently.
+	 * Applies to messages passed to <code>submit()</code> and to queued
+	 * messages in the EVENT dispatch mode, where it takes effect the next time
+	 * the gateway is started. Only raise it for gateways whose
+	 * <code>sendMessage()</code> may be called from several threads.
+	 * 
+	 * @param myMaxInFlight
+	 *            The maximum number of messages in flight (default 1).
+	 */
+	public void setMaxInFlight(int myMaxInFlight)
+	{
+		this.maxInFlight = Math.max(myMaxInFlight, 1);
+	}
+
+	/**
+	 * Returns the share of the messages this gateway gets from weighted load
+	 * balancers, relative to the weights of the other gateways.
+	 * 
+	 * @return The weight.
+	 * @see #setWeight(int)
+	 * @since 3.5
+	 */
+	public int getWeight()
+	{
+		return this.weight;
+	}
+
+	/**
+	 * Sets the share of the messages this gateway gets from weighted load
+	 * balancers. A gateway with weight 3 gets three times as many messages as
+	 * one with weight 1.
+	 * 
+	 * @param myWeight
+	 *            The weight (default 1).
+	 * @see org.smslib.balancing.WeightedLoadBalancer
+	 * @since 3.5
+	 */
+	public void setWeight(int myWeight)
+	{
+		this.weight = Math.max(myWeight, 1);
+		Service.getInstance().refreshRoutingTable();
+	}
+
+	/**
+	 * Returns the maximum number of queued messages sent per second.
+	 * 
+	 * @return The maximum rate, or 0 if unlimited.
+	 * @see #setMaxRate(int)
+	 */
+	public int getMaxRate()
+	{
+		TokenBucket bucket = this.rateLimit;
+		return (bucket == null ? 0 : (int) bucket.getRate());
+	}
+
+	/**
+	 * Sets the maximum number of queued messages sent per second. Messages
+	 * are spaced evenly; use <code>setRateLimit()</code> to allow bursts.
+	 * 
+	 * @param myMaxRate
+	 *            The maximum rate, or 0 for no limit (default).
+	 */
+	public void setMaxRate(int myMaxRate)
+	{
+		setRateLimit(myMaxRate > 0 ? new TokenBucket(myMaxRate, 1) : null);
+	}
+
+	/**
+	 * Returns the token bucket limiting the queued messages sent through this
+	 * gateway. It shows the tokens left and how often sending was throttled.
+	 * 
+	 * @return The token bucket, or null if unlimited.
+	 */
+	public TokenBucket getRateLimit()
+	{
+		return this.rateLimit;
+	}
+
+	/**
+	 * Sets the token bucket limiting the queued messages sent through this
+	 * gateway.
+	 * 
+	 * @param myRateLimit
+	 *            The token bucket, or null for no limit.
+	 * @see org.smslib.throttling.RateLimiter
+	 */
+	public void setRateLimit(TokenBucket myRateLimit)
+	{
+		this.rateLimit = myRateLimit;
+	}
+
 	public void startGateway() throws TimeoutException, GatewayException, IOException, InterruptedException
 	{
 		setStatus(GatewayStatuses.STARTING);
+		this.dispatchWindow = new Semaphore(this.maxInFlight);
+		this.dispatchFailures = new AtomicInteger();
+		this.dispatchFailed = new AtomicBoolean();
 		this.queueManager = new QueueManager("QueueManager [" + this.gatewayId + "]", getQueueSchedulingInterval());
 		this.restartCount++;
 		setStatus(GatewayStatuses.STARTED);
@@ -309,6 +501,7 @@ public abstract class AGateway
 			this.queueManager.cancel();
 			this.queueManager = null;
 		}
+		cancelSubmissions();
 		setStatus(GatewayStatuses.STOPPED);
 	}
 
@@ -327,6 +520,28 @@ public abstract class AGateway
 		throw new GatewayException("Feature not supported.");
 	}
 
+	/**
+	 * Sends a message with <code>sendMessage()</code>, reporting the start,
+	 * the outcome and the duration of the send to the load balancer of the
+	 * Service.
+	 */
+	boolean sendAndReport(OutboundMessage msg) throws TimeoutException, GatewayException, IOException, InterruptedException
+	{
+		LoadBalancer balancer = Service.getInstance().getLoadBalancer();
+		boolean sent = false;
+		balancer.sendStarted(this, msg);
+		long start = System.nanoTime();
+		try
+		{
+			sent = sendMessage(msg);
+			return sent;
+		}
+		finally
+		{
+			balancer.sendCompleted(this, msg, sent, System.nanoTime() - start);
+		}
+	}
+
 	public int sendMessages(Collection<OutboundMessage> msgList) throws TimeoutException, GatewayException, IOException, InterruptedException
 	{
 		int cnt = 0;
@@ -335,6 +550,108 @@ public abstract class AGateway
 		return cnt;
 	}
 
+	/**
+	 * Submits a message for sending and returns without waiting for it. Up to
+	 * <code>getMaxInFlight()</code> messages are sent at the same time, on
+	 * the threads of the service scheduler; the rest wait in submission order.
+	 * Submitted messages are subject to the rate limits of the Service.
+	 * <p>
+	 * The default implementation sends each message with
+	 * <code>sendMessage()</code>. Gateways able to keep requests in flight
+	 * without holding a thread may override it. Submissions which have not
+	 * started when the gateway is not, or no longer, started are cancelled.
+	 * 
+	 * @param msg
+	 *            The message to send.
+	 * @return The pending result of the submission.
+	 * @see Service#submit(OutboundMessage)
+	 * @since 3.5
+	 */
+	public SubmitFuture submit(OutboundMessage msg)
+	{
+		SubmitFuture future = new SubmitFuture(this, msg);
+		this.submissions.add(future);
+		startSubmitWorkers(1);
+		return future;
+	}
+
+	/**
+	 * Submits a batch of messages for sending.
+	 * 
+	 * @param msgList
+	 *            The messages to send.
+	 * @return The pending results, in the order of the messages.
+	 * @see #submit(OutboundMessage)
+	 * @since 3.5
+	 */
+	public List<SubmitFuture> submitAll(Collection<OutboundMessage> msgList)
+	{
+		List<SubmitFuture> futures = new ArrayList<SubmitFuture>(msgList.size());
+		for (OutboundMessage msg : msgList)
+		{
+			SubmitFuture future = new SubmitFuture(this, msg);
+			this.submissions.add(future);
+			futures.add(future);
+		}
+		startSubmitWorkers(futures.size());
+		return futures;
+	}
+
+	private void startSubmitWorkers(int count)
+	{
+		while ((count > 0) && !this.submissions.isEmpty())
+		{
+			int workers = this.submitWorkers.get();
+			if (workers >= this.maxInFlight) return;
+			if (this.submitWorkers.compareAndSet(workers, workers + 1))
+			{
+				AServiceScheduler.getInstance().schedule(new SubmitWorker(), 0);
+				count--;
+			}
+		}
+	}
+
+	/**
+	 * Cancels the submissions not started yet. Queued messages among them go
+	 * back to the queue.
+	 */
+	private void cancelSubmissions()
+	{
+		SubmitFuture future;
+		while ((future = this.submissions.poll()) != null)
+			future.cancel(false);
+	}
+
+	private class SubmitWorker implements Runnable
+	{
+		public void run()
+		{
+			SubmitFuture future;
+			while ((future = AGateway.this.submissions.poll()) != null)
+			{
+				if (getStatus() != GatewayStatuses.STARTED)
+				{
+					future.cancel(false);
+					cancelSubmissions();
+					break;
+				}
+				if (!future.start()) continue;
+				try
+				{
+					Service.getInstance().getRateLimiter().acquire(getMyself(), future.getMessage());
+					future.complete(sendAndReport(future.getMessage()));
+				}
+				catch (Exception e)
+				{
+					future.fail(e);
+				}
+			}
+			AGateway.this.submitWorkers.decrementAndGet();
+			// A submission may have arrived while this worker was leaving.
+			startSubmitWorkers(1);
+		}
+	}
+
 	public boolean deleteMessage(InboundMessage msg) throws TimeoutException, GatewayException, IOException, InterruptedException
 	{
 		throw new GatewayException("Feature not supported.");
@@ -463,9 +780,9 @@ public abstract class AGateway
 
 	static class Statistics
 	{
-		public int inbound;
+		public volatile int inbound;
 
-		public int outbound;
+		public volatile int outbound;
 
 		public Statistics()
 		{
@@ -479,8 +796,26 @@ public abstract class AGateway
 		return this.restartCount;
 	}
 
-	private class QueueManager extends AServiceThread
+	/**
+	 * Tells whether the gateway can still send after one of its connections
+	 * failed with a {@link GatewayUnavailableException}. If so, the queue
+	 * manager only sends the message again; otherwise it also restarts the
+	 * gateway. Gateways with a single connection keep the default.
+	 * 
+	 * @return True if another connection of the gateway is up.
+	 * @since 3.5
+	 */
+	protected boolean isStillConnected()
+	{
+		return false;
+	}
+
+	private class QueueManager extends AServiceThread implements ISubmitListener
 	{
+		private static final int MAX_BACKOFF = 60000;
+
+		private boolean backingOff;
+
 		public QueueManager(String name, int delay)
 		{
 			super(name, delay, 0, true);
@@ -488,6 +823,69 @@ public abstract class AGateway
 
 		@Override
 		public void process() throws Exception
+		{
+			// a gateway started on its own, outside the service, has no queue
+			AbstractQueueManager queue = Service.getInstance().getQueueManager();
+			if (queue == null) return;
+			if (getDispatchMode() != DispatchModes.EVENT)
+			{
+				dispatch();
+				return;
+			}
+			// Queued messages are handed to submit(); the window keeps at most
+			// getMaxInFlight() of them in flight.
+			while (!isCanceled() && getStatus() == GatewayStatuses.STARTED)
+			{
+				int failures = AGateway.this.dispatchFailures.get();
+				if (AGateway.this.dispatchFailed.getAndSet(false))
+				{
+					// Back off: the thread sleeps for getDelay() before the next round.
+					this.backingOff = true;
+					setDelay((int) Math.min((long) getQueueSchedulingInterval() << Math.min(Math.max(failures, 1) - 1, 16), Math.max(MAX_BACKOFF, getQueueSchedulingInterval())));
+					return;
+				}
+				if (this.backingOff && (failures == 0))
+				{
+					this.backingOff = false;
+					setDelay(getQueueSchedulingInterval());
+				}
+				AGateway.this.dispatchWindow.acquire();
+				long version = queue.getPendingVersion(getGatewayId());
+				OutboundMessage msg = queue.pollPendingMessage(getGatewayId());
+				if (msg == null)
+				{
+					AGateway.this.dispatchWindow.release();
+					queue.awaitPendingMessage(getGatewayId(), version, getQueueSchedulingInterval());
+					continue;
+				}
+				try
+				{
+					if (Service.getInstance().getQueueSendingNotification() != null) Service.getInstance().getQueueSendingNotification().process(getMyself(), msg);
+				}
+				catch (Exception e)
+				{
+					AGateway.this.dispatchWindow.release();
+					finish(msg, false, e);
+					continue;
+				}
+				submit(msg).addListener(this);
+			}
+		}
+
+		public void completed(SubmitFuture future)
+		{
+			try
+			{
+				if (future.isCancelled()) Service.getInstance().getQueueManager().queueMessage(future.getMessage());
+				else finish(future.getMessage(), future.isSent(), future.getCause());
+			}
+			finally
+			{
+				AGateway.this.dispatchWindow.release();
+			}
+		}
+
+		private void dispatch()
 		{
 			OutboundMessage msg = null;
 			try
@@ -497,46 +895,77 @@ public abstract class AGateway
 					msg = Service.getInstance().getQueueManager().pollPendingMessage(getGatewayId());
 					if (msg != null)
 					{
+						Service.getInstance().getRateLimiter().acquire(getMyself(), msg);
 						if (Service.getInstance().getQueueSendingNotification() != null) Service.getInstance().getQueueSendingNotification().process(getMyself(), msg);
-						try
-						{
-							if (!sendMessage(msg))
-							{
-								if (msg.getRetryCount() < Service.getInstance().getSettings().QUEUE_RETRIES)
-								{
-									Logger.getInstance().logInfo("Reinserting message to queue.", null, getGatewayId());
-									msg.incrementRetryCount();
-									Service.getInstance().getQueueManager().queueMessage(msg);
-								}
-								else
-								{
-									Logger.getInstance().logWarn("Maximum number of queue retries exceeded, message lost.", null, getGatewayId());
-									msg.setFailureCause(FailureCauses.UNKNOWN);
-									Service.getInstance().getNotifyQueueManager().getNotifyQueue().add(new OutboundMessageNotification(getMyself(), msg));
-								}
-							}
-							else
-							{
-								Service.getInstance().getNotifyQueueManager().getNotifyQueue().add(new OutboundMessageNotification(getMyself(), msg));
-							}
-						}
-						catch (TimeoutException e)
-						{
-							Service.getInstance().getQueueManager().queueMessage(msg);
-							throw e;
-						}
+						finish(msg, sendAndReport(msg), null);
 					}
 				}
 			}
-			catch (InterruptedException e)
+			catch (Exception e)
+			{
+				finish(msg, false, e);
+			}
+		}
+
+		private void finish(OutboundMessage msg, boolean sent, Exception e)
+		{
+			if (e instanceof InterruptedException)
 			{
 				if ((msg != null) && (msg.getMessageStatus() != MessageStatuses.SENT)) Service.getInstance().getQueueManager().queueMessage(msg);
 				Logger.getInstance().logInfo("QueueManager interrupted.", e, getGatewayId());
+				return;
 			}
-			catch (Exception e)
+			if (sent)
+			{
+				AGateway.this.dispatchFailures.set(0);
+				Service.getInstance().getNotifyQueueManager().getNotifyQueue().add(new OutboundMessageNotification(getMyself(), msg));
+				return;
+			}
+			if ((e instanceof GatewayUnavailableException) && (getStatus() == GatewayStatuses.STARTED) && isStillConnected())
+			{
+				// Only the connection the message went out on was lost; the
+				// gateway keeps sending through the others.
+				Logger.getInstance().logWarn("Connection lost while sending.", e, getGatewayId());
+				retry(msg);
+				return;
+			}
+			AGateway.this.dispatchFailures.incrementAndGet();
+			AGateway.this.dispatchFailed.set(true);
+			if (e == null)
 			{
-				Logger.getInstance().logWarn("Queue exception, marking gateway for reset.", e, getGatewayId());
+				retry(msg);
+				return;
+			}
+			if (getStatus() != GatewayStatuses.STARTED)
+			{
+				// The gateway is being stopped, which is the likely cause.
+				if (msg != null) Service.getInstance().getQueueManager().queueMessage(msg);
+				return;
+			}
+			Logger.getInstance().logWarn("Queue exception, marking gateway for reset.", e, getGatewayId());
+			if (e instanceof GatewayUnavailableException)
+			{
+				retry(msg);
 				setStatus(GatewayStatuses.RESTART);
+				return;
+			}
+			if (e instanceof TimeoutException) Service.getInstance().getQueueManager().queueMessage(msg);
+			setStatus(GatewayStatuses.RESTART);
+			Service.getInstance().getNotifyQueueManager().getNotifyQueue().add(new OutboundMessageNotification(getMyself(), msg));
+		}
+
+		private void retry(OutboundMessage msg)
+		{
+			if (msg.getRetryCount() < Service.getInstance().getSettings().QUEUE_RETRIES)
+			{
+				Logger.getInstance().logInfo("Reinserting message to queue.", null, getGatewayId());
+				msg.incrementRetryCount();
+				Service.getInstance().getQueueManager().queueMessage(msg);
+			}
+			else
+			{
+				Logger.getInstance().logWarn("Maximum number of queue retries exceeded, message lost.", null, getGatewayId());
+				msg.setFailureCause(FailureCauses.UNKNOWN);
 				Service.getInstance().getNotifyQueueManager().getNotifyQueue().add(new OutboundMessageNotification(getMyself(), msg));
 			}
 		}
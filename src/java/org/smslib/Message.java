@@ -421,4 +421,9 @@ public abstract class Message implements Serializable
 	{
 		return uuid;
 	}
+
+	void setUuid(String myUuid)
+	{
+		this.uuid = myUuid;
+	}
 }
@@ -20,6 +20,8 @@
 
 package org.smslib;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import org.ajwcc.pduUtils.gsm3040.Pdu;
@@ -126,11 +128,15 @@ public class OutboundMessage extends Message
 
 	private String refNo;
 
+	private List<String> partRefNos;
+
 	private String errorMessage;
 
 	//private long deliveryDelay;
 	private Date scheduledDeliveryDate;
 
+	private String campaign;
+
 	/**
 	 * Outbound message constructor. This parameterless constructor creates an
 	 * empty outbound message.
@@ -423,6 +429,27 @@ public class OutboundMessage extends Message
 		this.refNo = myRefNo;
 	}
 
+	/**
+	 * Returns the Reference Numbers of all the parts of the message, in the
+	 * order they were sent. For a single-part message this is just the
+	 * Reference Number. If sending failed half way, the parts that did go out
+	 * are listed.
+	 * 
+	 * @return The part reference numbers, empty if nothing was sent.
+	 * @see #getRefNo()
+	 * @since 3.5
+	 */
+	public List<String> getPartRefNos()
+	{
+		if (this.partRefNos == null) return Collections.emptyList();
+		return Collections.unmodifiableList(this.partRefNos);
+	}
+
+	public void setPartRefNos(List<String> myPartRefNos)
+	{
+		this.partRefNos = ((myPartRefNos == null) || myPartRefNos.isEmpty() ? null : new ArrayList<String>(myPartRefNos));
+	}
+
 	/**
 	 * Returns the error message associated with the failure of this outbound
 	 * message to be sent out.
@@ -522,6 +549,26 @@ public class OutboundMessage extends Message
 		return pduGenerator.generatePduList(pdu, mpRefNo);
 	}
 
+	/**
+	 * Returns the SMS-SUBMIT PDUs of the message as octets, one per part.
+	 * This is what <code>getPdus()</code> returns, before the conversion to
+	 * hex that only AT command based gateways need.
+	 * 
+	 * @param smscNumber
+	 *            The SMSC number, or an empty string for the default.
+	 * @param mpRefNo
+	 *            The reference number of a concatenated message.
+	 * @return The PDUs.
+	 * @since 3.5
+	 */
+	public List<byte[]> getPduBytes(String smscNumber, int mpRefNo)
+	{
+		PduGenerator pduGenerator = new PduGenerator();
+		SmsSubmitPdu pdu = createPduObject();
+		initPduObject(pdu, smscNumber);
+		return pduGenerator.generatePduBytesList(pdu, mpRefNo);
+	}
+
 	protected SmsSubmitPdu createPduObject()
 	{
 		// if you want to be able to change some other parts of the first octet
@@ -631,14 +678,14 @@ public class OutboundMessage extends Message
 		// - if the user wishes to extract the UD per part, he would need to get all pduStrings
 		// using getPdus(String smscNumber, int mpRefNo), use a
 		// PduParser on each pduString in the returned list, then access the UD via the Pdu object
-		List<String> pdus = pduGenerator.generatePduList(pdu, 1);
+		List<byte[]> pdus = pduGenerator.generatePduBytesList(pdu, 1);
 		// my this point, pdu will be updated with concat info (in udhi), if present
 		if ((pdu.hasTpUdhi()) && (getEncoding() == MessageEncodings.ENC7BIT)) { throw new RuntimeException("getPduUserData() not supported for 7-bit messages with UDH"); }
 		// sum up the ud parts
 		StringBuffer ud = new StringBuffer();
-		for (String pduString : pdus)
+		for (byte[] pduBytes : pdus)
 		{
-			Pdu newPdu = new PduParser().parsePdu(pduString);
+			Pdu newPdu = new PduParser().parsePdu(pduBytes);
 			ud.append(PduUtils.bytesToPdu(newPdu.getUserDataAsBytes()));
 		}
 		return ud.toString();
@@ -655,8 +702,7 @@ public class OutboundMessage extends Message
 		// - if the user wishes to extract the UDH per part, he would need to get all pduStrings
 		// using getPdus(String smscNumber, int mpRefNo), use a
 		// PduParser on each pduString in the returned list, then access the UDH via the Pdu object
-		List<String> pdus = pduGenerator.generatePduList(pdu, 1);
-		Pdu newPdu = new PduParser().parsePdu(pdus.get(0));
+		Pdu newPdu = new PduParser().parsePdu(pduGenerator.generatePduBytes(pdu, 1, 1));
 		byte[] udh = newPdu.getUDHData();
 		if (udh != null) return PduUtils.bytesToPdu(udh);
 		return null;
@@ -691,6 +737,8 @@ public class OutboundMessage extends Message
 		msg.retryCount = getRetryCount();
 		msg.setPriority(getPriority());
 		msg.setRefNo(getRefNo());
+		msg.setPartRefNos(getPartRefNos());
+		msg.setCampaign(getCampaign());
 	}
 
 	public void setScheduledDeliveryDate(Date scheduledDeliveryDate)
@@ -712,4 +760,30 @@ public class OutboundMessage extends Message
 	{
 		scheduledDeliveryDate = new Date(System.currentTimeMillis() + deliveryDelay);
 	}
+
+	/**
+	 * Returns the campaign (or batch) tag of this message.
+	 * 
+	 * @return The campaign tag, or null if the message is not part of a
+	 *         campaign.
+	 * @see #setCampaign(String)
+	 */
+	public String getCampaign()
+	{
+		return this.campaign;
+	}
+
+	/**
+	 * Tags the message as part of a campaign (or batch). All queued messages
+	 * of a campaign can be cancelled at once with
+	 * <code>Service.removeCampaign()</code>.
+	 * 
+	 * @param myCampaign
+	 *            The campaign tag.
+	 * @see #getCampaign()
+	 */
+	public void setCampaign(String myCampaign)
+	{
+		this.campaign = myCampaign;
+	}
 }
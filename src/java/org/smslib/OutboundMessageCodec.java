@@ -0,0 +1,542 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import org.smslib.Message.MessageClasses;
+import org.smslib.Message.MessageEncodings;
+import org.smslib.Message.MessageTypes;
+import org.smslib.OutboundMessage.FailureCauses;
+import org.smslib.OutboundMessage.MessageStatuses;
+import org.smslib.OutboundWapSIMessage.WapSISignals;
+
+/**
+ * Compact binary encoding of outbound messages, used by the queue managers
+ * to persist queued messages.
+ * <p>
+ * <code>OutboundMessage</code>, <code>OutboundBinaryMessage</code> and
+ * <code>OutboundWapSIMessage</code> are written field by field, without class
+ * descriptors or reflection. Any other subclass is written with Java
+ * serialization, so no information is lost. Data produced by Java
+ * serialization can also be decoded, which keeps queues written by earlier
+ * versions readable.
+ * <p>
+ * Every encoded message starts with a format version. New fields are only
+ * ever appended and read when the version says they are present.
+ * <p>
+ * The UUID of a message is preserved; its internal message ID (see
+ * <code>Message.getMessageId()</code>) is not, a decoded message gets a new
+ * one.
+ * 
+ * @since 3.5
+ */
+public final class OutboundMessageCodec
+{
+	public static final int FORMAT_VERSION = 3;
+
+	private static final byte KIND_SERIALIZED = 0;
+
+	private static final byte KIND_OUTBOUND = 1;
+
+	private static final byte KIND_BINARY = 2;
+
+	private static final byte KIND_WAPSI = 3;
+
+	private static final byte SERIALIZATION_MAGIC = (byte) 0xac;
+
+	private static final long NULL_DATE = Long.MIN_VALUE;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private OutboundMessageCodec()
+	{
+	}
+
+	/**
+	 * Encodes a message.
+	 * 
+	 * @param message
+	 *            The message to encode.
+	 * @return The encoded message.
+	 * @throws IOException
+	 *             If the message is of an unknown subclass and cannot be
+	 *             serialized.
+	 */
+	public static byte[] encode(OutboundMessage message) throws IOException
+	{
+		Class<?> c = message.getClass();
+		byte kind;
+		if (c == OutboundMessage.class) kind = KIND_OUTBOUND;
+		else if (c == OutboundBinaryMessage.class) kind = KIND_BINARY;
+		else if (c == OutboundWapSIMessage.class) kind = KIND_WAPSI;
+		else kind = KIND_SERIALIZED;
+		Writer out = new Writer(256);
+		out.writeByte(FORMAT_VERSION);
+		out.writeByte(kind);
+		if (kind == KIND_SERIALIZED)
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+			ObjectOutputStream oos = new ObjectOutputStream(bytes);
+			oos.writeObject(message);
+			oos.close();
+			out.writeBytes(bytes.toByteArray());
+			return out.toByteArray();
+		}
+		if (kind == KIND_WAPSI)
+		{
+			OutboundWapSIMessage wapsi = (OutboundWapSIMessage) message;
+			out.writeString(wapsi.url == null ? null : wapsi.url.toString());
+			out.writeDate(wapsi.createDate);
+			out.writeDate(wapsi.expireDate);
+			out.writeEnum(wapsi.signal);
+			out.writeString(wapsi.indicationText);
+			out.writeString(wapsi.siId);
+		}
+		writeUuid(out, message.getUuid());
+		out.writeString(message.getGatewayId());
+		out.writeString(message.getId());
+		out.writeEnum(message.getType());
+		out.writeDate(message.getDate());
+		out.writeString(kind == KIND_OUTBOUND ? message.getText() : null);
+		out.writeEnum(message.getEncoding());
+		out.writeEnum(message.getDCSMessageClass());
+		out.writeVarInt(message.getSrcPort() + 1);
+		out.writeVarInt(message.getDstPort() + 1);
+		out.writeVarInt(message.messageCharCount);
+		out.writeString(message.getRecipient());
+		out.writeDate(message.getDispatchDate());
+		out.writeVarInt(message.getValidityPeriod() + 1);
+		out.writeByte(message.getStatusReport() ? 1 : 0);
+		out.writeString(message.getFrom());
+		out.writeEnum(message.getMessageStatus());
+		out.writeEnum(message.getFailureCause());
+		out.writeVarInt(message.getRetryCount());
+		out.writeInt(message.getPriority());
+		out.writeString(message.getRefNo());
+		out.writeString(message.getErrorMessage());
+		out.writeDate(message.getScheduledDeliveryDate());
+		if (kind == KIND_BINARY) out.writeBytes(((OutboundBinaryMessage) message).getDataBytes());
+		// Version 2
+		out.writeString(message.getCampaign());
+		// Version 3
+		List<String> partRefNos = message.getPartRefNos();
+		out.writeVarInt(partRefNos.size());
+		for (String partRefNo : partRefNos)
+			out.writeString(partRefNo);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes a message produced by <code>encode()</code> or by Java
+	 * serialization.
+	 * 
+	 * @param data
+	 *            The encoded message.
+	 * @return The decoded message.
+	 * @throws IOException
+	 *             If the data is corrupt or of an unsupported version.
+	 */
+	public static OutboundMessage decode(byte[] data) throws IOException
+	{
+		return decode(data, 0, data.length);
+	}
+
+	/**
+	 * Decodes a message produced by <code>encode()</code> or by Java
+	 * serialization.
+	 * 
+	 * @param data
+	 *            Buffer holding the encoded message.
+	 * @param offset
+	 *            Start of the encoded message.
+	 * @param length
+	 *            Length of the encoded message.
+	 * @return The decoded message.
+	 * @throws IOException
+	 *             If the data is corrupt or of an unsupported version.
+	 */
+	public static OutboundMessage decode(byte[] data, int offset, int length) throws IOException
+	{
+		if (length > 0 && data[offset] == SERIALIZATION_MAGIC) return deserialize(data, offset, length);
+		Reader in = new Reader(data, offset, length);
+		int version = in.readByte();
+		if (version < 1 || version > FORMAT_VERSION) throw new IOException("Unsupported message format version " + version);
+		byte kind = in.readByte();
+		OutboundMessage message;
+		switch (kind)
+		{
+			case KIND_SERIALIZED:
+				int size = in.readVarInt() - 1;
+				return deserialize(data, in.skip(size), size);
+			case KIND_OUTBOUND:
+				message = new OutboundMessage();
+				break;
+			case KIND_BINARY:
+				message = new OutboundBinaryMessage();
+				break;
+			case KIND_WAPSI:
+				String url = in.readString();
+				Date createDate = in.readDate();
+				Date expireDate = in.readDate();
+				WapSISignals signal = in.readEnum(WapSISignals.values());
+				String indicationText = in.readString();
+				OutboundWapSIMessage wapsi = new OutboundWapSIMessage("", (url == null ? null : new URL(url)), (createDate == null ? new Date() : createDate), (expireDate == null ? new Date() : expireDate), signal, indicationText);
+				wapsi.setSiId(in.readString());
+				message = wapsi;
+				break;
+			default:
+				throw new IOException("Unknown message kind " + kind);
+		}
+		message.setUuid(readUuid(in));
+		message.setGatewayId(in.readString());
+		message.setId(in.readString());
+		message.setType(in.readEnum(MessageTypes.values()));
+		message.setDate(in.readDate());
+		String text = in.readString();
+		if (kind == KIND_OUTBOUND) message.setText(text);
+		message.setEncoding(in.readEnum(MessageEncodings.values()));
+		message.setDCSMessageClass(in.readEnum(MessageClasses.values()));
+		message.setSrcPort(in.readVarInt() - 1);
+		message.setDstPort(in.readVarInt() - 1);
+		message.messageCharCount = in.readVarInt();
+		message.setRecipient(in.readString());
+		message.setDispatchDate(in.readDate());
+		message.setValidityPeriod(in.readVarInt() - 1);
+		message.setStatusReport(in.readByte() != 0);
+		message.setFrom(in.readString());
+		message.setMessageStatus(in.readEnum(MessageStatuses.values()));
+		message.setFailureCause(in.readEnum(FailureCauses.values()));
+		message.setRetryCount(in.readVarInt());
+		message.setPriority(in.readInt());
+		message.setRefNo(in.readString());
+		message.setErrorMessage(in.readString());
+		message.setScheduledDeliveryDate(in.readDate());
+		if (kind == KIND_BINARY) ((OutboundBinaryMessage) message).setDataBytes(in.readBytes());
+		if (version >= 2) message.setCampaign(in.readString());
+		if (version >= 3)
+		{
+			int parts = in.readVarInt();
+			List<String> partRefNos = new ArrayList<String>(parts);
+			for (int i = 0; i < parts; i++)
+				partRefNos.add(in.readString());
+			message.setPartRefNos(partRefNos);
+		}
+		return message;
+	}
+
+	private static void writeUuid(Writer out, String uuid)
+	{
+		UUID value = null;
+		try
+		{
+			if (uuid != null) value = UUID.fromString(uuid);
+		}
+		catch (IllegalArgumentException e)
+		{
+			// Not a standard UUID, store it as a string.
+		}
+		if (value != null && value.toString().equals(uuid))
+		{
+			out.writeByte(1);
+			out.writeLong(value.getMostSignificantBits());
+			out.writeLong(value.getLeastSignificantBits());
+		}
+		else
+		{
+			out.writeByte(0);
+			out.writeString(uuid);
+		}
+	}
+
+	private static String readUuid(Reader in) throws IOException
+	{
+		if (in.readByte() == 0) return in.readString();
+		return new UUID(in.readLong(), in.readLong()).toString();
+	}
+
+	private static OutboundMessage deserialize(byte[] data, int offset, int length) throws IOException
+	{
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data, offset, length));
+		try
+		{
+			return (OutboundMessage) in.readObject();
+		}
+		catch (ClassNotFoundException e)
+		{
+			throw new IOException("Unknown message class: " + e.getMessage());
+		}
+		catch (ClassCastException e)
+		{
+			throw new IOException("Not an outbound message: " + e.getMessage());
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static class Writer
+	{
+		private byte[] buffer;
+
+		private int position;
+
+		Writer(int capacity)
+		{
+			this.buffer = new byte[capacity];
+		}
+
+		void writeByte(int b)
+		{
+			ensure(1);
+			this.buffer[this.position++] = (byte) b;
+		}
+
+		void writeInt(int v)
+		{
+			ensure(4);
+			this.buffer[this.position++] = (byte) (v >>> 24);
+			this.buffer[this.position++] = (byte) (v >>> 16);
+			this.buffer[this.position++] = (byte) (v >>> 8);
+			this.buffer[this.position++] = (byte) v;
+		}
+
+		void writeLong(long v)
+		{
+			writeInt((int) (v >>> 32));
+			writeInt((int) v);
+		}
+
+		void writeVarInt(int v)
+		{
+			ensure(5);
+			while ((v & ~0x7f) != 0)
+			{
+				this.buffer[this.position++] = (byte) ((v & 0x7f) | 0x80);
+				v >>>= 7;
+			}
+			this.buffer[this.position++] = (byte) v;
+		}
+
+		void writeDate(Date date)
+		{
+			writeLong(date == null ? NULL_DATE : date.getTime());
+		}
+
+		void writeEnum(Enum<?> e)
+		{
+			writeByte(e == null ? 0 : e.ordinal() + 1);
+		}
+
+		void writeBytes(byte[] bytes)
+		{
+			if (bytes == null)
+			{
+				writeVarInt(0);
+				return;
+			}
+			writeVarInt(bytes.length + 1);
+			ensure(bytes.length);
+			System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+			this.position += bytes.length;
+		}
+
+		/**
+		 * Writes the UTF-8 form of a string, prefixed by its length in bytes
+		 * plus one; zero stands for null.
+		 */
+		void writeString(String s)
+		{
+			if (s == null)
+			{
+				writeVarInt(0);
+				return;
+			}
+			int chars = s.length();
+			int bytes = 0;
+			for (int i = 0; i < chars; i++)
+			{
+				char c = s.charAt(i);
+				if (c < 0x80) bytes++;
+				else if (c < 0x800) bytes += 2;
+				else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(s.charAt(i + 1)))
+				{
+					bytes += 4;
+					i++;
+				}
+				else bytes += 3;
+			}
+			writeVarInt(bytes + 1);
+			ensure(bytes);
+			byte[] b = this.buffer;
+			int p = this.position;
+			for (int i = 0; i < chars; i++)
+			{
+				char c = s.charAt(i);
+				if (c < 0x80) b[p++] = (byte) c;
+				else if (c < 0x800)
+				{
+					b[p++] = (byte) (0xc0 | (c >> 6));
+					b[p++] = (byte) (0x80 | (c & 0x3f));
+				}
+				else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(s.charAt(i + 1)))
+				{
+					int cp = Character.toCodePoint(c, s.charAt(++i));
+					b[p++] = (byte) (0xf0 | (cp >> 18));
+					b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+					b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+					b[p++] = (byte) (0x80 | (cp & 0x3f));
+				}
+				else
+				{
+					b[p++] = (byte) (0xe0 | (c >> 12));
+					b[p++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+					b[p++] = (byte) (0x80 | (c & 0x3f));
+				}
+			}
+			this.position = p;
+		}
+
+		byte[] toByteArray()
+		{
+			byte[] result = new byte[this.position];
+			System.arraycopy(this.buffer, 0, result, 0, this.position);
+			return result;
+		}
+
+		private void ensure(int n)
+		{
+			if (this.position + n > this.buffer.length)
+			{
+				byte[] grown = new byte[Math.max(this.buffer.length * 2, this.position + n)];
+				System.arraycopy(this.buffer, 0, grown, 0, this.position);
+				this.buffer = grown;
+			}
+		}
+	}
+
+	private static class Reader
+	{
+		private final byte[] buffer;
+
+		private final int limit;
+
+		private int position;
+
+		Reader(byte[] buffer, int offset, int length)
+		{
+			this.buffer = buffer;
+			this.position = offset;
+			this.limit = offset + length;
+		}
+
+		byte readByte() throws IOException
+		{
+			require(1);
+			return this.buffer[this.position++];
+		}
+
+		int readInt() throws IOException
+		{
+			require(4);
+			byte[] b = this.buffer;
+			int p = this.position;
+			this.position += 4;
+			return ((b[p] & 0xff) << 24) | ((b[p + 1] & 0xff) << 16) | ((b[p + 2] & 0xff) << 8) | (b[p + 3] & 0xff);
+		}
+
+		long readLong() throws IOException
+		{
+			return ((long) readInt() << 32) | (readInt() & 0xffffffffL);
+		}
+
+		int readVarInt() throws IOException
+		{
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7)
+			{
+				byte b = readByte();
+				value |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) return value;
+			}
+			throw new IOException("Malformed message: bad length.");
+		}
+
+		Date readDate() throws IOException
+		{
+			long time = readLong();
+			return (time == NULL_DATE ? null : new Date(time));
+		}
+
+		<T extends Enum<T>> T readEnum(T[] values) throws IOException
+		{
+			int ordinal = (readByte() & 0xff) - 1;
+			if (ordinal == -1) return null;
+			if (ordinal >= values.length) throw new IOException("Malformed message: unknown " + values[0].getDeclaringClass().getSimpleName() + " value.");
+			return values[ordinal];
+		}
+
+		byte[] readBytes() throws IOException
+		{
+			int length = readVarInt() - 1;
+			if (length == -1) return null;
+			byte[] bytes = new byte[length];
+			System.arraycopy(this.buffer, skip(length), bytes, 0, length);
+			return bytes;
+		}
+
+		String readString() throws IOException
+		{
+			int length = readVarInt() - 1;
+			if (length == -1) return null;
+			return new String(this.buffer, skip(length), length, UTF8);
+		}
+
+		/**
+		 * Skips <code>n</code> bytes.
+		 * 
+		 * @return The offset of the skipped bytes.
+		 */
+		int skip(int n) throws IOException
+		{
+			require(n);
+			int offset = this.position;
+			this.position += n;
+			return offset;
+		}
+
+		private void require(int n) throws IOException
+		{
+			if (n < 0 || this.position + n > this.limit) throw new IOException("Malformed message: unexpected end of data.");
+		}
+	}
+}
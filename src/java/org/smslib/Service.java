@@ -35,10 +35,14 @@ import org.smslib.balancing.RoundRobinLoadBalancer;
 import org.smslib.crypto.KeyManager;
 import org.smslib.helper.Logger;
 import org.smslib.notify.NotifyQueueManager;
+import org.smslib.notify.OutboundMessageNotification;
 import org.smslib.queues.AbstractQueueManager;
 import org.smslib.queues.DefaultQueueManager;
 import org.smslib.routing.Router;
+import org.smslib.routing.RoutingTable;
+import org.smslib.threading.AServiceScheduler;
 import org.smslib.threading.AServiceThread;
+import org.smslib.throttling.RateLimiter;
 
 /**
  * This is main library class. Your primary interface with SMSLib is via methods
@@ -53,9 +57,13 @@ public class Service
 
 	private List<AGateway> gatewayList;
 
-	private Router router;
+	private volatile RoutingTable routingTable;
 
-	private LoadBalancer loadBalancer;
+	private volatile Router router;
+
+	private volatile LoadBalancer loadBalancer;
+
+	private RateLimiter rateLimiter;
 
 	private WatchDog watchDog;
 
@@ -87,6 +95,8 @@ public class Service
 
 	private IUSSDNotification ussdNotification;
 
+	private ISubmitListener submitNotifier;
+
 	private static final Service service = new Service();
 
 	private Service()
@@ -102,9 +112,12 @@ public class Service
 		this.groups = new ArrayList<Group>();
 		listSystemInformation();
 		this.gatewayList = new ArrayList<AGateway>();
+		this.routingTable = new RoutingTable(this.gatewayList);
 		this.keyManager = KeyManager.getInstance();
 		setRouter(new Router());
 		setLoadBalancer(new RoundRobinLoadBalancer());
+		setRateLimiter(new RateLimiter());
+		this.submitNotifier = new SubmitNotifier();
 		setNotifyQueueManager(new NotifyQueueManager());
 	}
 
@@ -136,7 +149,11 @@ public class Service
 	public void addGateway(AGateway gateway) throws GatewayException
 	{
 		if (getServiceStatus() != ServiceStatus.STOPPED) throw new GatewayException("Cannot add gateways while Service is running!");
-		getGateways().add(gateway);
+		synchronized (this.gatewayList)
+		{
+			getGateways().add(gateway);
+			refreshRoutingTable();
+		}
 	}
 
 	/**
@@ -154,7 +171,42 @@ public class Service
 	public boolean removeGateway(AGateway gateway) throws GatewayException
 	{
 		if (getServiceStatus() != ServiceStatus.STOPPED) throw new GatewayException("Cannot remove gateways while Service is running!");
-		return getGateways().remove(gateway);
+		synchronized (this.gatewayList)
+		{
+			boolean removed = getGateways().remove(gateway);
+			refreshRoutingTable();
+			if (removed) getLoadBalancer().gatewayRemoved(gateway);
+			return removed;
+		}
+	}
+
+	/**
+	 * Rebuilds the routing table from the current state of the gateways. Called
+	 * whenever a gateway is added or removed, changes its status or is
+	 * enabled or disabled for outbound messaging.
+	 * 
+	 * @see #getRoutingTable()
+	 * @since 3.5
+	 */
+	public void refreshRoutingTable()
+	{
+		synchronized (this.gatewayList)
+		{
+			this.routingTable = new RoutingTable(this.gatewayList);
+		}
+	}
+
+	/**
+	 * Returns the current routing table, i.e. a snapshot of the gateways which
+	 * can send messages right now.
+	 * 
+	 * @return The routing table.
+	 * @see RoutingTable
+	 * @since 3.5
+	 */
+	public RoutingTable getRoutingTable()
+	{
+		return this.routingTable;
 	}
 
 	/**
@@ -224,6 +276,7 @@ public class Service
 		{
 			getNotifyQueueManager().start();
 			getQueueManager().start();
+			getRouter().start();
 			setServiceStatus(ServiceStatus.STARTING);
 			setWatchDog(new WatchDog("WatchDog", (getSettings().WATCHDOG_INTERVAL * 1000)));
 			startService_Internal(startAllGateways);
@@ -354,6 +407,8 @@ public class Service
 		for (AGateway gateway : getGateways())
 			gateway.stopGateway();
 		getNotifyQueueManager().cancel();
+		getRouter().stop();
+		AServiceScheduler.shutdownDefault();
 		setServiceStatus(ServiceStatus.STOPPED);
 	}
 
@@ -607,7 +662,7 @@ public class Service
 			try
 			{
 				List<String> recipients = expandGroup(msg.getRecipient());
-				if (recipients.size() == 0) return gateway.sendMessage(msg);
+				if (recipients.size() == 0) return gateway.sendAndReport(msg);
 				List<OutboundMessage> groupMessages = new ArrayList<OutboundMessage>();
 				for (String to : recipients)
 				{
@@ -744,6 +799,53 @@ public class Service
 		return counter;
 	}
 
+	/**
+	 * Submits a message for sending and returns without waiting for it. The
+	 * gateway selection logic is the same as for sendMessage(). Once the
+	 * gateway has tried to send the message, the returned future completes and
+	 * the IOutboundMessageNotification listener is called, as for queued
+	 * messages. Group recipients are not expanded; use submitAll() with one
+	 * message per recipient.
+	 * 
+	 * @param msg
+	 *            An OutboundMessage object.
+	 * @return The pending result of the submission. If the Service is not
+	 *         started or no gateway takes the message, the result is already
+	 *         complete and not sent.
+	 * @see AGateway#submit(OutboundMessage)
+	 * @since 3.5
+	 */
+	public SubmitFuture submit(OutboundMessage msg)
+	{
+		AGateway gateway = (getServiceStatus() == ServiceStatus.STARTED ? routeMessage(msg) : null);
+		if (gateway == null)
+		{
+			SubmitFuture future = new SubmitFuture(null, msg);
+			future.complete(false);
+			return future;
+		}
+		SubmitFuture future = gateway.submit(msg);
+		future.addListener(this.submitNotifier);
+		return future;
+	}
+
+	/**
+	 * Submits a list of messages for sending.
+	 * 
+	 * @param msgList
+	 *            A list of OutboundMessage objects.
+	 * @return The pending results, in the order of the messages.
+	 * @see #submit(OutboundMessage)
+	 * @since 3.5
+	 */
+	public List<SubmitFuture> submitAll(Collection<OutboundMessage> msgList)
+	{
+		List<SubmitFuture> futures = new ArrayList<SubmitFuture>(msgList.size());
+		for (OutboundMessage msg : msgList)
+			futures.add(submit(msg));
+		return futures;
+	}
+
 	/**
 	 * Queues a message for sending. The gateway selection logic is the same as
 	 * for sendMessage(). The method does not block - returns immediately. If
@@ -940,6 +1042,34 @@ public class Service
 		return getQueueManager().removePendingMessage(messageId);
 	}
 
+	/**
+	 * Attempts to remove a batch of messages from the background queues, both
+	 * pending and delayed.
+	 *
+	 * @param messageUUIDs
+	 *            The UUIDs of the messages to be removed.
+	 * @return The number of messages removed.
+	 */
+	public int removeMessages(Collection<String> messageUUIDs)
+	{
+		if (getServiceStatus() != ServiceStatus.STARTED) return 0;
+		return getQueueManager().removeMessages(messageUUIDs);
+	}
+
+	/**
+	 * Attempts to remove all messages of a campaign from the background
+	 * queues, both pending and delayed.
+	 *
+	 * @param campaign
+	 *            The campaign tag, as set with OutboundMessage.setCampaign().
+	 * @return The number of messages removed.
+	 */
+	public int removeCampaign(String campaign)
+	{
+		if (getServiceStatus() != ServiceStatus.STARTED) return 0;
+		return getQueueManager().removeCampaign(campaign);
+	}
+
 	/**
 	 * Deletes the specified message. The operation is not supported by all
 	 * gateways.
@@ -1146,6 +1276,29 @@ public class Service
 		this.loadBalancer = loadBalancer;
 	}
 
+	/**
+	 * Returns the Rate Limiter applied to queued messages.
+	 * 
+	 * @return The active RateLimiter.
+	 * @see RateLimiter
+	 */
+	public RateLimiter getRateLimiter()
+	{
+		return this.rateLimiter;
+	}
+
+	/**
+	 * Sets a new Rate Limiter.
+	 * 
+	 * @param rateLimiter
+	 *            The Rate Limiter that will take effect.
+	 * @see RateLimiter
+	 */
+	public void setRateLimiter(RateLimiter rateLimiter)
+	{
+		this.rateLimiter = rateLimiter;
+	}
+
 	/**
 	 * Returns the active Router class.
 	 * 
@@ -1171,17 +1324,24 @@ public class Service
 
 	/**
 	 * Find best suitable gateway to send specific message through Router and
-	 * Load Balancer.
+	 * Load Balancer. Routers doing basic routing only are answered from the
+	 * routing table; custom routers are called for every message. Neither
+	 * takes a lock, so messages may be routed from several threads at once.
 	 * 
 	 * @param msg
 	 *            Message to be routed
 	 * @return Reference to gateway or <code>null</code> if no suitable gateway
 	 *         is found.
 	 */
-	public synchronized AGateway routeMessage(OutboundMessage msg)
+	public AGateway routeMessage(OutboundMessage msg)
+	{
+		Router r = getRouter();
+		if (r.isTableRouting()) return balanceMessage(msg, getRoutingTable().lookup(msg.getGatewayId()));
+		return balanceMessage(msg, r.route(msg, getGateways()));
+	}
+
+	private AGateway balanceMessage(OutboundMessage msg, Collection<AGateway> gateways)
 	{
-		Collection<AGateway> gateways;
-		gateways = getRouter().route(msg, getGateways());
 		if (gateways.size() > 0) return getLoadBalancer().balance(msg, gateways);
 		else
 		{
@@ -1566,6 +1726,33 @@ public class Service
 		this.watchDog = myWatchDog;
 	}
 
+	private class SubmitNotifier implements ISubmitListener
+	{
+		public void completed(SubmitFuture future)
+		{
+			if (future.isCancelled()) return;
+			OutboundMessage msg = future.getMessage();
+			if (future.getCause() instanceof GatewayUnavailableException)
+			{
+				if (!future.getGateway().isStillConnected())
+				{
+					Logger.getInstance().logWarn("submit(): Gateway " + future.getGateway().getGatewayId() + " lost its connection, marking for restart.", null, null);
+					future.getGateway().setStatus(GatewayStatuses.RESTART);
+				}
+				msg.setMessageStatus(MessageStatuses.FAILED);
+				msg.setFailureCause(FailureCauses.GATEWAY_FAILURE);
+			}
+			else if ((future.getCause() instanceof TimeoutException) || (future.getCause() instanceof IOException))
+			{
+				Logger.getInstance().logWarn("submit(): Gateway " + future.getGateway().getGatewayId() + " does not respond, marking for restart.", null, null);
+				future.getGateway().setStatus(GatewayStatuses.RESTART);
+				msg.setMessageStatus(MessageStatuses.FAILED);
+				msg.setFailureCause(FailureCauses.GATEWAY_FAILURE);
+			}
+			getNotifyQueueManager().getNotifyQueue().add(new OutboundMessageNotification(future.getGateway(), msg));
+		}
+	}
+
 	private class WatchDog extends AServiceThread
 	{
 		public WatchDog(String name, int delay)
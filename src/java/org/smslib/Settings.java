@@ -99,6 +99,15 @@ public class Settings
 	 */
 	public int AT_WAIT_CGMS = 200;
 
+	/**
+	 * Send the message body as soon as the modem prompts for it with "&gt; ",
+	 * instead of waiting AT_WAIT_CGMS and SERIAL_CLEAR_WAIT after the SEND
+	 * command. Leave it off for modems that do not send the prompt. It only
+	 * decides how the first part of a message is sent: the later parts of a
+	 * multipart PDU message are always sent back to back on the prompt.
+	 */
+	public boolean AT_WAIT_PROMPT = false;
+
 	/**
 	 * Wait time before retrying the network status command (milliseconds).
 	 */
@@ -210,6 +219,7 @@ public class Settings
 		if (System.getProperty("smslib.at.resetwait") != null) this.AT_WAIT_AFTER_RESET = Integer.parseInt(System.getProperty("smslib.at.resetwait"));
 		if (System.getProperty("smslib.at.cmdwait") != null) this.AT_WAIT_CMD = Integer.parseInt(System.getProperty("smslib.at.cmdwait"));
 		if (System.getProperty("smslib.at.cmgswait") != null) this.AT_WAIT_CGMS = Integer.parseInt(System.getProperty("smslib.at.cmgswait"));
+		if (System.getProperty("smslib.at.waitprompt") != null) this.AT_WAIT_PROMPT = true;
 		if (System.getProperty("smslib.at.networkwait") != null) this.AT_WAIT_NETWORK = Integer.parseInt(System.getProperty("smslib.at.networkwait"));
 		if (System.getProperty("smslib.at.simpinwait") != null) this.AT_WAIT_SIMPIN = Integer.parseInt(System.getProperty("smslib.at.simpinwait"));
 		if (System.getProperty("smslib.at.cnmiwait") != null) this.AT_WAIT_CNMI = Integer.parseInt(System.getProperty("smslib.at.cnmiwait"));
@@ -0,0 +1,262 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.smslib;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.smslib.helper.Logger;
+
+/**
+ * The pending result of a message submitted with <code>submit()</code>. The
+ * future completes once the gateway has tried to send the message; its value
+ * is the message itself, with its status and reference number updated.
+ * <p>
+ * A future completes with an <code>ExecutionException</code> if sending threw
+ * an exception. A message the gateway refused completes normally, with
+ * <code>isSent()</code> returning false. Listeners run on the thread which
+ * completes the future, so nobody has to wait on <code>get()</code>.
+ * 
+ * @see AGateway#submit(OutboundMessage)
+ * @see Service#submit(OutboundMessage)
+ * @since 3.5
+ */
+public class SubmitFuture implements Future<OutboundMessage>
+{
+	private static final int PENDING = 0;
+
+	private static final int RUNNING = 1;
+
+	private static final int DONE = 2;
+
+	private static final int CANCELLED = 3;
+
+	private final AGateway gateway;
+
+	private final OutboundMessage message;
+
+	private final CountDownLatch done;
+
+	private volatile int state;
+
+	private boolean sent;
+
+	private Exception cause;
+
+	private List<ISubmitListener> listeners;
+
+	public SubmitFuture(AGateway myGateway, OutboundMessage myMessage)
+	{
+		this.gateway = myGateway;
+		this.message = myMessage;
+		this.done = new CountDownLatch(1);
+		this.state = PENDING;
+	}
+
+	/**
+	 * Returns the gateway the message was submitted to.
+	 * 
+	 * @return The gateway, or null if no gateway would take the message.
+	 */
+	public AGateway getGateway()
+	{
+		return this.gateway;
+	}
+
+	/**
+	 * Returns the submitted message.
+	 * 
+	 * @return The message.
+	 */
+	public OutboundMessage getMessage()
+	{
+		return this.message;
+	}
+
+	/**
+	 * Claims the submission for sending. Gateways call this before sending
+	 * the message, and skip the message if it returns false.
+	 * 
+	 * @return True if the submission was claimed; false if it was cancelled or
+	 *         claimed before.
+	 */
+	public synchronized boolean start()
+	{
+		if (this.state != PENDING) return false;
+		this.state = RUNNING;
+		return true;
+	}
+
+	/**
+	 * Completes the submission with the result of
+	 * <code>AGateway.sendMessage()</code>.
+	 * 
+	 * @param mySent
+	 *            True if the message was sent.
+	 */
+	public void complete(boolean mySent)
+	{
+		finish(mySent, null);
+	}
+
+	/**
+	 * Completes the submission with the exception thrown while sending.
+	 * 
+	 * @param myCause
+	 *            The exception.
+	 */
+	public void fail(Exception myCause)
+	{
+		finish(false, myCause);
+	}
+
+	/**
+	 * Cancels the submission if the gateway has not started sending it yet.
+	 * 
+	 * @param mayInterruptIfRunning
+	 *            Ignored; a message being sent is never interrupted.
+	 * @return True if the submission was cancelled.
+	 */
+	public boolean cancel(boolean mayInterruptIfRunning)
+	{
+		List<ISubmitListener> list;
+		synchronized (this)
+		{
+			if (this.state != PENDING) return false;
+			this.state = CANCELLED;
+			list = this.listeners;
+			this.listeners = null;
+		}
+		this.done.countDown();
+		fire(list);
+		return true;
+	}
+
+	public boolean isCancelled()
+	{
+		return (this.state == CANCELLED);
+	}
+
+	public boolean isDone()
+	{
+		return (this.state >= DONE);
+	}
+
+	/**
+	 * Returns true if the gateway sent the message. Valid once the future is
+	 * done.
+	 * 
+	 * @return True if the message was sent.
+	 */
+	public synchronized boolean isSent()
+	{
+		return this.sent;
+	}
+
+	/**
+	 * Returns the exception thrown while sending.
+	 * 
+	 * @return The exception, or null if sending did not throw.
+	 */
+	public synchronized Exception getCause()
+	{
+		return this.cause;
+	}
+
+	public OutboundMessage get() throws InterruptedException, ExecutionException
+	{
+		this.done.await();
+		return result();
+	}
+
+	public OutboundMessage get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, java.util.concurrent.TimeoutException
+	{
+		if (!this.done.await(timeout, unit)) throw new java.util.concurrent.TimeoutException();
+		return result();
+	}
+
+	/**
+	 * Adds a listener to be called when the submission completes. If it has
+	 * already completed, the listener is called right away.
+	 * 
+	 * @param listener
+	 *            The listener.
+	 */
+	public void addListener(ISubmitListener listener)
+	{
+		synchronized (this)
+		{
+			if (this.state < DONE)
+			{
+				if (this.listeners == null) this.listeners = new ArrayList<ISubmitListener>(2);
+				this.listeners.add(listener);
+				return;
+			}
+		}
+		fire(listener);
+	}
+
+	private void finish(boolean mySent, Exception myCause)
+	{
+		List<ISubmitListener> list;
+		synchronized (this)
+		{
+			if (this.state >= DONE) return;
+			this.state = DONE;
+			this.sent = mySent;
+			this.cause = myCause;
+			list = this.listeners;
+			this.listeners = null;
+		}
+		this.done.countDown();
+		fire(list);
+	}
+
+	private synchronized OutboundMessage result() throws ExecutionException
+	{
+		if (this.state == CANCELLED) throw new CancellationException();
+		if (this.cause != null) throw new ExecutionException(this.cause);
+		return this.message;
+	}
+
+	private void fire(List<ISubmitListener> list)
+	{
+		if (list == null) return;
+		for (ISubmitListener listener : list)
+			fire(listener);
+	}
+
+	private void fire(ISubmitListener listener)
+	{
+		try
+		{
+			listener.completed(this);
+		}
+		catch (Exception e)
+		{
+			Logger.getInstance().logError("Submit listener failed.", e, (this.gateway == null ? null : this.gateway.getGatewayId()));
+		}
+	}
+}
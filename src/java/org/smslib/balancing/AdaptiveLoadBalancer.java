@@ -0,0 +1,329 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.balancing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.smslib.AGateway;
+import org.smslib.OutboundMessage;
+import org.smslib.Service;
+import org.smslib.helper.Logger;
+import org.smslib.queues.AbstractQueueManager;
+
+/**
+ * Load balancer sending more messages through the gateways which perform
+ * better. For each gateway it keeps an exponentially weighted moving average
+ * (EWMA) of the send latency and of the error rate, and counts the messages
+ * in flight; together with the messages pending in the gateway queue, this
+ * estimates how long a new message would wait:
+ * <code>latency * (outstanding + 1) / (1 - error rate)</code>.
+ * <p>
+ * Each message goes to the better of two candidates picked at random (power
+ * of two choices), which follows the estimates without sending everything
+ * to the single best gateway and without scanning all candidates. If either
+ * of the two is ejected, the best of all candidates is used instead. Gateways
+ * not seen yet are assumed to be as fast as the average gateway.
+ * <p>
+ * A gateway failing <code>ejectAfter</code> times in a row is ejected: it
+ * gets no messages for <code>ejectTime</code> milliseconds, doubled for each
+ * further ejection. Afterwards it recovers gradually, its share of the
+ * messages growing linearly over <code>recoveryTime</code> milliseconds. If
+ * all candidates are ejected, the best of them is used anyway.
+ * 
+ * @since 3.5
+ */
+public class AdaptiveLoadBalancer extends LoadBalancer
+{
+	private static final int MAX_EJECTION_DOUBLINGS = 5;
+
+	private static final double MIN_LATENCY = 0.01;
+
+	private static final double MIN_SUCCESS_RATE = 0.01;
+
+	private final ConcurrentMap<AGateway, Health> health;
+
+	private final ThreadLocal<Random> random;
+
+	private volatile double smoothing;
+
+	private volatile int ejectAfter;
+
+	private volatile long ejectTime;
+
+	private volatile long recoveryTime;
+
+	/** EWMA of the latency of all gateways, the estimate for new ones */
+	private volatile double averageLatency;
+
+	public AdaptiveLoadBalancer()
+	{
+		this.health = new ConcurrentHashMap<AGateway, Health>();
+		this.random = new ThreadLocal<Random>()
+		{
+			@Override
+			protected Random initialValue()
+			{
+				return new Random();
+			}
+		};
+		this.smoothing = 0.2;
+		this.ejectAfter = 5;
+		this.ejectTime = 30000;
+		this.recoveryTime = 60000;
+		this.averageLatency = MIN_LATENCY;
+	}
+
+	public double getSmoothing()
+	{
+		return this.smoothing;
+	}
+
+	/**
+	 * Sets the weight of the newest sample in the moving averages.
+	 * 
+	 * @param mySmoothing
+	 *            The weight, between 0 and 1 (default 0.2). Higher values
+	 *            follow changes faster.
+	 */
+	public void setSmoothing(double mySmoothing)
+	{
+		this.smoothing = Math.min(Math.max(mySmoothing, 0.001), 1);
+	}
+
+	public int getEjectAfter()
+	{
+		return this.ejectAfter;
+	}
+
+	/**
+	 * Sets the number of consecutive failures which eject a gateway.
+	 * 
+	 * @param myEjectAfter
+	 *            The number of failures (default 5).
+	 */
+	public void setEjectAfter(int myEjectAfter)
+	{
+		this.ejectAfter = Math.max(myEjectAfter, 1);
+	}
+
+	public long getEjectTime()
+	{
+		return this.ejectTime;
+	}
+
+	/**
+	 * Sets how long an ejected gateway gets no messages, the first time.
+	 * 
+	 * @param myEjectTime
+	 *            The time, in milliseconds (default 30000).
+	 */
+	public void setEjectTime(long myEjectTime)
+	{
+		this.ejectTime = Math.max(myEjectTime, 0);
+	}
+
+	public long getRecoveryTime()
+	{
+		return this.recoveryTime;
+	}
+
+	/**
+	 * Sets how long an ejected gateway takes to get its full share of the
+	 * messages again, once the ejection is over.
+	 * 
+	 * @param myRecoveryTime
+	 *            The time, in milliseconds (default 60000).
+	 */
+	public void setRecoveryTime(long myRecoveryTime)
+	{
+		this.recoveryTime = Math.max(myRecoveryTime, 0);
+	}
+
+	@Override
+	public AGateway balance(OutboundMessage msg, Collection<AGateway> candidates)
+	{
+		List<AGateway> list = (candidates instanceof List ? (List<AGateway>) candidates : new ArrayList<AGateway>(candidates));
+		int size = list.size();
+		if (size == 1) return list.get(0);
+		long now = System.currentTimeMillis();
+		Random r = this.random.get();
+		int first = r.nextInt(size);
+		int second = r.nextInt(size - 1);
+		if (second >= first) second++;
+		AGateway a = list.get(first);
+		AGateway b = list.get(second);
+		boolean aAvailable = getHealth(a).isAvailable(now, r);
+		boolean bAvailable = getHealth(b).isAvailable(now, r);
+		if (aAvailable && bAvailable) return (getCost(a) <= getCost(b) ? a : b);
+		return bestOf(list, now, r);
+	}
+
+	private AGateway bestOf(List<AGateway> candidates, long now, Random r)
+	{
+		AGateway best = null;
+		double bestCost = Double.MAX_VALUE;
+		boolean bestAvailable = false;
+		for (int i = 0; i < candidates.size(); i++)
+		{
+			AGateway gateway = candidates.get(i);
+			boolean available = getHealth(gateway).isAvailable(now, r);
+			double cost = getCost(gateway);
+			if ((best == null) || (available && !bestAvailable) || ((available == bestAvailable) && (cost < bestCost)))
+			{
+				best = gateway;
+				bestCost = cost;
+				bestAvailable = available;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the estimated time a new message would take through the
+	 * gateway, in milliseconds.
+	 * 
+	 * @param gateway
+	 *            The gateway.
+	 * @return The estimated time.
+	 */
+	public double getCost(AGateway gateway)
+	{
+		Health h = getHealth(gateway);
+		double latency = (h.samples == 0 ? this.averageLatency : h.latency);
+		int outstanding = h.inFlight.get();
+		AbstractQueueManager queue = Service.getInstance().getQueueManager();
+		if (queue != null) outstanding += queue.pendingQueueSize(gateway.getGatewayId());
+		return Math.max(latency, MIN_LATENCY) * (outstanding + 1) / Math.max(1 - h.errorRate, MIN_SUCCESS_RATE);
+	}
+
+	/**
+	 * Returns true if the gateway is ejected for failing repeatedly.
+	 * 
+	 * @param gateway
+	 *            The gateway.
+	 * @return True if the gateway is ejected.
+	 */
+	public boolean isEjected(AGateway gateway)
+	{
+		return getHealth(gateway).isEjected(System.currentTimeMillis());
+	}
+
+	@Override
+	public void sendStarted(AGateway gateway, OutboundMessage msg)
+	{
+		getHealth(gateway).inFlight.incrementAndGet();
+	}
+
+	@Override
+	public void sendCompleted(AGateway gateway, OutboundMessage msg, boolean sent, long elapsed)
+	{
+		Health h = getHealth(gateway);
+		double latency = elapsed / 1000000.0;
+		double weight = this.smoothing;
+		boolean ejected = false;
+		synchronized (h)
+		{
+			h.inFlight.decrementAndGet();
+			h.latency = (h.samples == 0 ? latency : h.latency + weight * (latency - h.latency));
+			h.errorRate += weight * ((sent ? 0 : 1) - h.errorRate);
+			h.samples++;
+			long now = System.currentTimeMillis();
+			if (sent)
+			{
+				h.failures = 0;
+				if (now >= h.recoveredAt) h.ejections = 0;
+			}
+			else if ((++h.failures >= this.ejectAfter) && !h.isEjected(now))
+			{
+				h.failures = 0;
+				h.ejectedUntil = now + (this.ejectTime << Math.min(h.ejections, MAX_EJECTION_DOUBLINGS));
+				h.recoveredAt = h.ejectedUntil + this.recoveryTime;
+				h.ejections++;
+				ejected = true;
+			}
+		}
+		synchronized (this)
+		{
+			this.averageLatency += weight * (latency - this.averageLatency);
+		}
+		if (ejected) Logger.getInstance().logWarn("Gateway failing, ejected from load balancing.", null, gateway.getGatewayId());
+	}
+
+	@Override
+	public void gatewayRemoved(AGateway gateway)
+	{
+		this.health.remove(gateway);
+	}
+
+	private Health getHealth(AGateway gateway)
+	{
+		Health h = this.health.get(gateway);
+		if (h == null)
+		{
+			Health created = new Health();
+			h = this.health.putIfAbsent(gateway, created);
+			if (h == null) h = created;
+		}
+		return h;
+	}
+
+	static class Health
+	{
+		final AtomicInteger inFlight = new AtomicInteger();
+
+		/** EWMA of the send latency, in milliseconds */
+		volatile double latency;
+
+		/** EWMA of the failures, 0 to 1 */
+		volatile double errorRate;
+
+		volatile int samples;
+
+		volatile long ejectedUntil;
+
+		volatile long recoveredAt;
+
+		/** Consecutive failures, guarded by this */
+		int failures;
+
+		/** Consecutive ejections, guarded by this */
+		int ejections;
+
+		boolean isEjected(long now)
+		{
+			return (now < this.ejectedUntil);
+		}
+
+		boolean isAvailable(long now, Random r)
+		{
+			if (now < this.ejectedUntil) return false;
+			if (now >= this.recoveredAt) return true;
+			long recovery = this.recoveredAt - this.ejectedUntil;
+			return (r.nextDouble() * recovery < (now - this.ejectedUntil));
+		}
+	}
+}
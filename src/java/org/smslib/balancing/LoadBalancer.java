@@ -20,8 +20,8 @@
 
 package org.smslib.balancing;
 
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import org.smslib.AGateway;
 import org.smslib.OutboundMessage;
 
@@ -29,6 +29,9 @@ import org.smslib.OutboundMessage;
  * Load Balancing base class. Implements default trivial Load Balancing - just
  * picking first available Gateway to send message. Create subclasses to
  * implement custom functionality.
+ * <p>
+ * The Service may call {@link #balance} concurrently from the queue threads of
+ * several gateways, so subclasses must be thread-safe.
  * 
  * @author Tomek Cejner
  */
@@ -44,10 +47,59 @@ public class LoadBalancer
 	 * @param msg
 	 *            Message to be sent.
 	 * @param candidates
-	 *            List of candidate gateways to choose from
+	 *            List of candidate gateways to choose from. Since 3.5 the
+	 *            Service passes an unmodifiable list.
 	 */
 	public AGateway balance(OutboundMessage msg, Collection<AGateway> candidates)
 	{
-		return new ArrayList<AGateway>(candidates).get(0);
+		if (candidates instanceof List) return ((List<AGateway>) candidates).get(0);
+		return candidates.iterator().next();
+	}
+
+	/**
+	 * Called when a gateway starts sending a message, whether it was queued,
+	 * submitted or sent directly. Does nothing by default; balancers which
+	 * take the performance of the gateways into account override it.
+	 * 
+	 * @param gateway
+	 *            The gateway sending the message.
+	 * @param msg
+	 *            The message.
+	 * @since 3.5
+	 */
+	public void sendStarted(AGateway gateway, OutboundMessage msg)
+	{
+	}
+
+	/**
+	 * Called when a gateway has tried to send a message. Does nothing by
+	 * default.
+	 * 
+	 * @param gateway
+	 *            The gateway which sent the message.
+	 * @param msg
+	 *            The message.
+	 * @param sent
+	 *            True if the message was sent, false if the gateway failed or
+	 *            threw an exception.
+	 * @param elapsed
+	 *            The time the gateway took, in nanoseconds.
+	 * @see #sendStarted(AGateway, OutboundMessage)
+	 * @since 3.5
+	 */
+	public void sendCompleted(AGateway gateway, OutboundMessage msg, boolean sent, long elapsed)
+	{
+	}
+
+	/**
+	 * Called when a gateway is removed from the Service. Does nothing by
+	 * default; balancers keeping state per gateway drop it here.
+	 * 
+	 * @param gateway
+	 *            The removed gateway.
+	 * @since 3.5
+	 */
+	public void gatewayRemoved(AGateway gateway)
+	{
 	}
 }
@@ -20,8 +20,10 @@
 
 package org.smslib.balancing;
 
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.smslib.AGateway;
 import org.smslib.OutboundMessage;
 
@@ -31,27 +33,26 @@ import org.smslib.OutboundMessage;
  */
 public final class RoundRobinLoadBalancer extends LoadBalancer
 {
-	private int currentGateway;
+	private final AtomicInteger currentGateway;
 
 	public RoundRobinLoadBalancer()
 	{
-		this.currentGateway = 0;
+		this.currentGateway = new AtomicInteger();
 	}
 
 	/**
 	 * This Load Balancing implementation returns every other available gateway
-	 * on each invocation.
+	 * on each invocation. It takes no lock and, for candidate lists, creates
+	 * no objects.
 	 */
 	@Override
 	public AGateway balance(OutboundMessage msg, Collection<AGateway> candidates)
 	{
-		int currentIndex;
-		ArrayList<AGateway> c = new ArrayList<AGateway>(candidates);
-		synchronized (this)
-		{
-			if (this.currentGateway >= c.size()) this.currentGateway = 0;
-			currentIndex = this.currentGateway++;
-		}
-		return (c.get(currentIndex));
+		int currentIndex = (this.currentGateway.getAndIncrement() & Integer.MAX_VALUE) % candidates.size();
+		if (candidates instanceof List) return ((List<AGateway>) candidates).get(currentIndex);
+		Iterator<AGateway> i = candidates.iterator();
+		while (currentIndex-- > 0)
+			i.next();
+		return i.next();
 	}
 }
@@ -0,0 +1,515 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.balancing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.ajwcc.pduUtils.gsm3040.PduUtils;
+import org.smslib.AGateway;
+import org.smslib.OutboundBinaryMessage;
+import org.smslib.OutboundMessage;
+import org.smslib.Service;
+import org.smslib.AGateway.GatewayAttributes;
+import org.smslib.Message.MessageEncodings;
+import org.smslib.Message.MessageTypes;
+import org.smslib.queues.AbstractQueueManager;
+import org.smslib.routing.RoutingTable;
+
+/**
+ * Load balancer sharing the messages among the gateways in proportion to
+ * their weights, with smooth weighted round robin: weights 3 and 1 give the
+ * sequence A, A, B, A rather than A, A, A, B. The weights are either set per
+ * gateway with {@link AGateway#setWeight(int)} or measured: each gateway then
+ * weighs as many messages per second as it sends, i.e. its maximum number of
+ * messages in flight divided by its average send latency.
+ * <p>
+ * A gateway is full while its messages in flight and those pending in its
+ * queue reach its {@link AGateway#getMaxInFlight()}; its turns then go to
+ * the next gateways in the sequence. If all candidates are full, as when a
+ * burst is queued, the scheduled one is used anyway, so the queues still
+ * fill in proportion to the weights.
+ * <p>
+ * Messages needing a gateway capability (see
+ * {@link AGateway.GatewayAttributes}) only go to the gateways having it:
+ * WAP SI messages to <code>WAPSI</code> gateways, messages longer than one
+ * SMS to <code>BIGMESSAGES</code> gateways, flash messages to
+ * <code>FLASHSMS</code> gateways and messages with ports to
+ * <code>PORTADDRESSING</code> gateways. If none of the candidates has the
+ * capability, all of them are used. The sequences for every candidate list
+ * of the service's {@link RoutingTable} and every combination of
+ * capabilities are prepared whenever the routing table changes, so that
+ * balancing a message takes no lock and scans no gateways. Candidates from
+ * routers which do not route through the routing table are chosen at random,
+ * in proportion to the weights.
+ * 
+ * @since 3.5
+ */
+public class WeightedLoadBalancer extends LoadBalancer
+{
+	/** The capabilities messages may need, by bit of the schedule index */
+	private static final int[] CAPABILITIES = { GatewayAttributes.WAPSI, GatewayAttributes.BIGMESSAGES, GatewayAttributes.FLASHSMS, GatewayAttributes.PORTADDRESSING };
+
+	/** The capabilities for each schedule index */
+	private static final int[] CAPABILITIES_BY_INDEX = createCapabilitiesByIndex();
+
+	private static final int MAX_PERIOD = 1024;
+
+	private static final int MAX_MEASURED_WEIGHT = 100;
+
+	/** Septets, octets and UCS2 chars fitting in one SMS, without and with ports */
+	private static final int MAX_SEPTETS = 160, MAX_SEPTETS_PORTS = 152;
+
+	private static final int MAX_OCTETS = 140, MAX_OCTETS_PORTS = 133;
+
+	private static final int MAX_CHARS = 70, MAX_CHARS_PORTS = 66;
+
+	private final ConcurrentMap<AGateway, Load> load;
+
+	private final ThreadLocal<Random> random;
+
+	private volatile Schedules schedules;
+
+	private volatile boolean measuredWeights;
+
+	private volatile long measureInterval;
+
+	private volatile double smoothing;
+
+	public WeightedLoadBalancer()
+	{
+		this.load = new ConcurrentHashMap<AGateway, Load>();
+		this.random = new ThreadLocal<Random>()
+		{
+			@Override
+			protected Random initialValue()
+			{
+				return new Random();
+			}
+		};
+		this.measuredWeights = false;
+		this.measureInterval = 10000;
+		this.smoothing = 0.2;
+	}
+
+	public boolean getMeasuredWeights()
+	{
+		return this.measuredWeights;
+	}
+
+	/**
+	 * Sets whether the weights are measured instead of taken from the
+	 * gateways.
+	 * 
+	 * @param myMeasuredWeights
+	 *            True to weigh the gateways by the messages per second they
+	 *            send (default false).
+	 */
+	public void setMeasuredWeights(boolean myMeasuredWeights)
+	{
+		this.measuredWeights = myMeasuredWeights;
+		this.schedules = null;
+	}
+
+	public long getMeasureInterval()
+	{
+		return this.measureInterval;
+	}
+
+	/**
+	 * Sets how often measured weights are brought up to date.
+	 * 
+	 * @param myMeasureInterval
+	 *            The interval, in milliseconds (default 10000).
+	 */
+	public void setMeasureInterval(long myMeasureInterval)
+	{
+		this.measureInterval = Math.max(myMeasureInterval, 0);
+	}
+
+	public double getSmoothing()
+	{
+		return this.smoothing;
+	}
+
+	/**
+	 * Sets the weight of the newest sample in the moving average of the send
+	 * latency, used by measured weights.
+	 * 
+	 * @param mySmoothing
+	 *            The weight, between 0 and 1 (default 0.2).
+	 */
+	public void setSmoothing(double mySmoothing)
+	{
+		this.smoothing = Math.min(Math.max(mySmoothing, 0.001), 1);
+	}
+
+	@Override
+	public AGateway balance(OutboundMessage msg, Collection<AGateway> candidates)
+	{
+		int index = getScheduleIndex(getRequiredAttributes(msg));
+		Schedule[] byIndex = getSchedules().byCandidates.get(candidates);
+		if (byIndex != null) return byIndex[index].next(this);
+		return pickRandom(candidates, CAPABILITIES_BY_INDEX[index]);
+	}
+
+	/**
+	 * Returns the gateway capabilities a message needs, as
+	 * {@link AGateway.GatewayAttributes} flags.
+	 * 
+	 * @param msg
+	 *            The message.
+	 * @return The capabilities.
+	 */
+	protected int getRequiredAttributes(OutboundMessage msg)
+	{
+		int attributes = (msg.getFlashSms() ? GatewayAttributes.FLASHSMS : 0);
+		// WAP SI messages have their own ports, which WAPSI gateways handle
+		if (msg.getType() == MessageTypes.WAPSI) return attributes | GatewayAttributes.WAPSI;
+		boolean ports = (msg.getDstPort() > -1);
+		if (ports) attributes |= GatewayAttributes.PORTADDRESSING;
+		if (isMultipart(msg, ports)) attributes |= GatewayAttributes.BIGMESSAGES;
+		return attributes;
+	}
+
+	private static boolean isMultipart(OutboundMessage msg, boolean ports)
+	{
+		if (msg instanceof OutboundBinaryMessage)
+		{
+			byte[] data = ((OutboundBinaryMessage) msg).getDataBytes();
+			return ((data != null) && (data.length > (ports ? MAX_OCTETS_PORTS : MAX_OCTETS)));
+		}
+		String text = msg.getText();
+		if (text == null) return false;
+		MessageEncodings encoding = msg.getEncoding();
+		if (encoding == MessageEncodings.ENCUCS2) return (text.length() > (ports ? MAX_CHARS_PORTS : MAX_CHARS));
+		if (encoding == MessageEncodings.ENC8BIT) return (text.length() > (ports ? MAX_OCTETS_PORTS : MAX_OCTETS));
+		// short texts fit whatever their chars, long ones need counting
+		int maxSeptets = (ports ? MAX_SEPTETS_PORTS : MAX_SEPTETS);
+		if (text.length() > maxSeptets) return true;
+		if (text.length() * 2 <= maxSeptets) return false;
+		return (PduUtils.getSeptetCount(text) > maxSeptets);
+	}
+
+	private static int[] createCapabilitiesByIndex()
+	{
+		int[] table = new int[1 << CAPABILITIES.length];
+		for (int index = 0; index < table.length; index++)
+			for (int i = 0; i < CAPABILITIES.length; i++)
+				if ((index & (1 << i)) != 0) table[index] |= CAPABILITIES[i];
+		return table;
+	}
+
+	private static int getScheduleIndex(int attributes)
+	{
+		int index = 0;
+		for (int i = 0; i < CAPABILITIES.length; i++)
+			if ((attributes & CAPABILITIES[i]) != 0) index |= (1 << i);
+		return index;
+	}
+
+	private static boolean isCapable(AGateway gateway, int attributes)
+	{
+		return ((gateway.getAttributes() & attributes) == attributes);
+	}
+
+	/**
+	 * Returns the weight the gateway currently has.
+	 * 
+	 * @param gateway
+	 *            The gateway.
+	 * @return The weight, at least 1.
+	 */
+	public int getWeight(AGateway gateway)
+	{
+		if (!this.measuredWeights) return gateway.getWeight();
+		double highest = 0;
+		double average = 0;
+		int measured = 0;
+		for (Map.Entry<AGateway, Load> e : this.load.entrySet())
+			if (e.getValue().samples > 0)
+			{
+				highest = Math.max(highest, e.getKey().getMaxInFlight() / e.getValue().latency);
+				average += e.getValue().latency;
+				measured++;
+			}
+		if (measured == 0) return 1;
+		Load l = getLoad(gateway);
+		double latency = (l.samples > 0 ? l.latency : average / measured);
+		double capacity = gateway.getMaxInFlight() / latency;
+		return (int) Math.max(1, Math.min(MAX_MEASURED_WEIGHT, Math.round(MAX_MEASURED_WEIGHT * capacity / highest)));
+	}
+
+	/**
+	 * Returns true if the gateway has as many messages in flight or pending
+	 * in its queue as it may have in flight.
+	 * 
+	 * @param gateway
+	 *            The gateway.
+	 * @return True if the gateway is full.
+	 */
+	public boolean isFull(AGateway gateway)
+	{
+		int outstanding = getLoad(gateway).inFlight.get();
+		int maxInFlight = gateway.getMaxInFlight();
+		if (outstanding >= maxInFlight) return true;
+		AbstractQueueManager queue = Service.getInstance().getQueueManager();
+		if (queue != null) outstanding += queue.pendingQueueSize(gateway.getGatewayId());
+		return (outstanding >= maxInFlight);
+	}
+
+	@Override
+	public void sendStarted(AGateway gateway, OutboundMessage msg)
+	{
+		getLoad(gateway).inFlight.incrementAndGet();
+	}
+
+	@Override
+	public void sendCompleted(AGateway gateway, OutboundMessage msg, boolean sent, long elapsed)
+	{
+		Load l = getLoad(gateway);
+		l.inFlight.decrementAndGet();
+		if (!sent) return;
+		double latency = Math.max(elapsed / 1000000.0, 0.01);
+		synchronized (l)
+		{
+			l.latency = (l.samples == 0 ? latency : l.latency + this.smoothing * (latency - l.latency));
+			l.samples++;
+		}
+	}
+
+	@Override
+	public void gatewayRemoved(AGateway gateway)
+	{
+		this.load.remove(gateway);
+	}
+
+	private Load getLoad(AGateway gateway)
+	{
+		Load l = this.load.get(gateway);
+		if (l == null)
+		{
+			Load created = new Load();
+			l = this.load.putIfAbsent(gateway, created);
+			if (l == null) l = created;
+		}
+		return l;
+	}
+
+	private Schedules getSchedules()
+	{
+		RoutingTable table = Service.getInstance().getRoutingTable();
+		Schedules s = this.schedules;
+		if ((s != null) && s.isCurrent(table)) return s;
+		synchronized (this)
+		{
+			s = this.schedules;
+			if ((s == null) || !s.isCurrent(table))
+			{
+				long expires = (this.measuredWeights ? System.currentTimeMillis() + this.measureInterval : Long.MAX_VALUE);
+				s = new Schedules(table, expires);
+				for (List<AGateway> candidates : table.getCandidateLists())
+					s.byCandidates.put(candidates, createSchedules(candidates));
+				this.schedules = s;
+			}
+			return s;
+		}
+	}
+
+	private Schedule[] createSchedules(List<AGateway> candidates)
+	{
+		Schedule[] byIndex = new Schedule[CAPABILITIES_BY_INDEX.length];
+		Map<List<AGateway>, Schedule> shared = new HashMap<List<AGateway>, Schedule>();
+		for (int index = 0; index < byIndex.length; index++)
+		{
+			List<AGateway> capable = new ArrayList<AGateway>();
+			for (AGateway gateway : candidates)
+				if (isCapable(gateway, CAPABILITIES_BY_INDEX[index])) capable.add(gateway);
+			if (capable.isEmpty()) capable = candidates;
+			Schedule schedule = shared.get(capable);
+			if (schedule == null)
+			{
+				schedule = new Schedule(createSequence(capable));
+				shared.put(capable, schedule);
+			}
+			byIndex[index] = schedule;
+		}
+		return byIndex;
+	}
+
+	/**
+	 * Returns one period of the smooth weighted round robin over the gateways:
+	 * each turn, every gateway gains its weight, and the one with the most
+	 * goes next, losing the total weight.
+	 */
+	AGateway[] createSequence(List<AGateway> gateways)
+	{
+		int size = gateways.size();
+		if (size == 0) return new AGateway[0];
+		int[] weights = new int[size];
+		int total = 0;
+		int gcd = 0;
+		for (int i = 0; i < size; i++)
+		{
+			weights[i] = getWeight(gateways.get(i));
+			gcd = gcd(gcd, weights[i]);
+		}
+		for (int i = 0; i < size; i++)
+		{
+			weights[i] /= gcd;
+			total += weights[i];
+		}
+		if (total > MAX_PERIOD)
+		{
+			double scale = (double) Math.max(MAX_PERIOD, size) / total;
+			total = 0;
+			for (int i = 0; i < size; i++)
+			{
+				weights[i] = (int) Math.max(1, Math.floor(weights[i] * scale));
+				total += weights[i];
+			}
+		}
+		AGateway[] sequence = new AGateway[total];
+		int[] current = new int[size];
+		for (int turn = 0; turn < total; turn++)
+		{
+			int best = 0;
+			for (int i = 0; i < size; i++)
+			{
+				current[i] += weights[i];
+				if (current[i] > current[best]) best = i;
+			}
+			current[best] -= total;
+			sequence[turn] = gateways.get(best);
+		}
+		return sequence;
+	}
+
+	private static int gcd(int a, int b)
+	{
+		while (b != 0)
+		{
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	private AGateway pickRandom(Collection<AGateway> candidates, int attributes)
+	{
+		List<AGateway> capable = new ArrayList<AGateway>(candidates.size());
+		for (AGateway gateway : candidates)
+			if (isCapable(gateway, attributes)) capable.add(gateway);
+		if (capable.isEmpty()) capable.addAll(candidates);
+		List<AGateway> open = new ArrayList<AGateway>(capable.size());
+		for (AGateway gateway : capable)
+			if (!isFull(gateway)) open.add(gateway);
+		if (!open.isEmpty()) capable = open;
+		int total = 0;
+		int[] weights = new int[capable.size()];
+		for (int i = 0; i < weights.length; i++)
+		{
+			weights[i] = getWeight(capable.get(i));
+			total += weights[i];
+		}
+		int r = this.random.get().nextInt(total);
+		for (int i = 0; i < weights.length; i++)
+		{
+			r -= weights[i];
+			if (r < 0) return capable.get(i);
+		}
+		return capable.get(capable.size() - 1);
+	}
+
+	/** The schedules prepared for a routing table */
+	private static class Schedules
+	{
+		final RoutingTable table;
+
+		final long expires;
+
+		final Map<Collection<AGateway>, Schedule[]> byCandidates;
+
+		Schedules(RoutingTable myTable, long myExpires)
+		{
+			this.table = myTable;
+			this.expires = myExpires;
+			this.byCandidates = new IdentityHashMap<Collection<AGateway>, Schedule[]>();
+		}
+
+		boolean isCurrent(RoutingTable myTable)
+		{
+			return ((this.table == myTable) && ((this.expires == Long.MAX_VALUE) || (System.currentTimeMillis() < this.expires)));
+		}
+	}
+
+	/** One period of the weighted sequence, shared by all threads */
+	private static class Schedule
+	{
+		final AGateway[] sequence;
+
+		final AtomicInteger cursor;
+
+		Schedule(AGateway[] mySequence)
+		{
+			this.sequence = mySequence;
+			this.cursor = new AtomicInteger();
+		}
+
+		/**
+		 * Takes the next turn. A full gateway's turn goes to the next gateway
+		 * in the sequence which is not, without taking that one's turn.
+		 */
+		AGateway next(WeightedLoadBalancer balancer)
+		{
+			int length = this.sequence.length;
+			int turn = (this.cursor.getAndIncrement() & Integer.MAX_VALUE) % length;
+			AGateway scheduled = this.sequence[turn];
+			if (!balancer.isFull(scheduled)) return scheduled;
+			for (int i = 1; i < length; i++)
+			{
+				AGateway gateway = this.sequence[(turn + i) % length];
+				if ((gateway != scheduled) && !balancer.isFull(gateway)) return gateway;
+			}
+			return scheduled;
+		}
+	}
+
+	/** The messages in flight and the send latency of a gateway */
+	static class Load
+	{
+		final AtomicInteger inFlight = new AtomicInteger();
+
+		/** EWMA of the latency of the sent messages, in milliseconds */
+		volatile double latency;
+
+		volatile int samples;
+	}
+}
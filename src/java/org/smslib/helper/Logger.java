@@ -62,6 +62,16 @@ public class Logger
 		Logger.logger = logger;
 	}
 
+	/**
+	 * @return True if debug messages are logged. Callers use it to skip
+	 *         building expensive debug messages.
+	 * @since 3.5
+	 */
+	public boolean isDebugEnabled()
+	{
+		return ((log4jLogger != null) && log4jLogger.isDebugEnabled());
+	}
+
 	public void logInfo(String message, Exception e, String gatewayId)
 	{
 		if (log4jLogger == null) return;
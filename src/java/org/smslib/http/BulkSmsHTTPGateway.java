@@ -160,10 +160,7 @@ public class BulkSmsHTTPGateway extends HTTPGateway
 		if (msg.getFrom() != null && msg.getFrom().length() != 0) request.add(new HttpHeader("source_id", msg.getFrom(), false));
 		else if (getFrom() != null && getFrom().length() != 0) request.add(new HttpHeader("source_id", getFrom(), false));
 		url = new URL(this.providerUrl + "/eapi/submission/send_sms/2/2.0");
-		synchronized (this.SYNC_Commander)
-		{
-			response = HttpPost(url, request);
-		}
+		response = HttpPost(url, request);
 		if (response.get(0).charAt(0) == '0')
 		{
 			StringTokenizer tokens = new StringTokenizer(response.get(0), "|");
@@ -320,10 +320,7 @@ public class ClickatellHTTPGateway extends HTTPGateway
 			if (msg.getFlashSms()) requestFeatures += 512;
 			if (msg.getStatusReport()) requestFeatures += 8192;
 			request.add(new HttpHeader("req_feat", "" + requestFeatures, false));
-			synchronized (this.SYNC_Commander)
-			{
-				response = HttpPost(url, request);
-			}
+			response = HttpPost(url, request);
 			if (response.get(0).indexOf("ID:") == 0)
 			{
 				msg.setRefNo(response.get(0).substring(4));
@@ -110,10 +110,7 @@ public class EzTextingHTTPGateway extends HTTPGateway
 		request.add(new HttpHeader("express", (isExpress ? "1" : "0"), false));
 		request.add(new HttpHeader("subject", subject, false));
 		url = new URL(this.providerUrl + "/api/sending/");
-		synchronized (this.SYNC_Commander)
-		{
-			response = HttpPost(url, request);
-		}
+		response = HttpPost(url, request);
 		if (response.get(0).length() == 1 && response.get(0).charAt(0) == '1')
 		{
 			msg.setDispatchDate(new Date());
@@ -40,6 +40,10 @@ public class HTTPGateway extends AGateway
 	public HTTPGateway(String id)
 	{
 		super(id);
+		// Requests are independent, so submit() may overlap a few of them;
+		// queued messages are still sent one at a time unless the EVENT
+		// dispatch mode is selected.
+		setMaxInFlight(4);
 	}
 
 	List<String> HttpPost(URL url, List<HttpHeader> requestList) throws IOException
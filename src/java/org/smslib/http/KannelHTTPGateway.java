@@ -179,22 +179,19 @@ public class KannelHTTPGateway extends HTTPGateway
 		request.add(new HttpHeader("text", text, false));
 		String reqLine = ExpandHttpHeaders(request);
 		url = new URL(this.sendUrl + "?" + reqLine);
-		synchronized (this.SYNC_Commander)
+		response = HttpGet(url);
+		if (!response.get(0).startsWith("202"))
 		{
-			response = HttpGet(url);
-			if (!response.get(0).startsWith("202"))
-			{
-				Logger.getInstance().logError("Error sending message. Response: " + response.get(0) + " - " + response.get(1), null, getGatewayId());
-				msg.setRefNo(null);
-				msg.setDispatchDate(null);
-				msg.setMessageStatus(MessageStatuses.FAILED);
-				msg.setFailureCause(getFailureCause(response));
-				return false;
-			}
-			else
-			{
-				Logger.getInstance().logInfo("Message sent. Response: " + response.get(0) + " - " + response.get(1), null, getGatewayId());
-			}
+			Logger.getInstance().logError("Error sending message. Response: " + response.get(0) + " - " + response.get(1), null, getGatewayId());
+			msg.setRefNo(null);
+			msg.setDispatchDate(null);
+			msg.setMessageStatus(MessageStatuses.FAILED);
+			msg.setFailureCause(getFailureCause(response));
+			return false;
+		}
+		else
+		{
+			Logger.getInstance().logInfo("Message sent. Response: " + response.get(0) + " - " + response.get(1), null, getGatewayId());
 		}
 		//msg.setRefNo("");
 		msg.setDispatchDate(new Date());
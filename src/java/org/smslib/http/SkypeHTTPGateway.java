@@ -86,10 +86,7 @@ public class SkypeHTTPGateway extends HTTPGateway
 			reqLine = ExpandHttpHeaders(request);
 			url = new URL(this.providerHost + "/send" + "?" + reqLine);
 			System.out.println(">>>>>>>>>>>> " + url.toString());
-			synchronized (this.SYNC_Commander)
-			{
-				response = HttpGet(url);
-			}
+			response = HttpGet(url);
 			System.out.println(">>>>>>>>>>>>>>>>>>>>>  " + response.get(0));
 			switch (Integer.parseInt(response.get(0)))
 			{
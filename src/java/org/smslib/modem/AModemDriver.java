@@ -21,11 +21,13 @@
 package org.smslib.modem;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.smslib.GatewayException;
@@ -39,8 +41,10 @@ import org.smslib.AGateway.GatewayStatuses;
 import org.smslib.AGateway.Protocols;
 import org.smslib.InboundMessage.MessageClasses;
 import org.smslib.helper.Logger;
+import org.smslib.modem.athandler.AATHandler;
 import org.smslib.notify.CallNotification;
 import org.smslib.notify.InboundMessageNotification;
+import org.smslib.threading.AServiceScheduler;
 import org.smslib.threading.AServiceThread;
 
 /**
@@ -48,10 +52,6 @@ import org.smslib.threading.AServiceThread;
  */
 public abstract class AModemDriver
 {
-	private static final String rxErrorWithCode = "\\s*[\\p{ASCII}]*\\s*\\+(CM[ES])\\s+ERROR: (\\d+)\\s";
-
-	private static final String rxPlainError = "\\s*[\\p{ASCII}]*\\s*(ERROR|NO CARRIER|NO DIALTONE)\\s";
-
 	private Object SYNC_Reader, SYNC_Commander, SYNC_InboundReader;
 
 	private ModemGateway gateway;
@@ -60,7 +60,15 @@ public abstract class AModemDriver
 
 	private volatile boolean connected;
 
-	private CharQueue charQueue;
+	private volatile ByteRingBuffer ringBuffer;
+
+	private ResponseFramer framer;
+
+	private final AtomicBoolean unsolicitedPending = new AtomicBoolean();
+
+	private final Runnable unsolicitedReader = new UnsolicitedReader();
+
+	private final boolean dumpQueues;
 
 	private ModemReader modemReader;
 
@@ -95,7 +103,8 @@ public abstract class AModemDriver
 		setGateway(myGateway);
 		setConnected(false);
 		setDataReceived(false);
-		setCharQueue(new CharQueue());
+		setRingBuffer(new ByteRingBuffer(Service.getInstance().getSettings().SERIAL_BUFFER_SIZE));
+		this.dumpQueues = (System.getProperty("smslib.dumpqueues") != null);
 	}
 
 	protected abstract void connectPort() throws GatewayException, IOException, InterruptedException;
@@ -111,11 +120,12 @@ public abstract class AModemDriver
 		{
 			try
 			{
+				setRingBuffer(new ByteRingBuffer(Service.getInstance().getSettings().SERIAL_BUFFER_SIZE));
 				connectPort();
 				setConnected(true);
 				setKeepAlive(new KeepAlive("KeepAlive [" + getGateway().getGatewayId() + "]", Service.getInstance().getSettings().SERIAL_KEEPALIVE_INTERVAL * 1000));
 				setCnmiEmulationProcessor(new CNMIEmulatorProcessor("CNMIEmulatorProcessor [" + getGateway().getGatewayId() + "]", Service.getInstance().getSettings().CNMI_EMULATOR_INTERVAL * 1000));
-				setModemReader(new ModemReader());
+				if (hasReaderThread()) setModemReader(new ModemReader());
 				setAsyncNotifier(new AsyncNotifier());
 				setAsyncMessageProcessor(new AsyncMessageProcessor());
 				clearBuffer();
@@ -289,11 +299,119 @@ public abstract class AModemDriver
 
 	protected abstract int read() throws IOException;
 
+	/**
+	 * Reads a chunk of received data. The default implementation calls
+	 * {@link #read()} for as long as the port has data; drivers should
+	 * override it with a bulk read from their input stream.
+	 * 
+	 * @return The number of bytes read, or -1 at end of stream.
+	 * @since 3.5
+	 */
+	protected int read(byte[] b, int off, int len) throws IOException
+	{
+		int c = read();
+		if (c == -1) return -1;
+		b[off] = (byte) c;
+		int n = 1;
+		while ((n < len) && portHasData())
+		{
+			c = read();
+			if (c == -1) break;
+			b[off + n++] = (byte) c;
+		}
+		return n;
+	}
+
 	protected abstract boolean portHasData() throws IOException;
 
+	/**
+	 * Tells whether the driver needs the reader thread, which waits for the
+	 * port to signal data and then calls {@link #read(byte[], int, int)}.
+	 * Drivers that are notified of incoming data themselves return false and
+	 * pass the data to {@link #dataReceived(byte[], int, int)}.
+	 * 
+	 * @since 3.5
+	 */
+	protected boolean hasReaderThread()
+	{
+		return true;
+	}
+
+	/**
+	 * Hands received data to the response parser. All calls for one
+	 * connection must come from one thread at a time, and they must not
+	 * block. Complete lines that arrive while no command is running are
+	 * checked for unsolicited responses right away.
+	 * 
+	 * @since 3.5
+	 */
+	protected void dataReceived(byte[] b, int off, int len)
+	{
+		if (this.dumpQueues)
+		{
+			try
+			{
+				Logger.getInstance().logDebug("IN READER QUEUE : " + formatLog(new String(b, off, len, "ISO-8859-1")), null, getGateway().getGatewayId());
+			}
+			catch (UnsupportedEncodingException e)
+			{
+				// ISO-8859-1 is always supported.
+			}
+		}
+		int stored = getRingBuffer().put(b, off, len);
+		if (stored < len) Logger.getInstance().logWarn("Reader buffer full, dropped " + (len - stored) + " bytes.", null, getGateway().getGatewayId());
+		for (int i = off; i < off + stored; i++)
+		{
+			if (b[i] == 0x0a)
+			{
+				if (this.unsolicitedPending.compareAndSet(false, true)) AServiceScheduler.getInstance().schedule(this.unsolicitedReader, 0);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Takes the unsolicited responses waiting at the head of the buffer and
+	 * dispatches them. Stops at the first line that is not one, which is left
+	 * for the command waiting for it.
+	 */
+	void readUnsolicited() throws IOException
+	{
+		ResponseFramer framer = getFramer();
+		ByteRingBuffer ring = getRingBuffer();
+		int c, length;
+		while (true)
+		{
+			while (((c = ring.get(0)) == 0x0a) || (c == 0x0d))
+				ring.skip(1);
+			if ((c == -1) || ((length = ring.indexOf(0x0a, 0)) == -1)) return;
+			framer.reset();
+			if (framer.peekLine(ring, length) != ResponseFramer.UNSOLICITED) return;
+			ring.skip(length + 1);
+			dispatchUnsolicited(framer.dropLine(), AsyncEvents.NOTHING);
+		}
+	}
+
+	/**
+	 * @return True if the response is of the requested type, and so was not
+	 *         dispatched.
+	 */
+	private boolean dispatchUnsolicited(String line, AsyncEvents eventResponse) throws IOException
+	{
+		Logger.getInstance().logDebug("URC: " + formatLog(line), null, getGateway().getGatewayId());
+		AsyncEvents event = getGateway().getATHandler().processUnsolicitedEvents(line);
+		if (event == eventResponse && eventResponse != AsyncEvents.NOTHING) { return true; }
+		if ((event == AsyncEvents.INBOUNDMESSAGE) || (event == AsyncEvents.INBOUNDSTATUSREPORTMESSAGE) || (event == AsyncEvents.INBOUNDCALL) || (event == AsyncEvents.USSDRESPONSE))
+		{
+			AsyncNotifier notifier = getAsyncNotifier();
+			if (notifier != null) notifier.setEvent(event, line);
+		}
+		return false;
+	}
+
 	public boolean dataAvailable() throws InterruptedException
 	{
-		return (getCharQueue().peek() == -1 ? false : true);
+		return (getRingBuffer().peek(Service.getInstance().getSettings().SERIAL_TIMEOUT) != -1);
 	}
 
 	public void write(String s) throws IOException
@@ -304,8 +422,10 @@ public abstract class AModemDriver
 
 	public void addToQueue(String s)
 	{
+		byte[] b = new byte[s.length()];
 		for (int i = 0; i < s.length(); i++)
-			getCharQueue().put((byte) s.charAt(i));
+			b[i] = (byte) s.charAt(i);
+		getRingBuffer().put(b, 0, b.length);
 	}
 
 	public String getResponse() throws GatewayException, TimeoutException, IOException, InterruptedException
@@ -321,73 +441,29 @@ public abstract class AModemDriver
 	*/
 	public String getResponse(AsyncEvents eventResponse) throws GatewayException, TimeoutException, IOException, InterruptedException
 	{
-		String response;
-		byte c;
+		ResponseFramer framer = getFramer();
+		int c, kind;
 		setLastError(-1);
-		StringBuffer buffer = new StringBuffer(Service.getInstance().getSettings().SERIAL_BUFFER_SIZE);
+		framer.reset();
 		try
 		{
 			while (true)
 			{
-				while ((getCharQueue().peek() == 0x0a) || (getCharQueue().peek() == 0x0d))
-				{
-					getCharQueue().get();
-				}
-				while (true)
-				{
-					c = getCharQueue().get();
-					if (System.getProperty("smslib.dumpqueues") != null) Logger.getInstance().logDebug("OUT READER QUEUE : " + (int) c + " / " + (char) c, null, getGateway().getGatewayId());
-					if (c != 0x0a) buffer.append((char) c);
-					else break;
-				}
-				if (buffer.charAt(buffer.length() - 1) != 0x0d) buffer.append((char) 0x0d);
-				response = buffer.toString();
-				if (getGateway().getATHandler().matchesTerminator(response))
-				{
-					break;
-				}
-			}
-			Logger.getInstance().logDebug("BUFFER: " + buffer, null, getGateway().getGatewayId());
-			if (getGateway().getATHandler().isUnsolicitedResponse(buffer.toString()))
-			{
-				AsyncEvents event = getGateway().getATHandler().processUnsolicitedEvents(buffer.toString());
-				if (event == eventResponse && eventResponse != AsyncEvents.NOTHING) { return buffer.toString(); }
-				if ((event == AsyncEvents.INBOUNDMESSAGE) || (event == AsyncEvents.INBOUNDSTATUSREPORTMESSAGE) || (event == AsyncEvents.INBOUNDCALL) || (event == AsyncEvents.USSDRESPONSE)) getAsyncNotifier().setEvent(event, buffer.toString());
-				return getResponse();
-			}
-			// Try to interpret error code
-			if (response.matches(rxErrorWithCode))
-			{
-				Pattern p = Pattern.compile(rxErrorWithCode);
-				Matcher m = p.matcher(response);
-				if (m.find())
+				while (((c = peekResponse()) == 0x0a) || (c == 0x0d))
+					getRingBuffer().skip(1);
+				if ((c == '>') && framer.isEmpty()) kind = framer.takePrompt(getRingBuffer());
+				else kind = framer.takeLine(getRingBuffer(), lineLength());
+				if (kind == ResponseFramer.UNSOLICITED)
 				{
-					try
-					{
-						if (m.group(1).equals("CME"))
-						{
-							int code = Integer.parseInt(m.group(2));
-							setLastError(5000 + code);
-						}
-						else if (m.group(1).equals("CMS"))
-						{
-							int code = Integer.parseInt(m.group(2));
-							setLastError(6000 + code);
-						}
-						else throw new GatewayException("Invalid error response: " + m.group(1));
-					}
-					catch (NumberFormatException e)
-					{
-						Logger.getInstance().logDebug("Error on number conversion while interpreting response: ", null, getGateway().getGatewayId());
-						throw new GatewayException("Cannot convert error code number.");
-					}
+					String line = framer.dropLine();
+					if (dispatchUnsolicited(line, eventResponse)) return line;
 				}
-				else throw new GatewayException("Cannot match error code. Should never happen!");
+				else if (kind != ResponseFramer.INTERMEDIATE) break;
 			}
-			else if (response.matches(rxPlainError)) setLastError(9000);
-			else if (response.indexOf("OK") >= 0) setLastError(0);
-			else setLastError(10000);
-			Logger.getInstance().logDebug("RECV :" + formatLog(buffer.toString()), null, getGateway().getGatewayId());
+			setLastError(framer.getError());
+			String response = framer.getResponse();
+			if (Logger.getInstance().isDebugEnabled()) Logger.getInstance().logDebug("RECV :" + formatLog(response), null, getGateway().getGatewayId());
+			return response;
 		}
 		catch (InterruptedException e)
 		{
@@ -396,10 +472,105 @@ public abstract class AModemDriver
 		}
 		catch (TimeoutException e)
 		{
-			Logger.getInstance().logDebug("Buffer contents on timeout: " + buffer, null, getGateway().getGatewayId());
+			Logger.getInstance().logDebug("Buffer contents on timeout: " + framer.getResponse(), null, getGateway().getGatewayId());
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits for the "&gt; " prompt with which the modem asks for the message
+	 * body. Lines before the prompt, such as an echo of the command, are
+	 * skipped. If the modem answers with a final result code instead, that
+	 * is available from {@link #getLastError()}.
+	 * 
+	 * @return True if the modem prompted.
+	 * @since 3.5
+	 */
+	public boolean waitForPrompt() throws GatewayException, TimeoutException, IOException, InterruptedException
+	{
+		ResponseFramer framer = getFramer();
+		int c, kind;
+		setLastError(-1);
+		while (true)
+		{
+			while (((c = peekResponse()) == 0x0a) || (c == 0x0d))
+				getRingBuffer().skip(1);
+			framer.reset();
+			if (c == '>')
+			{
+				framer.takePrompt(getRingBuffer());
+				Logger.getInstance().logDebug("RECV :> ", null, getGateway().getGatewayId());
+				return true;
+			}
+			kind = framer.takeLine(getRingBuffer(), lineLength());
+			if (kind == ResponseFramer.UNSOLICITED) dispatchUnsolicited(framer.dropLine(), AsyncEvents.NOTHING);
+			else if (kind == ResponseFramer.FINAL)
+			{
+				setLastError(framer.getError());
+				Logger.getInstance().logDebug("RECV :" + formatLog(framer.getResponse()), null, getGateway().getGatewayId());
+				return false;
+			}
+		}
+	}
+
+	private ResponseFramer getFramer()
+	{
+		AATHandler handler = getGateway().getATHandler();
+		if ((this.framer == null) || (this.framer.getHandler() != handler)) this.framer = new ResponseFramer(handler);
+		return this.framer;
+	}
+
+	/**
+	 * Waits for the first byte of a response line.
+	 */
+	private int peekResponse() throws TimeoutException, InterruptedException
+	{
+		while (true)
+		{
+			try
+			{
+				int c = getRingBuffer().peek(Service.getInstance().getSettings().SERIAL_TIMEOUT);
+				if (c == -1) throw new TimeoutException("No response from device.");
+				return c;
+			}
+			catch (InterruptedException e)
+			{
+				checkInterrupt(e);
+			}
+		}
+	}
+
+	/**
+	 * Waits for the end of the current response line and returns its length,
+	 * without the LF.
+	 */
+	private int lineLength() throws TimeoutException, InterruptedException
+	{
+		int from = 0;
+		while (true)
+		{
+			try
+			{
+				int length = getRingBuffer().indexOf(0x0a, from, Service.getInstance().getSettings().SERIAL_TIMEOUT);
+				if (length == -1) throw new TimeoutException("No response from device.");
+				return length;
+			}
+			catch (InterruptedException e)
+			{
+				checkInterrupt(e);
+				from = 0;
+			}
+		}
+	}
+
+	private void checkInterrupt(InterruptedException e) throws InterruptedException
+	{
+		if (getGateway().getStatus() == GatewayStatuses.STARTED) Logger.getInstance().logWarn("Ignoring InterruptedException while waiting for a response.", null, getGateway().getGatewayId());
+		else
+		{
+			Logger.getInstance().logWarn("Re-throwing InterruptedException while waiting for a response - should be during shutdown...", null, getGateway().getGatewayId());
 			throw e;
 		}
-		return buffer.toString();
 	}
 
 	public void clearBuffer() throws IOException, InterruptedException
@@ -409,7 +580,7 @@ public abstract class AModemDriver
 			Logger.getInstance().logDebug("clearBuffer() called.", null, getGateway().getGatewayId());
 			Thread.sleep(Service.getInstance().getSettings().SERIAL_CLEAR_WAIT);
 			clear();
-			getCharQueue().clear();
+			getRingBuffer().clear();
 		}
 	}
 
@@ -500,106 +671,29 @@ public abstract class AModemDriver
 		return response.toString();
 	}
 
-	private class CharQueue
+	/**
+	 * Picks up unsolicited responses once the command running, if any, is
+	 * done with the buffer.
+	 */
+	private class UnsolicitedReader implements Runnable
 	{
-		byte[] buffer;
-
-		int bufferStart, bufferEnd;
-
-		public CharQueue()
-		{
-			this.buffer = null;
-			this.bufferStart = 0;
-			this.bufferEnd = 0;
-		}
-
-		public synchronized void put(byte c)
-		{
-			if (this.buffer == null) this.buffer = new byte[Service.getInstance().getSettings().SERIAL_BUFFER_SIZE];
-			this.buffer[this.bufferEnd] = c;
-			this.bufferEnd++;
-			if (this.bufferEnd == Service.getInstance().getSettings().SERIAL_BUFFER_SIZE) this.bufferEnd = 0;
-			if (System.getProperty("smslib.dumpqueues") != null) Logger.getInstance().logDebug("IN READER QUEUE : " + (int) c + " / " + (char) c, null, getGateway().getGatewayId());
-			notifyAll();
-		}
-
-		public synchronized byte get() throws TimeoutException, InterruptedException
-		{
-			byte c;
-			if (this.buffer == null) this.buffer = new byte[Service.getInstance().getSettings().SERIAL_BUFFER_SIZE];
-			while (true)
-			{
-				try
-				{
-					if (this.bufferStart == this.bufferEnd) wait(Service.getInstance().getSettings().SERIAL_TIMEOUT);
-					if (this.bufferStart == this.bufferEnd) throw new TimeoutException("No response from device.");
-					c = this.buffer[this.bufferStart];
-					this.bufferStart++;
-					if (this.bufferStart == Service.getInstance().getSettings().SERIAL_BUFFER_SIZE) this.bufferStart = 0;
-					return c;
-				}
-				catch (InterruptedException e)
-				{
-					if (getGateway().getStatus() == GatewayStatuses.STARTED) Logger.getInstance().logWarn("Ignoring InterruptedException in Queue.get().", null, getGateway().getGatewayId());
-					else
-					{
-						Logger.getInstance().logWarn("Re-throwing InterruptedException in Queue.get() - should be during shutdown...", null, getGateway().getGatewayId());
-						throw new InterruptedException();
-					}
-				}
-			}
-		}
-
-		public synchronized byte peek() throws InterruptedException
+		public void run()
 		{
-			if (this.buffer == null) this.buffer = new byte[Service.getInstance().getSettings().SERIAL_BUFFER_SIZE];
-			while (true)
+			synchronized (getSYNCCommander())
 			{
+				// Cleared only now: until this reader holds the lock, newly
+				// received lines need no further reader.
+				AModemDriver.this.unsolicitedPending.set(false);
+				if (!isConnected()) return;
 				try
 				{
-					if (this.bufferStart == this.bufferEnd) wait(Service.getInstance().getSettings().SERIAL_TIMEOUT);
-					if (this.bufferStart == this.bufferEnd) return -1;
-					return this.buffer[this.bufferStart];
+					readUnsolicited();
 				}
-				catch (InterruptedException e)
-				{
-					if (getGateway().getStatus() == GatewayStatuses.STARTED) Logger.getInstance().logWarn("Ignoring InterruptedException in Queue.peek().", e, getGateway().getGatewayId());
-					else
-					{
-						Logger.getInstance().logWarn("Re-throwing InterruptedException in Queue.peek() - should be during shutdown...", e, getGateway().getGatewayId());
-						throw new InterruptedException();
-					}
-				}
-			}
-		}
-
-		public synchronized String peek(int sizeToRead)
-		{
-			int i, size;
-			StringBuffer result;
-			if (this.buffer == null) this.buffer = new byte[Service.getInstance().getSettings().SERIAL_BUFFER_SIZE];
-			size = sizeToRead;
-			if (this.bufferStart == this.bufferEnd) return "";
-			result = new StringBuffer(size);
-			i = this.bufferStart;
-			while (size > 0)
-			{
-				if ((this.buffer[i] != 0x0a) && (this.buffer[i] != 0x0d))
+				catch (Exception e)
 				{
-					result.append((char) this.buffer[i]);
-					size--;
+					Logger.getInstance().logError("Error while reading unsolicited responses.", e, getGateway().getGatewayId());
 				}
-				i++;
-				if (i == Service.getInstance().getSettings().SERIAL_BUFFER_SIZE) i = 0;
-				if (i == this.bufferEnd) break;
 			}
-			return result.toString();
-		}
-
-		public synchronized void clear()
-		{
-			this.bufferStart = 0;
-			this.bufferEnd = 0;
 		}
 	}
 
@@ -616,8 +710,8 @@ public abstract class AModemDriver
 		@Override
 		public void run()
 		{
-			int c;
-			String data;
+			byte[] chunk = new byte[4096];
+			int n;
 			while (isConnected())
 			{
 				try
@@ -626,25 +720,15 @@ public abstract class AModemDriver
 					{
 						if (!isDataReceived()) getSYNCReader().wait();
 						if (!isConnected()) break;
-						c = read();
-						while (c != -1)
+						do
 						{
-							getCharQueue().put((byte) c);
-							if (!portHasData()) break;
-							c = read();
+							n = read(chunk, 0, chunk.length);
+							if (n <= 0) break;
+							dataReceived(chunk, 0, n);
 						}
+						while (portHasData());
 						setDataReceived(false);
 					}
-					data = getCharQueue().peek(6);
-					for (int i = 0; i < getGateway().getATHandler().getUnsolicitedResponses().length; i++)
-					{
-						if (data.indexOf(getGateway().getATHandler().getUnsolicitedResponse(i)) >= 0)
-						{
-							Thread.sleep(100);
-							getKeepAlive().interrupt();
-							break;
-						}
-					}
 				}
 				catch (InterruptedException e)
 				{
@@ -1003,14 +1087,14 @@ public abstract class AModemDriver
 		this.dataReceived = myDataReceived;
 	}
 
-	protected CharQueue getCharQueue()
+	ByteRingBuffer getRingBuffer()
 	{
-		return this.charQueue;
+		return this.ringBuffer;
 	}
 
-	protected void setCharQueue(CharQueue myCharQueue)
+	void setRingBuffer(ByteRingBuffer myRingBuffer)
 	{
-		this.charQueue = myCharQueue;
+		this.ringBuffer = myRingBuffer;
 	}
 
 	protected Object getSYNCReader()
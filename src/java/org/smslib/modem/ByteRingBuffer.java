@@ -0,0 +1,231 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.smslib.modem;
+
+/**
+ * Single-producer / single-consumer byte ring used between the modem reader
+ * thread and the thread waiting for AT responses.
+ * <p>
+ * The reader thread stores whole chunks with {@link #put(byte[], int, int)};
+ * the consumer is woken at most once per chunk and only if it is actually
+ * waiting. The consumer scans for line terminators in place with
+ * {@link #indexOf(int, int, long)} and copies out complete lines, so bytes
+ * are not moved one by one across threads.
+ * <p>
+ * Only one thread may put and only one thread may consume at a time.
+ */
+final class ByteRingBuffer
+{
+	private final byte[] buffer;
+
+	private final int mask;
+
+	/** Next position to read; written by the consumer only. */
+	private volatile long head;
+
+	/** Next position to write; written by the producer only. */
+	private volatile long tail;
+
+	private volatile boolean waiting;
+
+	private final Object lock = new Object();
+
+	/**
+	 * Creates a ring holding at least the given number of bytes. The
+	 * capacity is rounded up to a power of two.
+	 * 
+	 * @param minCapacity
+	 *            The minimum number of bytes the ring can hold.
+	 */
+	ByteRingBuffer(int minCapacity)
+	{
+		int capacity = Integer.highestOneBit(Math.max(minCapacity, 16) - 1) << 1;
+		this.buffer = new byte[capacity];
+		this.mask = capacity - 1;
+	}
+
+	int capacity()
+	{
+		return this.buffer.length;
+	}
+
+	int size()
+	{
+		return (int) (this.tail - this.head);
+	}
+
+	/**
+	 * Stores a chunk and wakes the consumer if it waits for data. Bytes that
+	 * do not fit are not stored.
+	 * 
+	 * @return The number of bytes stored.
+	 */
+	int put(byte[] b, int off, int len)
+	{
+		long t = this.tail;
+		int n = Math.min(len, this.buffer.length - (int) (t - this.head));
+		if (n <= 0) return 0;
+		int pos = (int) t & this.mask;
+		int first = Math.min(n, this.buffer.length - pos);
+		System.arraycopy(b, off, this.buffer, pos, first);
+		if (first < n) System.arraycopy(b, off + first, this.buffer, 0, n - first);
+		this.tail = t + n;
+		if (this.waiting)
+		{
+			synchronized (this.lock)
+			{
+				this.lock.notifyAll();
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Waits until the ring holds more than <code>count</code> bytes.
+	 * 
+	 * @param count
+	 *            The number of bytes already seen by the caller.
+	 * @param timeout
+	 *            The maximum time to wait (milliseconds).
+	 * @return False if no new bytes arrived in time.
+	 */
+	boolean await(int count, long timeout) throws InterruptedException
+	{
+		if (size() > count) return true;
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized (this.lock)
+		{
+			try
+			{
+				this.waiting = true;
+				while (size() <= count)
+				{
+					long left = deadline - System.currentTimeMillis();
+					if (left <= 0) return false;
+					this.lock.wait(left);
+				}
+				return true;
+			}
+			finally
+			{
+				this.waiting = false;
+			}
+		}
+	}
+
+	/**
+	 * Returns the next byte without removing it, waiting if the ring is
+	 * empty.
+	 * 
+	 * @return The byte (0-255) or -1 if nothing arrived in time.
+	 */
+	int peek(long timeout) throws InterruptedException
+	{
+		if (!await(0, timeout)) return -1;
+		return this.buffer[(int) this.head & this.mask] & 0xff;
+	}
+
+	/**
+	 * Finds the next occurrence of a byte, waiting for more data while it is
+	 * not there. The wait gives up once no byte at all arrives for
+	 * <code>timeout</code> milliseconds.
+	 * 
+	 * @param b
+	 *            The byte to look for.
+	 * @param from
+	 *            Offset from the head where the scan starts.
+	 * @return The offset of the byte from the head, or -1 on timeout.
+	 */
+	int indexOf(int b, int from, long timeout) throws InterruptedException
+	{
+		int scanned = from;
+		while (true)
+		{
+			int available = size();
+			int i = indexOf(b, scanned);
+			if (i >= 0) return i;
+			scanned = available;
+			if (!await(available, timeout)) return -1;
+		}
+	}
+
+	/**
+	 * Removes <code>len</code> bytes, appending them as ISO-8859-1 characters.
+	 */
+	void take(StringBuffer out, int len)
+	{
+		long h = this.head;
+		for (int i = 0; i < len; i++)
+			out.append((char) (this.buffer[(int) (h + i) & this.mask] & 0xff));
+		this.head = h + len;
+	}
+
+	/**
+	 * Copies <code>len</code> bytes into a character array, as ISO-8859-1
+	 * characters, without removing them.
+	 */
+	void copy(char[] out, int off, int len)
+	{
+		long h = this.head;
+		for (int i = 0; i < len; i++)
+			out[off + i] = (char) (this.buffer[(int) (h + i) & this.mask] & 0xff);
+	}
+
+	/**
+	 * Finds the next occurrence of a byte among the bytes stored, without
+	 * waiting.
+	 * 
+	 * @return The offset of the byte from the head, or -1.
+	 */
+	int indexOf(int b, int from)
+	{
+		long h = this.head;
+		int available = (int) (this.tail - h);
+		for (int i = from; i < available; i++)
+			if ((this.buffer[(int) (h + i) & this.mask] & 0xff) == b) return i;
+		return -1;
+	}
+
+	/**
+	 * Returns the byte at the given offset from the head without waiting.
+	 * 
+	 * @return The byte (0-255) or -1 if it has not arrived yet.
+	 */
+	int get(int offset)
+	{
+		long h = this.head;
+		if (offset >= (int) (this.tail - h)) return -1;
+		return this.buffer[(int) (h + offset) & this.mask] & 0xff;
+	}
+
+	void skip(int len)
+	{
+		this.head += len;
+	}
+
+	/**
+	 * Drops everything stored so far. Must be called from the consumer side.
+	 */
+	void clear()
+	{
+		this.head = this.tail;
+	}
+}
@@ -72,6 +72,7 @@ class IPModemDriver extends AModemDriver
 	@Override
 	protected void connectPort() throws GatewayException, IOException, InterruptedException
 	{
+		if (getGateway().getIpProtocol() == IPProtocols.RAW) throw new GatewayException("The RAW IP protocol is only supported by NIOModemGateway.");
 		try
 		{
 			Logger.getInstance().logInfo("Opening: " + this.ipAddress + " @" + this.ipPort, null, getGateway().getGatewayId());
@@ -153,6 +154,13 @@ class IPModemDriver extends AModemDriver
 		return this.in.read();
 	}
 
+	@Override
+	protected int read(byte[] b, int off, int len) throws IOException
+	{
+		int available = this.in.available();
+		return this.in.read(b, off, (available > 0 ? Math.min(available, len) : 1));
+	}
+
 	TelnetClient getTc()
 	{
 		return this.tc;
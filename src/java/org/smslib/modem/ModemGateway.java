@@ -76,12 +76,26 @@ public class ModemGateway extends AGateway
 		/**
 		 * IP connected modem.
 		 */
-		IP
+		IP,
+		/**
+		 * IP connected modem, served by the NIO driver which shares one
+		 * thread among all such modems.
+		 * 
+		 * @since 3.5
+		 */
+		IP_NIO
 	}
 
 	public enum IPProtocols
 	{
-		TEXT, BINARY
+		TEXT, BINARY,
+		/**
+		 * No telnet; the modem's bytes are sent as they are, as with raw TCP
+		 * serial port servers. Only supported by {@link NIOModemGateway}.
+		 * 
+		 * @since 3.5
+		 */
+		RAW
 	}
 
 	private AModemDriver driver;
@@ -138,6 +152,7 @@ public class ModemGateway extends AGateway
 		else
 		{
 			if (myType == ModemTypes.SERIAL) setDriver(new SerialModemDriver(this, getModemDevice() + ":" + getModemParms()));
+			else if (myType == ModemTypes.IP_NIO) setDriver(new NIOModemDriver(this, getModemDevice() + ":" + getModemParms()));
 			else setDriver(new IPModemDriver(this, getModemDevice() + ":" + getModemParms()));
 		}
 		setAtHandler(AATHandler.load(this, this.manufacturer, this.model));
@@ -187,9 +202,12 @@ public class ModemGateway extends AGateway
 	{
 		Logger.getInstance().logInfo("Starting gateway, using " + getATHandler().getDescription() + " AT Handler.", null, getGatewayId());
 		getDriver().connect();
-		Logger.getInstance().logInfo("Signal level/bit error rate: " + getATHandler().getSignalLevel(), null, getGatewayId());
-		Logger.getInstance().logInfo("Network registration: " + getATHandler().getNetworkRegistration(), null, getGatewayId());
-		Logger.getInstance().logInfo("Network operator: " + getATHandler().getNetworkOperator(), null, getGatewayId());
+		synchronized (getDriver().getSYNCCommander())
+		{
+			Logger.getInstance().logInfo("Signal level/bit error rate: " + getATHandler().getSignalLevel(), null, getGatewayId());
+			Logger.getInstance().logInfo("Network registration: " + getATHandler().getNetworkRegistration(), null, getGatewayId());
+			Logger.getInstance().logInfo("Network operator: " + getATHandler().getNetworkOperator(), null, getGatewayId());
+		}
 		super.startGateway();
 		Logger.getInstance().logInfo("Gateway started.", null, getGatewayId());
 	}
@@ -198,7 +216,10 @@ public class ModemGateway extends AGateway
 	public void stopGateway() throws TimeoutException, GatewayException, IOException, InterruptedException
 	{
 		Logger.getInstance().logInfo("Stopping gateway...", null, getGatewayId());
-		getATHandler().done();
+		synchronized (getDriver().getSYNCCommander())
+		{
+			getATHandler().done();
+		}
 		super.stopGateway();
 		getDriver().disconnect();
 		Logger.getInstance().logInfo("Gateway stopped.", null, getGatewayId());
@@ -460,57 +481,76 @@ public class ModemGateway extends AGateway
 		}
 	}
 
+	/**
+	 * Sends the parts of a message one after the other. The first part waits
+	 * for the modem as Settings.AT_WAIT_PROMPT says; the later parts are
+	 * always written on the "&gt; " prompt, without the AT_WAIT_CGMS and
+	 * SERIAL_CLEAR_WAIT pauses.
+	 */
 	private boolean sendMessagePDU(OutboundMessage msg) throws TimeoutException, GatewayException, IOException, InterruptedException
 	{
-		boolean ok = false;
 		List<String> pdus = msg.getPdus(getSmscNumber(), this.outMpRefNo);
-		for (String pdu : pdus)
+		List<String> refNos = new ArrayList<String>(pdus.size());
+		boolean debug = Logger.getInstance().isDebugEnabled();
+		boolean done = false;
+		try
 		{
-			Pdu newPdu = new PduParser().parsePdu(pdu);
-			Logger.getInstance().logDebug(newPdu.toString(), null, getGatewayId());
-			int j = pdu.length() / 2;
-			if (getSmscNumber() == null)
-			{
-				// Do nothing on purpose!
-			}
-			else if (getSmscNumber().length() == 0) j--;
-			else
-			{
-				int smscNumberLen = getSmscNumber().length();
-				if (getSmscNumber().charAt(0) == '+') smscNumberLen--;
-				if (smscNumberLen % 2 != 0) smscNumberLen++;
-				int smscLen = (2 + smscNumberLen) / 2;
-				j = j - smscLen - 1;
-			}
-			Logger.getInstance().logDebug("Sending Pdu: " + pdu, null, getGatewayId());
-			int refNo = getATHandler().sendMessage(j, pdu, null, null);
-			if (refNo >= 0)
+			for (String pdu : pdus)
 			{
-				msg.setGatewayId(getGatewayId());
-				msg.setRefNo(String.valueOf(refNo));
-				msg.setDispatchDate(new Date());
-				msg.setMessageStatus(MessageStatuses.SENT);
-				msg.setFailureCause(FailureCauses.NO_ERROR);
+				if (debug)
+				{
+					Logger.getInstance().logDebug(new PduParser().parsePdu(pdu).toString(), null, getGatewayId());
+					Logger.getInstance().logDebug("Sending Pdu: " + pdu, null, getGatewayId());
+				}
+				int j = pdu.length() / 2;
+				if (getSmscNumber() == null)
+				{
+					// Do nothing on purpose!
+				}
+				else if (getSmscNumber().length() == 0) j--;
+				else
+				{
+					int smscNumberLen = getSmscNumber().length();
+					if (getSmscNumber().charAt(0) == '+') smscNumberLen--;
+					if (smscNumberLen % 2 != 0) smscNumberLen++;
+					int smscLen = (2 + smscNumberLen) / 2;
+					j = j - smscLen - 1;
+				}
+				// Later parts go out back to back on the prompt: the modem has
+				// just answered the previous part and is ready for the next.
+				int refNo = (refNos.isEmpty() ? getATHandler().sendMessage(j, pdu, null, null) : getATHandler().sendMessage(j, pdu, null, null, true));
+				if (refNo < 0) break;
+				refNos.add(String.valueOf(refNo));
 				incOutboundMessageCount();
-				ok = true;
-			}
-			else
-			{
-				msg.setRefNo(null);
-				msg.setDispatchDate(null);
-				msg.setMessageStatus(MessageStatuses.FAILED);
-				msg.setFailureCause(FailureCauses.UNKNOWN);
-				ok = false;
-				msg.setErrorMessage(driver.getLastErrorText());
-				break;
 			}
-			if (!ok) break;
+			done = true;
+		}
+		finally
+		{
+			// Whether the modem still holds the link is unknown after a
+			// failure, so ask again with the next message.
+			if (!done) setLastKeepLinkOpen(-1);
 		}
 		if (pdus.size() > 1)
 		{
 			this.outMpRefNo = (this.outMpRefNo + 1) % 65536;
 		}
-		return ok;
+		msg.setPartRefNos(refNos);
+		if (refNos.size() == pdus.size())
+		{
+			msg.setGatewayId(getGatewayId());
+			msg.setRefNo(refNos.get(refNos.size() - 1));
+			msg.setDispatchDate(new Date());
+			msg.setMessageStatus(MessageStatuses.SENT);
+			msg.setFailureCause(FailureCauses.NO_ERROR);
+			return true;
+		}
+		msg.setRefNo(null);
+		msg.setDispatchDate(null);
+		msg.setMessageStatus(MessageStatuses.FAILED);
+		msg.setFailureCause(FailureCauses.UNKNOWN);
+		msg.setErrorMessage(driver.getLastErrorText());
+		return false;
 	}
 
 	private void readMessagesPDU(Collection<InboundMessage> msgList, MessageClasses messageClass, int myLimit) throws TimeoutException, GatewayException, IOException, InterruptedException
@@ -0,0 +1,286 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.modem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.smslib.helper.Logger;
+
+/**
+ * A single thread that reads from the sockets of all NIO modem drivers.
+ * <p>
+ * Each registered socket gets its own handler, which is called on the
+ * reactor thread as soon as data arrives, and again whenever a socket that
+ * could not take all written data is ready for more. Handlers must not block, since
+ * they hold up every other modem. The thread starts with the first socket
+ * and ends some time after the last one is closed.
+ */
+final class ModemReactor implements Runnable
+{
+	/**
+	 * Receives the data of one socket.
+	 */
+	interface Handler
+	{
+		void received(byte[] b, int off, int len);
+
+		/**
+		 * Called when the socket can take more data after a
+		 * {@link ModemReactor#requestWrite(SocketChannel)}.
+		 * 
+		 * @return True once nothing is left to write.
+		 */
+		boolean writable() throws IOException;
+
+		/**
+		 * Called once when the socket has been closed by the other side or
+		 * has failed, which includes being closed while a read is in
+		 * progress.
+		 * 
+		 * @param e
+		 *            The failure, or null at end of stream.
+		 */
+		void closed(IOException e);
+	}
+
+	private static final long IDLE_TIMEOUT = 1000;
+
+	private static ModemReactor instance;
+
+	private final ConcurrentLinkedQueue<Registration> registrations = new ConcurrentLinkedQueue<Registration>();
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(16384);
+
+	private Selector selector;
+
+	static synchronized ModemReactor getInstance()
+	{
+		if (instance == null) instance = new ModemReactor();
+		return instance;
+	}
+
+	/**
+	 * Switches a connected socket to non-blocking mode and starts reading from
+	 * it.
+	 */
+	void register(SocketChannel channel, Handler handler) throws IOException
+	{
+		channel.configureBlocking(false);
+		synchronized (this)
+		{
+			if (this.selector == null)
+			{
+				this.selector = Selector.open();
+				Thread thread = new Thread(this, "SMSlib-ModemReactor");
+				thread.setDaemon(true);
+				thread.start();
+			}
+			this.registrations.add(new Registration(channel, handler));
+			this.selector.wakeup();
+		}
+	}
+
+	/**
+	 * Asks for the handler of a registered socket to be called once the socket
+	 * can take more data.
+	 */
+	void requestWrite(SocketChannel channel)
+	{
+		synchronized (this)
+		{
+			this.registrations.add(new Registration(channel, null));
+			if (this.selector != null) this.selector.wakeup();
+		}
+	}
+
+	/**
+	 * Stops reading from a socket and closes it.
+	 */
+	void close(SocketChannel channel) throws IOException
+	{
+		channel.close();
+		synchronized (this)
+		{
+			if (this.selector != null) this.selector.wakeup();
+		}
+	}
+
+	public void run()
+	{
+		Selector s;
+		synchronized (this)
+		{
+			s = this.selector;
+		}
+		Logger.getInstance().logDebug("ModemReactor thread started.", null, null);
+		try
+		{
+			while (true)
+			{
+				s.select(IDLE_TIMEOUT);
+				Registration r;
+				while ((r = this.registrations.poll()) != null)
+				{
+					try
+					{
+						// Write requests always follow the registration of their socket.
+						if (r.handler == null)
+						{
+							SelectionKey key = r.channel.keyFor(s);
+							if ((key != null) && key.isValid()) key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+						}
+						else r.channel.register(s, SelectionKey.OP_READ, r.handler);
+					}
+					catch (ClosedChannelException e)
+					{
+						// Closed before the reactor got to it.
+					}
+				}
+				Iterator<SelectionKey> keys = s.selectedKeys().iterator();
+				while (keys.hasNext())
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (key.isValid() && key.isReadable()) read(key);
+					if (key.isValid() && key.isWritable()) write(key);
+				}
+				synchronized (this)
+				{
+					if (s.keys().isEmpty() && this.registrations.isEmpty())
+					{
+						this.selector = null;
+						break;
+					}
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			Logger.getInstance().logError("ModemReactor failed.", e, null);
+			synchronized (this)
+			{
+				if (this.selector == s) this.selector = null;
+			}
+			for (SelectionKey key : s.keys())
+				closed(key, new IOException("Modem reactor failed."));
+		}
+		try
+		{
+			s.close();
+		}
+		catch (IOException e)
+		{
+			// Nothing left to release.
+		}
+		Logger.getInstance().logDebug("ModemReactor thread ended.", null, null);
+	}
+
+	private void read(SelectionKey key)
+	{
+		SocketChannel channel = (SocketChannel) key.channel();
+		Handler handler = (Handler) key.attachment();
+		int n;
+		try
+		{
+			this.buffer.clear();
+			n = channel.read(this.buffer);
+		}
+		catch (IOException e)
+		{
+			closed(key, e);
+			return;
+		}
+		if (n < 0) closed(key, null);
+		else if (n > 0)
+		{
+			try
+			{
+				handler.received(this.buffer.array(), 0, n);
+			}
+			catch (RuntimeException e)
+			{
+				Logger.getInstance().logError("Modem data handler failed.", e, null);
+			}
+		}
+	}
+
+	private void write(SelectionKey key)
+	{
+		Handler handler = (Handler) key.attachment();
+		try
+		{
+			if (handler.writable()) key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+		}
+		catch (IOException e)
+		{
+			closed(key, e);
+		}
+		catch (RuntimeException e)
+		{
+			Logger.getInstance().logError("Modem data handler failed.", e, null);
+		}
+	}
+
+	private void closed(SelectionKey key, IOException e)
+	{
+		key.cancel();
+		try
+		{
+			key.channel().close();
+		}
+		catch (IOException ex)
+		{
+			// Already failed.
+		}
+		try
+		{
+			((Handler) key.attachment()).closed(e);
+		}
+		catch (RuntimeException ex)
+		{
+			Logger.getInstance().logError("Modem data handler failed.", ex, null);
+		}
+	}
+
+	/**
+	 * A socket to start reading from or, without a handler, a write request
+	 * for a socket that is already registered.
+	 */
+	private static class Registration
+	{
+		final SocketChannel channel;
+
+		final Handler handler;
+
+		Registration(SocketChannel channel, Handler handler)
+		{
+			this.channel = channel;
+			this.handler = handler;
+		}
+	}
+}
@@ -0,0 +1,431 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.modem;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+import java.util.StringTokenizer;
+import org.smslib.AGateway.GatewayStatuses;
+import org.smslib.GatewayException;
+import org.smslib.Service;
+import org.smslib.helper.Logger;
+import org.smslib.modem.ModemGateway.IPProtocols;
+
+/**
+ * Driver for IP connected modems which shares one {@link ModemReactor}
+ * thread with all other such modems, instead of running a peeker and a
+ * reader thread per modem. Received bytes go straight from the reactor to
+ * the response parser.
+ * <p>
+ * With {@link IPProtocols#RAW} the socket carries the modem's bytes as they
+ * are. Otherwise the driver speaks enough telnet to strip commands from the
+ * data and negotiate the options the telnet based driver used: suppress
+ * go-ahead, terminal type VT100 and, for {@link IPProtocols#BINARY}, binary
+ * transmission. SSL is not supported.
+ */
+class NIOModemDriver extends AModemDriver implements ModemReactor.Handler
+{
+	private static final int IAC = 255, DONT = 254, DO = 253, WONT = 252, WILL = 251, SB = 250, SE = 240;
+
+	private static final int BINARY = 0, ECHO = 1, SGA = 3, TTYPE = 24;
+
+	private static final int DATA = 0, COMMAND = 1, OPTION = 2, SUBNEGOTIATION = 3, SUBNEGOTIATION_IAC = 4;
+
+	private String ipAddress;
+
+	private int ipPort;
+
+	private volatile SocketChannel channel;
+
+	private final Object SYNC_Writer = new Object();
+
+	/** Written data the socket has not taken yet, guarded by SYNC_Writer. */
+	private final LinkedList<ByteBuffer> pending = new LinkedList<ByteBuffer>();
+
+	private boolean telnet, binary;
+
+	// Telnet state, only used on the reactor thread once connected.
+	private int state, command, subnegotiationLength;
+
+	private boolean carriageReturn;
+
+	private final boolean[] local = new boolean[256];
+
+	private final boolean[] remote = new boolean[256];
+
+	private final byte[] subnegotiation = new byte[64];
+
+	private final byte[] data = new byte[16384];
+
+	private final ByteBuffer reply = ByteBuffer.allocate(256);
+
+	protected NIOModemDriver(ModemGateway myGateway, String deviceParms)
+	{
+		super(myGateway, deviceParms);
+		StringTokenizer tokens = new StringTokenizer(deviceParms, ":");
+		this.ipAddress = tokens.nextToken();
+		this.ipPort = Integer.parseInt(tokens.nextToken());
+	}
+
+	@Override
+	protected void connectPort() throws GatewayException, IOException, InterruptedException
+	{
+		if (getGateway().getIpEncryption()) throw new GatewayException("SSL is not supported by the NIO modem driver.");
+		Logger.getInstance().logInfo("Opening: " + this.ipAddress + " @" + this.ipPort, null, getGateway().getGatewayId());
+		this.telnet = (getGateway().getIpProtocol() != IPProtocols.RAW);
+		this.binary = (getGateway().getIpProtocol() == IPProtocols.BINARY);
+		this.state = DATA;
+		this.carriageReturn = false;
+		for (int i = 0; i < 256; i++)
+			this.local[i] = this.remote[i] = false;
+		SocketChannel ch = SocketChannel.open();
+		try
+		{
+			ch.socket().connect(new InetSocketAddress(this.ipAddress, this.ipPort), Service.getInstance().getSettings().SERIAL_TIMEOUT);
+			ch.socket().setTcpNoDelay(true);
+			this.channel = ch;
+			if (this.telnet)
+			{
+				synchronized (this.reply)
+				{
+					request(WILL, SGA);
+					request(DO, SGA);
+					if (this.binary)
+					{
+						request(WILL, BINARY);
+						request(DO, BINARY);
+					}
+					flushReply();
+				}
+			}
+			ModemReactor.getInstance().register(ch, this);
+		}
+		catch (IOException e)
+		{
+			this.channel = null;
+			ch.close();
+			throw e;
+		}
+	}
+
+	@Override
+	protected void disconnectPort() throws IOException, InterruptedException
+	{
+		Logger.getInstance().logInfo("Closing: " + this.ipAddress + " @" + this.ipPort, null, getGateway().getGatewayId());
+		SocketChannel ch = this.channel;
+		this.channel = null;
+		if (ch != null) ModemReactor.getInstance().close(ch);
+		synchronized (this.SYNC_Writer)
+		{
+			this.pending.clear();
+			this.SYNC_Writer.notifyAll();
+		}
+	}
+
+	@Override
+	protected boolean hasReaderThread()
+	{
+		return false;
+	}
+
+	@Override
+	protected void clear() throws IOException
+	{
+		// Received data is never left in the socket.
+	}
+
+	@Override
+	protected boolean portHasData() throws IOException
+	{
+		return false;
+	}
+
+	@Override
+	protected int read() throws IOException
+	{
+		return -1;
+	}
+
+	@Override
+	public void write(char c) throws IOException
+	{
+		write(new byte[] { (byte) c });
+	}
+
+	@Override
+	public void write(byte[] s) throws IOException
+	{
+		if (!this.telnet)
+		{
+			writeFully(ByteBuffer.wrap(s), true);
+			return;
+		}
+		ByteBuffer out = ByteBuffer.allocate(s.length * 2);
+		for (int i = 0; i < s.length; i++)
+		{
+			out.put(s[i]);
+			if (s[i] == (byte) IAC) out.put((byte) IAC);
+			else if ((s[i] == '\r') && !this.binary) out.put((byte) 0);
+		}
+		out.flip();
+		writeFully(out, true);
+	}
+
+	/**
+	 * Writes what the socket takes right away and queues the rest for the
+	 * reactor, which sends it as soon as the socket can take more.
+	 * 
+	 * @param wait
+	 *            Whether to wait until everything queued has been sent. The
+	 *            reactor thread itself must never wait.
+	 */
+	private void writeFully(ByteBuffer b, boolean wait) throws IOException
+	{
+		synchronized (this.SYNC_Writer)
+		{
+			SocketChannel ch = this.channel;
+			if (ch == null) throw new IOException("Not connected.");
+			while (this.pending.isEmpty() && b.hasRemaining())
+				if (ch.write(b) == 0) break;
+			if (!b.hasRemaining()) return;
+			ByteBuffer copy = ByteBuffer.allocate(b.remaining());
+			copy.put(b);
+			copy.flip();
+			this.pending.add(copy);
+			if (this.pending.size() == 1) ModemReactor.getInstance().requestWrite(ch);
+			if (!wait) return;
+			long deadline = System.currentTimeMillis() + Service.getInstance().getSettings().SERIAL_TIMEOUT;
+			while (true)
+			{
+				if ((this.channel != ch) || !ch.isOpen()) throw new IOException("Not connected.");
+				if (this.pending.isEmpty()) return;
+				long left = deadline - System.currentTimeMillis();
+				if (left <= 0) throw new IOException("Write to modem timed out.");
+				try
+				{
+					this.SYNC_Writer.wait(left);
+				}
+				catch (InterruptedException e)
+				{
+					throw new InterruptedIOException("Write to modem interrupted.");
+				}
+			}
+		}
+	}
+
+	public boolean writable() throws IOException
+	{
+		synchronized (this.SYNC_Writer)
+		{
+			try
+			{
+				SocketChannel ch = this.channel;
+				if (ch == null) this.pending.clear();
+				while (!this.pending.isEmpty())
+				{
+					ByteBuffer b = this.pending.getFirst();
+					if ((ch.write(b) == 0) && b.hasRemaining()) return false;
+					if (!b.hasRemaining()) this.pending.removeFirst();
+				}
+				return true;
+			}
+			finally
+			{
+				this.SYNC_Writer.notifyAll();
+			}
+		}
+	}
+
+	public void received(byte[] b, int off, int len)
+	{
+		if (!this.telnet)
+		{
+			dataReceived(b, off, len);
+			return;
+		}
+		int n = 0;
+		synchronized (this.reply)
+		{
+			for (int i = off; i < off + len; i++)
+			{
+				int c = b[i] & 0xff;
+				switch (this.state)
+				{
+					case DATA:
+						if (c == IAC) this.state = COMMAND;
+						else if ((c != 0) || !this.carriageReturn || this.remote[BINARY]) this.data[n++] = (byte) c;
+						this.carriageReturn = (c == '\r');
+						break;
+					case COMMAND:
+						if (c == IAC)
+						{
+							this.data[n++] = (byte) IAC;
+							this.state = DATA;
+						}
+						else if ((c >= WILL) && (c <= DONT))
+						{
+							this.command = c;
+							this.state = OPTION;
+						}
+						else if (c == SB)
+						{
+							this.subnegotiationLength = 0;
+							this.state = SUBNEGOTIATION;
+						}
+						else this.state = DATA;
+						break;
+					case OPTION:
+						negotiate(this.command, c);
+						this.state = DATA;
+						break;
+					case SUBNEGOTIATION:
+						if (c == IAC) this.state = SUBNEGOTIATION_IAC;
+						else if (this.subnegotiationLength < this.subnegotiation.length) this.subnegotiation[this.subnegotiationLength++] = (byte) c;
+						break;
+					case SUBNEGOTIATION_IAC:
+						if (c == SE)
+						{
+							subnegotiate();
+							this.state = DATA;
+						}
+						else if (c == IAC)
+						{
+							if (this.subnegotiationLength < this.subnegotiation.length) this.subnegotiation[this.subnegotiationLength++] = (byte) IAC;
+							this.state = SUBNEGOTIATION;
+						}
+						else this.state = DATA;
+						break;
+				}
+			}
+			try
+			{
+				flushReply();
+			}
+			catch (IOException e)
+			{
+				Logger.getInstance().logWarn("Cannot answer telnet negotiation.", e, getGateway().getGatewayId());
+			}
+		}
+		if (n > 0) dataReceived(this.data, 0, n);
+	}
+
+	public void closed(IOException e)
+	{
+		synchronized (this.SYNC_Writer)
+		{
+			this.pending.clear();
+			this.SYNC_Writer.notifyAll();
+		}
+		if (!isConnected() || (this.channel == null)) return;
+		Logger.getInstance().logWarn("Connection to " + this.ipAddress + " @" + this.ipPort + " lost.", e, getGateway().getGatewayId());
+		getGateway().setStatus(GatewayStatuses.RESTART);
+	}
+
+	private void negotiate(int cmd, int option)
+	{
+		switch (cmd)
+		{
+			case DO:
+				if (!acceptsLocal(option)) reply(WONT, option);
+				else if (!this.local[option])
+				{
+					this.local[option] = true;
+					reply(WILL, option);
+				}
+				break;
+			case DONT:
+				if (this.local[option])
+				{
+					this.local[option] = false;
+					reply(WONT, option);
+				}
+				break;
+			case WILL:
+				if (!acceptsRemote(option)) reply(DONT, option);
+				else if (!this.remote[option])
+				{
+					this.remote[option] = true;
+					reply(DO, option);
+				}
+				break;
+			case WONT:
+				if (this.remote[option])
+				{
+					this.remote[option] = false;
+					reply(DONT, option);
+				}
+				break;
+		}
+	}
+
+	private void subnegotiate()
+	{
+		// IAC SB TERMINAL-TYPE SEND IAC SE
+		if ((this.subnegotiationLength >= 2) && (this.subnegotiation[0] == TTYPE) && (this.subnegotiation[1] == 1) && (this.reply.remaining() >= 11))
+		{
+			this.reply.put((byte) IAC).put((byte) SB).put((byte) TTYPE).put((byte) 0);
+			this.reply.put(new byte[] { 'V', 'T', '1', '0', '0' });
+			this.reply.put((byte) IAC).put((byte) SE);
+		}
+	}
+
+	private boolean acceptsLocal(int option)
+	{
+		return ((option == SGA) || (option == TTYPE) || ((option == BINARY) && this.binary));
+	}
+
+	private boolean acceptsRemote(int option)
+	{
+		return ((option == SGA) || (option == ECHO) || ((option == BINARY) && this.binary));
+	}
+
+	private void request(int cmd, int option)
+	{
+		if ((cmd == WILL) || (cmd == WONT)) this.local[option] = (cmd == WILL);
+		else this.remote[option] = (cmd == DO);
+		reply(cmd, option);
+	}
+
+	private void reply(int cmd, int option)
+	{
+		if (this.reply.remaining() < 3) return;
+		this.reply.put((byte) IAC).put((byte) cmd).put((byte) option);
+	}
+
+	private void flushReply() throws IOException
+	{
+		if (this.reply.position() == 0) return;
+		this.reply.flip();
+		try
+		{
+			writeFully(this.reply, false);
+		}
+		finally
+		{
+			this.reply.clear();
+		}
+	}
+}
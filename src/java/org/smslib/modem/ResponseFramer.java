@@ -0,0 +1,330 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.modem;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.smslib.modem.athandler.AATHandler;
+
+/**
+ * Splits modem output into intermediate lines, final result codes,
+ * unsolicited result codes and the <code>&gt;</code> prompt.
+ * <p>
+ * Lines are taken from the reader's {@link ByteRingBuffer} into a reusable
+ * character array and classified in place, one line at a time. OK, ERROR,
+ * NO CARRIER, NO DIALTONE, +CME ERROR and +CMS ERROR are recognized without
+ * regular expressions. The AT handler's terminator expressions are still
+ * honoured, but each one is only tried on lines starting with its literal
+ * prefix (e.g. <code>+CMTI:</code> or <code>+CPIN:</code>); expressions
+ * without such a prefix are the generic final result codes above. The line
+ * following a <code>+CMGR:</code> or <code>+CMGL:</code> header is the
+ * message itself, so it is never taken for an unsolicited result code, even
+ * if its text starts with <code>RING</code> or <code>+CLIP:</code>.
+ * <p>
+ * A framer belongs to a single driver and is used by one thread at a time.
+ */
+final class ResponseFramer
+{
+	static final int INTERMEDIATE = 0;
+
+	static final int FINAL = 1;
+
+	static final int UNSOLICITED = 2;
+
+	static final int PROMPT = 3;
+
+	private final AATHandler handler;
+
+	private final String[] prefixes;
+
+	private final Matcher[] matchers;
+
+	private char[] text;
+
+	private int length;
+
+	private int lineStart;
+
+	private int error;
+
+	/** True if the next line is the body of a stored message */
+	private boolean body;
+
+	/** The line being matched, a view of the text */
+	private final Line line;
+
+	ResponseFramer(AATHandler handler)
+	{
+		this.handler = handler;
+		String[] terminators = handler.getTerminators();
+		this.prefixes = new String[terminators.length];
+		this.matchers = new Matcher[terminators.length];
+		for (int i = 0; i < terminators.length; i++)
+		{
+			this.prefixes[i] = literalPrefix(terminators[i]);
+			if (this.prefixes[i].length() > 0) this.matchers[i] = Pattern.compile(terminators[i]).matcher("");
+		}
+		this.text = new char[256];
+		this.line = new Line();
+		reset();
+	}
+
+	AATHandler getHandler()
+	{
+		return this.handler;
+	}
+
+	/**
+	 * Starts a new response.
+	 */
+	void reset()
+	{
+		this.length = 0;
+		this.lineStart = 0;
+		this.error = -1;
+		this.body = false;
+	}
+
+	/**
+	 * @return True if no line of the current response has been taken yet.
+	 */
+	boolean isEmpty()
+	{
+		return (this.lineStart == 0);
+	}
+
+	/**
+	 * Takes the next line from the ring, together with its LF, and
+	 * classifies it.
+	 * 
+	 * @param length
+	 *            The length of the line without the LF, as found by
+	 *            {@link ByteRingBuffer#indexOf(int, int, long)}.
+	 * @return One of the line kinds.
+	 */
+	int takeLine(ByteRingBuffer ring, int lineLength)
+	{
+		int kind = peekLine(ring, lineLength);
+		ring.skip(lineLength + 1);
+		return kind;
+	}
+
+	/**
+	 * Like {@link #takeLine(ByteRingBuffer, int)}, but leaves the line in the
+	 * ring.
+	 */
+	int peekLine(ByteRingBuffer ring, int lineLength)
+	{
+		ensureCapacity(this.length + lineLength + 1);
+		ring.copy(this.text, this.length, lineLength);
+		this.length += lineLength;
+		if ((this.length == this.lineStart) || (this.text[this.length - 1] != '\r')) this.text[this.length++] = '\r';
+		return classify(this.lineStart, this.length - 1);
+	}
+
+	/**
+	 * Takes a <code>&gt;</code> prompt, and the space following it if that
+	 * has already arrived.
+	 */
+	int takePrompt(ByteRingBuffer ring)
+	{
+		ring.skip(1);
+		if (ring.get(0) == ' ') ring.skip(1);
+		ensureCapacity(this.length + 2);
+		this.text[this.length++] = '>';
+		this.text[this.length++] = ' ';
+		this.lineStart = this.length;
+		this.error = 10000;
+		return PROMPT;
+	}
+
+	/**
+	 * Removes the last line taken, which was an unsolicited result code, from
+	 * the response.
+	 * 
+	 * @return The line.
+	 */
+	String dropLine()
+	{
+		String line = new String(this.text, this.lineStart, this.length - this.lineStart);
+		this.length = this.lineStart;
+		return line;
+	}
+
+	/**
+	 * @return The lines of the current response, each one terminated with a
+	 *         CR.
+	 */
+	String getResponse()
+	{
+		return new String(this.text, 0, this.length);
+	}
+
+	/**
+	 * @return The error code of the final result code, as defined by
+	 *         <code>AModemDriver.getLastError()</code>.
+	 */
+	int getError()
+	{
+		return this.error;
+	}
+
+	private int classify(int start, int end)
+	{
+		while ((end > start) && (this.text[end - 1] <= ' '))
+			end--;
+		if (is(start, end, "OK")) return finish(0);
+		if (is(start, end, "ERROR") || is(start, end, "NO CARRIER") || is(start, end, "NO DIALTONE")) return finish(9000);
+		if (startsWith(start, end, "+CME ERROR:")) return finish(errorCode(start + 11, end, 5000));
+		if (startsWith(start, end, "+CMS ERROR:")) return finish(errorCode(start + 11, end, 6000));
+		if (startsWith(start, end, "ERROR:")) return finish(10000);
+		if (this.body) this.body = false;
+		else
+		{
+			this.line.start = start;
+			for (int i = 0; i < this.matchers.length; i++)
+			{
+				if ((this.matchers[i] == null) || !startsWith(start, end, this.prefixes[i])) continue;
+				this.matchers[i].reset(this.line);
+				if (this.matchers[i].matches()) return (this.handler.isUnsolicitedResponse(i) ? UNSOLICITED : finish(10000));
+			}
+			this.body = startsWith(start, end, "+CMGR:") || startsWith(start, end, "+CMGL:");
+		}
+		this.lineStart = this.length;
+		return INTERMEDIATE;
+	}
+
+	private int finish(int code)
+	{
+		this.error = code;
+		this.lineStart = this.length;
+		return FINAL;
+	}
+
+	private int errorCode(int start, int end, int base)
+	{
+		int i = start;
+		while ((i < end) && (this.text[i] == ' '))
+			i++;
+		if (i == end) return 9000;
+		int code = 0;
+		for (; i < end; i++)
+		{
+			char c = this.text[i];
+			if ((c < '0') || (c > '9') || (code > 100000)) return 9000;
+			code = code * 10 + (c - '0');
+		}
+		return base + code;
+	}
+
+	private boolean is(int start, int end, String s)
+	{
+		return ((end - start) == s.length()) && startsWith(start, end, s);
+	}
+
+	private boolean startsWith(int start, int end, String s)
+	{
+		if ((end - start) < s.length()) return false;
+		for (int i = 0; i < s.length(); i++)
+			if (this.text[start + i] != s.charAt(i)) return false;
+		return true;
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity <= this.text.length) return;
+		char[] newText = new char[Math.max(capacity, this.text.length * 2)];
+		System.arraycopy(this.text, 0, newText, 0, this.length);
+		this.text = newText;
+	}
+
+	/** The text from a line start to the end of the response */
+	private final class Line implements CharSequence
+	{
+		int start;
+
+		public int length()
+		{
+			return ResponseFramer.this.length - this.start;
+		}
+
+		public char charAt(int index)
+		{
+			return ResponseFramer.this.text[this.start + index];
+		}
+
+		public CharSequence subSequence(int begin, int end)
+		{
+			return new String(ResponseFramer.this.text, this.start + begin, end - begin);
+		}
+
+		@Override
+		public String toString()
+		{
+			return new String(ResponseFramer.this.text, this.start, length());
+		}
+	}
+
+	/**
+	 * Returns the literal text a regular expression starts with, e.g.
+	 * <code>+CMTI:</code> for <code>\+CMTI:\s*...</code>.
+	 */
+	static String literalPrefix(String regex)
+	{
+		if (hasAlternatives(regex)) return "";
+		StringBuffer prefix = new StringBuffer();
+		for (int i = 0; i < regex.length(); i++)
+		{
+			char c = regex.charAt(i);
+			if (c == '\\')
+			{
+				if ((i + 1 == regex.length()) || Character.isLetterOrDigit(regex.charAt(i + 1))) break;
+				c = regex.charAt(++i);
+			}
+			else if (".[]{}()*+?^$|".indexOf(c) >= 0)
+			{
+				// A quantifier may make the last literal optional.
+				if (((c == '*') || (c == '?') || (c == '{')) && (prefix.length() > 0)) prefix.setLength(prefix.length() - 1);
+				break;
+			}
+			prefix.append(c);
+		}
+		return prefix.toString();
+	}
+
+	private static boolean hasAlternatives(String regex)
+	{
+		int depth = 0;
+		boolean inClass = false;
+		for (int i = 0; i < regex.length(); i++)
+		{
+			char c = regex.charAt(i);
+			if (c == '\\') i++;
+			else if (inClass) inClass = (c != ']');
+			else if (c == '[') inClass = true;
+			else if (c == '(') depth++;
+			else if (c == ')') depth--;
+			else if ((c == '|') && (depth == 0)) return true;
+		}
+		return false;
+	}
+}
@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.StringTokenizer;
+import org.smslib.AGateway.GatewayStatuses;
 import org.smslib.GatewayException;
 import org.smslib.Service;
 import org.smslib.helper.CommPortIdentifier;
@@ -49,6 +50,8 @@ class SerialModemDriver extends AModemDriver implements SerialPortEventListener
 
 	private PortReader portReader;
 
+	private final byte[] chunk = new byte[4096];
+
 	protected SerialModemDriver(ModemGateway myGateway, String deviceParms)
 	{
 		super(myGateway, deviceParms);
@@ -124,8 +127,40 @@ class SerialModemDriver extends AModemDriver implements SerialPortEventListener
 	@Override
 	protected void clear() throws IOException
 	{
-		while (portHasData())
-			read();
+		synchronized (getSYNCReader())
+		{
+			while (portHasData())
+				read();
+		}
+	}
+
+	@Override
+	protected boolean hasReaderThread()
+	{
+		return false;
+	}
+
+	/**
+	 * Passes everything the port has received to the response parser. Called
+	 * by the port's event thread, or by the port reader in polled mode.
+	 */
+	private void drain()
+	{
+		synchronized (getSYNCReader())
+		{
+			try
+			{
+				int n;
+				while (portHasData() && ((n = read(this.chunk, 0, this.chunk.length)) > 0))
+					dataReceived(this.chunk, 0, n);
+			}
+			catch (IOException e)
+			{
+				if (!isConnected()) return;
+				Logger.getInstance().logError("Error while reading from " + getComPort() + ".", e, getGateway().getGatewayId());
+				getGateway().setStatus(GatewayStatuses.RESTART);
+			}
+		}
 	}
 
 	@Override
@@ -142,14 +177,7 @@ class SerialModemDriver extends AModemDriver implements SerialPortEventListener
 		else if (eventType == SerialPortEvent.PE) Logger.getInstance().logError("Parity Error!", null, getGateway().getGatewayId());
 		else if (eventType == SerialPortEvent.DATA_AVAILABLE)
 		{
-			if (!Service.getInstance().getSettings().SERIAL_POLLING)
-			{
-				synchronized (getSYNCReader())
-				{
-					setDataReceived(true);
-					getSYNCReader().notifyAll();
-				}
-			}
+			if (!Service.getInstance().getSettings().SERIAL_POLLING) drain();
 		}
 	}
 
@@ -192,6 +220,13 @@ class SerialModemDriver extends AModemDriver implements SerialPortEventListener
 		return getIn().read();
 	}
 
+	@Override
+	protected int read(byte[] b, int off, int len) throws IOException
+	{
+		int available = getIn().available();
+		return getIn().read(b, off, (available > 0 ? Math.min(available, len) : 1));
+	}
+
 	PortReader getPortReader()
 	{
 		return this.portReader;
@@ -212,14 +247,7 @@ class SerialModemDriver extends AModemDriver implements SerialPortEventListener
 		@Override
 		public void process() throws Exception
 		{
-			if (portHasData())
-			{
-				synchronized (getSYNCReader())
-				{
-					setDataReceived(true);
-					getSYNCReader().notifyAll();
-				}
-			}
+			drain();
 		}
 	}
 
@@ -0,0 +1,973 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.modem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.ajwcc.pduUtils.gsm3040.PduUtils;
+import org.smslib.threading.AServiceScheduler;
+
+/**
+ * An in-process GSM modem, for exercising the modem gateways, drivers and AT
+ * handlers without hardware. The modem can be reached over a loopback TCP
+ * port (see {@link #listen()}) by {@link IPModemGateway} and
+ * {@link NIOModemGateway}, or directly through {@link VirtualModemGateway}.
+ * <p>
+ * It answers the commands SMSLib issues while connecting and implements
+ * <code>AT+CMGS</code> (PDU and text mode), <code>AT+CMGL</code>,
+ * <code>AT+CMGR</code> and <code>AT+CMGD</code> (PDU mode) on a single
+ * "SM" memory, <code>AT+CUSD</code>, and the <code>+CMTI</code>,
+ * <code>+CDSI</code> and <code>+CUSD</code> indications. Other commands are
+ * answered with OK. Each connection has its own command state (echo, message
+ * format, indications) while the storage is shared, like two ports of one
+ * modem.
+ * <p>
+ * Latency and errors can be injected, and errors are drawn from a seeded
+ * random generator, so runs are repeatable.
+ * 
+ * @since 3.5
+ */
+public class VirtualModem
+{
+	private static final String MEMORY = "SM";
+
+	private static final int REC_UNREAD = 0, REC_READ = 1;
+
+	private static final int MAX_LINE = 4096;
+
+	private final TreeMap<Integer, String> storage = new TreeMap<Integer, String>();
+
+	private final TreeMap<Integer, Integer> storageStatus = new TreeMap<Integer, Integer>();
+
+	private final List<Session> sessions = new ArrayList<Session>();
+
+	private final LinkedList<String[]> injectedErrors = new LinkedList<String[]>();
+
+	private final Random random = new Random(0);
+
+	private volatile int commandLatency, submitLatency, ussdLatency, statusReportDelay;
+
+	private double submitErrorRate;
+
+	private int capacity;
+
+	private volatile String pin, ussdResponse;
+
+	private int refNo, submitted;
+
+	private ServerSocket server;
+
+	public VirtualModem()
+	{
+		this.commandLatency = 0;
+		this.submitLatency = 0;
+		this.ussdLatency = 0;
+		this.statusReportDelay = -1;
+		this.submitErrorRate = 0;
+		this.capacity = 50;
+		this.pin = null;
+		this.ussdResponse = "OK";
+	}
+
+	/**
+	 * Sets the time the modem takes to answer a command, including the
+	 * <code>AT+CMGS</code> prompt.
+	 * 
+	 * @param ms
+	 *            Latency in milliseconds.
+	 */
+	public void setCommandLatency(int ms)
+	{
+		this.commandLatency = ms;
+	}
+
+	/**
+	 * Sets the time from the end of a message (Ctrl-Z) until the network
+	 * accepts it and the modem answers <code>+CMGS</code>.
+	 * 
+	 * @param ms
+	 *            Latency in milliseconds.
+	 */
+	public void setSubmitLatency(int ms)
+	{
+		this.submitLatency = ms;
+	}
+
+	/**
+	 * Sets the time from an <code>AT+CUSD</code> request until its
+	 * <code>+CUSD</code> indication.
+	 * 
+	 * @param ms
+	 *            Latency in milliseconds.
+	 */
+	public void setUssdLatency(int ms)
+	{
+		this.ussdLatency = ms;
+	}
+
+	/**
+	 * Sets the text of the <code>+CUSD</code> indication answering every USSD
+	 * request.
+	 * 
+	 * @param text
+	 *            The USSD response.
+	 */
+	public void setUssdResponse(String text)
+	{
+		this.ussdResponse = text;
+	}
+
+	/**
+	 * Makes the modem store a status report, and indicate it with
+	 * <code>+CDSI</code>, for every PDU mode message that requests one.
+	 * 
+	 * @param ms
+	 *            Delay after the submission, or -1 (the default) for no
+	 *            status reports.
+	 */
+	public void setStatusReportDelay(int ms)
+	{
+		this.statusReportDelay = ms;
+	}
+
+	/**
+	 * Makes a share of the submitted messages fail with
+	 * <code>+CMS ERROR: 500</code> after the submit latency.
+	 * 
+	 * @param rate
+	 *            Failure probability, from 0 to 1.
+	 * @see #setSeed(long)
+	 */
+	public synchronized void setSubmitErrorRate(double rate)
+	{
+		this.submitErrorRate = rate;
+	}
+
+	/**
+	 * Seeds the generator deciding which submissions fail. The default seed
+	 * is 0.
+	 * 
+	 * @param seed
+	 *            The seed.
+	 */
+	public synchronized void setSeed(long seed)
+	{
+		this.random.setSeed(seed);
+	}
+
+	/**
+	 * Answers the next command starting with the given prefix with an error,
+	 * instead of executing it.
+	 * 
+	 * @param command
+	 *            Command prefix, i.e. "AT+CMGS".
+	 * @param result
+	 *            The result line, i.e. "+CMS ERROR: 38" or "ERROR".
+	 */
+	public synchronized void injectError(String command, String result)
+	{
+		this.injectedErrors.add(new String[] { command.toUpperCase(), result });
+	}
+
+	/**
+	 * Makes the SIM ask for a PIN; until it is entered, message commands fail
+	 * with <code>+CME ERROR: 11</code>.
+	 * 
+	 * @param myPin
+	 *            The PIN, or null for none.
+	 */
+	public void setPin(String myPin)
+	{
+		this.pin = myPin;
+	}
+
+	/**
+	 * Sets how many messages the storage holds. The default is 50.
+	 * 
+	 * @param myCapacity
+	 *            The capacity.
+	 */
+	public synchronized void setCapacity(int myCapacity)
+	{
+		this.capacity = myCapacity;
+	}
+
+	/**
+	 * Receives a message from the network: stores it and indicates it with
+	 * <code>+CMTI</code>.
+	 * 
+	 * @param originator
+	 *            The sender's number, i.e. "+306974000000".
+	 * @param text
+	 *            The text, which must fit in one message.
+	 * @return The storage index, or -1 if the storage is full.
+	 */
+	public int deliver(String originator, String text)
+	{
+		return deliverPdu(deliverPduFor(originator, text));
+	}
+
+	/**
+	 * Receives a message from the network: stores it and indicates it with
+	 * <code>+CMTI</code>.
+	 * 
+	 * @param pdu
+	 *            The SMS-DELIVER PDU, including the SMSC part.
+	 * @return The storage index, or -1 if the storage is full.
+	 */
+	public int deliverPdu(String pdu)
+	{
+		int index = store(pdu);
+		if (index >= 0) indicate("+CMTI: \"" + MEMORY + "\"," + index, false);
+		return index;
+	}
+
+	/**
+	 * Returns the number of messages accepted through <code>AT+CMGS</code>.
+	 * 
+	 * @return The number of submitted messages.
+	 */
+	public synchronized int getSubmittedCount()
+	{
+		return this.submitted;
+	}
+
+	/**
+	 * Returns the number of messages in the storage.
+	 * 
+	 * @return The number of stored messages.
+	 */
+	public synchronized int getStoredCount()
+	{
+		return this.storage.size();
+	}
+
+	/**
+	 * Starts serving TCP connections on the loopback interface. Telnet
+	 * commands sent by the client are skipped, so connections made with any
+	 * of the {@link ModemGateway.IPProtocols} work.
+	 * 
+	 * @return The port to connect to.
+	 * @throws IOException
+	 *             If the port cannot be opened.
+	 */
+	public synchronized int listen() throws IOException
+	{
+		if (this.server == null)
+		{
+			final ServerSocket socket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+			Thread acceptor = new Thread("VirtualModem-Listener")
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						while (true)
+							open(new Connection(VirtualModem.this, socket.accept()));
+					}
+					catch (IOException e)
+					{
+						// Closed.
+					}
+				}
+			};
+			acceptor.setDaemon(true);
+			acceptor.start();
+			this.server = socket;
+		}
+		return this.server.getLocalPort();
+	}
+
+	/**
+	 * Stops listening and drops all connections.
+	 */
+	public void close()
+	{
+		List<Session> open;
+		synchronized (this)
+		{
+			try
+			{
+				if (this.server != null) this.server.close();
+			}
+			catch (IOException e)
+			{
+				// Ignore.
+			}
+			this.server = null;
+			open = new ArrayList<Session>(this.sessions);
+		}
+		for (Session session : open)
+			session.close();
+	}
+
+	void open(Session session)
+	{
+		synchronized (this)
+		{
+			this.sessions.add(session);
+		}
+		session.start();
+	}
+
+	synchronized void closed(Session session)
+	{
+		this.sessions.remove(session);
+	}
+
+	private void indicate(String indication, boolean statusReport)
+	{
+		List<Session> open;
+		synchronized (this)
+		{
+			open = new ArrayList<Session>(this.sessions);
+		}
+		for (Session session : open)
+			if (statusReport ? session.ds > 0 : session.mt > 0) session.unsolicited(indication);
+	}
+
+	private synchronized String takeInjectedError(String command)
+	{
+		for (Iterator<String[]> i = this.injectedErrors.iterator(); i.hasNext();)
+		{
+			String[] error = i.next();
+			if (command.startsWith(error[0]))
+			{
+				i.remove();
+				return error[1];
+			}
+		}
+		return null;
+	}
+
+	private synchronized int submit()
+	{
+		if (this.random.nextDouble() < this.submitErrorRate) return -1;
+		this.submitted++;
+		this.refNo = (this.refNo + 1) % 256;
+		return this.refNo;
+	}
+
+	private synchronized int store(String pdu)
+	{
+		if (this.storage.size() >= this.capacity) return -1;
+		int index = 1;
+		while (this.storage.containsKey(index))
+			index++;
+		this.storage.put(index, pdu);
+		this.storageStatus.put(index, REC_UNREAD);
+		return index;
+	}
+
+	private void storeStatusReport(int ref, String recipient)
+	{
+		String now = timestamp();
+		int index = store("0006" + PduUtils.byteToPdu(ref) + recipient + now + now + "00");
+		if (index >= 0) indicate("+CDSI: \"" + MEMORY + "\"," + index, true);
+	}
+
+	/**
+	 * Lists stored messages as <code>AT+CMGL</code> does, marking unread
+	 * ones read.
+	 */
+	private synchronized List<String> list(int stat)
+	{
+		List<String> lines = new ArrayList<String>();
+		for (Map.Entry<Integer, String> entry : this.storage.entrySet())
+		{
+			int status = this.storageStatus.get(entry.getKey());
+			if ((stat != 4) && (stat != status)) continue;
+			lines.add("+CMGL: " + entry.getKey() + "," + status + ",," + tpduLength(entry.getValue()));
+			lines.add(entry.getValue());
+			this.storageStatus.put(entry.getKey(), REC_READ);
+		}
+		return lines;
+	}
+
+	private synchronized String[] read(int index)
+	{
+		String pdu = this.storage.get(index);
+		if (pdu == null) return null;
+		int status = this.storageStatus.put(index, REC_READ);
+		return new String[] { "+CMGR: " + status + ",," + tpduLength(pdu), pdu };
+	}
+
+	private synchronized boolean delete(int index, int flag)
+	{
+		if (flag == 0)
+		{
+			this.storageStatus.remove(index);
+			return (this.storage.remove(index) != null);
+		}
+		for (Iterator<Map.Entry<Integer, Integer>> i = this.storageStatus.entrySet().iterator(); i.hasNext();)
+		{
+			Map.Entry<Integer, Integer> entry = i.next();
+			if ((flag == 4) || (entry.getValue() == REC_READ))
+			{
+				this.storage.remove(entry.getKey());
+				i.remove();
+			}
+		}
+		return true;
+	}
+
+	private synchronized String storageCounts(boolean named)
+	{
+		String counts = (named ? "\"" + MEMORY + "\"," : "") + this.storage.size() + "," + this.capacity;
+		return counts + "," + counts + "," + counts;
+	}
+
+	private static int tpduLength(String pdu)
+	{
+		return (pdu.length() / 2) - 1 - Integer.parseInt(pdu.substring(0, 2), 16);
+	}
+
+	private static String deliverPduFor(String originator, String text)
+	{
+		StringBuffer pdu = new StringBuffer("0004");
+		String digits = (originator.startsWith("+") ? originator.substring(1) : originator);
+		pdu.append(PduUtils.byteToPdu(digits.length()));
+		pdu.append(originator.startsWith("+") ? "91" : "81");
+		if (digits.length() % 2 != 0) digits += "F";
+		for (int i = 0; i < digits.length(); i += 2)
+			pdu.append(digits.charAt(i + 1)).append(digits.charAt(i));
+		pdu.append("00");
+		byte[] septets = PduUtils.stringToUnencodedSeptets(text);
+		if (PduUtils.unencodedSeptetsToString(septets).equals(text))
+		{
+			if (septets.length > 160) throw new IllegalArgumentException("Text does not fit in one message.");
+			pdu.append("00").append(timestamp()).append(PduUtils.byteToPdu(septets.length));
+			pdu.append(PduUtils.bytesToPdu(PduUtils.unencodedSeptetsToEncodedSeptets(septets)));
+		}
+		else
+		{
+			byte[] ucs2;
+			try
+			{
+				ucs2 = text.getBytes("UTF-16BE");
+			}
+			catch (UnsupportedEncodingException e)
+			{
+				throw new RuntimeException(e);
+			}
+			if (ucs2.length > 140) throw new IllegalArgumentException("Text does not fit in one message.");
+			pdu.append("08").append(timestamp()).append(PduUtils.byteToPdu(ucs2.length));
+			pdu.append(PduUtils.bytesToPdu(ucs2));
+		}
+		return pdu.toString().toUpperCase();
+	}
+
+	private static String timestamp()
+	{
+		Calendar now = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+		int[] fields = { now.get(Calendar.YEAR) % 100, now.get(Calendar.MONTH) + 1, now.get(Calendar.DAY_OF_MONTH), now.get(Calendar.HOUR_OF_DAY), now.get(Calendar.MINUTE), now.get(Calendar.SECOND), 0 };
+		StringBuffer b = new StringBuffer(14);
+		for (int field : fields)
+			b.append(PduUtils.byteToPdu(PduUtils.createSwappedBCD(field)));
+		return b.toString();
+	}
+
+	private static void sleep(int ms) throws InterruptedException
+	{
+		if (ms > 0) Thread.sleep(ms);
+	}
+
+	/**
+	 * One connection to the modem. Received bytes are handed to a worker
+	 * thread, which executes them in order like the modem's command
+	 * interpreter, so the sender is never held up by the injected latency.
+	 */
+	abstract static class Session
+	{
+		private static final int NONE = 0, PDU_PROMPT = 1, TEXT_PROMPT = 2;
+
+		final VirtualModem modem;
+
+		volatile int mt, ds;
+
+		private final LinkedBlockingQueue<byte[]> input = new LinkedBlockingQueue<byte[]>();
+
+		private final StringBuffer line = new StringBuffer();
+
+		private final Thread worker;
+
+		private volatile boolean closed;
+
+		private boolean echo, pduMode, pinEntered;
+
+		private int cmee, creg, cmms, prompt;
+
+		Session(VirtualModem myModem)
+		{
+			this.modem = myModem;
+			reset();
+			this.worker = new Thread("VirtualModem-Session")
+			{
+				@Override
+				public void run()
+				{
+					work();
+				}
+			};
+			this.worker.setDaemon(true);
+		}
+
+		/**
+		 * Sends bytes from the modem to the other end.
+		 */
+		protected abstract void send(byte[] b) throws IOException;
+
+		void start()
+		{
+			this.worker.start();
+		}
+
+		void receive(byte[] b, int off, int len)
+		{
+			if (this.closed || (len == 0)) return;
+			byte[] copy = new byte[len];
+			System.arraycopy(b, off, copy, 0, len);
+			this.input.add(copy);
+		}
+
+		void close()
+		{
+			this.closed = true;
+			this.worker.interrupt();
+			this.modem.closed(this);
+		}
+
+		void unsolicited(String indication)
+		{
+			try
+			{
+				write("\r\n" + indication + "\r\n");
+			}
+			catch (IOException e)
+			{
+				close();
+			}
+		}
+
+		private void reset()
+		{
+			this.echo = true;
+			this.pduMode = true;
+			this.cmee = 0;
+			this.creg = 0;
+			this.cmms = 0;
+			this.mt = 1;
+			this.ds = 2;
+			this.prompt = NONE;
+		}
+
+		private void work()
+		{
+			try
+			{
+				while (!this.closed)
+				{
+					byte[] b = this.input.take();
+					for (int i = 0; i < b.length; i++)
+						process(b[i] & 0xff);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				// Closed.
+			}
+			catch (IOException e)
+			{
+				close();
+			}
+		}
+
+		private void process(int c) throws IOException, InterruptedException
+		{
+			if (this.prompt != NONE)
+			{
+				if (c == 26)
+				{
+					String body = this.line.toString();
+					boolean pdu = (this.prompt == PDU_PROMPT);
+					this.line.setLength(0);
+					this.prompt = NONE;
+					submit(body, pdu);
+				}
+				else if (c == 27)
+				{
+					this.line.setLength(0);
+					this.prompt = NONE;
+					write("\r\nOK\r\n");
+				}
+				else if ((this.prompt == TEXT_PROMPT) || ((c != '\r') && (c != '\n'))) this.line.append((char) c);
+			}
+			else if (c == '\r')
+			{
+				String command = this.line.toString();
+				this.line.setLength(0);
+				if (this.echo) write(command + "\r");
+				int at = command.toUpperCase().indexOf("AT");
+				if (at >= 0) execute(command.substring(at).trim());
+			}
+			else if (c == 27) this.line.setLength(0);
+			else if ((c != '\n') && (c != 0) && (this.line.length() < MAX_LINE)) this.line.append((char) c);
+		}
+
+		private void execute(String command) throws IOException, InterruptedException
+		{
+			String c = command.toUpperCase();
+			sleep(this.modem.commandLatency);
+			String error = this.modem.takeInjectedError(c);
+			if (error != null)
+			{
+				write("\r\n" + error + "\r\n");
+				return;
+			}
+			boolean simReady = (this.modem.pin == null) || this.pinEntered;
+			if (c.startsWith("ATZ") || c.startsWith("AT&F"))
+			{
+				reset();
+				ok();
+			}
+			else if (c.startsWith("ATE"))
+			{
+				this.echo = c.equals("ATE1");
+				ok();
+			}
+			else if (c.equals("AT+CPIN?")) ok(simReady ? "+CPIN: READY" : "+CPIN: SIM PIN");
+			else if (c.startsWith("AT+CPIN="))
+			{
+				if (simReady || unquote(command.substring(8)).equals(this.modem.pin))
+				{
+					this.pinEntered = true;
+					ok();
+				}
+				else cmeError(16);
+			}
+			else if ((c.startsWith("AT+CMG") || c.startsWith("AT+CUSD")) && !simReady) cmeError(11);
+			else if (c.equals("AT+CGMI")) ok("SMSLib");
+			else if (c.equals("AT+CGMM")) ok("Virtual Modem");
+			else if (c.equals("AT+CGSN")) ok("000000000000000");
+			else if (c.equals("AT+CIMI")) ok("001010000000000");
+			else if (c.equals("AT+CGMR")) ok("3.5");
+			else if (c.equals("AT+CBC")) ok("+CBC: 0,100");
+			else if (c.equals("AT+CSQ")) ok("+CSQ: 31,99");
+			else if (c.equals("AT+COPS?")) ok("+COPS: 0,0,\"SMSLib\"");
+			else if (c.equals("AT+CGATT?")) ok("+CGATT: 1");
+			else if (c.equals("AT+CREG?")) ok("+CREG: " + this.creg + ",1");
+			else if (c.startsWith("AT+CREG=")) this.creg = setting(c, "AT+CREG=", this.creg);
+			else if (c.startsWith("AT+CMEE=")) this.cmee = setting(c, "AT+CMEE=", this.cmee);
+			else if (c.equals("AT+CMGF?")) ok("+CMGF: " + (this.pduMode ? 0 : 1));
+			else if (c.startsWith("AT+CMGF=")) this.pduMode = (setting(c, "AT+CMGF=", 0) == 0);
+			else if (c.equals("AT+CMMS?")) ok("+CMMS: " + this.cmms);
+			else if (c.startsWith("AT+CMMS=")) this.cmms = setting(c, "AT+CMMS=", this.cmms);
+			else if (c.equals("AT+CNMI=?")) ok("+CNMI: (0-3),(0-3),(0,2),(0-2),(0,1)");
+			else if (c.equals("AT+CNMI?")) ok("+CNMI: 2," + this.mt + ",0," + this.ds + ",0");
+			else if (c.startsWith("AT+CNMI="))
+			{
+				String[] values = c.substring(8).split(",");
+				this.mt = (values.length > 1 ? parse(values[1], 0) : 0);
+				this.ds = (values.length > 3 ? parse(values[3], 0) : 0);
+				ok();
+			}
+			else if (c.equals("AT+CPMS=?")) ok("+CPMS: (\"SM\"),(\"SM\"),(\"SM\")");
+			else if (c.equals("AT+CPMS?")) ok("+CPMS: " + this.modem.storageCounts(true));
+			else if (c.startsWith("AT+CPMS="))
+			{
+				boolean supported = true;
+				for (String memory : c.substring(8).split(","))
+					supported &= unquote(memory).equals(MEMORY);
+				if (supported) ok("+CPMS: " + this.modem.storageCounts(false));
+				else cmsError(302);
+			}
+			else if (c.startsWith("AT+CMGS="))
+			{
+				this.prompt = (this.pduMode ? PDU_PROMPT : TEXT_PROMPT);
+				write("\r\n> ");
+			}
+			else if (c.startsWith("AT+CMGL"))
+			{
+				if (!this.pduMode) cmsError(302);
+				else
+				{
+					List<String> lines = this.modem.list(c.startsWith("AT+CMGL=") ? parse(c.substring(8), -1) : REC_UNREAD);
+					ok(lines.toArray(new String[lines.size()]));
+				}
+			}
+			else if (c.startsWith("AT+CMGR="))
+			{
+				String[] message = (this.pduMode ? this.modem.read(parse(c.substring(8), -1)) : null);
+				if (message != null) ok(message);
+				else cmsError(this.pduMode ? 321 : 302);
+			}
+			else if (c.startsWith("AT+CMGD="))
+			{
+				String[] values = c.substring(8).split(",");
+				if (this.modem.delete(parse(values[0], -1), (values.length > 1 ? parse(values[1], 0) : 0))) ok();
+				else cmsError(321);
+			}
+			else if (c.startsWith("AT+CUSD="))
+			{
+				ok();
+				if (!c.startsWith("AT+CUSD=2") && (command.indexOf('"') >= 0))
+				{
+					AServiceScheduler.getInstance().schedule(new Runnable()
+					{
+						public void run()
+						{
+							if (!Session.this.closed) unsolicited("+CUSD: 0,\"" + Session.this.modem.ussdResponse + "\",15");
+						}
+					}, this.modem.ussdLatency);
+				}
+			}
+			else ok();
+		}
+
+		private void submit(String body, boolean pdu) throws IOException, InterruptedException
+		{
+			String recipient = null;
+			boolean statusReport = false;
+			if (pdu)
+			{
+				try
+				{
+					byte[] b = PduUtils.pduToBytes(body.trim());
+					int sca = b[0] & 0xff;
+					statusReport = ((b[sca + 1] & PduUtils.TP_SRR_REPORT) != 0);
+					int addressLength = 2 + (((b[sca + 3] & 0xff) + 1) / 2);
+					recipient = body.trim().substring((sca + 3) * 2, (sca + 3 + addressLength) * 2);
+				}
+				catch (RuntimeException e)
+				{
+					cmsError(304);
+					return;
+				}
+			}
+			sleep(this.modem.submitLatency);
+			final int ref = this.modem.submit();
+			if (ref < 0)
+			{
+				cmsError(500);
+				return;
+			}
+			write("\r\n+CMGS: " + ref + "\r\n\r\nOK\r\n");
+			final int delay = this.modem.statusReportDelay;
+			if (statusReport && (delay >= 0))
+			{
+				final String address = recipient;
+				AServiceScheduler.getInstance().schedule(new Runnable()
+				{
+					public void run()
+					{
+						Session.this.modem.storeStatusReport(ref, address);
+					}
+				}, delay);
+			}
+		}
+
+		private int setting(String c, String prefix, int current) throws IOException
+		{
+			int value = parse(c.substring(prefix.length()), -1);
+			if (value < 0)
+			{
+				cmeError(3);
+				return current;
+			}
+			ok();
+			return value;
+		}
+
+		private void ok(String... lines) throws IOException
+		{
+			StringBuffer b = new StringBuffer();
+			for (String l : lines)
+				b.append("\r\n").append(l).append("\r\n");
+			b.append("\r\nOK\r\n");
+			write(b.toString());
+		}
+
+		private void cmsError(int code) throws IOException
+		{
+			write(this.cmee == 0 ? "\r\nERROR\r\n" : "\r\n+CMS ERROR: " + code + "\r\n");
+		}
+
+		private void cmeError(int code) throws IOException
+		{
+			write(this.cmee == 0 ? "\r\nERROR\r\n" : "\r\n+CME ERROR: " + code + "\r\n");
+		}
+
+		private void write(String s) throws IOException
+		{
+			byte[] b = s.getBytes("ISO-8859-1");
+			synchronized (this)
+			{
+				send(b);
+			}
+		}
+
+		private static int parse(String s, int defaultValue)
+		{
+			try
+			{
+				return Integer.parseInt(s.trim());
+			}
+			catch (NumberFormatException e)
+			{
+				return defaultValue;
+			}
+		}
+
+		private static String unquote(String s)
+		{
+			String value = s.trim();
+			if ((value.length() >= 2) && value.startsWith("\"") && value.endsWith("\"")) value = value.substring(1, value.length() - 1);
+			return value;
+		}
+	}
+
+	/**
+	 * A TCP connection, with telnet commands stripped from the received data.
+	 */
+	private static class Connection extends Session
+	{
+		private static final int DATA = 0, COMMAND = 1, OPTION = 2, SUBNEGOTIATION = 3, SUBNEGOTIATION_IAC = 4;
+
+		private final Socket socket;
+
+		private final OutputStream out;
+
+		private final Thread reader;
+
+		Connection(VirtualModem myModem, Socket mySocket) throws IOException
+		{
+			super(myModem);
+			this.socket = mySocket;
+			this.socket.setTcpNoDelay(true);
+			this.out = mySocket.getOutputStream();
+			this.reader = new Thread("VirtualModem-Reader")
+			{
+				@Override
+				public void run()
+				{
+					read();
+				}
+			};
+			this.reader.setDaemon(true);
+		}
+
+		@Override
+		void start()
+		{
+			super.start();
+			this.reader.start();
+		}
+
+		@Override
+		protected void send(byte[] b) throws IOException
+		{
+			this.out.write(b);
+			this.out.flush();
+		}
+
+		@Override
+		void close()
+		{
+			super.close();
+			try
+			{
+				this.socket.close();
+			}
+			catch (IOException e)
+			{
+				// Ignore.
+			}
+		}
+
+		private void read()
+		{
+			byte[] b = new byte[4096];
+			int state = DATA;
+			try
+			{
+				InputStream in = this.socket.getInputStream();
+				int n;
+				while ((n = in.read(b)) != -1)
+				{
+					int len = 0;
+					for (int i = 0; i < n; i++)
+					{
+						int c = b[i] & 0xff;
+						switch (state)
+						{
+							case DATA:
+								if (c == 255) state = COMMAND;
+								else b[len++] = (byte) c;
+								break;
+							case COMMAND:
+								if (c == 255)
+								{
+									b[len++] = (byte) c;
+									state = DATA;
+								}
+								else if (c == 250) state = SUBNEGOTIATION;
+								else if (c >= 251) state = OPTION;
+								else state = DATA;
+								break;
+							case OPTION:
+								state = DATA;
+								break;
+							case SUBNEGOTIATION:
+								if (c == 255) state = SUBNEGOTIATION_IAC;
+								break;
+							case SUBNEGOTIATION_IAC:
+								state = (c == 240 ? DATA : SUBNEGOTIATION);
+								break;
+						}
+					}
+					receive(b, 0, len);
+				}
+			}
+			catch (IOException e)
+			{
+				// Closed.
+			}
+			close();
+		}
+	}
+}
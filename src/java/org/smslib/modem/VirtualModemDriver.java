@@ -0,0 +1,107 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.modem;
+
+import java.io.IOException;
+import org.smslib.GatewayException;
+import org.smslib.helper.Logger;
+
+/**
+ * Driver talking to a {@link VirtualModem} in the same process. Written bytes
+ * go to the modem's command interpreter and its answers go straight to the
+ * response parser, without a socket or a reader thread.
+ */
+class VirtualModemDriver extends AModemDriver
+{
+	private final VirtualModem modem;
+
+	private volatile VirtualModem.Session session;
+
+	protected VirtualModemDriver(ModemGateway myGateway, VirtualModem myModem)
+	{
+		super(myGateway, "virtual");
+		this.modem = myModem;
+	}
+
+	@Override
+	protected void connectPort() throws GatewayException, IOException, InterruptedException
+	{
+		Logger.getInstance().logInfo("Opening: virtual modem", null, getGateway().getGatewayId());
+		VirtualModem.Session s = new VirtualModem.Session(this.modem)
+		{
+			@Override
+			protected void send(byte[] b)
+			{
+				dataReceived(b, 0, b.length);
+			}
+		};
+		this.modem.open(s);
+		this.session = s;
+	}
+
+	@Override
+	protected void disconnectPort() throws IOException, InterruptedException
+	{
+		Logger.getInstance().logInfo("Closing: virtual modem", null, getGateway().getGatewayId());
+		VirtualModem.Session s = this.session;
+		this.session = null;
+		if (s != null) s.close();
+	}
+
+	@Override
+	protected boolean hasReaderThread()
+	{
+		return false;
+	}
+
+	@Override
+	protected void clear() throws IOException
+	{
+		// Nothing is buffered outside the ring.
+	}
+
+	@Override
+	protected boolean portHasData() throws IOException
+	{
+		return false;
+	}
+
+	@Override
+	protected int read() throws IOException
+	{
+		return -1;
+	}
+
+	@Override
+	public void write(char c) throws IOException
+	{
+		write(new byte[] { (byte) c });
+	}
+
+	@Override
+	public void write(byte[] s) throws IOException
+	{
+		VirtualModem.Session current = this.session;
+		if (current == null) throw new IOException("Not connected.");
+		current.receive(s, 0, s.length);
+	}
+}
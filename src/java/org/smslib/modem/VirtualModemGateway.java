@@ -0,0 +1,64 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.modem;
+
+/**
+ * Gateway connected to a {@link VirtualModem} in the same process, for tests
+ * and benchmarks of the modem code without hardware.
+ * 
+ * @since 3.5
+ */
+public class VirtualModemGateway extends ModemGateway
+{
+	/**
+	 * Constructor for a gateway using the default AT handler.
+	 * 
+	 * @param id
+	 *            Your own ID for addressing this gateway.
+	 * @param modem
+	 *            The virtual modem.
+	 */
+	public VirtualModemGateway(String id, VirtualModem modem)
+	{
+		this(id, modem, "", "");
+	}
+
+	/**
+	 * Constructor for a gateway using the AT handler of a given modem.
+	 * 
+	 * @param id
+	 *            Your own ID for addressing this gateway.
+	 * @param modem
+	 *            The virtual modem.
+	 * @param manufacturer
+	 *            The manufacturer whose AT handler to use, for example
+	 *            "Wavecom".
+	 * @param model
+	 *            The model, for example "M1306B".
+	 */
+	public VirtualModemGateway(String id, VirtualModem modem, String manufacturer, String model)
+	{
+		super(id, "virtual", 0, manufacturer, model, new VirtualModemDriver(null, modem));
+		// The driver had to exist before this gateway did.
+		getDriver().setGateway(this);
+	}
+}
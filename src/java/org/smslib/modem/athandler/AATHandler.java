@@ -137,6 +137,19 @@ public abstract class AATHandler
 
 	public abstract int sendMessage(int size, String pdu, String phone, String text) throws TimeoutException, GatewayException, IOException, InterruptedException;
 
+	/**
+	 * Sends a message, writing its body on the modem's "&gt; " prompt when
+	 * waitPrompt is set, whatever Settings.AT_WAIT_PROMPT says. Handlers that
+	 * do not tell the two paths apart send it as
+	 * {@link #sendMessage(int, String, String, String)} does.
+	 * 
+	 * @since 3.5
+	 */
+	public int sendMessage(int size, String pdu, String phone, String text, boolean waitPrompt) throws TimeoutException, GatewayException, IOException, InterruptedException
+	{
+		return sendMessage(size, pdu, phone, text);
+	}
+
 	public abstract String listMessages(MessageClasses messageClass) throws TimeoutException, GatewayException, IOException, InterruptedException;
 
 	public abstract String getMessageByIndex(int msgIndex) throws TimeoutException, GatewayException, IOException, InterruptedException;
@@ -301,6 +301,12 @@ public class ATHandler extends AATHandler
 
 	@Override
 	public int sendMessage(int size, String pdu, String phone, String text) throws TimeoutException, GatewayException, IOException, InterruptedException
+	{
+		return sendMessage(size, pdu, phone, text, Service.getInstance().getSettings().AT_WAIT_PROMPT);
+	}
+
+	@Override
+	public int sendMessage(int size, String pdu, String phone, String text, boolean waitPrompt) throws TimeoutException, GatewayException, IOException, InterruptedException
 	{
 		int responseRetries, errorRetries;
 		String response;
@@ -312,26 +318,39 @@ public class ATHandler extends AATHandler
 			{
 				responseRetries = 0;
 				getModemDriver().write("AT+CMGS=\"_1_\"\r".replaceAll("\"_1_\"", "" + size));
-				Thread.sleep(Service.getInstance().getSettings().AT_WAIT_CGMS);
-				while (!getModemDriver().dataAvailable())
+				if (waitPrompt)
 				{
-					responseRetries++;
-					if (responseRetries == Service.getInstance().getSettings().OUTBOUND_RETRIES) throw new GatewayException("Gateway is not responding, max number of retries reached.");
-					Logger.getInstance().logWarn("ATHandler().SendMessage(): Still waiting for response (I) (" + responseRetries + ")...", null, getGateway().getGatewayId());
-					Thread.sleep(Service.getInstance().getSettings().OUTBOUND_RETRY_WAIT);
+					response = "";
+					if (waitForPrompt())
+					{
+						getModemDriver().write(pdu);
+						getModemDriver().write((char) 26);
+						response = getModemDriver().getResponse();
+					}
 				}
-				responseRetries = 0;
-				getModemDriver().clearBuffer();
-				getModemDriver().write(pdu);
-				getModemDriver().write((char) 26);
-				response = getModemDriver().getResponse();
-				while (response.length() == 0)
+				else
 				{
-					responseRetries++;
-					if (responseRetries == Service.getInstance().getSettings().OUTBOUND_RETRIES) throw new GatewayException("Gateway is not responding, max number of retries reached.");
-					Logger.getInstance().logWarn("ATHandler().SendMessage(): Still waiting for response (II) (" + responseRetries + ")...", null, getGateway().getGatewayId());
-					Thread.sleep(Service.getInstance().getSettings().OUTBOUND_RETRY_WAIT);
+					Thread.sleep(Service.getInstance().getSettings().AT_WAIT_CGMS);
+					while (!getModemDriver().dataAvailable())
+					{
+						responseRetries++;
+						if (responseRetries == Service.getInstance().getSettings().OUTBOUND_RETRIES) throw new GatewayException("Gateway is not responding, max number of retries reached.");
+						Logger.getInstance().logWarn("ATHandler().SendMessage(): Still waiting for response (I) (" + responseRetries + ")...", null, getGateway().getGatewayId());
+						Thread.sleep(Service.getInstance().getSettings().OUTBOUND_RETRY_WAIT);
+					}
+					responseRetries = 0;
+					getModemDriver().clearBuffer();
+					getModemDriver().write(pdu);
+					getModemDriver().write((char) 26);
 					response = getModemDriver().getResponse();
+					while (response.length() == 0)
+					{
+						responseRetries++;
+						if (responseRetries == Service.getInstance().getSettings().OUTBOUND_RETRIES) throw new GatewayException("Gateway is not responding, max number of retries reached.");
+						Logger.getInstance().logWarn("ATHandler().SendMessage(): Still waiting for response (II) (" + responseRetries + ")...", null, getGateway().getGatewayId());
+						Thread.sleep(Service.getInstance().getSettings().OUTBOUND_RETRY_WAIT);
+						response = getModemDriver().getResponse();
+					}
 				}
 				if (getModemDriver().getLastError() == 0)
 				{
@@ -366,9 +385,17 @@ public class ATHandler extends AATHandler
 		else if (getGateway().getProtocol() == Protocols.TEXT)
 		{
 			getModemDriver().write("AT+CMGS=\"_1_\"\r".replaceAll("_1_", phone));
-			getModemDriver().clearBuffer();
-			getModemDriver().write(text);
-			Thread.sleep(Service.getInstance().getSettings().AT_WAIT_CGMS);
+			if (waitPrompt)
+			{
+				if (!waitForPrompt()) return -1;
+				getModemDriver().write(text);
+			}
+			else
+			{
+				getModemDriver().clearBuffer();
+				getModemDriver().write(text);
+				Thread.sleep(Service.getInstance().getSettings().AT_WAIT_CGMS);
+			}
 			getModemDriver().write((char) 26);
 			response = getModemDriver().getResponse();
 			if (response.indexOf("OK\r") >= 0)
@@ -390,6 +417,24 @@ public class ATHandler extends AATHandler
 		return refNo;
 	}
 
+	/**
+	 * Waits for the prompt of AT+CMGS. If none comes, sends ESC, which ends
+	 * the message input the modem may still be waiting for.
+	 */
+	private boolean waitForPrompt() throws TimeoutException, GatewayException, IOException, InterruptedException
+	{
+		boolean prompted = false;
+		try
+		{
+			prompted = getModemDriver().waitForPrompt();
+		}
+		finally
+		{
+			if (!prompted) getModemDriver().write((char) 0x1b);
+		}
+		return prompted;
+	}
+
 	@Override
 	public String listMessages(MessageClasses messageClass) throws TimeoutException, GatewayException, IOException, InterruptedException
 	{
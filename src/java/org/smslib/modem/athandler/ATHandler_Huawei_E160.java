@@ -42,9 +42,7 @@ public class ATHandler_Huawei_E160 extends ATHandler_Huawei
 	@Override
 	protected String formatUSSDCommand(String presentation, String ussdCommand, String dcs)
 	{
-		byte[] textSeptets = PduUtils.stringToUnencodedSeptets(ussdCommand);
-		byte[] alphaNumBytes = PduUtils.unencodedSeptetsToEncodedSeptets(textSeptets);
-		String ussdCommandEncoded = PduUtils.bytesToPdu(alphaNumBytes);
+		String ussdCommandEncoded = PduUtils.stringToPdu(ussdCommand);
 		return super.formatUSSDCommand(presentation, ussdCommandEncoded, "15");
 	}
 
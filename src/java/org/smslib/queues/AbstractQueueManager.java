@@ -20,8 +20,13 @@
 
 package org.smslib.queues;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import org.smslib.AGateway;
 import org.smslib.OutboundMessage;
+import org.smslib.Service;
 import org.smslib.helper.Logger;
 import org.smslib.threading.AServiceThread;
 
@@ -40,6 +45,8 @@ public abstract class AbstractQueueManager
 
 	private DelayQueueManager delayQueueManager;
 
+	private final ConcurrentHashMap<String, PendingSignal> pendingSignals = new ConcurrentHashMap<String, PendingSignal>();
+
 	public AbstractQueueManager()
 	{
 		this(200);
@@ -96,6 +103,127 @@ public abstract class AbstractQueueManager
 
 	public abstract int delayedQueueSize(String gatewayId);
 
+	/**
+	 * Looks up a queued (pending or delayed) message by its UUID. This
+	 * implementation scans all queues; queue managers which index their
+	 * messages override it.
+	 * 
+	 * @param messageUUID
+	 *            The UUID of the message.
+	 * @return The message, or null if it is not queued.
+	 */
+	public OutboundMessage getMessage(String messageUUID)
+	{
+		for (OutboundMessage message : getDelayedMessages())
+			if (message.getUuid().equals(messageUUID)) return message;
+		for (AGateway gateway : Service.getInstance().getGateways())
+			for (OutboundMessage message : getPendingMessages(gateway.getGatewayId()))
+				if (message.getUuid().equals(messageUUID)) return message;
+		return null;
+	}
+
+	/**
+	 * Removes a batch of queued (pending or delayed) messages.
+	 * 
+	 * @param messageUUIDs
+	 *            The UUIDs of the messages to remove.
+	 * @return The number of messages removed.
+	 */
+	public int removeMessages(Collection<String> messageUUIDs)
+	{
+		int removed = 0;
+		for (String messageUUID : messageUUIDs)
+			if (removePendingMessage(messageUUID) || removeDelayedMessage(messageUUID)) removed++;
+		return removed;
+	}
+
+	/**
+	 * Removes all queued (pending or delayed) messages tagged with a campaign.
+	 * This implementation scans all queues; queue managers which index their
+	 * messages override it.
+	 * 
+	 * @param campaign
+	 *            The campaign tag.
+	 * @return The number of messages removed.
+	 * @see OutboundMessage#setCampaign(String)
+	 */
+	public int removeCampaign(String campaign)
+	{
+		List<OutboundMessage> pending = new ArrayList<OutboundMessage>();
+		List<OutboundMessage> delayed = new ArrayList<OutboundMessage>();
+		for (AGateway gateway : Service.getInstance().getGateways())
+			for (OutboundMessage message : getPendingMessages(gateway.getGatewayId()))
+				if (campaign.equals(message.getCampaign())) pending.add(message);
+		for (OutboundMessage message : getDelayedMessages())
+			if (campaign.equals(message.getCampaign())) delayed.add(message);
+		int removed = 0;
+		for (OutboundMessage message : pending)
+			if (removePendingMessage(message)) removed++;
+		for (OutboundMessage message : delayed)
+			if (removeDelayedMessage(message)) removed++;
+		return removed;
+	}
+
+	/**
+	 * Returns a counter which changes whenever a message is added to the
+	 * pending queue of a gateway. Read it before polling, and pass it to
+	 * <code>awaitPendingMessage()</code> if the poll found nothing.
+	 * 
+	 * @param gatewayId
+	 *            The gateway.
+	 * @return The current value of the counter.
+	 */
+	public long getPendingVersion(String gatewayId)
+	{
+		return getPendingSignal(gatewayId).version;
+	}
+
+	/**
+	 * Waits until a message is added to the pending queue of a gateway, unless
+	 * one was added since <code>version</code> was read.
+	 * 
+	 * @param gatewayId
+	 *            The gateway.
+	 * @param version
+	 *            The value returned by <code>getPendingVersion()</code>.
+	 * @param timeout
+	 *            The maximum time to wait, in milliseconds.
+	 * @return True if a message was added.
+	 * @throws InterruptedException
+	 *             The calling thread was interrupted.
+	 */
+	public boolean awaitPendingMessage(String gatewayId, long version, long timeout) throws InterruptedException
+	{
+		return getPendingSignal(gatewayId).await(version, timeout);
+	}
+
+	/**
+	 * Wakes up the threads waiting in <code>awaitPendingMessage()</code> for
+	 * the gateway. Implementations call it whenever they add a message to a
+	 * pending queue; if they do not, waiting threads still wake up when their
+	 * timeout expires.
+	 * 
+	 * @param gatewayId
+	 *            The gateway.
+	 */
+	protected void notifyPendingMessage(String gatewayId)
+	{
+		PendingSignal signal = pendingSignals.get(gatewayId);
+		if (signal != null) signal.signal();
+	}
+
+	private PendingSignal getPendingSignal(String gatewayId)
+	{
+		PendingSignal signal = pendingSignals.get(gatewayId);
+		if (signal == null)
+		{
+			signal = new PendingSignal();
+			PendingSignal previous = pendingSignals.putIfAbsent(gatewayId, signal);
+			if (previous != null) signal = previous;
+		}
+		return signal;
+	}
+
 	public int getQueueDelay()
 	{
 		return queueDelay;
@@ -138,6 +266,29 @@ public abstract class AbstractQueueManager
 		}
 	}
 
+	private static class PendingSignal
+	{
+		volatile long version;
+
+		synchronized void signal()
+		{
+			version++;
+			notifyAll();
+		}
+
+		synchronized boolean await(long since, long timeout) throws InterruptedException
+		{
+			long deadline = System.currentTimeMillis() + timeout;
+			long remaining = timeout;
+			while (version == since && remaining > 0)
+			{
+				wait(remaining);
+				remaining = deadline - System.currentTimeMillis();
+			}
+			return (version != since);
+		}
+	}
+
 	//TODO getStatus
 	class DelayQueueManager extends AServiceThread
 	{
@@ -150,9 +301,9 @@ public abstract class AbstractQueueManager
 		public void process() throws Exception
 		{
 			Logger.getInstance().logDebug("DelayQueueManager running...", null, null);
-			OutboundMessage message = pollDelayedMessage();
-			if (message != null) queueMessage(message);
-			//queueMessage(getDelayQueue().take().getMsg());
+			OutboundMessage message;
+			while (!isCanceled() && (message = pollDelayedMessage()) != null)
+				queueMessage(message);
 			Logger.getInstance().logDebug("DelayQueueManager end...", null, null);
 		}
 	}
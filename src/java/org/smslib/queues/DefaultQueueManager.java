@@ -20,21 +20,15 @@
 
 package org.smslib.queues;
 
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.PriorityBlockingQueue;
 import org.smslib.OutboundMessage;
+import org.smslib.OutboundMessageCodec;
 import org.smslib.Service;
 import org.smslib.helper.Logger;
 
@@ -46,9 +40,7 @@ public class DefaultQueueManager extends AbstractQueueManager
 {
 	public static final String MESSAGE_FILE_EXT = ".msg";
 
-	private Map<String, PriorityBlockingQueue<OutboundMessage>> queueMap;
-
-	private DelayQueue<ScheduledOutboundMessage> delayQueue;
+	private MessageIndex index;
 
 	private String queueDirectory;
 
@@ -58,32 +50,34 @@ public class DefaultQueueManager extends AbstractQueueManager
 
 	public DefaultQueueManager()
 	{
-		super();
+		this(200, null);
 	}
 
 	public DefaultQueueManager(String queueDirectory)
 	{
-		super();
-		this.queueDirectory = queueDirectory;
+		this(200, queueDirectory);
 	}
 
 	public DefaultQueueManager(int delay)
 	{
-		super(delay);
+		this(delay, null);
 	}
 
 	public DefaultQueueManager(int delay, String queueDirectory)
 	{
 		super(delay);
 		this.queueDirectory = queueDirectory;
+		open();
 	}
 
-	@Override
-	protected void init()
+	/**
+	 * Creates the queue directories, or loads the messages already in them.
+	 * Runs from the constructor rather than from <code>init()</code>, which
+	 * the super constructor calls before <code>queueDirectory</code> is set.
+	 */
+	private void open()
 	{
-		super.init();
-		queueMap = new HashMap<String, PriorityBlockingQueue<OutboundMessage>>();
-		delayQueue = new DelayQueue<ScheduledOutboundMessage>();
+		index = new MessageIndex();
 		if (queueDirectory == null)
 		{
 			queueDirectory = Service.getInstance().getSettings().QUEUE_DIRECTORY;
@@ -144,64 +138,76 @@ public class DefaultQueueManager extends AbstractQueueManager
 	@Override
 	public boolean removePendingMessage(OutboundMessage message)
 	{
-		for (PriorityBlockingQueue<OutboundMessage> q : queueMap.values())
-		{
-			if (q.remove(message))
-			{
-				deletePendingMessage(message.getGatewayId(), message.getUuid());
-				return true;
-			}
-		}
-		return false;
+		if (index.remove(message.getUuid(), false) == null) return false;
+		deletePendingMessage(message.getGatewayId(), message.getUuid());
+		return true;
 	}
 
-	/* (non-Javadoc)
+	/**
+	 * Removes a pending message by UUID, using the index. For compatibility, a
+	 * message whose own ID (see <code>Message.getId()</code>) matches is
+	 * removed if no UUID matches; that case needs a scan of the queues.
+	 * 
 	 * @see org.smslib.queues.AbstractQueueManager#removePendingMessage(java.lang.String)
 	 */
 	@Override
 	public boolean removePendingMessage(String messageUUID)
 	{
-		for (PriorityBlockingQueue<OutboundMessage> q : queueMap.values())
+		MessageIndex.Entry entry = index.remove(messageUUID, false);
+		if (entry == null)
 		{
-			for (OutboundMessage m : q)
+			for (MessageIndex.Entry e : index.entries())
 			{
-				if (m.getId().equalsIgnoreCase(messageUUID))
+				if (!e.delayed && e.message.getId().equalsIgnoreCase(messageUUID) && index.remove(e))
 				{
-					if (q.remove(m))
-					{
-						deletePendingMessage(m.getGatewayId(), messageUUID);
-						return true;
-					}
+					entry = e;
+					break;
 				}
 			}
+			if (entry == null) return false;
 		}
-		return false;
+		deletePendingMessage(entry.gatewayId, entry.uuid);
+		return true;
 	}
 
-	private boolean addToGatewayQueue(OutboundMessage message, boolean store)
+	@Override
+	public OutboundMessage getMessage(String messageUUID)
 	{
-		PriorityBlockingQueue<OutboundMessage> queue = queueMap.get(message.getGatewayId());
-		if (queue == null)
+		MessageIndex.Entry entry = index.get(messageUUID);
+		return (entry == null ? null : entry.message);
+	}
+
+	@Override
+	public int removeCampaign(String campaign)
+	{
+		List<MessageIndex.Entry> removed = index.removeCampaign(campaign);
+		for (MessageIndex.Entry entry : removed)
 		{
-			queue = new PriorityBlockingQueue<OutboundMessage>(50, new PriorityComparator());
-			queueMap.put(message.getGatewayId(), queue);
+			if (entry.delayed) deleteDelayedMessage(entry.uuid);
+			else deletePendingMessage(entry.gatewayId, entry.uuid);
 		}
-		boolean queued = queue.add(message);
-		if (store && queued) storePendingMessage(message);
-		return queued;
+		return removed.size();
+	}
+
+	private boolean addToGatewayQueue(OutboundMessage message, boolean store)
+	{
+		index.add(new MessageIndex.Entry(message, false));
+		if (store) storePendingMessage(message);
+		notifyPendingMessage(message.getGatewayId());
+		return true;
 	}
 
 	private boolean addToDelayedQueue(OutboundMessage message, boolean store)
 	{
-		boolean queued = delayQueue.add(new ScheduledOutboundMessage(message));
-		if (store && queued) storeDelayedMessage(message);
-		return queued;
+		index.add(new MessageIndex.Entry(message, true));
+		if (store) storeDelayedMessage(message);
+		return true;
 	}
 
 	private boolean storePendingMessage(OutboundMessage message)
 	{
 		if (queueDirectory == null) { return true; }
-		File gatewayDir = new File(pendingMessageDir, message.getGatewayId().replace("/", "."));
+		File gatewayDir = gatewayDirectory(message.getGatewayId());
 		if (!gatewayDir.exists())
 		{
 			if (!gatewayDir.mkdir())
@@ -216,14 +222,21 @@ public class DefaultQueueManager extends AbstractQueueManager
 	private boolean deletePendingMessage(String gatewayId, String messageUUID)
 	{
 		if (queueDirectory == null) { return true; }
-		return new File(new File(pendingMessageDir, gatewayId), messageUUID + MESSAGE_FILE_EXT).delete();
+		return new File(gatewayDirectory(gatewayId), messageUUID + MESSAGE_FILE_EXT).delete();
 	}
 
 	private boolean deletePendingMessages(String gatewayId)
 	{
 		if (queueDirectory == null) { return true; }
 		if (gatewayId == null) return emptyDirectory(pendingMessageDir, false);
-		else return emptyDirectory(new File(pendingMessageDir, gatewayId), true);
+		File gatewayDir = gatewayDirectory(gatewayId);
+		if (!gatewayDir.exists()) return true;
+		return emptyDirectory(gatewayDir, true);
+	}
+
+	private File gatewayDirectory(String gatewayId)
+	{
+		return new File(pendingMessageDir, gatewayId.replace("/", "."));
 	}
 
 	private boolean storeDelayedMessage(OutboundMessage message)
@@ -238,30 +251,27 @@ public class DefaultQueueManager extends AbstractQueueManager
 		return new File(delayedMessageDir, messageUUID + MESSAGE_FILE_EXT).delete();
 	}
 
+	/**
+	 * Returns the next delayed message which is due, without waiting.
+	 * 
+	 * @return The message, or null if no delayed message is due yet.
+	 */
 	@Override
 	public OutboundMessage pollDelayedMessage()
 	{
-		try
-		{
-			OutboundMessage message = delayQueue.take().getMessage();
-			deleteDelayedMessage(message.getUuid());
-			return message;
-		}
-		catch (InterruptedException e)
-		{
-			//ignored
-		}
-		return null;
+		MessageIndex.Entry entry = index.pollDelayed(System.currentTimeMillis());
+		if (entry == null) return null;
+		deleteDelayedMessage(entry.uuid);
+		return entry.message;
 	}
 
 	@Override
 	public OutboundMessage pollPendingMessage(String gatewayId)
 	{
-		PriorityBlockingQueue<OutboundMessage> queue = queueMap.get(gatewayId);
-		if (queue == null) return null;
-		OutboundMessage message = queue.poll();
-		if (message != null) deletePendingMessage(gatewayId, message.getUuid());
-		return message;
+		MessageIndex.Entry entry = index.pollPending(gatewayId);
+		if (entry == null) return null;
+		deletePendingMessage(gatewayId, entry.uuid);
+		return entry.message;
 	}
 
 	private boolean serializeMessage(OutboundMessage message, File toFile)
@@ -272,11 +282,11 @@ public class DefaultQueueManager extends AbstractQueueManager
 			Logger.getInstance().logError("Cannot save Message " + message.getUuid() + " File already exist.", null, null);
 			return false;
 		}
-		ObjectOutputStream out = null;
+		FileOutputStream out = null;
 		try
 		{
-			out = new ObjectOutputStream(new FileOutputStream(toFile));
-			out.writeObject(message);
+			out = new FileOutputStream(toFile);
+			out.write(OutboundMessageCodec.encode(message));
 			out.close();
 		}
 		catch (IOException e)
@@ -294,24 +304,21 @@ public class DefaultQueueManager extends AbstractQueueManager
 			Logger.getInstance().logError("File of queued message doesn't exist " + fromFile.getPath(), null, null);
 			return null;
 		}
-		ObjectInputStream in = null;
+		DataInputStream in = null;
 		OutboundMessage message = null;
 		try
 		{
-			in = new ObjectInputStream(new FileInputStream(fromFile));
-			message = (OutboundMessage) in.readObject();
+			byte[] data = new byte[(int) fromFile.length()];
+			in = new DataInputStream(new FileInputStream(fromFile));
+			in.readFully(data);
 			in.close();
+			message = OutboundMessageCodec.decode(data);
 		}
 		catch (IOException e)
 		{
 			Logger.getInstance().logError("Could not read queued message from file " + fromFile.getPath(), e, null);
 			return null;
 		}
-		catch (ClassNotFoundException e)
-		{
-			Logger.getInstance().logError("Could not read queued message from file " + fromFile.getPath(), e, null);
-			return null;
-		}
 		return message;
 	}
 
@@ -352,88 +359,55 @@ public class DefaultQueueManager extends AbstractQueueManager
 		}
 	}
 
-	class PriorityComparator implements Comparator<OutboundMessage>
-	{
-		@Override
-		public int compare(OutboundMessage x, OutboundMessage y)
-		{
-			int comp = y.getPriority() - x.getPriority();
-			if (comp == 0) comp = x.getDate().compareTo(y.getDate());
-			return comp;
-		}
-	}
-
 	@Override
 	public int delayedQueueSize(String gatewayId)
 	{
-		return delayQueue.size();
+		return index.delayedSize();
 	}
 
+	/**
+	 * @return A read-only, live view of the delayed messages.
+	 */
 	@Override
 	public Collection<OutboundMessage> getDelayedMessages()
 	{
-		List<OutboundMessage> messages = new ArrayList<OutboundMessage>();
-		for (ScheduledOutboundMessage scheduledOutboundMessage : delayQueue)
-		{
-			messages.add(scheduledOutboundMessage.getMessage());
-		}
-		return messages;
+		return index.delayedMessages();
 	}
 
+	/**
+	 * @return A read-only, live view of the pending messages of the gateway,
+	 *         in sending order.
+	 */
 	@Override
 	public Collection<OutboundMessage> getPendingMessages(String gatewayId)
 	{
-		PriorityBlockingQueue<OutboundMessage> queue = queueMap.get(gatewayId);
-		if (queue == null) return new ArrayList<OutboundMessage>();
-		return new ArrayList<OutboundMessage>(queue);
+		return index.pendingMessages(gatewayId);
 	}
 
 	@Override
 	public int pendingQueueSize(String gatewayId)
 	{
-		PriorityBlockingQueue<OutboundMessage> queue = queueMap.get(gatewayId);
-		if (queue == null) return 0;
-		return queue.size();
+		return index.pendingSize(gatewayId);
 	}
 
 	@Override
 	public boolean removeDelayedMessage(OutboundMessage message)
 	{
-		for (ScheduledOutboundMessage scheduledOutboundMessage : delayQueue)
-		{
-			if (message.equals(scheduledOutboundMessage.getMessage()))
-			{
-				if (delayQueue.remove(scheduledOutboundMessage))
-				{
-					deleteDelayedMessage(message.getUuid());
-					return true;
-				}
-			}
-		}
-		return false;
+		return removeDelayedMessage(message.getUuid());
 	}
 
 	@Override
 	public boolean removeDelayedMessage(String messageUUID)
 	{
-		for (ScheduledOutboundMessage scheduledOutboundMessage : delayQueue)
-		{
-			if (messageUUID.equals(scheduledOutboundMessage.getMessage().getUuid()))
-			{
-				if (delayQueue.remove(scheduledOutboundMessage))
-				{
-					deleteDelayedMessage(messageUUID);
-					return true;
-				}
-			}
-		}
-		return false;
+		if (index.remove(messageUUID, true) == null) return false;
+		deleteDelayedMessage(messageUUID);
+		return true;
 	}
 
 	@Override
 	public boolean removeAllDelayedMessages()
 	{
-		delayQueue.clear();
+		index.removeAllDelayed();
 		if (queueDirectory == null) { return true; }
 		return emptyDirectory(delayedMessageDir, false);
 	}
@@ -441,23 +415,16 @@ public class DefaultQueueManager extends AbstractQueueManager
 	@Override
 	public boolean removeAllPendingMessages(String gatewayId)
 	{
-		PriorityBlockingQueue<OutboundMessage> queue = queueMap.get(gatewayId);
-		if (queue != null)
-		{
-			queue.clear();
-			queueMap.remove(queue);
-			deletePendingMessages(gatewayId);
-			return true;
-		}
-		return false;
+		if (index.removeAllPending(gatewayId).isEmpty()) return false;
+		deletePendingMessages(gatewayId);
+		return true;
 	}
 
 	@Override
 	public boolean removeAllPendingMessages()
 	{
-		queueMap.clear();
-		deletePendingMessages(null);
-		return false;
+		index.removeAllPending(null);
+		return deletePendingMessages(null);
 	}
 
 	private boolean emptyDirectory(File dir, boolean removeDir)
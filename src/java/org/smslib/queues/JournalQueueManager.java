@@ -0,0 +1,564 @@
+// SMSLib for Java v4
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.queues;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.smslib.OutboundMessage;
+import org.smslib.OutboundMessageCodec;
+import org.smslib.Service;
+import org.smslib.helper.Logger;
+import org.smslib.threading.AServiceThread;
+
+/**
+ * Queue Manager which persists queued messages in an append-only, segmented
+ * journal instead of one file per message.
+ * <p>
+ * Every queue operation appends a small record (add, tombstone or clear) to
+ * the active segment. Enqueues are group committed: concurrent callers share
+ * a single fsync, and <code>queueMessage()</code> returns only after the
+ * message is on disk. Tombstones for sent or removed messages are not waited
+ * for, so after a crash a message may be sent again but never lost.
+ * <p>
+ * A background compactor rewrites the live messages into a snapshot once
+ * most of the journal consists of dead records, and deletes the segments it
+ * replaces. On start up the snapshot and the remaining segments are replayed
+ * sequentially to rebuild the queues.
+ * 
+ * @since 3.5
+ */
+public class JournalQueueManager extends AbstractQueueManager
+{
+	public static final long DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	public static final int DEFAULT_COMPACTION_INTERVAL = 60000;
+
+	private static final byte ADD_PENDING = 1;
+
+	private static final byte ADD_DELAYED = 2;
+
+	private static final byte REMOVE = 3;
+
+	private static final byte CLEAR_GATEWAY = 4;
+
+	private static final byte CLEAR_PENDING = 5;
+
+	private static final byte CLEAR_DELAYED = 6;
+
+	private MessageIndex index;
+
+	private Map<String, OutboundMessage> promoting;
+
+	private Map<String, Integer> recordSizes;
+
+	private long liveBytes;
+
+	private String queueDirectory;
+
+	private long segmentSize;
+
+	private int compactionInterval;
+
+	private boolean syncOnQueue;
+
+	private QueueJournal journal;
+
+	private Compactor compactor;
+
+	public JournalQueueManager()
+	{
+		this(200, null);
+	}
+
+	public JournalQueueManager(String queueDirectory)
+	{
+		this(200, queueDirectory);
+	}
+
+	public JournalQueueManager(int delay)
+	{
+		this(delay, null);
+	}
+
+	public JournalQueueManager(int delay, String queueDirectory)
+	{
+		this(delay, queueDirectory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	public JournalQueueManager(int delay, String queueDirectory, long segmentSize)
+	{
+		super(delay);
+		this.queueDirectory = queueDirectory;
+		this.segmentSize = segmentSize;
+		this.compactionInterval = DEFAULT_COMPACTION_INTERVAL;
+		this.syncOnQueue = true;
+		this.index = new MessageIndex();
+		this.promoting = new HashMap<String, OutboundMessage>();
+		this.recordSizes = new HashMap<String, Integer>();
+		open();
+	}
+
+	private void open()
+	{
+		if (queueDirectory == null)
+		{
+			queueDirectory = Service.getInstance().getSettings().QUEUE_DIRECTORY;
+			if (queueDirectory == null)
+			{
+				Logger.getInstance().logInfo("Queue directory not defined. Queued messages will not be saved to filesystem.", null, null);
+				return;
+			}
+		}
+		journal = new QueueJournal(new File(queueDirectory, "journal"), segmentSize);
+		final Map<String, ReplayedMessage> replayed = new LinkedHashMap<String, ReplayedMessage>();
+		try
+		{
+			Logger.getInstance().logDebug("replaying queue journal..", null, null);
+			journal.open(new QueueJournal.RecordHandler()
+			{
+				@Override
+				public void handle(byte[] body) throws IOException
+				{
+					replay(body, replayed);
+				}
+			});
+		}
+		catch (IOException e)
+		{
+			Logger.getInstance().logError("Could not open queue journal at " + queueDirectory + ". Queued messages will not be saved to filesystem.", e, null);
+			journal = null;
+			return;
+		}
+		for (ReplayedMessage r : replayed.values())
+		{
+			index.add(new MessageIndex.Entry(r.message, r.delayed && r.message.getDeliveryDelay() > 0));
+			recordSizes.put(r.message.getUuid(), r.size);
+			liveBytes += r.size;
+		}
+		Logger.getInstance().logDebug("replayed " + replayed.size() + " queued messages.", null, null);
+	}
+
+	/**
+	 * Sets whether <code>queueMessage()</code> waits for the journal to be
+	 * forced to disk before returning. Enabled by default.
+	 */
+	public void setSyncOnQueue(boolean syncOnQueue)
+	{
+		this.syncOnQueue = syncOnQueue;
+	}
+
+	public boolean getSyncOnQueue()
+	{
+		return syncOnQueue;
+	}
+
+	public int getCompactionInterval()
+	{
+		return compactionInterval;
+	}
+
+	public void setCompactionInterval(int compactionInterval)
+	{
+		this.compactionInterval = compactionInterval;
+		if (compactor != null) compactor.setDelay(compactionInterval);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.smslib.queues.AbstractQueueManager#queueMessage(org.smslib.OutboundMessage)
+	 */
+	@Override
+	public boolean queueMessage(OutboundMessage message)
+	{
+		boolean delayed = (message.getDeliveryDelay() > 0);
+		long token = 0;
+		try
+		{
+			byte[] record = (journal == null ? null : encode(delayed ? ADD_DELAYED : ADD_PENDING, message));
+			synchronized (this)
+			{
+				if (record != null)
+				{
+					token = journal.append(record);
+					int size = QueueJournal.recordSize(record);
+					Integer previous = recordSizes.put(message.getUuid(), size);
+					liveBytes += size - (previous == null ? 0 : previous);
+				}
+				promoting.remove(message.getUuid());
+				index.add(new MessageIndex.Entry(message, delayed));
+			}
+			if (record != null && syncOnQueue) journal.sync(token);
+			if (!delayed) notifyPendingMessage(message.getGatewayId());
+			return true;
+		}
+		catch (IOException e)
+		{
+			Logger.getInstance().logError("Cannot save Message " + message.getUuid(), e, null);
+			return false;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.smslib.queues.AbstractQueueManager#removePendingMessage(org.smslib.OutboundMessage)
+	 */
+	@Override
+	public boolean removePendingMessage(OutboundMessage message)
+	{
+		return removePendingMessage(message.getUuid());
+	}
+
+	/* (non-Javadoc)
+	 * @see org.smslib.queues.AbstractQueueManager#removePendingMessage(java.lang.String)
+	 */
+	@Override
+	public synchronized boolean removePendingMessage(String messageUUID)
+	{
+		if (index.remove(messageUUID, false) == null) return false;
+		tombstone(messageUUID);
+		return true;
+	}
+
+	@Override
+	public boolean removeDelayedMessage(OutboundMessage message)
+	{
+		return removeDelayedMessage(message.getUuid());
+	}
+
+	@Override
+	public synchronized boolean removeDelayedMessage(String messageUUID)
+	{
+		if (index.remove(messageUUID, true) == null) return false;
+		tombstone(messageUUID);
+		return true;
+	}
+
+	@Override
+	public OutboundMessage getMessage(String messageUUID)
+	{
+		MessageIndex.Entry entry = index.get(messageUUID);
+		return (entry == null ? null : entry.message);
+	}
+
+	@Override
+	public synchronized int removeCampaign(String campaign)
+	{
+		List<MessageIndex.Entry> removed = index.removeCampaign(campaign);
+		for (MessageIndex.Entry entry : removed)
+			tombstone(entry.uuid);
+		return removed.size();
+	}
+
+	@Override
+	public synchronized boolean removeAllPendingMessages(String gatewayId)
+	{
+		List<MessageIndex.Entry> removed = index.removeAllPending(gatewayId);
+		if (removed.isEmpty()) return false;
+		for (MessageIndex.Entry entry : removed)
+			forget(entry.uuid);
+		return appendQuietly(encode(CLEAR_GATEWAY, gatewayId));
+	}
+
+	@Override
+	public synchronized boolean removeAllPendingMessages()
+	{
+		for (MessageIndex.Entry entry : index.removeAllPending(null))
+			forget(entry.uuid);
+		return appendQuietly(new byte[] { CLEAR_PENDING });
+	}
+
+	@Override
+	public synchronized boolean removeAllDelayedMessages()
+	{
+		for (MessageIndex.Entry entry : index.removeAllDelayed())
+			forget(entry.uuid);
+		return appendQuietly(new byte[] { CLEAR_DELAYED });
+	}
+
+	/**
+	 * Takes the next due delayed message, without waiting. No tombstone is
+	 * written: the caller queues the message again, and the new record
+	 * supersedes the delayed one.
+	 */
+	@Override
+	public synchronized OutboundMessage pollDelayedMessage()
+	{
+		MessageIndex.Entry entry = index.pollDelayed(System.currentTimeMillis());
+		if (entry == null) return null;
+		if (recordSizes.containsKey(entry.uuid)) promoting.put(entry.uuid, entry.message);
+		return entry.message;
+	}
+
+	@Override
+	public synchronized OutboundMessage pollPendingMessage(String gatewayId)
+	{
+		MessageIndex.Entry entry = index.pollPending(gatewayId);
+		if (entry == null) return null;
+		tombstone(entry.uuid);
+		return entry.message;
+	}
+
+	/**
+	 * @return A read-only, live view of the pending messages of the gateway,
+	 *         in sending order.
+	 */
+	@Override
+	public Collection<OutboundMessage> getPendingMessages(String gatewayId)
+	{
+		return index.pendingMessages(gatewayId);
+	}
+
+	@Override
+	public int pendingQueueSize(String gatewayId)
+	{
+		return index.pendingSize(gatewayId);
+	}
+
+	/**
+	 * @return A read-only, live view of the delayed messages.
+	 */
+	@Override
+	public Collection<OutboundMessage> getDelayedMessages()
+	{
+		return index.delayedMessages();
+	}
+
+	@Override
+	public int delayedQueueSize(String gatewayId)
+	{
+		return index.delayedSize();
+	}
+
+	@Override
+	public void start()
+	{
+		super.start();
+		if (journal != null && (compactor == null || compactor.isCanceled())) compactor = new Compactor("JournalCompactor", compactionInterval);
+	}
+
+	@Override
+	public void stop()
+	{
+		super.stop();
+		if (compactor != null) compactor.cancel();
+	}
+
+	/**
+	 * Closes the journal. The queue manager can no longer persist messages
+	 * afterwards.
+	 */
+	public synchronized void close()
+	{
+		if (journal == null) return;
+		try
+		{
+			journal.close();
+		}
+		catch (IOException e)
+		{
+			Logger.getInstance().logError("Error while closing queue journal.", e, null);
+		}
+		journal = null;
+	}
+
+	/**
+	 * Rewrites the live messages into a snapshot and drops the segments it
+	 * replaces. Called periodically by the compactor, but it can also be
+	 * called directly.
+	 */
+	public void compact() throws IOException
+	{
+		long base;
+		List<OutboundMessage> pending = new ArrayList<OutboundMessage>();
+		List<OutboundMessage> delayed = new ArrayList<OutboundMessage>();
+		QueueJournal target;
+		synchronized (this)
+		{
+			if (journal == null) return;
+			target = journal;
+			base = journal.roll();
+			for (MessageIndex.Entry entry : index.entries())
+			{
+				if (entry.delayed) delayed.add(entry.message);
+				else pending.add(entry.message);
+			}
+			delayed.addAll(promoting.values());
+		}
+		List<byte[]> records = new ArrayList<byte[]>(pending.size() + delayed.size());
+		for (OutboundMessage message : pending)
+			records.add(encode(ADD_PENDING, message));
+		for (OutboundMessage message : delayed)
+			records.add(encode(ADD_DELAYED, message));
+		long before = target.size();
+		target.writeSnapshot(base, records);
+		Logger.getInstance().logDebug("Compacted queue journal from " + before + " to " + target.size() + " bytes.", null, null);
+	}
+
+	synchronized boolean needsCompaction()
+	{
+		if (journal == null) return false;
+		long garbage = getGarbageBytes();
+		return (garbage > segmentSize && garbage > liveBytes);
+	}
+
+	/**
+	 * @return The bytes of the journal taken by records of messages no longer
+	 *         queued.
+	 */
+	synchronized long getGarbageBytes()
+	{
+		return (journal == null ? 0 : journal.size() - liveBytes);
+	}
+
+	private void tombstone(String messageUUID)
+	{
+		if (forget(messageUUID)) appendQuietly(encode(REMOVE, messageUUID));
+	}
+
+	private boolean forget(String messageUUID)
+	{
+		promoting.remove(messageUUID);
+		Integer size = recordSizes.remove(messageUUID);
+		if (size == null) return false;
+		liveBytes -= size;
+		return true;
+	}
+
+	private boolean appendQuietly(byte[] record)
+	{
+		if (journal == null) return true;
+		try
+		{
+			journal.append(record);
+			return true;
+		}
+		catch (IOException e)
+		{
+			Logger.getInstance().logError("Could not write to queue journal.", e, null);
+			return false;
+		}
+	}
+
+	private void replay(byte[] body, Map<String, ReplayedMessage> replayed) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(body, 1, body.length - 1));
+		switch (body[0])
+		{
+			case ADD_PENDING:
+			case ADD_DELAYED:
+				try
+				{
+					OutboundMessage message = OutboundMessageCodec.decode(body, 1, body.length - 1);
+					replayed.remove(message.getUuid());
+					replayed.put(message.getUuid(), new ReplayedMessage(message, body[0] == ADD_DELAYED, QueueJournal.recordSize(body)));
+				}
+				catch (IOException e)
+				{
+					Logger.getInstance().logError("Could not read queued message from journal.", e, null);
+				}
+				break;
+			case REMOVE:
+				replayed.remove(in.readUTF());
+				break;
+			case CLEAR_GATEWAY:
+				String gatewayId = in.readUTF();
+				for (Iterator<ReplayedMessage> i = replayed.values().iterator(); i.hasNext();)
+				{
+					ReplayedMessage r = i.next();
+					if (!r.delayed && r.message.getGatewayId().equals(gatewayId)) i.remove();
+				}
+				break;
+			case CLEAR_PENDING:
+			case CLEAR_DELAYED:
+				for (Iterator<ReplayedMessage> i = replayed.values().iterator(); i.hasNext();)
+					if (i.next().delayed == (body[0] == CLEAR_DELAYED)) i.remove();
+				break;
+			default:
+				Logger.getInstance().logWarn("Unknown queue journal record type " + body[0], null, null);
+		}
+	}
+
+	private static byte[] encode(byte type, OutboundMessage message) throws IOException
+	{
+		byte[] encoded = OutboundMessageCodec.encode(message);
+		byte[] record = new byte[encoded.length + 1];
+		record[0] = type;
+		System.arraycopy(encoded, 0, record, 1, encoded.length);
+		return record;
+	}
+
+	private static byte[] encode(byte type, String value)
+	{
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(type);
+			out.writeUTF(value);
+			out.close();
+			return bytes.toByteArray();
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static class ReplayedMessage
+	{
+		final OutboundMessage message;
+
+		final boolean delayed;
+
+		final int size;
+
+		ReplayedMessage(OutboundMessage message, boolean delayed, int size)
+		{
+			this.message = message;
+			this.delayed = delayed;
+			this.size = size;
+		}
+	}
+
+	class Compactor extends AServiceThread
+	{
+		public Compactor(String name, int delay)
+		{
+			super(name, delay, 0, true);
+		}
+
+		@Override
+		public void process() throws Exception
+		{
+			if (needsCompaction()) compact();
+		}
+	}
+}
@@ -0,0 +1,449 @@
+// SMSLib for Java v4
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.smslib.queues;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.smslib.OutboundMessage;
+import org.smslib.OutboundMessageCodec;
+import org.smslib.Service;
+import org.smslib.helper.Logger;
+
+/**
+ * Queue Manager which keeps queued messages in memory-mapped ring files, one
+ * per gateway.
+ * <p>
+ * Queueing a message copies its encoded form into the mapping of the
+ * gateway's ring; no file is created or deleted per message. A message is
+ * acknowledged once its record is in the mapping, which survives the JVM
+ * being killed. Call <code>setForceOnQueue(true)</code> to also force every
+ * enqueue to disk, for protection against power loss.
+ * <p>
+ * The queues keep light-weight slots holding the priority, date, UUID and
+ * campaign of each message. On start up the slots are rebuilt from the
+ * record headers only; a message is decoded when it is first polled or
+ * listed.
+ * 
+ * @since 3.5
+ */
+public class MappedQueueManager extends AbstractQueueManager
+{
+	public static final int DEFAULT_RING_CAPACITY = 1024 * 1024;
+
+	private MessageIndex index;
+
+	private Map<String, MappedRing> rings;
+
+	private Map<String, Slot> promoting;
+
+	private String queueDirectory;
+
+	private File ringDirectory;
+
+	private int ringCapacity;
+
+	private boolean forceOnQueue;
+
+	public MappedQueueManager()
+	{
+		this(200, null);
+	}
+
+	public MappedQueueManager(String queueDirectory)
+	{
+		this(200, queueDirectory);
+	}
+
+	public MappedQueueManager(int delay)
+	{
+		this(delay, null);
+	}
+
+	public MappedQueueManager(int delay, String queueDirectory)
+	{
+		this(delay, queueDirectory, DEFAULT_RING_CAPACITY);
+	}
+
+	public MappedQueueManager(int delay, String queueDirectory, int ringCapacity)
+	{
+		super(delay);
+		this.queueDirectory = queueDirectory;
+		this.ringCapacity = ringCapacity;
+		this.index = new MessageIndex();
+		this.rings = new ConcurrentHashMap<String, MappedRing>();
+		this.promoting = new HashMap<String, Slot>();
+		open();
+	}
+
+	private void open()
+	{
+		if (queueDirectory == null)
+		{
+			queueDirectory = Service.getInstance().getSettings().QUEUE_DIRECTORY;
+			if (queueDirectory == null)
+			{
+				Logger.getInstance().logInfo("Queue directory not defined. Queued messages will not be saved to filesystem.", null, null);
+				return;
+			}
+		}
+		ringDirectory = new File(queueDirectory, "rings");
+		if (!ringDirectory.exists())
+		{
+			if (!ringDirectory.mkdirs())
+			{
+				Logger.getInstance().logError("Could not create directory for queue ring files at " + ringDirectory.getPath(), null, null);
+				ringDirectory = null;
+			}
+			return;
+		}
+		Logger.getInstance().logDebug("loading queue ring files..", null, null);
+		long now = System.currentTimeMillis();
+		for (File file : ringDirectory.listFiles())
+		{
+			if (!file.getName().endsWith(MappedRing.FILE_EXT + MappedRing.TEMP_EXT)) continue;
+			try
+			{
+				MappedRing.recoverTemporaryFile(file);
+			}
+			catch (IOException e)
+			{
+				Logger.getInstance().logError("Could not recover queue ring file " + file.getPath(), e, null);
+			}
+		}
+		for (File file : ringDirectory.listFiles())
+		{
+			if (!file.getName().endsWith(MappedRing.FILE_EXT)) continue;
+			List<MappedRing.Record> records = new ArrayList<MappedRing.Record>();
+			try
+			{
+				MappedRing ring = MappedRing.open(file, records);
+				rings.put(ring.getGatewayId(), ring);
+				for (MappedRing.Record record : records)
+					index.add(new Slot(ring, record, record.delayed && record.due > now));
+				Logger.getInstance().logDebug("loaded " + records.size() + " queued messages from " + file.getName(), null, null);
+			}
+			catch (IOException e)
+			{
+				Logger.getInstance().logError("Could not load queue ring file " + file.getPath(), e, null);
+			}
+		}
+	}
+
+	/**
+	 * Sets whether every enqueue forces the ring file to disk. Disabled by
+	 * default; queued messages then survive a crash of the JVM but not
+	 * necessarily one of the operating system.
+	 */
+	public void setForceOnQueue(boolean forceOnQueue)
+	{
+		this.forceOnQueue = forceOnQueue;
+	}
+
+	public boolean getForceOnQueue()
+	{
+		return forceOnQueue;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.smslib.queues.AbstractQueueManager#queueMessage(org.smslib.OutboundMessage)
+	 */
+	@Override
+	public boolean queueMessage(OutboundMessage message)
+	{
+		boolean delayed = (message.getDeliveryDelay() > 0);
+		Slot slot;
+		synchronized (promoting)
+		{
+			slot = promoting.remove(message.getUuid());
+		}
+		if (slot != null && !delayed) slot = new Slot(slot.ring, slot.record, message, false);
+		else
+		{
+			if (slot != null) delete(slot);
+			MappedRing.Record record = new MappedRing.Record();
+			record.priority = message.getPriority();
+			record.date = message.getDate().getTime();
+			record.delayed = delayed;
+			record.due = (message.getScheduledDeliveryDate() == null ? 0 : message.getScheduledDeliveryDate().getTime());
+			record.campaign = message.getCampaign();
+			UUID uuid = UUID.fromString(message.getUuid());
+			record.uuidMsb = uuid.getMostSignificantBits();
+			record.uuidLsb = uuid.getLeastSignificantBits();
+			try
+			{
+				MappedRing ring = getRing(message.getGatewayId());
+				if (ring != null)
+				{
+					ring.append(record, OutboundMessageCodec.encode(message));
+					if (forceOnQueue) ring.force();
+				}
+				slot = new Slot(ring, record, message, delayed);
+			}
+			catch (IOException e)
+			{
+				Logger.getInstance().logError("Cannot save Message " + message.getUuid(), e, null);
+				return false;
+			}
+		}
+		index.add(slot);
+		if (!delayed) notifyPendingMessage(slot.gatewayId);
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.smslib.queues.AbstractQueueManager#removePendingMessage(org.smslib.OutboundMessage)
+	 */
+	@Override
+	public boolean removePendingMessage(OutboundMessage message)
+	{
+		return removePendingMessage(message.getUuid());
+	}
+
+	/* (non-Javadoc)
+	 * @see org.smslib.queues.AbstractQueueManager#removePendingMessage(java.lang.String)
+	 */
+	@Override
+	public boolean removePendingMessage(String messageUUID)
+	{
+		return delete((Slot) index.remove(messageUUID, false));
+	}
+
+	@Override
+	public boolean removeDelayedMessage(OutboundMessage message)
+	{
+		return removeDelayedMessage(message.getUuid());
+	}
+
+	@Override
+	public boolean removeDelayedMessage(String messageUUID)
+	{
+		return delete((Slot) index.remove(messageUUID, true));
+	}
+
+	@Override
+	public OutboundMessage getMessage(String messageUUID)
+	{
+		MessageIndex.Entry entry = index.get(messageUUID);
+		return (entry == null ? null : entry.getMessage());
+	}
+
+	@Override
+	public int removeCampaign(String campaign)
+	{
+		List<MessageIndex.Entry> removed = index.removeCampaign(campaign);
+		delete(removed);
+		return removed.size();
+	}
+
+	@Override
+	public boolean removeAllPendingMessages(String gatewayId)
+	{
+		List<MessageIndex.Entry> removed = index.removeAllPending(gatewayId);
+		delete(removed);
+		return !removed.isEmpty();
+	}
+
+	@Override
+	public boolean removeAllPendingMessages()
+	{
+		delete(index.removeAllPending(null));
+		return true;
+	}
+
+	@Override
+	public boolean removeAllDelayedMessages()
+	{
+		delete(index.removeAllDelayed());
+		return true;
+	}
+
+	/**
+	 * Takes the next due delayed message, without waiting. Its record stays
+	 * in the ring: when the message is queued again, the same record is moved
+	 * to the pending queue instead of being copied.
+	 */
+	@Override
+	public OutboundMessage pollDelayedMessage()
+	{
+		while (true)
+		{
+			Slot slot = (Slot) index.pollDelayed(System.currentTimeMillis());
+			if (slot == null) return null;
+			OutboundMessage message = slot.getMessage();
+			if (message == null) delete(slot);
+			else
+			{
+				synchronized (promoting)
+				{
+					promoting.put(slot.uuid, slot);
+				}
+				return message;
+			}
+		}
+	}
+
+	@Override
+	public OutboundMessage pollPendingMessage(String gatewayId)
+	{
+		while (true)
+		{
+			Slot slot = (Slot) index.pollPending(gatewayId);
+			if (slot == null) return null;
+			OutboundMessage message = slot.getMessage();
+			delete(slot);
+			if (message != null) return message;
+		}
+	}
+
+	/**
+	 * @return A read-only, live view of the pending messages of the gateway,
+	 *         in sending order. Messages are decoded as they are iterated.
+	 */
+	@Override
+	public Collection<OutboundMessage> getPendingMessages(String gatewayId)
+	{
+		return index.pendingMessages(gatewayId);
+	}
+
+	@Override
+	public int pendingQueueSize(String gatewayId)
+	{
+		return index.pendingSize(gatewayId);
+	}
+
+	/**
+	 * @return A read-only, live view of the delayed messages. Messages are
+	 *         decoded as they are iterated.
+	 */
+	@Override
+	public Collection<OutboundMessage> getDelayedMessages()
+	{
+		return index.delayedMessages();
+	}
+
+	@Override
+	public int delayedQueueSize(String gatewayId)
+	{
+		return index.delayedSize();
+	}
+
+	/**
+	 * Forces and closes all ring files. The queue manager can no longer
+	 * persist messages afterwards.
+	 */
+	public void close()
+	{
+		for (MappedRing ring : rings.values())
+		{
+			try
+			{
+				ring.close();
+			}
+			catch (IOException e)
+			{
+				Logger.getInstance().logError("Error while closing queue ring file.", e, null);
+			}
+		}
+		rings.clear();
+		ringDirectory = null;
+	}
+
+	private MappedRing getRing(String gatewayId) throws IOException
+	{
+		if (ringDirectory == null) return null;
+		MappedRing ring = rings.get(gatewayId);
+		if (ring == null)
+		{
+			synchronized (rings)
+			{
+				ring = rings.get(gatewayId);
+				if (ring == null)
+				{
+					ring = MappedRing.create(new File(ringDirectory, gatewayId.replace("/", ".") + MappedRing.FILE_EXT), gatewayId, ringCapacity);
+					rings.put(gatewayId, ring);
+				}
+			}
+		}
+		return ring;
+	}
+
+	private boolean delete(Slot slot)
+	{
+		if (slot == null) return false;
+		if (slot.ring != null) slot.ring.delete(slot.record);
+		return true;
+	}
+
+	private void delete(List<MessageIndex.Entry> entries)
+	{
+		for (MessageIndex.Entry entry : entries)
+			delete((Slot) entry);
+	}
+
+	/**
+	 * Index entry of a message in a ring file. The message is read from the
+	 * ring when first needed.
+	 */
+	static class Slot extends MessageIndex.Entry
+	{
+		final MappedRing ring;
+
+		final MappedRing.Record record;
+
+		Slot(MappedRing ring, MappedRing.Record record, boolean delayed)
+		{
+			super(new UUID(record.uuidMsb, record.uuidLsb).toString(), (ring == null ? null : ring.getGatewayId()), record.campaign, record.priority, record.date, record.due, delayed);
+			this.ring = ring;
+			this.record = record;
+		}
+
+		Slot(MappedRing ring, MappedRing.Record record, OutboundMessage message, boolean delayed)
+		{
+			super(message.getUuid(), message.getGatewayId(), record.campaign, record.priority, record.date, record.due, delayed);
+			this.ring = ring;
+			this.record = record;
+			this.message = message;
+		}
+
+		@Override
+		OutboundMessage getMessage()
+		{
+			OutboundMessage message = this.message;
+			if (message != null || ring == null) return message;
+			try
+			{
+				message = OutboundMessageCodec.decode(ring.read(record));
+				this.message = message;
+			}
+			catch (IOException e)
+			{
+				Logger.getInstance().logError("Could not read queued message from ring file.", e, null);
+			}
+			return message;
+		}
+	}
+}
@@ -0,0 +1,533 @@
+// SMSLib for Java v4
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.queues;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped ring file holding the queued messages of one gateway. Used by
+ * <code>MappedQueueManager</code>.
+ * <p>
+ * Records are written at the tail and freed by marking them deleted; the head
+ * moves forward over deleted records, so space is reclaimed in order. A
+ * record that does not fit before the end of the file is preceded by a
+ * padding record and written at the start. When the ring is full it is
+ * copied, live records only, into a file twice the size.
+ * <p>
+ * The state word of a record is written last, after its header and payload,
+ * and payloads carry a CRC. Since writes to the mapping go straight to the
+ * page cache, a record whose state word was written survives a crash of the
+ * JVM; a half written record is ignored on recovery. Records carry
+ * consecutive sequence numbers, which tells current records apart from
+ * stale ones left over from earlier laps of the ring.
+ * <p>
+ * The campaign tag of a record is stored in front of its payload, so that it
+ * can be recovered together with the header fields.
+ * 
+ * @since 3.5
+ */
+class MappedRing
+{
+	static final String FILE_EXT = ".ring";
+
+	static final String TEMP_EXT = ".tmp";
+
+	static final int FILE_HEADER_SIZE = 512;
+
+	static final int RECORD_HEADER_SIZE = 64;
+
+	private static final int MAGIC = 0x534d5152;
+
+	private static final int VERSION = 1;
+
+	private static final int MAX_GATEWAY_ID_LENGTH = 256;
+
+	private static final int H_MAGIC = 0;
+
+	private static final int H_VERSION = 4;
+
+	private static final int H_CAPACITY = 8;
+
+	private static final int H_HEAD = 16;
+
+	private static final int H_GATEWAY_ID = 24;
+
+	private static final int COMMITTED = 0x434f4d4d;
+
+	private static final int DELETED = 0x44454c45;
+
+	private static final int PADDING = 0x50414444;
+
+	private static final int R_STATE = 0;
+
+	private static final int R_LENGTH = 4;
+
+	private static final int R_SEQ = 8;
+
+	private static final int R_CRC = 16;
+
+	private static final int R_FLAGS = 20;
+
+	private static final int R_PRIORITY = 24;
+
+	private static final int R_CAMPAIGN_LENGTH = 28;
+
+	private static final int R_DATE = 32;
+
+	private static final int R_DUE = 40;
+
+	private static final int R_UUID_MSB = 48;
+
+	private static final int R_UUID_LSB = 56;
+
+	private static final int FLAG_DELAYED = 1;
+
+	private static final byte[] NO_CAMPAIGN = new byte[0];
+
+	/**
+	 * In-memory handle of a record. Holds the fields needed to order and look
+	 * up a message without reading its payload.
+	 */
+	static class Record
+	{
+		long position;
+
+		long seq;
+
+		int priority;
+
+		long date;
+
+		long due;
+
+		long uuidMsb;
+
+		long uuidLsb;
+
+		boolean delayed;
+
+		String campaign;
+	}
+
+	/** Renames files; tests replace it to simulate a failing rename */
+	static Renamer renamer = new Renamer();
+
+	/** The path of the ring file */
+	private final File path;
+
+	/**
+	 * The file the ring is mapped from: the ring file, or its copy if the
+	 * copy could not be renamed after growing
+	 */
+	private File file;
+
+	private final String gatewayId;
+
+	private final Map<Long, Record> live = new HashMap<Long, Record>();
+
+	private FileChannel channel;
+
+	private MappedByteBuffer buffer;
+
+	private int capacity;
+
+	private long head;
+
+	private long tail;
+
+	private long nextSeq;
+
+	private MappedRing(File file, String gatewayId)
+	{
+		this.path = file;
+		this.file = file;
+		this.gatewayId = gatewayId;
+	}
+
+	/**
+	 * Creates a new, empty ring file, replacing any existing file.
+	 */
+	static MappedRing create(File file, String gatewayId, int capacity) throws IOException
+	{
+		if (file.exists() && !file.delete()) throw new IOException("Could not replace queue ring file " + file.getPath());
+		MappedRing ring = new MappedRing(file, gatewayId);
+		ring.map(file, align(capacity));
+		ring.writeFileHeader();
+		return ring;
+	}
+
+	/**
+	 * Maps an existing ring file and recovers its live records.
+	 */
+	static MappedRing open(File file, List<Record> records) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		String gatewayId;
+		int capacity;
+		try
+		{
+			if (raf.length() < FILE_HEADER_SIZE || raf.readInt() != MAGIC) throw new IOException("Not a queue ring file: " + file.getPath());
+			if (raf.readInt() != VERSION) throw new IOException("Unsupported queue ring file version: " + file.getPath());
+			capacity = (int) raf.readLong();
+			raf.seek(H_GATEWAY_ID);
+			gatewayId = raf.readUTF();
+		}
+		finally
+		{
+			raf.close();
+		}
+		MappedRing ring = new MappedRing(file, gatewayId);
+		ring.map(file, capacity);
+		ring.recover(records);
+		return ring;
+	}
+
+	/**
+	 * Completes or rolls back the replacement of a ring file interrupted by a
+	 * crash while growing. The copy is forced to disk before the old file is
+	 * deleted, so a copy without its ring file takes its place; a copy next
+	 * to its ring file may be incomplete and is dropped.
+	 */
+	static void recoverTemporaryFile(File temp) throws IOException
+	{
+		String name = temp.getPath();
+		File target = new File(name.substring(0, name.length() - TEMP_EXT.length()));
+		if (target.exists() ? !temp.delete() : !renamer.rename(temp, target)) throw new IOException("Could not recover queue ring file " + target.getPath());
+	}
+
+	String getGatewayId()
+	{
+		return gatewayId;
+	}
+
+	synchronized int size()
+	{
+		return live.size();
+	}
+
+	/**
+	 * Appends a record. Fills in the position and sequence number of
+	 * <code>record</code>.
+	 */
+	synchronized void append(Record record, byte[] payload) throws IOException
+	{
+		byte[] campaign = encodeCampaign(record.campaign);
+		int size = align(RECORD_HEADER_SIZE + campaign.length + payload.length);
+		int toEnd = capacity - physical(tail);
+		int needed = (toEnd >= size ? size : toEnd + size);
+		if (capacity - (tail - head) < needed)
+		{
+			grow(size);
+			toEnd = capacity - physical(tail);
+		}
+		if (toEnd < size)
+		{
+			if (toEnd >= RECORD_HEADER_SIZE)
+			{
+				int offset = FILE_HEADER_SIZE + physical(tail);
+				buffer.putInt(offset + R_STATE, 0);
+				buffer.putInt(offset + R_LENGTH, toEnd);
+				buffer.putLong(offset + R_SEQ, nextSeq++);
+				buffer.putInt(offset + R_STATE, PADDING);
+			}
+			tail += toEnd;
+		}
+		record.position = tail;
+		record.seq = nextSeq++;
+		write(FILE_HEADER_SIZE + physical(tail), record, campaign, payload);
+		tail += size;
+		live.put(record.seq, record);
+	}
+
+	/**
+	 * @return The payload of a live record.
+	 */
+	synchronized byte[] read(Record record)
+	{
+		int offset = FILE_HEADER_SIZE + physical(record.position);
+		int campaignLength = buffer.getInt(offset + R_CAMPAIGN_LENGTH);
+		byte[] payload = new byte[buffer.getInt(offset + R_LENGTH) - campaignLength];
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset + RECORD_HEADER_SIZE + campaignLength);
+		view.get(payload);
+		return payload;
+	}
+
+	/**
+	 * Marks a record deleted and reclaims the space at the head of the ring.
+	 */
+	synchronized void delete(Record record)
+	{
+		if (live.remove(record.seq) == null) return;
+		buffer.putInt(FILE_HEADER_SIZE + physical(record.position) + R_STATE, DELETED);
+		while (head < tail)
+		{
+			int toEnd = capacity - physical(head);
+			if (toEnd < RECORD_HEADER_SIZE)
+			{
+				head += toEnd;
+				continue;
+			}
+			int offset = FILE_HEADER_SIZE + physical(head);
+			int state = buffer.getInt(offset + R_STATE);
+			if (state == DELETED) head += align(RECORD_HEADER_SIZE + buffer.getInt(offset + R_LENGTH));
+			else if (state == PADDING) head += buffer.getInt(offset + R_LENGTH);
+			else break;
+		}
+		buffer.putLong(H_HEAD, head);
+	}
+
+	/**
+	 * Deletes all records.
+	 */
+	synchronized void clear()
+	{
+		for (Record record : new ArrayList<Record>(live.values()))
+			delete(record);
+	}
+
+	/**
+	 * Forces the mapping to disk.
+	 */
+	synchronized void force()
+	{
+		buffer.force();
+	}
+
+	synchronized void close() throws IOException
+	{
+		if (channel == null) return;
+		buffer.force();
+		channel.close();
+		channel = null;
+	}
+
+	private void write(int offset, Record record, byte[] campaign, byte[] payload)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(campaign);
+		crc.update(payload);
+		buffer.putInt(offset + R_STATE, 0);
+		buffer.putInt(offset + R_LENGTH, campaign.length + payload.length);
+		buffer.putLong(offset + R_SEQ, record.seq);
+		buffer.putInt(offset + R_CRC, (int) crc.getValue());
+		buffer.putInt(offset + R_FLAGS, record.delayed ? FLAG_DELAYED : 0);
+		buffer.putInt(offset + R_PRIORITY, record.priority);
+		buffer.putInt(offset + R_CAMPAIGN_LENGTH, campaign.length);
+		buffer.putLong(offset + R_DATE, record.date);
+		buffer.putLong(offset + R_DUE, record.due);
+		buffer.putLong(offset + R_UUID_MSB, record.uuidMsb);
+		buffer.putLong(offset + R_UUID_LSB, record.uuidLsb);
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset + RECORD_HEADER_SIZE);
+		view.put(campaign);
+		view.put(payload);
+		buffer.putInt(offset + R_STATE, COMMITTED);
+	}
+
+	private void recover(List<Record> records)
+	{
+		head = buffer.getLong(H_HEAD);
+		long position = head;
+		long previous = -1;
+		CRC32 crc = new CRC32();
+		while (position - head < capacity)
+		{
+			int toEnd = capacity - physical(position);
+			if (toEnd < RECORD_HEADER_SIZE)
+			{
+				position += toEnd;
+				continue;
+			}
+			int offset = FILE_HEADER_SIZE + physical(position);
+			int state = buffer.getInt(offset + R_STATE);
+			if (state != COMMITTED && state != DELETED && state != PADDING) break;
+			long seq = buffer.getLong(offset + R_SEQ);
+			if (previous != -1 && seq != previous + 1) break;
+			int length = buffer.getInt(offset + R_LENGTH);
+			int size = (state == PADDING ? length : align(RECORD_HEADER_SIZE + length));
+			if (length < 0 || size < RECORD_HEADER_SIZE || size > toEnd) break;
+			if (state == COMMITTED)
+			{
+				byte[] payload = new byte[length];
+				ByteBuffer view = buffer.duplicate();
+				view.position(offset + RECORD_HEADER_SIZE);
+				view.get(payload);
+				crc.reset();
+				crc.update(payload);
+				if ((int) crc.getValue() != buffer.getInt(offset + R_CRC)) break;
+				int campaignLength = buffer.getInt(offset + R_CAMPAIGN_LENGTH);
+				if (campaignLength < 0 || campaignLength > length) break;
+				Record record = new Record();
+				record.position = position;
+				record.seq = seq;
+				record.delayed = ((buffer.getInt(offset + R_FLAGS) & FLAG_DELAYED) != 0);
+				record.priority = buffer.getInt(offset + R_PRIORITY);
+				record.date = buffer.getLong(offset + R_DATE);
+				record.due = buffer.getLong(offset + R_DUE);
+				record.uuidMsb = buffer.getLong(offset + R_UUID_MSB);
+				record.uuidLsb = buffer.getLong(offset + R_UUID_LSB);
+				record.campaign = decodeCampaign(payload, campaignLength);
+				live.put(seq, record);
+				records.add(record);
+			}
+			previous = seq;
+			position += size;
+		}
+		tail = position;
+		nextSeq = previous + 1;
+	}
+
+	/**
+	 * Copies the live records into a new file, large enough to take another
+	 * <code>size</code> bytes, and swaps it in.
+	 */
+	private void grow(int size) throws IOException
+	{
+		// the copy left by the last grow is in the temporary file's place
+		if (!file.equals(path)) throw new IOException("Could not grow queue ring file " + path.getPath() + " before it is recovered on the next start");
+		long used = 0;
+		for (Record record : live.values())
+			used += align(RECORD_HEADER_SIZE + buffer.getInt(FILE_HEADER_SIZE + physical(record.position) + R_LENGTH));
+		int newCapacity = capacity;
+		while (newCapacity < (used + size) * 2)
+			newCapacity *= 2;
+		File temp = new File(path.getPath() + TEMP_EXT);
+		MappedRing copy = create(temp, gatewayId, newCapacity);
+		long position = head;
+		while (position < tail)
+		{
+			int toEnd = capacity - physical(position);
+			if (toEnd < RECORD_HEADER_SIZE)
+			{
+				position += toEnd;
+				continue;
+			}
+			int offset = FILE_HEADER_SIZE + physical(position);
+			int state = buffer.getInt(offset + R_STATE);
+			int length = buffer.getInt(offset + R_LENGTH);
+			if (state == COMMITTED)
+			{
+				Record record = live.get(buffer.getLong(offset + R_SEQ));
+				byte[] payload = read(record);
+				copy.append(record, payload);
+			}
+			position += (state == PADDING ? length : align(RECORD_HEADER_SIZE + length));
+		}
+		copy.buffer.force();
+		File mapped = path;
+		if (!renamer.rename(temp, path))
+		{
+			// some platforms cannot rename over an open file
+			channel.close();
+			if (!path.delete())
+			{
+				// the old file is still whole: keep it, drop the copy
+				copy.channel.close();
+				temp.delete();
+				map(path, capacity);
+				throw new IOException("Could not replace queue ring file " + path.getPath());
+			}
+			// if the copy cannot be renamed either, it is used where it is
+			// and recoverTemporaryFile() renames it on the next start
+			if (!renamer.rename(temp, path)) mapped = temp;
+		}
+		channel.close();
+		file = mapped;
+		channel = copy.channel;
+		buffer = copy.buffer;
+		capacity = copy.capacity;
+		head = copy.head;
+		tail = copy.tail;
+		nextSeq = copy.nextSeq;
+		live.clear();
+		live.putAll(copy.live);
+	}
+
+	private void map(File target, int size) throws IOException
+	{
+		channel = new RandomAccessFile(target, "rw").getChannel();
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER_SIZE + size);
+		capacity = size;
+	}
+
+	private void writeFileHeader() throws UnsupportedEncodingException
+	{
+		byte[] id = gatewayId.getBytes("UTF-8");
+		if (id.length > MAX_GATEWAY_ID_LENGTH) throw new IllegalArgumentException("Gateway id too long: " + gatewayId);
+		buffer.putInt(H_MAGIC, MAGIC);
+		buffer.putInt(H_VERSION, VERSION);
+		buffer.putLong(H_CAPACITY, capacity);
+		buffer.putLong(H_HEAD, 0);
+		buffer.putShort(H_GATEWAY_ID, (short) id.length);
+		ByteBuffer view = buffer.duplicate();
+		view.position(H_GATEWAY_ID + 2);
+		view.put(id);
+	}
+
+	private static byte[] encodeCampaign(String campaign) throws UnsupportedEncodingException
+	{
+		return (campaign == null ? NO_CAMPAIGN : campaign.getBytes("UTF-8"));
+	}
+
+	private static String decodeCampaign(byte[] payload, int length)
+	{
+		if (length == 0) return null;
+		try
+		{
+			return new String(payload, 0, length, "UTF-8");
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private int physical(long position)
+	{
+		return (int) (position % capacity);
+	}
+
+	private static int align(int size)
+	{
+		return (size + 7) & ~7;
+	}
+
+	static class Renamer
+	{
+		boolean rename(File from, File to)
+		{
+			return from.renameTo(to);
+		}
+	}
+}
@@ -0,0 +1,479 @@
+// SMSLib for Java v4
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.queues;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.smslib.OutboundMessage;
+
+/**
+ * In-memory index of queued messages shared by the queue managers.
+ * <p>
+ * Pending messages are kept in one ordered set per gateway (priority, then
+ * date), delayed messages in a set ordered by due time. Next to them, a hash
+ * index maps each UUID to its entry and each campaign to its entries, so
+ * that looking up or removing a message costs O(log n) rather than a scan
+ * of every queue. Sizes are kept in counters.
+ * <p>
+ * An entry is claimed by whoever removes it from its ordered set first, so
+ * a message that is polled and cancelled at the same time goes to exactly
+ * one of the two callers.
+ * 
+ * @since 3.5
+ */
+class MessageIndex
+{
+	/**
+	 * A queued message. The ordering fields are copied from the message when
+	 * it is queued and never change afterwards.
+	 */
+	static class Entry
+	{
+		final String uuid;
+
+		final String gatewayId;
+
+		final String campaign;
+
+		final int priority;
+
+		final long date;
+
+		final long due;
+
+		final boolean delayed;
+
+		long seq;
+
+		volatile OutboundMessage message;
+
+		Entry(OutboundMessage message, boolean delayed)
+		{
+			this(message.getUuid(), message.getGatewayId(), message.getCampaign(), message.getPriority(), message.getDate().getTime(), (message.getScheduledDeliveryDate() == null ? 0 : message.getScheduledDeliveryDate().getTime()), delayed);
+			this.message = message;
+		}
+
+		Entry(String uuid, String gatewayId, String campaign, int priority, long date, long due, boolean delayed)
+		{
+			this.uuid = uuid;
+			this.gatewayId = gatewayId;
+			this.campaign = campaign;
+			this.priority = priority;
+			this.date = date;
+			this.due = due;
+			this.delayed = delayed;
+		}
+
+		/**
+		 * @return The queued message. Subclasses may load it lazily, and
+		 *         return null if it cannot be loaded.
+		 */
+		OutboundMessage getMessage()
+		{
+			return this.message;
+		}
+	}
+
+	private static class GatewayQueue
+	{
+		final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<Entry>(PENDING_ORDER);
+
+		final AtomicInteger size = new AtomicInteger();
+	}
+
+	static final Comparator<Entry> PENDING_ORDER = new Comparator<Entry>()
+	{
+		@Override
+		public int compare(Entry x, Entry y)
+		{
+			if (x.priority != y.priority) return (x.priority > y.priority ? -1 : 1);
+			if (x.date != y.date) return (x.date < y.date ? -1 : 1);
+			return (x.seq < y.seq ? -1 : (x.seq > y.seq ? 1 : 0));
+		}
+	};
+
+	static final Comparator<Entry> DELAYED_ORDER = new Comparator<Entry>()
+	{
+		@Override
+		public int compare(Entry x, Entry y)
+		{
+			if (x.due != y.due) return (x.due < y.due ? -1 : 1);
+			return (x.seq < y.seq ? -1 : (x.seq > y.seq ? 1 : 0));
+		}
+	};
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final ConcurrentMap<String, Entry> byUuid = new ConcurrentHashMap<String, Entry>();
+
+	private final Map<String, Set<Entry>> byCampaign = new ConcurrentHashMap<String, Set<Entry>>();
+
+	private final Map<String, GatewayQueue> pending = new ConcurrentHashMap<String, GatewayQueue>();
+
+	private final ConcurrentSkipListSet<Entry> delayed = new ConcurrentSkipListSet<Entry>(DELAYED_ORDER);
+
+	private final AtomicInteger delayedSize = new AtomicInteger();
+
+	/**
+	 * Adds an entry. An entry already indexed under the same UUID is removed
+	 * first.
+	 */
+	void add(Entry entry)
+	{
+		entry.seq = this.sequence.incrementAndGet();
+		Entry previous = this.byUuid.put(entry.uuid, entry);
+		if (previous != null && claim(previous)) detachCampaign(previous);
+		if (entry.campaign != null)
+		{
+			while (true)
+			{
+				Set<Entry> members = this.byCampaign.get(entry.campaign);
+				if (members == null)
+				{
+					synchronized (this.byCampaign)
+					{
+						members = this.byCampaign.get(entry.campaign);
+						if (members == null)
+						{
+							members = Collections.newSetFromMap(new ConcurrentHashMap<Entry, Boolean>());
+							this.byCampaign.put(entry.campaign, members);
+						}
+					}
+				}
+				members.add(entry);
+				// detachCampaign() may have dropped the set while it was
+				// empty; once the entry is in a mapped set, it stays mapped
+				if (this.byCampaign.get(entry.campaign) == members) break;
+				members.remove(entry);
+			}
+		}
+		if (entry.delayed)
+		{
+			this.delayed.add(entry);
+			this.delayedSize.incrementAndGet();
+		}
+		else
+		{
+			GatewayQueue queue = queue(entry.gatewayId, true);
+			queue.entries.add(entry);
+			queue.size.incrementAndGet();
+		}
+	}
+
+	Entry get(String uuid)
+	{
+		return this.byUuid.get(uuid);
+	}
+
+	/**
+	 * Removes an entry.
+	 * 
+	 * @return True if this call removed it, false if it was already gone.
+	 */
+	boolean remove(Entry entry)
+	{
+		if (!claim(entry)) return false;
+		detach(entry);
+		return true;
+	}
+
+	/**
+	 * Removes the pending (or delayed) message with the given UUID.
+	 * 
+	 * @return The removed entry, or null.
+	 */
+	Entry remove(String uuid, boolean delayedEntry)
+	{
+		Entry entry = this.byUuid.get(uuid);
+		if (entry == null || entry.delayed != delayedEntry) return null;
+		return (remove(entry) ? entry : null);
+	}
+
+	/**
+	 * Removes the pending and delayed messages of a campaign.
+	 */
+	List<Entry> removeCampaign(String campaign)
+	{
+		List<Entry> removed = new ArrayList<Entry>();
+		Set<Entry> members = this.byCampaign.get(campaign);
+		if (members == null) return removed;
+		for (Entry entry : members)
+			if (remove(entry)) removed.add(entry);
+		return removed;
+	}
+
+	/**
+	 * Removes all pending messages of a gateway, or of all gateways if
+	 * <code>gatewayId</code> is null.
+	 */
+	List<Entry> removeAllPending(String gatewayId)
+	{
+		List<Entry> removed = new ArrayList<Entry>();
+		Collection<GatewayQueue> queues;
+		if (gatewayId == null) queues = this.pending.values();
+		else
+		{
+			GatewayQueue queue = this.pending.get(gatewayId);
+			if (queue == null) return removed;
+			queues = Collections.singleton(queue);
+		}
+		for (GatewayQueue queue : queues)
+			for (Entry entry : queue.entries)
+				if (remove(entry)) removed.add(entry);
+		return removed;
+	}
+
+	List<Entry> removeAllDelayed()
+	{
+		List<Entry> removed = new ArrayList<Entry>();
+		for (Entry entry : this.delayed)
+			if (remove(entry)) removed.add(entry);
+		return removed;
+	}
+
+	/**
+	 * Removes and returns the first pending message of a gateway.
+	 */
+	Entry pollPending(String gatewayId)
+	{
+		GatewayQueue queue = this.pending.get(gatewayId);
+		if (queue == null) return null;
+		Entry entry = queue.entries.pollFirst();
+		if (entry != null)
+		{
+			queue.size.decrementAndGet();
+			detach(entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Removes and returns the first delayed message due at <code>now</code>.
+	 */
+	Entry pollDelayed(long now)
+	{
+		while (true)
+		{
+			Entry entry;
+			try
+			{
+				entry = this.delayed.first();
+			}
+			catch (NoSuchElementException e)
+			{
+				return null;
+			}
+			if (entry.due > now) return null;
+			if (remove(entry)) return entry;
+		}
+	}
+
+	/**
+	 * @return The due time of the first delayed message, or -1 if there is
+	 *         none.
+	 */
+	long nextDue()
+	{
+		Iterator<Entry> i = this.delayed.iterator();
+		return (i.hasNext() ? i.next().due : -1);
+	}
+
+	int pendingSize(String gatewayId)
+	{
+		GatewayQueue queue = this.pending.get(gatewayId);
+		return (queue == null ? 0 : queue.size.get());
+	}
+
+	int delayedSize()
+	{
+		return this.delayedSize.get();
+	}
+
+	/**
+	 * @return A read-only, live view of the pending messages of a gateway, in
+	 *         sending order. The view looks the gateway up on each use, so it
+	 *         also shows messages queued after it was taken for a gateway
+	 *         which had none, and looking up unknown gateways leaves no queues
+	 *         behind.
+	 */
+	Collection<OutboundMessage> pendingMessages(final String gatewayId)
+	{
+		return new MessageView()
+		{
+			@Override
+			Collection<Entry> entries()
+			{
+				GatewayQueue queue = queue(gatewayId, false);
+				return (queue == null ? Collections.<Entry> emptySet() : queue.entries);
+			}
+
+			@Override
+			int count()
+			{
+				return pendingSize(gatewayId);
+			}
+		};
+	}
+
+	/**
+	 * @return A read-only, live view of the delayed messages, in due order.
+	 */
+	Collection<OutboundMessage> delayedMessages()
+	{
+		return new MessageView()
+		{
+			@Override
+			Collection<Entry> entries()
+			{
+				return MessageIndex.this.delayed;
+			}
+
+			@Override
+			int count()
+			{
+				return delayedSize();
+			}
+		};
+	}
+
+	/**
+	 * @return All entries, for snapshots.
+	 */
+	Collection<Entry> entries()
+	{
+		return this.byUuid.values();
+	}
+
+	private GatewayQueue queue(String gatewayId, boolean create)
+	{
+		GatewayQueue queue = this.pending.get(gatewayId);
+		if (queue == null && create)
+		{
+			synchronized (this.pending)
+			{
+				queue = this.pending.get(gatewayId);
+				if (queue == null)
+				{
+					queue = new GatewayQueue();
+					this.pending.put(gatewayId, queue);
+				}
+			}
+		}
+		return queue;
+	}
+
+	private boolean claim(Entry entry)
+	{
+		if (entry.delayed)
+		{
+			if (!this.delayed.remove(entry)) return false;
+			this.delayedSize.decrementAndGet();
+			return true;
+		}
+		GatewayQueue queue = this.pending.get(entry.gatewayId);
+		if (queue == null || !queue.entries.remove(entry)) return false;
+		queue.size.decrementAndGet();
+		return true;
+	}
+
+	private void detach(Entry entry)
+	{
+		this.byUuid.remove(entry.uuid, entry);
+		detachCampaign(entry);
+	}
+
+	private void detachCampaign(Entry entry)
+	{
+		if (entry.campaign == null) return;
+		Set<Entry> members = this.byCampaign.get(entry.campaign);
+		if (members != null)
+		{
+			members.remove(entry);
+			if (members.isEmpty())
+			{
+				synchronized (this.byCampaign)
+				{
+					if (members.isEmpty()) this.byCampaign.remove(entry.campaign);
+				}
+			}
+		}
+	}
+
+	private static abstract class MessageView extends AbstractCollection<OutboundMessage>
+	{
+		abstract Collection<Entry> entries();
+
+		abstract int count();
+
+		@Override
+		public Iterator<OutboundMessage> iterator()
+		{
+			final Iterator<Entry> i = entries().iterator();
+			return new Iterator<OutboundMessage>()
+			{
+				private OutboundMessage next;
+
+				@Override
+				public boolean hasNext()
+				{
+					while (this.next == null && i.hasNext())
+						this.next = i.next().getMessage();
+					return (this.next != null);
+				}
+
+				@Override
+				public OutboundMessage next()
+				{
+					if (!hasNext()) throw new NoSuchElementException();
+					OutboundMessage message = this.next;
+					this.next = null;
+					return message;
+				}
+
+				@Override
+				public void remove()
+				{
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public int size()
+		{
+			return Math.max(count(), 0);
+		}
+	}
+}
@@ -0,0 +1,415 @@
+// SMSLib for Java v4
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.queues;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import org.smslib.helper.Logger;
+
+/**
+ * Segmented, append-only record log used by <code>JournalQueueManager</code>.
+ * <p>
+ * Records are appended to the active segment file and the segment is rolled
+ * over once it reaches the configured size. Each record is framed as
+ * <code>[length][crc32][body]</code>, so a torn write at the tail of a segment
+ * is detected and dropped during replay. A snapshot file holds the compacted
+ * state of every segment preceding its base number; replay reads the latest
+ * snapshot followed by all later segments in order.
+ * <p>
+ * Durability is provided by group commit: callers append, then call
+ * <code>sync()</code> with the returned token. A single <code>force()</code>
+ * covers every record appended up to that point, so concurrent writers share
+ * one fsync instead of paying for one each.
+ * 
+ * @since 3.5
+ */
+class QueueJournal
+{
+	static final String SEGMENT_PREFIX = "segment-";
+
+	static final String SNAPSHOT_PREFIX = "snapshot-";
+
+	static final String FILE_EXT = ".log";
+
+	static final String TEMP_EXT = ".tmp";
+
+	private static final int HEADER_SIZE = 8;
+
+	private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * Receives the body of every valid record during replay.
+	 */
+	interface RecordHandler
+	{
+		void handle(byte[] body) throws IOException;
+	}
+
+	private final File directory;
+
+	private final long segmentSize;
+
+	private final Object syncLock = new Object();
+
+	private final TreeMap<Long, Long> segments = new TreeMap<Long, Long>();
+
+	private FileChannel channel;
+
+	private long currentSegment;
+
+	private long snapshotBytes;
+
+	private long appended;
+
+	private final AtomicLong synced = new AtomicLong();
+
+	QueueJournal(File directory, long segmentSize)
+	{
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Replays the latest snapshot and all following segments, then opens a
+	 * fresh segment for appending.
+	 */
+	void open(RecordHandler handler) throws IOException
+	{
+		if (!directory.exists() && !directory.mkdirs()) throw new IOException("Could not create journal directory " + directory.getPath());
+		long base = -1;
+		File[] files = directory.listFiles();
+		for (File file : files)
+		{
+			String name = file.getName();
+			if (name.endsWith(TEMP_EXT))
+			{
+				if (!file.delete()) Logger.getInstance().logWarn("Could not delete incomplete journal file " + file.getPath(), null, null);
+			}
+			else if (name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(FILE_EXT)) base = Math.max(base, fileNumber(name, SNAPSHOT_PREFIX));
+		}
+		for (File file : files)
+		{
+			String name = file.getName();
+			if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(FILE_EXT)) segments.put(fileNumber(name, SEGMENT_PREFIX), file.length());
+		}
+		if (base != -1)
+		{
+			snapshotBytes = replay(snapshotFile(base), handler);
+			deleteBefore(base);
+		}
+		for (Map.Entry<Long, Long> segment : segments.entrySet())
+		{
+			segment.setValue(replay(segmentFile(segment.getKey()), handler));
+		}
+		long next = (segments.isEmpty() ? Math.max(base, 0) : segments.lastKey() + 1);
+		openSegment(next);
+	}
+
+	/**
+	 * Appends a record to the active segment. The record reaches the operating
+	 * system immediately; it is durable once <code>sync()</code> has been
+	 * called with the returned token.
+	 */
+	synchronized long append(byte[] body) throws IOException
+	{
+		if (channel == null) throw new IOException("Journal is closed.");
+		int length = recordSize(body);
+		if (segments.get(currentSegment) + length > segmentSize && segments.get(currentSegment) > 0) roll();
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.putInt(body.length);
+		buffer.putInt((int) crc.getValue());
+		buffer.put(body);
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		segments.put(currentSegment, segments.get(currentSegment) + length);
+		return ++appended;
+	}
+
+	/**
+	 * Blocks until every record up to <code>token</code> has been forced to
+	 * disk. Whoever gets the sync lock first forces the channel on behalf of
+	 * everybody waiting behind it.
+	 */
+	void sync(long token) throws IOException
+	{
+		if (synced.get() >= token) return;
+		synchronized (syncLock)
+		{
+			if (synced.get() >= token) return;
+			FileChannel target;
+			long upTo;
+			synchronized (this)
+			{
+				if (channel == null) return;
+				target = channel;
+				upTo = appended;
+			}
+			try
+			{
+				target.force(false);
+			}
+			catch (ClosedChannelException e)
+			{
+				// The segment was rolled or closed, which forces it first.
+			}
+			advanceSynced(upTo);
+		}
+	}
+
+	/**
+	 * Forces and seals the active segment and starts a new one.
+	 * 
+	 * @return The number of the new segment.
+	 */
+	synchronized long roll() throws IOException
+	{
+		closeSegment();
+		openSegment(currentSegment + 1);
+		return currentSegment;
+	}
+
+	/**
+	 * Writes a snapshot holding the live records of every segment before
+	 * <code>base</code>, then deletes those segments. The caller is
+	 * responsible for passing exactly the state as of the <code>roll()</code>
+	 * that returned <code>base</code>.
+	 */
+	void writeSnapshot(long base, Iterable<byte[]> bodies) throws IOException
+	{
+		File temp = new File(directory, SNAPSHOT_PREFIX + number(base) + TEMP_EXT);
+		FileOutputStream out = new FileOutputStream(temp);
+		long bytes = 0;
+		try
+		{
+			FileChannel snapshot = out.getChannel();
+			CRC32 crc = new CRC32();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			for (byte[] body : bodies)
+			{
+				crc.reset();
+				crc.update(body);
+				header.clear();
+				header.putInt(body.length);
+				header.putInt((int) crc.getValue());
+				header.flip();
+				ByteBuffer[] record = new ByteBuffer[] { header, ByteBuffer.wrap(body) };
+				while (record[1].hasRemaining())
+					snapshot.write(record);
+				bytes += recordSize(body);
+			}
+			snapshot.force(false);
+		}
+		finally
+		{
+			out.close();
+		}
+		if (!temp.renameTo(snapshotFile(base))) throw new IOException("Could not rename snapshot " + temp.getPath());
+		synchronized (this)
+		{
+			snapshotBytes = bytes;
+			deleteBefore(base);
+		}
+	}
+
+	/**
+	 * @return The number of bytes a record with the given body takes in the
+	 *         journal, header included.
+	 */
+	static int recordSize(byte[] body)
+	{
+		return HEADER_SIZE + body.length;
+	}
+
+	/**
+	 * @return The total number of bytes held by the snapshot and all segments.
+	 */
+	synchronized long size()
+	{
+		long size = snapshotBytes;
+		for (Long bytes : segments.values())
+			size += bytes;
+		return size;
+	}
+
+	synchronized void close() throws IOException
+	{
+		if (channel != null)
+		{
+			closeSegment();
+			channel = null;
+		}
+	}
+
+	private void openSegment(long number) throws IOException
+	{
+		File file = segmentFile(number);
+		channel = new RandomAccessFile(file, "rw").getChannel();
+		channel.position(channel.size());
+		currentSegment = number;
+		segments.put(number, channel.size());
+	}
+
+	private void closeSegment() throws IOException
+	{
+		channel.force(false);
+		channel.close();
+		advanceSynced(appended);
+	}
+
+	/**
+	 * Moves the synced mark forward. A sync which read its mark before a
+	 * roll may finish after it, and must not move the mark back.
+	 */
+	private void advanceSynced(long upTo)
+	{
+		long current;
+		while ((current = synced.get()) < upTo)
+			if (synced.compareAndSet(current, upTo)) return;
+	}
+
+	private void deleteBefore(long base)
+	{
+		File[] files = directory.listFiles();
+		for (File file : files)
+		{
+			String name = file.getName();
+			if (!name.endsWith(FILE_EXT)) continue;
+			long number;
+			if (name.startsWith(SEGMENT_PREFIX)) number = fileNumber(name, SEGMENT_PREFIX);
+			else if (name.startsWith(SNAPSHOT_PREFIX)) number = fileNumber(name, SNAPSHOT_PREFIX);
+			else continue;
+			if (number < base || (number == base && name.startsWith(SNAPSHOT_PREFIX) && !file.equals(snapshotFile(base))))
+			{
+				if (!file.delete()) Logger.getInstance().logWarn("Could not delete journal file " + file.getPath(), null, null);
+			}
+		}
+		segments.headMap(base).clear();
+	}
+
+	/**
+	 * Reads all valid records of a file. A truncated or corrupt record ends
+	 * the file; anything after it is cut off so that later appends are not
+	 * hidden behind it.
+	 * 
+	 * @return The number of valid bytes in the file.
+	 */
+	private long replay(File file, RecordHandler handler) throws IOException
+	{
+		long valid = 0;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+		try
+		{
+			CRC32 crc = new CRC32();
+			while (true)
+			{
+				int length;
+				try
+				{
+					length = in.readInt();
+				}
+				catch (EOFException e)
+				{
+					break;
+				}
+				if (length < 0 || length > MAX_RECORD_SIZE)
+				{
+					Logger.getInstance().logWarn("Corrupt record in journal file " + file.getPath() + " at offset " + valid, null, null);
+					break;
+				}
+				byte[] body = new byte[length];
+				int checksum;
+				try
+				{
+					checksum = in.readInt();
+					in.readFully(body);
+				}
+				catch (EOFException e)
+				{
+					Logger.getInstance().logWarn("Incomplete record at the end of journal file " + file.getPath(), null, null);
+					break;
+				}
+				crc.reset();
+				crc.update(body);
+				if ((int) crc.getValue() != checksum)
+				{
+					Logger.getInstance().logWarn("Checksum mismatch in journal file " + file.getPath() + " at offset " + valid, null, null);
+					break;
+				}
+				handler.handle(body);
+				valid += HEADER_SIZE + length;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		if (valid < file.length())
+		{
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try
+			{
+				raf.setLength(valid);
+			}
+			finally
+			{
+				raf.close();
+			}
+		}
+		return valid;
+	}
+
+	private File segmentFile(long number)
+	{
+		return new File(directory, SEGMENT_PREFIX + number(number) + FILE_EXT);
+	}
+
+	private File snapshotFile(long number)
+	{
+		return new File(directory, SNAPSHOT_PREFIX + number(number) + FILE_EXT);
+	}
+
+	private static String number(long number)
+	{
+		return String.format("%020d", number);
+	}
+
+	private static long fileNumber(String name, String prefix)
+	{
+		return Long.parseLong(name.substring(prefix.length(), name.length() - FILE_EXT.length()));
+	}
+}
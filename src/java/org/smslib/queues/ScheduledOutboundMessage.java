@@ -27,7 +27,11 @@ import org.smslib.OutboundMessage;
 /**
  * @author Bassam Al-Sarori
  * @since 3.5
+ * @deprecated The queue managers no longer keep delayed messages in a
+ *             <code>DelayQueue</code>, so nothing in SMSLib uses this class.
+ *             It will be removed in a future release.
  */
+@Deprecated
 public class ScheduledOutboundMessage implements Delayed
 {
 	private OutboundMessage message;
@@ -56,4 +56,27 @@ public abstract class ARouter
 	 *         routed through
 	 */
 	public abstract Collection<AGateway> customRoute(OutboundMessage msg, Collection<AGateway> gateways);
+
+	/**
+	 * Called by the Service, through {@link ARouterAdapter}, when it starts. Routers with background services
+	 * of their own start them here; the default does nothing.
+	 * 
+	 * @since 3.5
+	 */
+	public void start()
+	{
+		// Nothing to start.
+	}
+
+	/**
+	 * Called by the Service, through {@link ARouterAdapter}, when it stops, before the service scheduler is
+	 * shut down. Routers with background services of their own cancel them
+	 * here; the default does nothing.
+	 * 
+	 * @since 3.5
+	 */
+	public void stop()
+	{
+		// Nothing to stop.
+	}
 }
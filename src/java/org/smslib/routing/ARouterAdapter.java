@@ -0,0 +1,69 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.routing;
+
+import java.util.Collection;
+import org.smslib.AGateway;
+import org.smslib.OutboundMessage;
+
+/**
+ * Lets the Service use an {@link ARouter} implementation, such as
+ * {@link PrefixRouter}:
+ * 
+ * <pre>
+ * Service.getInstance().setRouter(new ARouterAdapter(new PrefixRouter(new File(&quot;routes.properties&quot;))));
+ * </pre>
+ * 
+ * @since 3.5
+ */
+public class ARouterAdapter extends Router
+{
+	private final ARouter router;
+
+	public ARouterAdapter(ARouter myRouter)
+	{
+		this.router = myRouter;
+	}
+
+	public ARouter getRouter()
+	{
+		return this.router;
+	}
+
+	@Override
+	public Collection<AGateway> route(OutboundMessage msg, Collection<AGateway> gateways)
+	{
+		return this.router.route(msg, gateways);
+	}
+
+	@Override
+	public void start()
+	{
+		this.router.start();
+	}
+
+	@Override
+	public void stop()
+	{
+		this.router.stop();
+	}
+}
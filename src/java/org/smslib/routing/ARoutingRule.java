@@ -0,0 +1,81 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.routing;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.smslib.AGateway;
+import org.smslib.OutboundMessage;
+
+/**
+ * Base class for rules which restrict some messages to a set of gateways.
+ * When a message matches the rule, only the listed gateways stay allowed;
+ * other messages are left alone.
+ * 
+ * @since 3.5
+ */
+public abstract class ARoutingRule implements IRoutingRule
+{
+	private final Set<String> gatewayIds;
+
+	/**
+	 * @param myGatewayIds
+	 *            The ids of the gateways matching messages are restricted to
+	 *            (case is ignored).
+	 */
+	protected ARoutingRule(String... myGatewayIds)
+	{
+		Set<String> ids = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+		for (String id : myGatewayIds)
+			ids.add(id);
+		this.gatewayIds = Collections.unmodifiableSet(ids);
+	}
+
+	/**
+	 * Returns true if the message is subject to this rule.
+	 * 
+	 * @param msg
+	 *            The message being routed.
+	 * @return True if the message should be restricted to the gateways of this
+	 *         rule.
+	 */
+	protected abstract boolean matches(OutboundMessage msg);
+
+	/**
+	 * Returns the ids of the gateways matching messages are restricted to.
+	 * 
+	 * @return The gateway ids.
+	 */
+	public Set<String> getGatewayIds()
+	{
+		return this.gatewayIds;
+	}
+
+	public void apply(OutboundMessage msg, List<AGateway> gateways)
+	{
+		if (!matches(msg)) return;
+		for (int i = gateways.size() - 1; i >= 0; i--)
+			if (!this.gatewayIds.contains(gateways.get(i).getGatewayId())) gateways.remove(i);
+	}
+}
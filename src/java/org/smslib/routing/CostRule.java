@@ -0,0 +1,73 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.routing;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.smslib.AGateway;
+import org.smslib.OutboundMessage;
+
+/**
+ * Keeps only the cheapest of the allowed gateways. Gateways with the same,
+ * lowest cost all stay allowed, so the load balancer spreads messages over
+ * them. Gateways without a cost are the most expensive.
+ * 
+ * @since 3.5
+ */
+public class CostRule implements IRoutingRule
+{
+	private final Map<String, Integer> costs;
+
+	/**
+	 * @param myCosts
+	 *            The cost of sending a message, per gateway id (case is
+	 *            ignored).
+	 */
+	public CostRule(Map<String, Integer> myCosts)
+	{
+		this.costs = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+		this.costs.putAll(myCosts);
+	}
+
+	/**
+	 * Returns the cost of sending a message through the given gateway.
+	 * 
+	 * @param gateway
+	 *            The gateway.
+	 * @return The cost, or Integer.MAX_VALUE if none was given.
+	 */
+	public int getCost(AGateway gateway)
+	{
+		Integer cost = this.costs.get(gateway.getGatewayId());
+		return (cost == null ? Integer.MAX_VALUE : cost.intValue());
+	}
+
+	public void apply(OutboundMessage msg, List<AGateway> gateways)
+	{
+		int lowest = Integer.MAX_VALUE;
+		for (int i = 0; i < gateways.size(); i++)
+			lowest = Math.min(lowest, getCost(gateways.get(i)));
+		for (int i = gateways.size() - 1; i >= 0; i--)
+			if (getCost(gateways.get(i)) > lowest) gateways.remove(i);
+	}
+}
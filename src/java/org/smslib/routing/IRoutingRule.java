@@ -0,0 +1,48 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.routing;
+
+import java.util.List;
+import org.smslib.AGateway;
+import org.smslib.OutboundMessage;
+
+/**
+ * A routing rule, one link of the chain evaluated by {@link RuleRouter}.
+ * Rules are built once and shared by all routing calls, so implementations
+ * must be immutable.
+ * 
+ * @since 3.5
+ */
+public interface IRoutingRule
+{
+	/**
+	 * Narrows down the gateways a message may be routed through, by removing
+	 * from the list the gateways this rule does not allow.
+	 * 
+	 * @param msg
+	 *            The message being routed.
+	 * @param gateways
+	 *            The gateways still allowed by the previous rules. The list
+	 *            belongs to the current routing call.
+	 */
+	void apply(OutboundMessage msg, List<AGateway> gateways);
+}
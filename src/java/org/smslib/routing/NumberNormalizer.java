@@ -0,0 +1,171 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.routing;
+
+/**
+ * Brings destination numbers to the international form, digits only, so
+ * that routes written with one convention match numbers written with
+ * another. A number is taken as international if it starts with '+' or with
+ * the international call prefix ("00" by default), which are dropped. With a
+ * country code set, a number starting with the national trunk prefix ("0" by
+ * default) is national: the trunk prefix is replaced with the country code.
+ * Any other number is left as it is.
+ * <p>
+ * For example, with country code 30, "+306974000000", "00306974000000" and
+ * "06974000000" all become "306974000000".
+ * 
+ * @since 3.5
+ */
+public final class NumberNormalizer
+{
+	private final String countryCode;
+
+	private final String trunkPrefix;
+
+	private final String internationalPrefix;
+
+	/**
+	 * Creates a normalizer for international numbers only: '+' and "00" are
+	 * dropped, national numbers are left as they are.
+	 */
+	public NumberNormalizer()
+	{
+		this(null, "", "00");
+	}
+
+	/**
+	 * Creates a normalizer for a country using the trunk prefix "0" and the
+	 * international call prefix "00".
+	 * 
+	 * @param myCountryCode
+	 *            The country code of national numbers, e.g. "30".
+	 */
+	public NumberNormalizer(String myCountryCode)
+	{
+		this(myCountryCode, "0", "00");
+	}
+
+	/**
+	 * @param myCountryCode
+	 *            The country code of national numbers, with or without '+',
+	 *            or null to leave national numbers as they are.
+	 * @param myTrunkPrefix
+	 *            The national trunk prefix, or "" if the country has none.
+	 * @param myInternationalPrefix
+	 *            The international call prefix, e.g. "00" or "011", or "" for
+	 *            none.
+	 * @throws IllegalArgumentException
+	 *             A code or prefix is not a number.
+	 */
+	public NumberNormalizer(String myCountryCode, String myTrunkPrefix, String myInternationalPrefix)
+	{
+		String code = (myCountryCode == null ? "" : myCountryCode.trim());
+		if (code.startsWith("+")) code = code.substring(1);
+		this.countryCode = (code.length() == 0 ? null : checkDigits(code));
+		this.trunkPrefix = checkDigits(myTrunkPrefix == null ? "" : myTrunkPrefix.trim());
+		this.internationalPrefix = checkDigits(myInternationalPrefix == null ? "" : myInternationalPrefix.trim());
+	}
+
+	private static String checkDigits(String s)
+	{
+		for (int i = 0; i < s.length(); i++)
+			if (s.charAt(i) < '0' || s.charAt(i) > '9') throw new IllegalArgumentException("Not a number: " + s);
+		return s;
+	}
+
+	public String getCountryCode()
+	{
+		return this.countryCode;
+	}
+
+	public String getTrunkPrefix()
+	{
+		return this.trunkPrefix;
+	}
+
+	public String getInternationalPrefix()
+	{
+		return this.internationalPrefix;
+	}
+
+	/**
+	 * Returns the number in international form.
+	 * 
+	 * @param number
+	 *            The number.
+	 * @return The number without '+' or international call prefix, and with
+	 *         the country code in place of the trunk prefix of a national
+	 *         number.
+	 */
+	public String normalize(String number)
+	{
+		int start = start(number);
+		String head = head(number);
+		if (head.length() == 0) return number.substring(start);
+		return head + number.substring(start);
+	}
+
+	/**
+	 * Returns true if the normalized number starts with the given prefix,
+	 * without creating objects.
+	 * 
+	 * @param number
+	 *            The number.
+	 * @param prefix
+	 *            A prefix in normalized form.
+	 * @return True if the number has the prefix.
+	 */
+	public boolean startsWith(String number, String prefix)
+	{
+		String head = head(number);
+		int n = Math.min(head.length(), prefix.length());
+		if (!head.regionMatches(0, prefix, 0, n)) return false;
+		return number.regionMatches(start(number), prefix, n, prefix.length() - n);
+	}
+
+	/**
+	 * Returns the country code to put in front of the digits of a national
+	 * number, or "" for any other number.
+	 */
+	String head(String number)
+	{
+		if ((this.countryCode == null) || (this.trunkPrefix.length() == 0)) return "";
+		if (number.startsWith("+") || isInternational(number)) return "";
+		return (number.startsWith(this.trunkPrefix) ? this.countryCode : "");
+	}
+
+	/**
+	 * Returns the index of the first digit of the number to keep.
+	 */
+	int start(String number)
+	{
+		if (number.startsWith("+")) return 1;
+		if (isInternational(number)) return this.internationalPrefix.length();
+		if (head(number).length() > 0) return this.trunkPrefix.length();
+		return 0;
+	}
+
+	private boolean isInternational(String number)
+	{
+		return ((this.internationalPrefix.length() > 0) && number.startsWith(this.internationalPrefix));
+	}
+}
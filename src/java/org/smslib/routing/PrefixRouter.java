@@ -0,0 +1,292 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.routing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.smslib.AGateway;
+import org.smslib.OutboundMessage;
+import org.smslib.helper.Logger;
+import org.smslib.threading.AServiceThread;
+
+/**
+ * Router selecting gateways by destination prefix, through a
+ * {@link PrefixTrie}. The longest prefix of the recipient decides which
+ * gateways may send the message; recipients matching neither a prefix nor
+ * the default route may be sent through any gateway.
+ * <p>
+ * The routes can be loaded from a file (see {@link PrefixTrie#load}) and
+ * replaced at any time, without stopping the Service: messages being routed
+ * finish with the table they started with. With a reload interval set, the
+ * file is checked in the background and reloaded when it changes.
+ * <p>
+ * Set it on the Service through {@link ARouterAdapter}.
+ * 
+ * @since 3.5
+ */
+public class PrefixRouter extends ARouter
+{
+	private volatile PrefixTrie trie;
+
+	private NumberNormalizer normalizer = new NumberNormalizer();
+
+	private File file;
+
+	private long fileModified;
+
+	private int reloadInterval;
+
+	private Reloader reloader;
+
+	public PrefixRouter()
+	{
+		this(new PrefixTrie(Collections.<String, String[]> emptyMap()));
+	}
+
+	public PrefixRouter(PrefixTrie myTrie)
+	{
+		setTrie(myTrie);
+	}
+
+	/**
+	 * Creates a router with the routes of a file.
+	 * 
+	 * @param myFile
+	 *            The route file.
+	 * @throws IOException
+	 *             The file could not be read.
+	 */
+	public PrefixRouter(File myFile) throws IOException
+	{
+		setFile(myFile);
+	}
+
+	public PrefixTrie getTrie()
+	{
+		return this.trie;
+	}
+
+	/**
+	 * Replaces the routes. Takes effect for the messages routed after the
+	 * call. The normalizer of the router becomes the one the trie was built
+	 * with.
+	 * 
+	 * @param myTrie
+	 *            The new routes.
+	 */
+	public synchronized void setTrie(PrefixTrie myTrie)
+	{
+		this.trie = myTrie;
+		this.normalizer = myTrie.getNormalizer();
+	}
+
+	public synchronized NumberNormalizer getNormalizer()
+	{
+		return this.normalizer;
+	}
+
+	/**
+	 * Sets how the prefixes of the routes and the recipients are brought to
+	 * the same form. The route file, if one is set, is loaded again with the
+	 * new normalizer. Routes set through {@link #setTrie(PrefixTrie)} keep
+	 * only their normalized prefixes, so they cannot be normalized again;
+	 * build the trie with the normalizer instead.
+	 * 
+	 * @param myNormalizer
+	 *            The normalizer.
+	 * @throws IOException
+	 *             The file could not be read. The routes and the normalizer
+	 *             are left as they were.
+	 * @throws IllegalStateException
+	 *             Routes were set without a route file.
+	 */
+	public synchronized void setNormalizer(NumberNormalizer myNormalizer) throws IOException
+	{
+		if (this.file == null)
+		{
+			if (getTrie().size() > 0) throw new IllegalStateException("Routes not loaded from a file cannot be normalized again.");
+			setTrie(new PrefixTrie(Collections.<String, String[]> emptyMap(), myNormalizer));
+			return;
+		}
+		NumberNormalizer previous = this.normalizer;
+		this.normalizer = myNormalizer;
+		try
+		{
+			reload();
+		}
+		catch (IOException e)
+		{
+			this.normalizer = previous;
+			throw e;
+		}
+	}
+
+	public synchronized File getFile()
+	{
+		return this.file;
+	}
+
+	/**
+	 * Loads the routes of a file, which later calls to {@link #reload()} read
+	 * again.
+	 * 
+	 * @param myFile
+	 *            The route file.
+	 * @throws IOException
+	 *             The file could not be read. The routes are left as they
+	 *             were.
+	 */
+	public synchronized void setFile(File myFile) throws IOException
+	{
+		this.file = myFile;
+		reload();
+	}
+
+	/**
+	 * Loads the route file again.
+	 * 
+	 * @throws IOException
+	 *             The file could not be read. The routes are left as they
+	 *             were.
+	 */
+	public synchronized void reload() throws IOException
+	{
+		if (this.file == null) throw new IOException("No route file set.");
+		long modified = this.file.lastModified();
+		InputStream in = new FileInputStream(this.file);
+		try
+		{
+			setTrie(PrefixTrie.load(in, this.normalizer));
+			this.fileModified = modified;
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("Invalid route file " + this.file + ": " + e.getMessage());
+		}
+		finally
+		{
+			in.close();
+		}
+		Logger.getInstance().logInfo("Loaded " + getTrie().size() + " routes from " + this.file + ".", null, null);
+	}
+
+	/**
+	 * Sets how often the route file is checked for changes. Checking stops
+	 * while the Service is stopped and resumes when it starts again.
+	 * 
+	 * @param interval
+	 *            The interval, in milliseconds, or 0 to stop checking.
+	 */
+	public void setReloadInterval(int interval)
+	{
+		synchronized (this)
+		{
+			this.reloadInterval = Math.max(interval, 0);
+			if ((interval > 0) && (this.reloader != null))
+			{
+				this.reloader.setDelay(interval);
+				return;
+			}
+		}
+		if (interval > 0) start();
+		else stop();
+	}
+
+	public synchronized int getReloadInterval()
+	{
+		return this.reloadInterval;
+	}
+
+	/**
+	 * Returns true while the route file is being checked for changes.
+	 * 
+	 * @return True if the reloader is running.
+	 */
+	public synchronized boolean isReloading()
+	{
+		return ((this.reloader != null) && this.reloader.isAlive());
+	}
+
+	@Override
+	public synchronized void start()
+	{
+		if ((this.reloadInterval > 0) && (this.reloader == null)) this.reloader = new Reloader("PrefixRouterReloader", this.reloadInterval);
+	}
+
+	@Override
+	public void stop()
+	{
+		Reloader r;
+		synchronized (this)
+		{
+			r = this.reloader;
+			this.reloader = null;
+		}
+		// Canceled without the lock, which a running check holds.
+		if (r != null) r.cancel();
+	}
+
+	synchronized void reloadIfModified()
+	{
+		if (this.file == null || this.file.lastModified() == this.fileModified) return;
+		try
+		{
+			reload();
+		}
+		catch (IOException e)
+		{
+			Logger.getInstance().logError("Could not reload routes, keeping the current ones.", e, null);
+		}
+	}
+
+	@Override
+	public Collection<AGateway> customRoute(OutboundMessage msg, Collection<AGateway> gateways)
+	{
+		Set<String> ids = getTrie().lookup(msg.getRecipient());
+		if (ids == null) return gateways;
+		List<AGateway> allowed = new ArrayList<AGateway>(gateways.size());
+		for (AGateway gtw : gateways)
+			if (ids.contains(gtw.getGatewayId())) allowed.add(gtw);
+		return allowed;
+	}
+
+	class Reloader extends AServiceThread
+	{
+		public Reloader(String name, int delay)
+		{
+			super(name, delay, delay, true);
+		}
+
+		@Override
+		public void process() throws Exception
+		{
+			reloadIfModified();
+		}
+	}
+}
@@ -0,0 +1,79 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.routing;
+
+import org.smslib.OutboundMessage;
+
+/**
+ * Routes messages whose recipient starts with a given prefix through the
+ * listed gateways. The prefix and the recipient are brought to the same form
+ * by a {@link NumberNormalizer}, so "+3069" and "003069" are the same prefix.
+ * 
+ * @since 3.5
+ */
+public class PrefixRule extends ARoutingRule
+{
+	private final NumberNormalizer normalizer;
+
+	private final String prefix;
+
+	/**
+	 * Creates a rule for international numbers.
+	 * 
+	 * @param myPrefix
+	 *            The recipient prefix, e.g. "+3069".
+	 * @param gatewayIds
+	 *            The gateways for recipients with this prefix.
+	 */
+	public PrefixRule(String myPrefix, String... gatewayIds)
+	{
+		this(new NumberNormalizer(), myPrefix, gatewayIds);
+	}
+
+	/**
+	 * @param myNormalizer
+	 *            Brings the prefix and the recipients to the same form.
+	 * @param myPrefix
+	 *            The recipient prefix, e.g. "+3069".
+	 * @param gatewayIds
+	 *            The gateways for recipients with this prefix.
+	 */
+	public PrefixRule(NumberNormalizer myNormalizer, String myPrefix, String... gatewayIds)
+	{
+		super(gatewayIds);
+		this.normalizer = myNormalizer;
+		this.prefix = myNormalizer.normalize(myPrefix);
+	}
+
+	public String getPrefix()
+	{
+		return this.prefix;
+	}
+
+	@Override
+	protected boolean matches(OutboundMessage msg)
+	{
+		String recipient = msg.getRecipient();
+		if (recipient == null) return false;
+		return this.normalizer.startsWith(recipient, this.prefix);
+	}
+}
@@ -0,0 +1,281 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.routing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable digit trie mapping destination prefixes (country or operator
+ * codes, or whole numbers from a number portability dump) to the gateways
+ * serving them.
+ * <p>
+ * Prefixes and numbers are brought to the international form by the same
+ * {@link NumberNormalizer}, so "+3069", "003069" and, with country code 30,
+ * "069" are the same prefix. The prefix "*" sets the default gateways, used
+ * when no other prefix matches.
+ * <p>
+ * The trie is stored in three flat arrays, ten bytes per node: the digits
+ * present below each node as a bit mask, the index of its first child, and
+ * its gateway set. The children of a node are stored next to each other, so
+ * the child for a digit is found by counting the bits of the mask below it.
+ * Gateway sets are shared between prefixes with the same gateways. A lookup
+ * walks the number once and creates no objects.
+ * 
+ * @since 3.5
+ */
+public final class PrefixTrie
+{
+	private static final int NONE = -1;
+
+	/** Digits 0-9 present below each node, one bit per digit */
+	private final short[] masks;
+
+	/** Index of the first child of each node */
+	private final int[] firstChild;
+
+	/** Index into targets for each node, or NONE */
+	private final int[] values;
+
+	private final List<Set<String>> targets;
+
+	private final int size;
+
+	private final NumberNormalizer normalizer;
+
+	/**
+	 * Builds a trie from the given routes, for international numbers.
+	 * 
+	 * @param routes
+	 *            The gateway ids for each prefix.
+	 * @throws IllegalArgumentException
+	 *             A prefix is not a number.
+	 */
+	public PrefixTrie(Map<String, String[]> routes)
+	{
+		this(routes, new NumberNormalizer());
+	}
+
+	/**
+	 * Builds a trie from the given routes.
+	 * 
+	 * @param routes
+	 *            The gateway ids for each prefix.
+	 * @param myNormalizer
+	 *            Brings prefixes and looked up numbers to the same form.
+	 * @throws IllegalArgumentException
+	 *             A prefix is not a number.
+	 */
+	public PrefixTrie(Map<String, String[]> routes, NumberNormalizer myNormalizer)
+	{
+		this.normalizer = myNormalizer;
+		Map<Set<String>, Integer> targetIndex = new HashMap<Set<String>, Integer>();
+		this.targets = new ArrayList<Set<String>>();
+		int[] next = new int[10 * 1024];
+		int[] value = new int[1024];
+		value[0] = NONE;
+		int nodes = 1;
+		for (Map.Entry<String, String[]> route : routes.entrySet())
+		{
+			Set<String> ids = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+			for (String id : route.getValue())
+				if (id.trim().length() > 0) ids.add(id.trim());
+			Integer target = targetIndex.get(ids);
+			if (target == null)
+			{
+				target = this.targets.size();
+				targetIndex.put(ids, target);
+				this.targets.add(Collections.unmodifiableSet(ids));
+			}
+			String prefix = route.getKey().trim();
+			int node = 0;
+			if (!prefix.equals("*"))
+			{
+				prefix = myNormalizer.normalize(prefix);
+				if (prefix.length() == 0) throw new IllegalArgumentException("Empty prefix.");
+				for (int i = 0; i < prefix.length(); i++)
+				{
+					int digit = prefix.charAt(i) - '0';
+					if (digit < 0 || digit > 9) throw new IllegalArgumentException("Invalid prefix: " + prefix);
+					int child = next[node * 10 + digit];
+					if (child == 0)
+					{
+						if (nodes == value.length)
+						{
+							value = copyOf(value, nodes * 2);
+							next = copyOf(next, nodes * 20);
+						}
+						child = nodes++;
+						value[child] = NONE;
+						next[node * 10 + digit] = child;
+					}
+					node = child;
+				}
+			}
+			value[node] = target;
+		}
+		// Lay the nodes out breadth first, so that siblings are adjacent.
+		this.masks = new short[nodes];
+		this.firstChild = new int[nodes];
+		this.values = new int[nodes];
+		int[] order = new int[nodes];
+		int tail = 1;
+		for (int i = 0; i < nodes; i++)
+		{
+			int node = order[i];
+			this.values[i] = value[node];
+			this.firstChild[i] = tail;
+			int mask = 0;
+			for (int digit = 0; digit < 10; digit++)
+			{
+				int child = next[node * 10 + digit];
+				if (child != 0)
+				{
+					mask |= (1 << digit);
+					order[tail++] = child;
+				}
+			}
+			this.masks[i] = (short) mask;
+		}
+		this.size = routes.size();
+	}
+
+	private static int[] copyOf(int[] array, int length)
+	{
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+
+	/**
+	 * Loads a trie from a properties stream with one route per line, in the
+	 * form <code>prefix=gatewayId[,gatewayId...]</code>. For example:
+	 * 
+	 * <pre>
+	 * # Greek mobile networks
+	 * 3069=modem1,modem2
+	 * 30694=cosmote
+	 * *=bulk
+	 * </pre>
+	 * 
+	 * @param in
+	 *            The stream to read. It is not closed.
+	 * @return The trie.
+	 * @throws IOException
+	 *             The stream could not be read.
+	 * @throws IllegalArgumentException
+	 *             A prefix is not a number.
+	 */
+	public static PrefixTrie load(InputStream in) throws IOException
+	{
+		return load(in, new NumberNormalizer());
+	}
+
+	/**
+	 * Loads a trie from a properties stream, see {@link #load(InputStream)}.
+	 * 
+	 * @param in
+	 *            The stream to read. It is not closed.
+	 * @param normalizer
+	 *            Brings prefixes and looked up numbers to the same form.
+	 * @return The trie.
+	 * @throws IOException
+	 *             The stream could not be read.
+	 * @throws IllegalArgumentException
+	 *             A prefix is not a number.
+	 */
+	public static PrefixTrie load(InputStream in, NumberNormalizer normalizer) throws IOException
+	{
+		Properties props = new Properties();
+		props.load(in);
+		Map<String, String[]> routes = new HashMap<String, String[]>();
+		for (String prefix : props.stringPropertyNames())
+			routes.put(prefix, props.getProperty(prefix).split(","));
+		return new PrefixTrie(routes, normalizer);
+	}
+
+	/**
+	 * Returns the gateways for the longest prefix of the number, or the
+	 * default gateways if no prefix matches.
+	 * 
+	 * @param number
+	 *            The destination number, normalized before the match, which
+	 *            stops at the first character which is not a digit.
+	 * @return The gateway ids (case is ignored when looking up the set), or
+	 *         null if neither a prefix nor a default matches.
+	 */
+	public Set<String> lookup(String number)
+	{
+		int best = this.values[0];
+		if (number != null)
+		{
+			// Walk the normalized number without building it.
+			String head = this.normalizer.head(number);
+			int offset = this.normalizer.start(number) - head.length();
+			int node = 0;
+			for (int i = 0; i < number.length() - offset; i++)
+			{
+				int digit = (i < head.length() ? head.charAt(i) : number.charAt(offset + i)) - '0';
+				if (digit < 0 || digit > 9) break;
+				int mask = this.masks[node];
+				int bit = 1 << digit;
+				if ((mask & bit) == 0) break;
+				node = this.firstChild[node] + Integer.bitCount(mask & (bit - 1));
+				if (this.values[node] != NONE) best = this.values[node];
+			}
+		}
+		return (best == NONE ? null : this.targets.get(best));
+	}
+
+	public NumberNormalizer getNormalizer()
+	{
+		return this.normalizer;
+	}
+
+	/**
+	 * Returns the number of routes, including the default one.
+	 * 
+	 * @return The number of routes.
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Returns the number of trie nodes, a measure of the memory used.
+	 * 
+	 * @return The number of nodes.
+	 */
+	public int getNodeCount()
+	{
+		return this.values.length;
+	}
+}
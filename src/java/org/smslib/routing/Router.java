@@ -22,6 +22,7 @@ package org.smslib.routing;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import org.smslib.AGateway;
 import org.smslib.OutboundMessage;
 import org.smslib.AGateway.GatewayStatuses;
@@ -33,31 +34,117 @@ import org.smslib.AGateway.GatewayStatuses;
  * modem to send message. It is responsibility of Router to decide which gateway
  * will send the message. Custom routing rules are possible by creating
  * subclass.
+ * <p>
+ * Routing is reentrant: each call to {@link #route} works on its own
+ * candidate and allowed lists, which {@link #getCandidates()} and
+ * {@link #getAllowed()} return while the call is in progress. The Service
+ * routes messages from several threads at once, so subclasses must not keep
+ * any other per-message state in fields. Outside of {@link #route}, the two
+ * methods return lists shared by all threads, as they did before 3.5, for
+ * subclasses which drive the routing steps themselves.
+ * <p>
+ * Since 3.5, {@link #route} returns an unmodifiable list, which the Service
+ * passes on to the {@link org.smslib.balancing.LoadBalancer}. Subclasses and
+ * balancers which changed the returned collection must copy it first.
  * 
  * @author Tomek Cejner
  */
 public class Router
 {
-	/** List of candidate gateways */
-	private ArrayList<AGateway> candidates;
+	/** Routing state of the calls in progress on each thread */
+	private final ThreadLocal<RoutingContext> context;
 
-	/** List of gateways that are allowed to send message */
-	private ArrayList<AGateway> allowed;
+	/** Routing state used outside of route(), shared by all threads */
+	private final RoutingContext shared;
+
+	/** True if none of the routing steps is overridden */
+	private final boolean tableRouting;
 
 	public Router()
 	{
-		this.candidates = new ArrayList<AGateway>();
-		this.allowed = new ArrayList<AGateway>();
+		this.context = new ThreadLocal<RoutingContext>();
+		this.shared = new RoutingContext();
+		this.tableRouting = !overrides("route", OutboundMessage.class, Collection.class) && !overrides("preroute", OutboundMessage.class, Collection.class) && !overrides("customRouting", OutboundMessage.class);
 	}
 
+	private boolean overrides(String name, Class<?>... parameterTypes)
+	{
+		for (Class<?> c = getClass(); c != Router.class; c = c.getSuperclass())
+		{
+			try
+			{
+				c.getDeclaredMethod(name, parameterTypes);
+				return true;
+			}
+			catch (NoSuchMethodException e)
+			{
+				// Not declared here, look further up.
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if this router does the basic routing only, i.e. selects
+	 * the outbound, started gateways matching the gateway id of the message.
+	 * The Service then answers routing requests from its
+	 * {@link RoutingTable} without calling {@link #route}, which is lock-free.
+	 * Subclasses which override any of the routing steps return false, and
+	 * are called through {@link #route} for every message.
+	 * 
+	 * @return True if the routing table can stand in for this router.
+	 * @since 3.5
+	 */
+	public boolean isTableRouting()
+	{
+		return this.tableRouting;
+	}
+
+	/**
+	 * Called by the Service when it starts. Routers with background services
+	 * of their own start them here; the default does nothing.
+	 * 
+	 * @since 3.5
+	 */
+	public void start()
+	{
+		// Nothing to start.
+	}
+
+	/**
+	 * Called by the Service when it stops, before the service scheduler is
+	 * shut down. Routers with background services of their own cancel them
+	 * here; the default does nothing.
+	 * 
+	 * @since 3.5
+	 */
+	public void stop()
+	{
+		// Nothing to stop.
+	}
+
+	/**
+	 * Returns the candidate gateways of the message being routed on the
+	 * calling thread, or the shared list if no message is being routed.
+	 */
 	protected ArrayList<AGateway> getCandidates()
 	{
-		return this.candidates;
+		return currentContext().candidates;
 	}
 
+	/**
+	 * Returns the allowed gateways of the message being routed on the calling
+	 * thread, or the shared list if no message is being routed.
+	 */
 	protected ArrayList<AGateway> getAllowed()
 	{
-		return this.allowed;
+		return currentContext().allowed;
+	}
+
+	private RoutingContext currentContext()
+	{
+		RoutingContext ctx = this.context.get();
+		return (ctx != null ? ctx : this.shared);
 	}
 
 	/**
@@ -81,25 +168,25 @@ public class Router
 	 * Heart of routing & load balancing mechanism
 	 * 
 	 * @param msg
+	 * @return The gateways allowed to send the message. The collection
+	 *         belongs to the caller and is not modifiable.
 	 */
 	public Collection<AGateway> route(OutboundMessage msg, Collection<AGateway> gateways)
 	{
-		beginRouting();
-		preroute(msg, gateways);
-		customRouting(msg);
-		return getAllowed();
-		/*
-		// check if there are any gateways designated to send?
-		if (getAllowed().size() > 0) gtw = getService().getLoadBalancer().balance(msg, getAllowed());
-		else
+		RoutingContext outer = this.context.get();
+		this.context.set(new RoutingContext());
+		try
+		{
+			beginRouting();
+			preroute(msg, gateways);
+			customRouting(msg);
+			return Collections.unmodifiableList(getAllowed());
+		}
+		finally
 		{
-			msg.setMessageStatus(MessageStatuses.FAILED);
-			msg.setFailureCause(FailureCauses.NO_ROUTE);
+			if (outer == null) this.context.remove();
+			else this.context.set(outer);
 		}
-		// finish
-		finishRouting();
-		return gtw;
-		*/
 	}
 
 	/**
@@ -119,8 +206,8 @@ public class Router
 	}
 
 	/**
-	 * Prepare internal data for routing (clean internal data structures). Must
-	 * be called when new message is routed.
+	 * Prepare internal data for routing (clean internal data structures).
+	 * Called by {@link #route} for each new message.
 	 */
 	protected final void beginRouting()
 	{
@@ -136,4 +223,11 @@ public class Router
 		getCandidates().clear();
 		getAllowed().clear();
 	}
+
+	private static class RoutingContext
+	{
+		final ArrayList<AGateway> candidates = new ArrayList<AGateway>();
+
+		final ArrayList<AGateway> allowed = new ArrayList<AGateway>();
+	}
 }
@@ -0,0 +1,126 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.smslib.AGateway;
+import org.smslib.AGateway.GatewayStatuses;
+
+/**
+ * Immutable snapshot of the gateways that can take outbound messages, i.e.
+ * the gateways set for outbound messaging which are started. The Service
+ * keeps one snapshot and replaces it whenever a gateway is added, removed or
+ * changes its status, so routing a message is a plain lookup: no locking, no
+ * iteration over the gateways and no allocation.
+ * <p>
+ * The collections returned by {@link #lookup(String)} are shared and
+ * unmodifiable; they never change once the snapshot has been built.
+ * 
+ * @since 3.5
+ */
+public final class RoutingTable
+{
+	private final List<AGateway> gateways;
+
+	private final Map<String, List<AGateway>> gatewaysById;
+
+	/**
+	 * Builds a snapshot of the given gateways. The gateways keep the order
+	 * they have in the collection.
+	 * 
+	 * @param allGateways
+	 *            All gateways known to the Service.
+	 */
+	public RoutingTable(Collection<AGateway> allGateways)
+	{
+		List<AGateway> routable = new ArrayList<AGateway>();
+		Map<String, List<AGateway>> byId = new TreeMap<String, List<AGateway>>(String.CASE_INSENSITIVE_ORDER);
+		for (AGateway gtw : allGateways)
+			if ((gtw.isOutbound()) && (gtw.getStatus() == GatewayStatuses.STARTED))
+			{
+				routable.add(gtw);
+				List<AGateway> sameId = byId.get(gtw.getGatewayId());
+				if (sameId == null)
+				{
+					sameId = new ArrayList<AGateway>(1);
+					byId.put(gtw.getGatewayId(), sameId);
+				}
+				sameId.add(gtw);
+			}
+		this.gateways = freeze(routable);
+		for (Map.Entry<String, List<AGateway>> entry : byId.entrySet())
+			entry.setValue(freeze(entry.getValue()));
+		this.gatewaysById = byId;
+	}
+
+	private static List<AGateway> freeze(List<AGateway> list)
+	{
+		return Collections.unmodifiableList(Arrays.asList(list.toArray(new AGateway[list.size()])));
+	}
+
+	/**
+	 * Returns the gateways a message addressed to the given gateway id may be
+	 * routed through. The id "*" selects all routable gateways, any other id
+	 * the routable gateways with that id (ignoring case).
+	 * 
+	 * @param gatewayId
+	 *            The gateway id of the message.
+	 * @return The candidate gateways, possibly empty.
+	 */
+	public List<AGateway> lookup(String gatewayId)
+	{
+		if ("*".equals(gatewayId)) return this.gateways;
+		List<AGateway> sameId = (gatewayId == null ? null : this.gatewaysById.get(gatewayId));
+		if (sameId == null) return Collections.emptyList();
+		return sameId;
+	}
+
+	/**
+	 * Returns every list {@link #lookup(String)} may return, except the empty
+	 * one, so that load balancers can prepare for them in advance.
+	 * 
+	 * @return The candidate lists.
+	 */
+	public List<List<AGateway>> getCandidateLists()
+	{
+		List<List<AGateway>> lists = new ArrayList<List<AGateway>>(this.gatewaysById.size() + 1);
+		lists.add(this.gateways);
+		lists.addAll(this.gatewaysById.values());
+		return lists;
+	}
+
+	/**
+	 * Returns all gateways of the snapshot.
+	 * 
+	 * @return The outbound, started gateways.
+	 */
+	public List<AGateway> getGateways()
+	{
+		return this.gateways;
+	}
+}
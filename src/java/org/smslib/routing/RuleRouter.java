@@ -0,0 +1,84 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.routing;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.smslib.OutboundMessage;
+
+/**
+ * Router which narrows down the candidate gateways through a chain of
+ * {@link IRoutingRule}s, in the order given. The chain is fixed when the
+ * router is created, and rules are immutable, so the router may be used
+ * from several threads at once. A router without rules behaves like
+ * {@link Router}.
+ * <p>
+ * For example, to send Greek mobile numbers through the cheaper of two
+ * local gateways and flash messages through a modem only:
+ * 
+ * <pre>
+ * Map&lt;String, Integer&gt; costs = new HashMap&lt;String, Integer&gt;();
+ * costs.put(&quot;local1&quot;, 2);
+ * costs.put(&quot;local2&quot;, 3);
+ * Service.getInstance().setRouter(new RuleRouter(new PrefixRule(&quot;+3069&quot;, &quot;local1&quot;, &quot;local2&quot;), new MessageClassRule(MessageClasses.MSGCLASS_FLASH, &quot;modem1&quot;), new CostRule(costs)));
+ * </pre>
+ * 
+ * @since 3.5
+ */
+public class RuleRouter extends Router
+{
+	private final IRoutingRule[] rules;
+
+	public RuleRouter()
+	{
+		this(new IRoutingRule[0]);
+	}
+
+	public RuleRouter(IRoutingRule... myRules)
+	{
+		this.rules = myRules.clone();
+	}
+
+	public RuleRouter(List<IRoutingRule> myRules)
+	{
+		this.rules = myRules.toArray(new IRoutingRule[myRules.size()]);
+	}
+
+	/**
+	 * Returns the rule chain.
+	 * 
+	 * @return The rules, in evaluation order.
+	 */
+	public List<IRoutingRule> getRules()
+	{
+		return Collections.unmodifiableList(Arrays.asList(this.rules));
+	}
+
+	@Override
+	public void customRouting(OutboundMessage msg)
+	{
+		getAllowed().addAll(getCandidates());
+		for (IRoutingRule rule : this.rules)
+			rule.apply(msg, getAllowed());
+	}
+}
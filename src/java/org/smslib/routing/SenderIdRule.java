@@ -0,0 +1,60 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package org.smslib.routing;
+
+import org.smslib.OutboundMessage;
+
+/**
+ * Routes messages sent with a given originator (sender id) through the
+ * listed gateways, typically the ones where that sender id is registered.
+ * The sender id is compared ignoring case.
+ * 
+ * @since 3.5
+ */
+public class SenderIdRule extends ARoutingRule
+{
+	private final String senderId;
+
+	/**
+	 * @param mySenderId
+	 *            The originator, as set with
+	 *            {@link OutboundMessage#setFrom(String)}.
+	 * @param gatewayIds
+	 *            The gateways for messages from this sender id.
+	 */
+	public SenderIdRule(String mySenderId, String... gatewayIds)
+	{
+		super(gatewayIds);
+		this.senderId = mySenderId;
+	}
+
+	public String getSenderId()
+	{
+		return this.senderId;
+	}
+
+	@Override
+	protected boolean matches(OutboundMessage msg)
+	{
+		return this.senderId.equalsIgnoreCase(msg.getFrom());
+	}
+}
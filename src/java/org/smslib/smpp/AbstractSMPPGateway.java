@@ -47,6 +47,10 @@ public abstract class AbstractSMPPGateway extends AGateway
 
 	protected int enquireLink = -1;
 
+	protected int windowSize = 1;
+
+	protected int bindCount = 1;
+
 	/**
 	 * @param id
 	 *            gateway ID
@@ -99,6 +103,63 @@ public abstract class AbstractSMPPGateway extends AGateway
 		this.enquireLink = enquireLink;
 	}
 
+	/**
+	 * Returns the number of submit_sm PDUs kept outstanding per bind.
+	 * 
+	 * @return The window size.
+	 * @see #setWindowSize(int)
+	 */
+	public int getWindowSize()
+	{
+		return windowSize;
+	}
+
+	/**
+	 * Sets the number of submit_sm PDUs kept outstanding per bind. With a
+	 * window of 1 (the default) each message waits for the response to the
+	 * previous one. Larger windows pipeline messages submitted with
+	 * <code>submit()</code>, and raise <code>maxInFlight</code> to match.
+	 * Takes effect the next time the gateway binds.
+	 * 
+	 * @param windowSize
+	 *            The window size.
+	 * @since 3.5
+	 */
+	public void setWindowSize(int windowSize)
+	{
+		this.windowSize = Math.max(windowSize, 1);
+		if (getMaxInFlight() < this.windowSize * this.bindCount) setMaxInFlight(this.windowSize * this.bindCount);
+	}
+
+	/**
+	 * Returns the number of binds the gateway opens.
+	 * 
+	 * @return The number of binds.
+	 * @see #setBindCount(int)
+	 */
+	public int getBindCount()
+	{
+		return bindCount;
+	}
+
+	/**
+	 * Sets the number of binds the gateway opens with the same bind
+	 * attributes, for SMSCs which allow several binds per account. Messages
+	 * go to the bound session with the fewest outstanding submissions, and a
+	 * bind which drops is rebound on its own while the others keep sending.
+	 * Raises <code>maxInFlight</code> to cover the window of every bind.
+	 * Takes effect the next time the gateway starts.
+	 * 
+	 * @param bindCount
+	 *            The number of binds (default 1).
+	 * @since 3.5
+	 */
+	public void setBindCount(int bindCount)
+	{
+		this.bindCount = Math.max(bindCount, 1);
+		if (getMaxInFlight() < this.windowSize * this.bindCount) setMaxInFlight(this.windowSize * this.bindCount);
+	}
+
 	public Address getSourceAddress()
 	{
 		return sourceAddress;
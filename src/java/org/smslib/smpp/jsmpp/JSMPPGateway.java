@@ -21,8 +21,16 @@
 package org.smslib.smpp.jsmpp;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.jsmpp.InvalidResponseException;
 import org.jsmpp.PDUException;
 import org.jsmpp.bean.AlertNotification;
@@ -46,26 +54,29 @@ import org.jsmpp.extra.SessionState;
 import org.jsmpp.session.BindParameter;
 import org.jsmpp.session.DataSmResult;
 import org.jsmpp.session.MessageReceiverListener;
-import org.jsmpp.session.SMPPSession;
 import org.jsmpp.session.Session;
 import org.jsmpp.session.SessionStateListener;
 import org.jsmpp.util.InvalidDeliveryReceiptException;
 import org.smslib.AGateway;
 import org.smslib.GatewayException;
+import org.smslib.GatewayUnavailableException;
 import org.smslib.InboundMessage;
 import org.smslib.OutboundMessage;
 import org.smslib.Service;
 import org.smslib.StatusReportMessage;
+import org.smslib.SubmitFuture;
 import org.smslib.TimeoutException;
 import org.smslib.Message.MessageEncodings;
 import org.smslib.Message.MessageTypes;
 import org.smslib.OutboundMessage.FailureCauses;
 import org.smslib.OutboundMessage.MessageStatuses;
 import org.smslib.StatusReportMessage.DeliveryStatuses;
+import org.smslib.balancing.LoadBalancer;
 import org.smslib.helper.Logger;
 import org.smslib.notify.InboundMessageNotification;
 import org.smslib.smpp.AbstractSMPPGateway;
 import org.smslib.smpp.BindAttributes;
+import org.smslib.threading.AServiceScheduler;
 
 /**
  * A gateway that supports SMPP through JSMPP (http://jsmpp.org/).
@@ -74,11 +85,11 @@ import org.smslib.smpp.BindAttributes;
  */
 public class JSMPPGateway extends AbstractSMPPGateway
 {
-	private SMPPSession session = null;
+	private static final int REBIND_DELAY = 5000;
 
-	private MessageReceiver messageReceiver = new MessageReceiver();
+	private volatile Bind[] binds = new Bind[0];
 
-	private SessionStateListener stateListener = new JSMPPSessionStateListener();
+	private MessageReceiver messageReceiver = new MessageReceiver();
 
 	private BindType bindType;
 
@@ -125,51 +136,287 @@ public class JSMPPGateway extends AbstractSMPPGateway
 		}
 		bindTypeOfNumber = TypeOfNumber.valueOf(bindAttributes.getBindAddress().getTypeOfNumber().value());
 		bindNumberingPlanIndicator = NumberingPlanIndicator.valueOf(bindAttributes.getBindAddress().getNumberingPlanIndicator().value());
-		initSession();
-	}
-
-	private void initSession()
-	{
-		session = new SMPPSession();
-		session.addSessionStateListener(stateListener);
-		session.setMessageReceiverListener(messageReceiver);
 	}
 
 	@Override
 	public void startGateway() throws TimeoutException, GatewayException, IOException, InterruptedException
 	{
-		if (!session.getSessionState().isBound())
-		{
-			if (enquireLink > 0)
-			{
-				session.setEnquireLinkTimer(enquireLink);
-			}
-			session.connectAndBind(host, port, new BindParameter(bindType, bindAttributes.getSystemId(), bindAttributes.getPassword(), bindAttributes.getSystemType(), bindTypeOfNumber, bindNumberingPlanIndicator, null));
-		}
-		else
+		if (getBoundCount() > 0)
 		{
 			Logger.getInstance().logWarn("SMPP session already bound.", null, getGatewayId());
 			//	throw new GatewayException("Session already bound");
+			return;
+		}
+		Bind[] newBinds = new Bind[bindCount];
+		IOException failure = null;
+		for (int i = 0; i < newBinds.length; i++)
+		{
+			newBinds[i] = new Bind(i);
+			try
+			{
+				newBinds[i].bind();
+			}
+			catch (IOException e)
+			{
+				Logger.getInstance().logWarn("SMPP bind #" + i + " failed.", e, getGatewayId());
+				if (failure == null) failure = e;
+			}
 		}
+		binds = newBinds;
+		if (getBoundCount() == 0) throw failure;
+		super.startGateway();
+		for (Bind bind : newBinds)
+			if (!bind.isBound()) bind.scheduleRebind();
 	}
 
 	@Override
 	public void stopGateway() throws TimeoutException, GatewayException, IOException, InterruptedException
 	{
-		if (session.getSessionState().isBound())
-		{
-			session.removeSessionStateListener(stateListener);
-			session.unbindAndClose();
-			//super.stopGateway();
-		}
-		else
+		if (getBoundCount() == 0)
 		{
 			Logger.getInstance().logWarn("SMPP session not bound.", null, getGatewayId());
 			//throw new GatewayException("Session not bound");
 		}
+		for (Bind bind : binds)
+			bind.close();
 		super.stopGateway();
 	}
 
+	/**
+	 * Returns the binds opened by the last start of the gateway, with their
+	 * counters.
+	 * 
+	 * @return The binds.
+	 * @since 3.5
+	 */
+	public List<Bind> getBinds()
+	{
+		return Collections.unmodifiableList(Arrays.asList(binds));
+	}
+
+	/**
+	 * Returns the number of binds currently bound.
+	 * 
+	 * @return The number of bound sessions.
+	 * @since 3.5
+	 */
+	public int getBoundCount()
+	{
+		int count = 0;
+		for (Bind bind : binds)
+			if (bind.isBound()) count++;
+		return count;
+	}
+
+	/**
+	 * Returns the number of messages waiting for a submit_sm_resp, over all
+	 * binds.
+	 * 
+	 * @return The outstanding messages.
+	 * @since 3.5
+	 */
+	public int getOutstanding()
+	{
+		int count = 0;
+		for (Bind bind : binds)
+			count += bind.getOutstanding();
+		return count;
+	}
+
+	/**
+	 * Returns true while at least one bind is up, so that a message lost with
+	 * another bind is only sent again.
+	 */
+	@Override
+	protected boolean isStillConnected()
+	{
+		return getBoundCount() > 0;
+	}
+
+	/**
+	 * Returns the bound bind with the fewest messages outstanding.
+	 * 
+	 * @throws GatewayUnavailableException
+	 *             No bind is bound, e.g. while all of them are rebinding.
+	 */
+	private Bind selectBind() throws GatewayUnavailableException
+	{
+		Bind best = null;
+		for (Bind bind : binds)
+			if (bind.isBound() && ((best == null) || (bind.outstanding.get() < best.outstanding.get()))) best = bind;
+		if (best == null) throw new GatewayUnavailableException("SMPP session not bound.");
+		return best;
+	}
+
+	/**
+	 * One SMPP bind of the gateway. The gateway opens <code>getBindCount()</code>
+	 * binds with the same attributes. Each has its own session, window and
+	 * counters, and is rebound on its own if its connection drops while other
+	 * binds are up.
+	 * 
+	 * @since 3.5
+	 */
+	public class Bind implements SessionStateListener
+	{
+		private final int index;
+
+		private volatile WindowedSMPPSession session;
+
+		private final AtomicInteger outstanding = new AtomicInteger();
+
+		private final AtomicLong submitted = new AtomicLong();
+
+		private final AtomicLong failed = new AtomicLong();
+
+		private final AtomicInteger connects = new AtomicInteger();
+
+		private Future<?> rebind;
+
+		private boolean closed;
+
+		Bind(int index)
+		{
+			this.index = index;
+			this.session = newSession();
+		}
+
+		public int getIndex()
+		{
+			return index;
+		}
+
+		public boolean isBound()
+		{
+			return session.getSessionState().isBound();
+		}
+
+		/**
+		 * Returns the number of messages sent on this bind and waiting for a
+		 * response.
+		 */
+		public int getOutstanding()
+		{
+			return outstanding.get();
+		}
+
+		/**
+		 * Returns the number of messages the SMSC accepted on this bind.
+		 */
+		public long getSubmittedCount()
+		{
+			return submitted.get();
+		}
+
+		/**
+		 * Returns the number of messages which failed on this bind.
+		 */
+		public long getFailedCount()
+		{
+			return failed.get();
+		}
+
+		/**
+		 * Returns how many times this bind has been established.
+		 */
+		public int getConnectCount()
+		{
+			return connects.get();
+		}
+
+		void finished(boolean sent)
+		{
+			outstanding.decrementAndGet();
+			if (sent) submitted.incrementAndGet();
+			else failed.incrementAndGet();
+		}
+
+		private WindowedSMPPSession newSession()
+		{
+			WindowedSMPPSession newSession = new WindowedSMPPSession(windowSize);
+			newSession.addSessionStateListener(this);
+			newSession.setMessageReceiverListener(messageReceiver);
+			if (enquireLink > 0)
+			{
+				newSession.setEnquireLinkTimer(enquireLink);
+			}
+			return newSession;
+		}
+
+		void bind() throws IOException
+		{
+			// JSMPP sessions cannot be reused, so every bind takes a new one.
+			WindowedSMPPSession newSession = newSession();
+			newSession.connectAndBind(host, port, new BindParameter(bindType, bindAttributes.getSystemId(), bindAttributes.getPassword(), bindAttributes.getSystemType(), bindTypeOfNumber, bindNumberingPlanIndicator, null));
+			synchronized (this)
+			{
+				if (!closed)
+				{
+					session = newSession;
+					connects.incrementAndGet();
+					return;
+				}
+			}
+			newSession.removeSessionStateListener(this);
+			newSession.unbindAndClose();
+			throw new IOException("Gateway stopped while binding.");
+		}
+
+		synchronized void scheduleRebind()
+		{
+			if (closed || ((rebind != null) && !rebind.isDone())) return;
+			rebind = AServiceScheduler.getInstance().schedule(new Runnable()
+			{
+				public void run()
+				{
+					rebind();
+				}
+			}, REBIND_DELAY);
+		}
+
+		private void rebind()
+		{
+			if (!getStatus().equals(GatewayStatuses.STARTED)) return;
+			try
+			{
+				bind();
+				Logger.getInstance().logInfo("SMPP bind #" + index + " restored.", null, getGatewayId());
+			}
+			catch (IOException e)
+			{
+				Logger.getInstance().logWarn("SMPP bind #" + index + " failed.", e, getGatewayId());
+				scheduleRebind();
+			}
+		}
+
+		void close()
+		{
+			WindowedSMPPSession current;
+			synchronized (this)
+			{
+				closed = true;
+				if (rebind != null) rebind.cancel(false);
+				current = session;
+			}
+			current.removeSessionStateListener(this);
+			if (current.getSessionState().isBound()) current.unbindAndClose();
+		}
+
+		public void onStateChange(SessionState newState, SessionState oldState, Session source)
+		{
+			if (!newState.equals(SessionState.CLOSED) || (source != session)) return;
+			if (!getStatus().equals(GatewayStatuses.STARTED)) return;
+			if (getBoundCount() > 0)
+			{
+				Logger.getInstance().logWarn("SMPP bind #" + index + " lost, rebinding.", null, getGatewayId());
+				scheduleRebind();
+			}
+			else
+			{
+				JSMPPGateway.super.setStatus(GatewayStatuses.RESTART);
+			}
+		}
+	}
+
 	class MessageReceiver implements MessageReceiverListener
 	{
 		public void onAcceptDeliverSm(DeliverSm deliverSm) throws ProcessRequestException
@@ -238,56 +485,144 @@ public class JSMPPGateway extends AbstractSMPPGateway
 		}
 	}
 
-	class JSMPPSessionStateListener implements SessionStateListener
+	@Override
+	public boolean sendMessage(OutboundMessage msg) throws TimeoutException, GatewayException, IOException, InterruptedException
+	{
+		Bind bind = selectBind();
+		WindowedSMPPSession session = bind.session;
+		bind.outstanding.incrementAndGet();
+		boolean sent = false;
+		try
+		{
+			String msgId = session.submitShortMessage(bindAttributes.getSystemType(), TypeOfNumber.valueOf(sourceAddress.getTypeOfNumber().value()), NumberingPlanIndicator.valueOf(sourceAddress.getNumberingPlanIndicator().value()), (msg.getFrom() != null) ? msg.getFrom() : getFrom(), TypeOfNumber.valueOf(destinationAddress.getTypeOfNumber().value()), NumberingPlanIndicator.valueOf(destinationAddress.getNumberingPlanIndicator().value()), msg.getRecipient(), new ESMClass(), (byte) 0, (byte) msg.getPriority(), null, formatTimeFromHours(msg.getValidityPeriod()), getRegisteredDelivery(msg), (byte) 0, getDataCoding(msg), (byte) 0, msg.getText().getBytes());
+			messageSent(msg, msgId);
+			sent = true;
+		}
+		catch (PDUException e)
+		{
+			messageRejected(msg, e);
+			return false;
+		}
+		catch (ResponseTimeoutException e)
+		{
+			// The response never comes if the session closed meanwhile.
+			if (!session.getSessionState().isBound()) throw (GatewayUnavailableException) sendFailure(new GatewayUnavailableException("SMPP bind #" + bind.getIndex() + " lost.", e));
+			throw (TimeoutException) sendFailure(e);
+		}
+		catch (InvalidResponseException e)
+		{
+			throw (IOException) sendFailure(e);
+		}
+		catch (NegativeResponseException e)
+		{
+			throw (IOException) sendFailure(e);
+		}
+		catch (IOException e)
+		{
+			throw (GatewayUnavailableException) sendFailure(new GatewayUnavailableException("SMPP bind #" + bind.getIndex() + " lost.", e));
+		}
+		finally
+		{
+			bind.finished(sent);
+		}
+		return true;
+	}
+
+	/**
+	 * Submits a message for sending. With a window size above 1 the
+	 * submit_sm is written right away and the future completes when its
+	 * submit_sm_resp arrives, so no thread waits for the SMSC. The caller
+	 * blocks while the window is full.
+	 * 
+	 * @see #setWindowSize(int)
+	 */
+	@Override
+	public SubmitFuture submit(OutboundMessage msg)
+	{
+		if (windowSize <= 1) return super.submit(msg);
+		SubmitFuture future = new SubmitFuture(this, msg);
+		if (future.start()) submitWindowed(future);
+		return future;
+	}
+
+	@Override
+	public List<SubmitFuture> submitAll(Collection<OutboundMessage> msgList)
+	{
+		if (windowSize <= 1) return super.submitAll(msgList);
+		List<SubmitFuture> futures = new ArrayList<SubmitFuture>(msgList.size());
+		for (OutboundMessage msg : msgList)
+			futures.add(submit(msg));
+		return futures;
+	}
+
+	private void submitWindowed(final SubmitFuture future)
 	{
-		public void onStateChange(SessionState newState, SessionState oldState, Object source)
+		final OutboundMessage msg = future.getMessage();
+		final Bind bind;
+		try
+		{
+			Service.getInstance().getRateLimiter().acquire(this, msg);
+		}
+		catch (InterruptedException e)
+		{
+			future.fail(e);
+			return;
+		}
+		try
 		{
-			if (newState.isBound())
+			bind = selectBind();
+		}
+		catch (GatewayUnavailableException e)
+		{
+			future.fail(e);
+			return;
+		}
+		bind.outstanding.incrementAndGet();
+		final LoadBalancer balancer = Service.getInstance().getLoadBalancer();
+		balancer.sendStarted(this, msg);
+		final long start = System.nanoTime();
+		try
+		{
+			bind.session.submitShortMessageAsync(new WindowedSMPPSession.SubmitCallback()
 			{
-				if (!getStatus().equals(GatewayStatuses.STARTED))
+				public void submitted(String messageId)
 				{
-					try
-					{
-						JSMPPGateway.super.startGateway();
-					}
-					catch (TimeoutException e)
-					{
-						Logger.getInstance().logError("Failed starting Gateway.", e, getGatewayId());
-					}
-					catch (GatewayException e)
-					{
-						Logger.getInstance().logError("Failed starting Gateway.", e, getGatewayId());
-					}
-					catch (IOException e)
-					{
-						Logger.getInstance().logError("Failed starting Gateway.", e, getGatewayId());
-					}
-					catch (InterruptedException e)
-					{
-						Logger.getInstance().logError("Failed starting Gateway.", e, getGatewayId());
-					}
+					bind.finished(true);
+					messageSent(msg, messageId);
+					balancer.sendCompleted(JSMPPGateway.this, msg, true, System.nanoTime() - start);
+					future.complete(true);
 				}
-			}
-			else if (newState.equals(SessionState.CLOSED))
-			{
-				if (getStatus().equals(GatewayStatuses.STARTED))
+
+				public void failed(Exception e)
 				{
-					JSMPPGateway.super.setStatus(GatewayStatuses.RESTART);
-					initSession();
+					bind.finished(false);
+					balancer.sendCompleted(JSMPPGateway.this, msg, false, System.nanoTime() - start);
+					future.fail(sendFailure(e));
 				}
-			}
-			//System.out.println("State Changed: from "+oldState+" To "+newState);
+			}, bindAttributes.getSystemType(), TypeOfNumber.valueOf(sourceAddress.getTypeOfNumber().value()), NumberingPlanIndicator.valueOf(sourceAddress.getNumberingPlanIndicator().value()), (msg.getFrom() != null) ? msg.getFrom() : getFrom(), TypeOfNumber.valueOf(destinationAddress.getTypeOfNumber().value()), NumberingPlanIndicator.valueOf(destinationAddress.getNumberingPlanIndicator().value()), msg.getRecipient(), new ESMClass(), (byte) 0, (byte) msg.getPriority(), null, formatTimeFromHours(msg.getValidityPeriod()), getRegisteredDelivery(msg), (byte) 0, getDataCoding(msg), (byte) 0, msg.getText().getBytes());
 		}
-
-		@Override
-		public void onStateChange(SessionState arg0, SessionState arg1, Session arg2)
+		catch (PDUException e)
 		{
-			// TODO Auto-generated method stub
+			bind.finished(false);
+			messageRejected(msg, e);
+			balancer.sendCompleted(this, msg, false, System.nanoTime() - start);
+			future.complete(false);
+		}
+		catch (IOException e)
+		{
+			bind.finished(false);
+			balancer.sendCompleted(this, msg, false, System.nanoTime() - start);
+			future.fail(sendFailure(new GatewayUnavailableException("SMPP bind #" + bind.getIndex() + " lost.", e)));
+		}
+		catch (Exception e)
+		{
+			bind.finished(false);
+			balancer.sendCompleted(this, msg, false, System.nanoTime() - start);
+			future.fail(sendFailure(e));
 		}
 	}
 
-	@Override
-	public boolean sendMessage(OutboundMessage msg) throws TimeoutException, GatewayException, IOException, InterruptedException
+	private GeneralDataCoding getDataCoding(OutboundMessage msg)
 	{
 		Alphabet encoding = Alphabet.ALPHA_DEFAULT;
 		switch (msg.getEncoding())
@@ -302,59 +637,56 @@ public class JSMPPGateway extends AbstractSMPPGateway
 				encoding = Alphabet.ALPHA_UNSPECIFIED_2;
 				break;
 		}
-		GeneralDataCoding dataCoding;
 		switch (msg.getDCSMessageClass())
 		{
 			case MSGCLASS_FLASH:
-				dataCoding = new GeneralDataCoding(encoding, MessageClass.CLASS0, true);
-				break;
+				return new GeneralDataCoding(encoding, MessageClass.CLASS0, true);
 			case MSGCLASS_ME:
-				dataCoding = new GeneralDataCoding(encoding, MessageClass.CLASS1, true);
-				break;
+				return new GeneralDataCoding(encoding, MessageClass.CLASS1, true);
 			case MSGCLASS_SIM:
-				dataCoding = new GeneralDataCoding(encoding, MessageClass.CLASS2, true);
-				break;
+				return new GeneralDataCoding(encoding, MessageClass.CLASS2, true);
 			case MSGCLASS_TE:
-				dataCoding = new GeneralDataCoding(encoding, MessageClass.CLASS3, true);
-				break;
+				return new GeneralDataCoding(encoding, MessageClass.CLASS3, true);
 			default:
-				dataCoding = new GeneralDataCoding(encoding, MessageClass.CLASS1, true);
+				return new GeneralDataCoding(encoding, MessageClass.CLASS1, true);
 		}
-		try
-		{
-			final RegisteredDelivery registeredDelivery = new RegisteredDelivery();
-			registeredDelivery.setSMSCDeliveryReceipt((msg.getStatusReport()) ? SMSCDeliveryReceipt.SUCCESS_FAILURE : SMSCDeliveryReceipt.DEFAULT);
-			String msgId = session.submitShortMessage(bindAttributes.getSystemType(), TypeOfNumber.valueOf(sourceAddress.getTypeOfNumber().value()), NumberingPlanIndicator.valueOf(sourceAddress.getNumberingPlanIndicator().value()), (msg.getFrom() != null) ? msg.getFrom() : getFrom(), TypeOfNumber.valueOf(destinationAddress.getTypeOfNumber().value()), NumberingPlanIndicator.valueOf(destinationAddress.getNumberingPlanIndicator().value()), msg.getRecipient(), new ESMClass(), (byte) 0, (byte) msg.getPriority(), null, formatTimeFromHours(msg.getValidityPeriod()), registeredDelivery, (byte) 0, dataCoding, (byte) 0, msg.getText().getBytes());
-			msg.setRefNo(msgId);
-			msg.setDispatchDate(new Date());
-			msg.setGatewayId(getGatewayId());
-			msg.setMessageStatus(MessageStatuses.SENT);
-			incOutboundMessageCount();
-		}
-		catch (PDUException e)
-		{
-			msg.setGatewayId(getGatewayId());
-			msg.setMessageStatus(MessageStatuses.FAILED);
-			msg.setFailureCause(FailureCauses.BAD_FORMAT);
-			Logger.getInstance().logError("Message Format not accepted.", e, getGatewayId());
-			return false;
-		}
-		catch (ResponseTimeoutException e)
-		{
-			Logger.getInstance().logError("Message could not be sent.", e, getGatewayId());
-			throw new TimeoutException(e.getMessage());
-		}
-		catch (InvalidResponseException e)
-		{
-			Logger.getInstance().logError("Message could not be sent.", e, getGatewayId());
-			throw new IOException("InvalidResponseException: ", e);
-		}
-		catch (NegativeResponseException e)
-		{
-			Logger.getInstance().logError("Message could not be sent.", e, getGatewayId());
-			throw new IOException("NegativeResponseException: ", e);
-		}
-		return true;
+	}
+
+	private RegisteredDelivery getRegisteredDelivery(OutboundMessage msg)
+	{
+		RegisteredDelivery registeredDelivery = new RegisteredDelivery();
+		registeredDelivery.setSMSCDeliveryReceipt((msg.getStatusReport()) ? SMSCDeliveryReceipt.SUCCESS_FAILURE : SMSCDeliveryReceipt.DEFAULT);
+		return registeredDelivery;
+	}
+
+	private void messageSent(OutboundMessage msg, String msgId)
+	{
+		msg.setRefNo(msgId);
+		msg.setDispatchDate(new Date());
+		msg.setGatewayId(getGatewayId());
+		msg.setMessageStatus(MessageStatuses.SENT);
+		incOutboundMessageCount();
+	}
+
+	private void messageRejected(OutboundMessage msg, PDUException e)
+	{
+		msg.setGatewayId(getGatewayId());
+		msg.setMessageStatus(MessageStatuses.FAILED);
+		msg.setFailureCause(FailureCauses.BAD_FORMAT);
+		Logger.getInstance().logError("Message Format not accepted.", e, getGatewayId());
+	}
+
+	/**
+	 * Maps a JSMPP failure to the exception sendMessage() throws for it.
+	 */
+	private Exception sendFailure(Exception e)
+	{
+		if (e instanceof InterruptedException) return e;
+		Logger.getInstance().logError("Message could not be sent.", e, getGatewayId());
+		if (e instanceof ResponseTimeoutException) return new TimeoutException(e.getMessage());
+		if (e instanceof InvalidResponseException) return new IOException("InvalidResponseException: ", e);
+		if (e instanceof NegativeResponseException) return new IOException("NegativeResponseException: ", e);
+		return e;
 	}
 
 	private String formatTimeFromHours(int timeInHours)
@@ -379,9 +711,9 @@ public class JSMPPGateway extends AbstractSMPPGateway
 	public void setEnquireLink(int enquireLink)
 	{
 		super.setEnquireLink(enquireLink);
-		if (session != null)
+		for (Bind bind : binds)
 		{
-			session.setEnquireLinkTimer(enquireLink);
+			bind.session.setEnquireLinkTimer(enquireLink);
 		}
 	}
 }
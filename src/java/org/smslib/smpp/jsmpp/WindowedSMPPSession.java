@@ -0,0 +1,193 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.smslib.smpp.jsmpp;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.jsmpp.InvalidResponseException;
+import org.jsmpp.PDUException;
+import org.jsmpp.bean.Command;
+import org.jsmpp.bean.DataCoding;
+import org.jsmpp.bean.ESMClass;
+import org.jsmpp.bean.NumberingPlanIndicator;
+import org.jsmpp.bean.RegisteredDelivery;
+import org.jsmpp.bean.SubmitSmResp;
+import org.jsmpp.bean.TypeOfNumber;
+import org.jsmpp.extra.NegativeResponseException;
+import org.jsmpp.extra.PendingResponse;
+import org.jsmpp.extra.ResponseTimeoutException;
+import org.jsmpp.session.SMPPSession;
+import org.smslib.GatewayUnavailableException;
+import org.smslib.threading.AServiceScheduler;
+
+/**
+ * An SMPP session which keeps several submit_sm PDUs outstanding. JSMPP
+ * blocks the caller of <code>submitShortMessage()</code> until the response
+ * arrives; <code>submitShortMessageAsync()</code> returns once the PDU is
+ * written, and the response is matched back to it by sequence number.
+ * <p>
+ * At most <code>windowSize</code> PDUs are outstanding; further submissions
+ * wait for a free slot. Each PDU times out on its own after the transaction
+ * timer, and all outstanding PDUs fail with a
+ * <code>GatewayUnavailableException</code> when the session closes.
+ * 
+ * @since 3.5
+ */
+class WindowedSMPPSession extends SMPPSession
+{
+	/**
+	 * Receives the outcome of an asynchronous submit_sm. Called from the
+	 * thread which processed the response, so it should return quickly.
+	 */
+	interface SubmitCallback
+	{
+		void submitted(String messageId);
+
+		void failed(Exception e);
+	}
+
+	private final int windowSize;
+
+	private final Semaphore window;
+
+	private final ConcurrentHashMap<Integer, PendingSubmit> outstanding;
+
+	public WindowedSMPPSession(int windowSize)
+	{
+		super();
+		this.windowSize = windowSize;
+		this.window = new Semaphore(windowSize);
+		this.outstanding = new ConcurrentHashMap<Integer, PendingSubmit>();
+	}
+
+	public int getWindowSize()
+	{
+		return this.windowSize;
+	}
+
+	/**
+	 * Returns the number of submit_sm PDUs waiting for their response.
+	 * 
+	 * @return The outstanding PDUs.
+	 */
+	public int getOutstanding()
+	{
+		return this.outstanding.size();
+	}
+
+	/**
+	 * Sends a submit_sm without waiting for its response. The parameters are
+	 * those of <code>submitShortMessage()</code>. Blocks while the window is
+	 * full.
+	 * 
+	 * @throws ResponseTimeoutException
+	 *             The window stayed full for the whole transaction timer.
+	 */
+	public void submitShortMessageAsync(SubmitCallback callback, String serviceType, TypeOfNumber sourceAddrTon, NumberingPlanIndicator sourceAddrNpi, String sourceAddr, TypeOfNumber destAddrTon, NumberingPlanIndicator destAddrNpi, String destinationAddr, ESMClass esmClass, byte protocolId, byte priorityFlag, String scheduleDeliveryTime, String validityPeriod, RegisteredDelivery registeredDelivery, byte replaceIfPresentFlag, DataCoding dataCoding, byte smDefaultMsgId, byte[] shortMessage) throws PDUException, ResponseTimeoutException, IOException, InterruptedException
+	{
+		ensureTransmittable("submitShortMessage");
+		if (!this.window.tryAcquire(getTransactionTimer(), TimeUnit.MILLISECONDS)) throw new ResponseTimeoutException("No free slot in the submit window after waiting for " + getTransactionTimer() + " millis");
+		PendingSubmit pending = new PendingSubmit(sequence().nextValue(), callback);
+		this.outstanding.put(pending.sequence, pending);
+		pending.timer = AServiceScheduler.getInstance().schedule(pending, getTransactionTimer());
+		try
+		{
+			pduSender().sendSubmitSm(connection().getOutputStream(), pending.sequence, serviceType, sourceAddrTon, sourceAddrNpi, sourceAddr, destAddrTon, destAddrNpi, destinationAddr, esmClass, protocolId, priorityFlag, scheduleDeliveryTime, validityPeriod, registeredDelivery, replaceIfPresentFlag, dataCoding, smDefaultMsgId, shortMessage);
+		}
+		catch (PDUException e)
+		{
+			// Unless the timer has failed it already.
+			if (retire(pending)) throw e;
+		}
+		catch (IOException e)
+		{
+			boolean mine = retire(pending);
+			close();
+			if (mine) throw e;
+		}
+	}
+
+	@Override
+	protected PendingResponse<Command> removePendingResponse(int sequenceNumber)
+	{
+		// The response handler looks up every response here; ours complete
+		// themselves in PendingSubmit.done().
+		PendingSubmit pending = this.outstanding.get(sequenceNumber);
+		if (pending != null) return pending;
+		return super.removePendingResponse(sequenceNumber);
+	}
+
+	@Override
+	public void close()
+	{
+		super.close();
+		for (PendingSubmit pending : this.outstanding.values())
+			if (retire(pending)) pending.callback.failed(new GatewayUnavailableException("Session closed with submit_sm " + pending.sequence + " outstanding."));
+	}
+
+	private boolean retire(PendingSubmit pending)
+	{
+		if (!this.outstanding.remove(pending.sequence, pending)) return false;
+		Future<?> timer = pending.timer;
+		if (timer != null) timer.cancel(false);
+		this.window.release();
+		return true;
+	}
+
+	private class PendingSubmit extends PendingResponse<Command> implements Runnable
+	{
+		final int sequence;
+
+		final SubmitCallback callback;
+
+		volatile Future<?> timer;
+
+		PendingSubmit(int sequence, SubmitCallback callback)
+		{
+			super(getTransactionTimer());
+			this.sequence = sequence;
+			this.callback = callback;
+		}
+
+		@Override
+		public void done(Command response)
+		{
+			if (!retire(this)) return;
+			if (response.getCommandStatus() != 0) this.callback.failed(new NegativeResponseException(response.getCommandStatus()));
+			else if (response instanceof SubmitSmResp) this.callback.submitted(((SubmitSmResp) response).getMessageId());
+			else this.callback.failed(new InvalidResponseException("Unexpected response " + response.getCommandIdAsHex() + " to submit_sm " + this.sequence));
+		}
+
+		@Override
+		public void doneWithInvalidResponse(InvalidResponseException e)
+		{
+			if (retire(this)) this.callback.failed(e);
+		}
+
+		public void run()
+		{
+			if (retire(this)) this.callback.failed(new ResponseTimeoutException("No response after waiting for " + getTransactionTimer() + " millis when executing submit_sm with sequenceNumber " + this.sequence));
+		}
+	}
+}
@@ -20,6 +20,7 @@
 
 package org.smslib.smsserver;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
@@ -43,6 +44,7 @@ import org.smslib.helper.Logger;
 import org.smslib.smsserver.gateways.AGateway;
 import org.smslib.smsserver.interfaces.Interface;
 import org.smslib.smsserver.interfaces.Interface.InterfaceTypes;
+import org.smslib.throttling.TokenBucket;
 
 /**
  * SMSServer Application.
@@ -154,6 +156,7 @@ public class SMSServer
 					Class<?> c = Class.forName((getProperties().getProperty("smsserver.balancer", "").indexOf('.') == -1 ? "org.smslib.balancing." : "") + getProperties().getProperty("smsserver.balancer", ""));
 					Constructor<?> constructor = c.getConstructor();
 					org.smslib.balancing.LoadBalancer balancer = (org.smslib.balancing.LoadBalancer) constructor.newInstance();
+					if (balancer instanceof org.smslib.balancing.WeightedLoadBalancer) ((org.smslib.balancing.WeightedLoadBalancer) balancer).setMeasuredWeights(getProperties().getProperty("smsserver.balancer.measured", "no").equalsIgnoreCase("yes"));
 					Service.getInstance().setLoadBalancer(balancer);
 					Logger.getInstance().logInfo("SMSServer: set balancer to: " + getProperties().getProperty("smsserver.balancer", ""), null, null);
 				}
@@ -169,13 +172,36 @@ public class SMSServer
 				{
 					Class<?> c = Class.forName((getProperties().getProperty("smsserver.router", "").indexOf('.') == -1 ? "org.smslib.routing." : "") + getProperties().getProperty("smsserver.router", ""));
 					Constructor<?> constructor = c.getConstructor();
-					org.smslib.routing.Router router = (org.smslib.routing.Router) constructor.newInstance();
-					Service.getInstance().setRouter(router);
+					Object router = constructor.newInstance();
+					if (router instanceof org.smslib.routing.PrefixRouter)
+					{
+						org.smslib.routing.PrefixRouter prefixRouter = (org.smslib.routing.PrefixRouter) router;
+						if (getProperties().getProperty("smsserver.router.country_code", "").length() > 0) prefixRouter.setNormalizer(new org.smslib.routing.NumberNormalizer(getProperties().getProperty("smsserver.router.country_code"), getProperties().getProperty("smsserver.router.trunk_prefix", "0"), getProperties().getProperty("smsserver.router.international_prefix", "00")));
+						if (getProperties().getProperty("smsserver.router.file", "").length() > 0) prefixRouter.setFile(new File(getProperties().getProperty("smsserver.router.file")));
+						prefixRouter.setReloadInterval(Integer.parseInt(getProperties().getProperty("smsserver.router.reload", "0")) * 1000);
+					}
+					if (router instanceof org.smslib.routing.ARouter) router = new org.smslib.routing.ARouterAdapter((org.smslib.routing.ARouter) router);
+					Service.getInstance().setRouter((org.smslib.routing.Router) router);
 					Logger.getInstance().logInfo("SMSServer: set router to: " + getProperties().getProperty("smsserver.router", ""), null, null);
 				}
 				catch (Exception e)
 				{
-					Logger.getInstance().logError("SMSServer: error setting custom balancer!", null, null);
+					Logger.getInstance().logError("SMSServer: error setting custom router!", e, null);
+				}
+			}
+			for (String propName : getProperties().stringPropertyNames())
+			{
+				if (!propName.startsWith("smsserver.ratelimit")) continue;
+				try
+				{
+					TokenBucket bucket = TokenBucket.valueOf(getProperties().getProperty(propName));
+					if (propName.equals("smsserver.ratelimit")) Service.getInstance().getRateLimiter().setGlobalLimit(bucket);
+					else if (propName.startsWith("smsserver.ratelimit.")) Service.getInstance().getRateLimiter().setPrefixLimit(propName.substring("smsserver.ratelimit.".length()), bucket);
+					Logger.getInstance().logInfo("SMSServer: set rate limit " + propName + " to: " + bucket, null, null);
+				}
+				catch (Exception e)
+				{
+					Logger.getInstance().logError("SMSServer: error setting rate limit " + propName, e, null);
 				}
 			}
 			for (int i = 0; i < Integer.MAX_VALUE; i++)
@@ -194,6 +220,7 @@ public class SMSServer
 					Constructor<?> constructor = c.getConstructor(argsClass);
 					AGateway gtw = (AGateway) constructor.newInstance(args);
 					gtw.create();
+					gtw.configureDispatch();
 					Service.getInstance().addGateway(gtw.getGateway());
 					Logger.getInstance().logInfo("SMSServer: added gateway " + gtwId + " / " + gtw.getDescription(), null, null);
 				}
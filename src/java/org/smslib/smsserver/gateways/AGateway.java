@@ -22,6 +22,7 @@ package org.smslib.smsserver.gateways;
 
 import java.util.Properties;
 import org.smslib.smsserver.SMSServer;
+import org.smslib.throttling.TokenBucket;
 
 /**
  * The AGateway abstract class is an abstraction layer between SMSServer and
@@ -83,4 +84,25 @@ public abstract class AGateway
 	}
 
 	public abstract void create() throws Exception;
+
+	/**
+	 * Applies the queue dispatch settings which are common to all gateways:
+	 * <code>dispatch</code> (polling or event), <code>maxinflight</code> and
+	 * <code>maxrate</code> (messages per second, optionally followed by a
+	 * comma and the burst size). Called after <code>create()</code>.
+	 */
+	public void configureDispatch() throws Exception
+	{
+		String propName = getGatewayId() + ".";
+		String dispatch = getProperties().getProperty(propName + "dispatch");
+		if ("event".equalsIgnoreCase(dispatch)) getGateway().setDispatchMode(org.smslib.AGateway.DispatchModes.EVENT);
+		else if ("polling".equalsIgnoreCase(dispatch)) getGateway().setDispatchMode(org.smslib.AGateway.DispatchModes.POLLING);
+		else if (dispatch != null) throw new Exception("Incorrect parameter: " + propName + "dispatch");
+		String maxInFlight = getProperties().getProperty(propName + "maxinflight");
+		if (maxInFlight != null) getGateway().setMaxInFlight(Integer.parseInt(maxInFlight.trim()));
+		String maxRate = getProperties().getProperty(propName + "maxrate");
+		if (maxRate != null) getGateway().setRateLimit(TokenBucket.valueOf(maxRate));
+		String weight = getProperties().getProperty(propName + "weight");
+		if (weight != null) getGateway().setWeight(Integer.parseInt(weight.trim()));
+	}
 }
@@ -41,14 +41,16 @@ public class IPModem extends AGateway
 	{
 		String propName;
 		propName = getGatewayId() + ".";
-		setGateway(new org.smslib.modem.IPModemGateway(getGatewayId(), getProperties().getProperty(propName + "ip"), Integer.parseInt(getProperties().getProperty(propName + "port")), getProperties().getProperty(propName + "manufacturer"), getProperties().getProperty(propName + "model")));
+		if (getProperties().getProperty(propName + "nio", "no").equalsIgnoreCase("yes")) setGateway(new org.smslib.modem.NIOModemGateway(getGatewayId(), getProperties().getProperty(propName + "ip"), Integer.parseInt(getProperties().getProperty(propName + "port")), getProperties().getProperty(propName + "manufacturer"), getProperties().getProperty(propName + "model")));
+		else setGateway(new org.smslib.modem.IPModemGateway(getGatewayId(), getProperties().getProperty(propName + "ip"), Integer.parseInt(getProperties().getProperty(propName + "port")), getProperties().getProperty(propName + "manufacturer"), getProperties().getProperty(propName + "model")));
 		if (getProperties().getProperty(propName + "protocol").equalsIgnoreCase("pdu")) getGateway().setProtocol(Protocols.PDU);
 		else if (getProperties().getProperty(propName + "protocol").equalsIgnoreCase("text")) getGateway().setProtocol(Protocols.TEXT);
 		else throw new Exception("Incorrect parameter: " + propName + "protocol");
 		if (getProperties().getProperty(propName + "ipprotocol").equalsIgnoreCase("text")) ((ModemGateway) getGateway()).setIpProtocol(IPProtocols.TEXT);
 		else if (getProperties().getProperty(propName + "ipprotocol").equalsIgnoreCase("binary")) ((ModemGateway) getGateway()).setIpProtocol(IPProtocols.BINARY);
+		else if (getProperties().getProperty(propName + "ipprotocol").equalsIgnoreCase("raw")) ((ModemGateway) getGateway()).setIpProtocol(IPProtocols.RAW);
 		else throw new Exception("Incorrect parameter: " + propName + "ipprotocol");
-		((org.smslib.modem.IPModemGateway) getGateway()).setSimPin(getProperties().getProperty(propName + "pin"));
+		((ModemGateway) getGateway()).setSimPin(getProperties().getProperty(propName + "pin"));
 		if (getProperties().getProperty(propName + "inbound").equalsIgnoreCase("yes")) getGateway().setInbound(true);
 		else if (getProperties().getProperty(propName + "inbound").equalsIgnoreCase("no")) getGateway().setInbound(false);
 		else throw new Exception("Incorrect parameter: " + propName + "inbound");
@@ -59,6 +59,16 @@ public class SMPPGateway extends AGateway
 		{
 			gateway.setEnquireLink(Integer.parseInt(enquireLink));
 		}
+		String window = getProperty("window");
+		if (window != null && !window.isEmpty())
+		{
+			gateway.setWindowSize(Integer.parseInt(window));
+		}
+		String binds = getProperty("binds");
+		if (binds != null && !binds.isEmpty())
+		{
+			gateway.setBindCount(Integer.parseInt(binds));
+		}
 		String ton = getProperty("sourceton");
 		TypeOfNumber typeOfNumber = (ton == null) ? TypeOfNumber.UNKNOWN : TypeOfNumber.valueOf(Byte.parseByte(ton));
 		String npi = getProperty("sourcenpi");
@@ -0,0 +1,126 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.smslib.threading;
+
+import java.util.concurrent.Future;
+
+/**
+ * Runs the cycles of the <code>AServiceThread</code> services. The default
+ * scheduler runs them on a shared pool of threads; set another one with
+ * <code>setInstance()</code> before starting the Service.
+ * <p>
+ * The system property <code>smslib.scheduler</code> selects the default:
+ * <code>pool</code> (the default) or <code>virtual</code>, which runs the
+ * cycles on virtual threads where the JRE supports them (Java 21 and later).
+ * 
+ * @since 3.5
+ */
+public abstract class AServiceScheduler
+{
+	private static AServiceScheduler instance;
+
+	/** True if the instance is the default one, created by getInstance() */
+	private static boolean defaultInstance;
+
+	/** Services started and not canceled yet */
+	private static int services;
+
+	/**
+	 * Returns the scheduler in use, creating the default one on first use.
+	 * 
+	 * @return The scheduler.
+	 */
+	public static synchronized AServiceScheduler getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new DefaultServiceScheduler("virtual".equalsIgnoreCase(System.getProperty("smslib.scheduler")));
+			defaultInstance = true;
+		}
+		return instance;
+	}
+
+	/**
+	 * Replaces the scheduler. Services already running keep using the old one
+	 * until their current cycle ends.
+	 * 
+	 * @param scheduler
+	 *            The new scheduler.
+	 */
+	public static synchronized void setInstance(AServiceScheduler scheduler)
+	{
+		instance = scheduler;
+		defaultInstance = false;
+	}
+
+	/**
+	 * Shuts down the default scheduler, if it was created and no service is
+	 * left running on it; the next call of <code>getInstance()</code> creates
+	 * a new one. While a service which has not been canceled is left, the
+	 * scheduler keeps running it, and its idle threads end on their own. A
+	 * scheduler set with <code>setInstance()</code> is left running, for its
+	 * owner to shut down. Called by <code>Service.stopService()</code>.
+	 */
+	public static synchronized void shutdownDefault()
+	{
+		if (!defaultInstance || (services > 0)) return;
+		instance.shutdown();
+		instance = null;
+		defaultInstance = false;
+	}
+
+	static synchronized void serviceStarted()
+	{
+		services++;
+	}
+
+	static synchronized void serviceCanceled()
+	{
+		services--;
+	}
+
+	/**
+	 * Returns the number of services started and not canceled yet.
+	 * 
+	 * @return The number of services.
+	 */
+	public static synchronized int getServiceCount()
+	{
+		return services;
+	}
+
+	/**
+	 * Runs a task after a delay. Tasks may block, so they must not be run on
+	 * the thread that keeps time.
+	 * 
+	 * @param task
+	 *            The task.
+	 * @param delay
+	 *            The delay in milliseconds; 0 to run the task right away.
+	 * @return A handle which cancels the task if it has not started yet.
+	 */
+	public abstract Future<?> schedule(Runnable task, long delay);
+
+	/**
+	 * Stops the scheduler's threads. Tasks already scheduled are dropped.
+	 */
+	public abstract void shutdown();
+}
@@ -20,29 +20,78 @@
 
 package org.smslib.threading;
 
+import java.util.concurrent.Future;
 import org.smslib.helper.Logger;
 
-public abstract class AServiceThread extends Thread
+/**
+ * Base class of the SMSLib background services. A service calls
+ * <code>process()</code> repeatedly, waiting <code>getDelay()</code>
+ * milliseconds between calls.
+ * <p>
+ * Despite the name, a service does not own a thread: each call of
+ * <code>process()</code> is scheduled on the shared
+ * <code>AServiceScheduler</code>, so a service waiting for its next cycle
+ * holds no thread. The thread running a cycle takes the name of the service
+ * for its duration.
+ * <p>
+ * <b>Incompatible change in 3.5:</b> up to 3.4 this class extended
+ * <code>Thread</code>; it no longer does. Code using it as a thread must
+ * change: <code>interrupt()</code> now wakes the service up for its next
+ * cycle, <code>isAlive()</code> and <code>join()</code> are kept with the
+ * meaning they had, and the other <code>Thread</code> methods are gone.
+ */
+public abstract class AServiceThread
 {
-	private int delay;
+	private final Object lock = new Object();
+
+	private final Runnable cycle;
+
+	private String name;
+
+	private volatile int delay;
 
 	private int initialDelay;
 
-	private boolean enabled;
+	private volatile boolean enabled;
+
+	private volatile boolean canceled;
 
-	private boolean canceled;
+	private Future<?> pending;
+
+	private Thread runner;
+
+	private boolean wakeup;
 
 	public AServiceThread(String name, int delay, int initialDelay, boolean enabled)
 	{
 		setName(name);
 		setDelay(delay);
+		setInitialDelay(initialDelay);
 		if (enabled) enable();
 		else disable();
 		this.canceled = false;
+		this.cycle = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				runCycle();
+			}
+		};
 		Logger.getInstance().logDebug("Initialized.", null, null);
 		start();
 	}
 
+	public String getName()
+	{
+		return this.name;
+	}
+
+	public void setName(String name)
+	{
+		this.name = name;
+	}
+
 	public int getDelay()
 	{
 		return this.delay;
@@ -83,43 +132,132 @@ public abstract class AServiceThread extends Thread
 		return this.canceled;
 	}
 
+	/**
+	 * Stops the service. A running cycle is interrupted, and the call waits
+	 * for it to end, unless it is made from the cycle itself.
+	 */
 	public void cancel()
 	{
-		this.canceled = true;
-		interrupt();
-		try
+		synchronized (this.lock)
 		{
-			this.join();
+			if (!this.canceled) AServiceScheduler.serviceCanceled();
+			this.canceled = true;
+			this.lock.notifyAll();
+			if (this.pending != null)
+			{
+				this.pending.cancel(false);
+				this.pending = null;
+			}
+			if (this.runner == null || this.runner == Thread.currentThread()) return;
+			this.runner.interrupt();
+			try
+			{
+				while (this.runner != null)
+					this.lock.wait();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
 		}
-		catch (InterruptedException e)
+	}
+
+	/**
+	 * Returns true until the service is canceled and its last cycle has
+	 * ended.
+	 * 
+	 * @return True if the service is alive.
+	 */
+	public boolean isAlive()
+	{
+		synchronized (this.lock)
 		{
-			// Ignore this.
+			return (!this.canceled || this.runner != null);
 		}
 	}
 
-	@Override
-	public void run()
+	/**
+	 * Waits until the service is canceled and its last cycle has ended.
+	 * 
+	 * @throws InterruptedException
+	 *             The calling thread was interrupted.
+	 */
+	public void join() throws InterruptedException
 	{
-		while (!isCanceled())
+		synchronized (this.lock)
 		{
-			try
-			{
-				Logger.getInstance().logDebug((isEnabled() ? "Running..." : "** disabled **"), null, null);
-				if (isEnabled()) process();
-				sleep(getDelay());
-			}
-			catch (InterruptedException e)
-			{
-				if (isCanceled())
-				{
-					Logger.getInstance().logDebug("Stopped.", null, null);
-					break;
-				}
-				Logger.getInstance().logDebug("Interrupted!", null, null);
-			}
-			catch (Exception e)
+			while (!this.canceled || this.runner != null)
+				this.lock.wait();
+		}
+	}
+
+	/**
+	 * Wakes the service up: if it is waiting for its next cycle, the cycle
+	 * starts now; if a cycle is running, its thread is interrupted and the
+	 * next cycle follows without delay.
+	 */
+	public void interrupt()
+	{
+		synchronized (this.lock)
+		{
+			if (this.canceled) return;
+			this.wakeup = true;
+			if (this.runner != null) this.runner.interrupt();
+			else if (this.pending != null && this.pending.cancel(false)) schedule(0);
+		}
+	}
+
+	private void start()
+	{
+		AServiceScheduler.serviceStarted();
+		synchronized (this.lock)
+		{
+			schedule(getInitialDelay());
+		}
+	}
+
+	private void schedule(long millis)
+	{
+		if (!this.canceled) this.pending = AServiceScheduler.getInstance().schedule(this.cycle, millis);
+	}
+
+	void runCycle()
+	{
+		Thread current = Thread.currentThread();
+		String threadName = current.getName();
+		synchronized (this.lock)
+		{
+			if (this.canceled || this.runner != null) return;
+			this.runner = current;
+			this.pending = null;
+			this.wakeup = false;
+		}
+		current.setName(getName());
+		try
+		{
+			Logger.getInstance().logDebug((isEnabled() ? "Running..." : "** disabled **"), null, null);
+			if (isEnabled()) process();
+		}
+		catch (InterruptedException e)
+		{
+			if (isCanceled()) Logger.getInstance().logDebug("Stopped.", null, null);
+			else Logger.getInstance().logDebug("Interrupted!", null, null);
+		}
+		catch (Exception e)
+		{
+			Logger.getInstance().logError("Error!", e, null);
+		}
+		finally
+		{
+			current.setName(threadName);
+			synchronized (this.lock)
 			{
-				Logger.getInstance().logError("Error!", e, null);
+				// Do not leak an interrupt meant for this service into the pool.
+				Thread.interrupted();
+				this.runner = null;
+				this.lock.notifyAll();
+				schedule(this.wakeup ? 0 : getDelay());
+				this.wakeup = false;
 			}
 		}
 	}
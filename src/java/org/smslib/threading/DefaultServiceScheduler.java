@@ -0,0 +1,125 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.smslib.threading;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.smslib.helper.Logger;
+
+/**
+ * Default scheduler: a single timer thread hands due tasks to a pool of
+ * worker threads, which grows with the number of tasks running at the same
+ * time and shrinks when they are idle. Services waiting for their next cycle
+ * hold no thread at all.
+ * <p>
+ * Optionally, tasks run on virtual threads instead of pooled ones. This
+ * needs Java 21 or later; on older JREs the pool is used.
+ * 
+ * @since 3.5
+ */
+public class DefaultServiceScheduler extends AServiceScheduler
+{
+	private static final long KEEP_ALIVE = 2000;
+
+	private final ScheduledThreadPoolExecutor timer;
+
+	private final ExecutorService workers;
+
+	public DefaultServiceScheduler()
+	{
+		this(false);
+	}
+
+	/**
+	 * @param virtualThreads
+	 *            True to run tasks on virtual threads, if the JRE supports
+	 *            them.
+	 */
+	public DefaultServiceScheduler(boolean virtualThreads)
+	{
+		this.timer = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("SMSLib Scheduler"));
+		this.timer.setKeepAliveTime(KEEP_ALIVE, TimeUnit.MILLISECONDS);
+		this.timer.allowCoreThreadTimeOut(true);
+		ExecutorService executor = (virtualThreads ? newVirtualThreadExecutor() : null);
+		if (executor == null) executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(), new NamedThreadFactory("SMSLib Worker"));
+		this.workers = executor;
+	}
+
+	@Override
+	public Future<?> schedule(final Runnable task, long delay)
+	{
+		if (delay <= 0) return this.workers.submit(task);
+		return this.timer.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				DefaultServiceScheduler.this.workers.execute(task);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void shutdown()
+	{
+		this.timer.shutdownNow();
+		this.workers.shutdown();
+	}
+
+	private static ExecutorService newVirtualThreadExecutor()
+	{
+		try
+		{
+			Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		}
+		catch (Exception e)
+		{
+			Logger.getInstance().logInfo("Virtual threads not supported by this JRE, using a thread pool.", null, null);
+			return null;
+		}
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory
+	{
+		private final String prefix;
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		NamedThreadFactory(String prefix)
+		{
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable r)
+		{
+			return new Thread(r, this.prefix + "-" + this.count.incrementAndGet());
+		}
+	}
+}
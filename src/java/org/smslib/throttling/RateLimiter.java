@@ -0,0 +1,177 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.smslib.throttling;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import org.smslib.AGateway;
+import org.smslib.OutboundMessage;
+
+/**
+ * Keeps queued messages within the configured throughput limits. Before a
+ * gateway sends a queued message it takes a token from up to three buckets:
+ * the gateway's own (see <code>AGateway.setMaxRate()</code>), the one of the
+ * longest destination prefix configured here, and the global one. If any of
+ * them is empty, the sender waits just long enough for a token.
+ * <p>
+ * Taking tokens is lock-free. The prefix table is replaced as a whole when
+ * it changes, so lookups need no locking either.
+ * 
+ * @since 3.5
+ */
+public class RateLimiter
+{
+	private volatile TokenBucket globalLimit;
+
+	private volatile Map<String, TokenBucket> prefixLimits;
+
+	private volatile int maxPrefixLength;
+
+	public RateLimiter()
+	{
+		this.prefixLimits = Collections.emptyMap();
+	}
+
+	/**
+	 * Sets the limit on all queued messages, whatever the gateway.
+	 * 
+	 * @param bucket
+	 *            The limit, or null for none.
+	 */
+	public void setGlobalLimit(TokenBucket bucket)
+	{
+		this.globalLimit = bucket;
+	}
+
+	public TokenBucket getGlobalLimit()
+	{
+		return this.globalLimit;
+	}
+
+	/**
+	 * Sets the limit on queued messages to recipients starting with
+	 * <code>prefix</code> (country or network code, without the leading +).
+	 * Only the longest matching prefix applies to a message.
+	 * 
+	 * @param prefix
+	 *            The destination prefix.
+	 * @param bucket
+	 *            The limit, or null to remove it.
+	 */
+	public synchronized void setPrefixLimit(String prefix, TokenBucket bucket)
+	{
+		Map<String, TokenBucket> limits = new HashMap<String, TokenBucket>(this.prefixLimits);
+		if (bucket == null) limits.remove(prefix);
+		else limits.put(prefix, bucket);
+		int length = 0;
+		for (String p : limits.keySet())
+			length = Math.max(length, p.length());
+		this.prefixLimits = limits;
+		this.maxPrefixLength = length;
+	}
+
+	public TokenBucket getPrefixLimit(String prefix)
+	{
+		return this.prefixLimits.get(prefix);
+	}
+
+	/**
+	 * @return The configured prefix limits (read-only).
+	 */
+	public Map<String, TokenBucket> getPrefixLimits()
+	{
+		return Collections.unmodifiableMap(this.prefixLimits);
+	}
+
+	/**
+	 * Returns the prefix limit which applies to a recipient.
+	 * 
+	 * @param recipient
+	 *            The recipient number.
+	 * @return The limit of the longest matching prefix, or null.
+	 */
+	public TokenBucket findPrefixLimit(String recipient)
+	{
+		Map<String, TokenBucket> limits = this.prefixLimits;
+		if (limits.isEmpty() || recipient == null) return null;
+		int start = (recipient.startsWith("+") ? 1 : 0);
+		for (int length = Math.min(this.maxPrefixLength, recipient.length() - start); length > 0; length--)
+		{
+			TokenBucket bucket = limits.get(recipient.substring(start, start + length));
+			if (bucket != null) return bucket;
+		}
+		return null;
+	}
+
+	/**
+	 * Takes a token from every bucket which applies to the message, without
+	 * waiting. Either all tokens are taken, or none.
+	 * 
+	 * @param gateway
+	 *            The gateway about to send the message.
+	 * @param msg
+	 *            The message.
+	 * @return 0 if the message may be sent now, otherwise the time to wait
+	 *         before trying again, in nanoseconds.
+	 */
+	public long tryAcquire(AGateway gateway, OutboundMessage msg)
+	{
+		TokenBucket gatewayLimit = gateway.getRateLimit();
+		TokenBucket prefixLimit = findPrefixLimit(msg.getRecipient());
+		TokenBucket global = this.globalLimit;
+		long wait;
+		if (gatewayLimit != null && (wait = gatewayLimit.tryAcquire()) > 0) return wait;
+		if (prefixLimit != null && (wait = prefixLimit.tryAcquire()) > 0)
+		{
+			if (gatewayLimit != null) gatewayLimit.release();
+			return wait;
+		}
+		if (global != null && (wait = global.tryAcquire()) > 0)
+		{
+			if (prefixLimit != null) prefixLimit.release();
+			if (gatewayLimit != null) gatewayLimit.release();
+			return wait;
+		}
+		return 0;
+	}
+
+	/**
+	 * Waits until the message may be sent, and takes the tokens for it.
+	 * 
+	 * @param gateway
+	 *            The gateway about to send the message.
+	 * @param msg
+	 *            The message.
+	 * @throws InterruptedException
+	 *             The calling thread was interrupted while waiting.
+	 */
+	public void acquire(AGateway gateway, OutboundMessage msg) throws InterruptedException
+	{
+		long wait;
+		while ((wait = tryAcquire(gateway, msg)) > 0)
+		{
+			LockSupport.parkNanos(this, wait);
+			if (Thread.interrupted()) throw new InterruptedException();
+		}
+	}
+}
@@ -0,0 +1,178 @@
+// SMSLib for Java v3
+// A Java API library for sending and receiving SMS via a GSM modem
+// or other supported gateways.
+// Web Site: http://www.smslib.org
+//
+// Copyright (C) 2002-2012, Thanasis Delenikas, Athens/GREECE.
+// SMSLib is distributed under the terms of the Apache License version 2.0
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.smslib.throttling;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket. Tokens are added at a fixed rate, up to the burst
+ * size; every message sent takes one.
+ * <p>
+ * The bucket keeps a single value, the time at which it will be full again
+ * (the generic cell rate algorithm), and takes tokens with a compare and set
+ * on it. Concurrent senders therefore never block each other, and never
+ * exceed the rate between them.
+ * 
+ * @since 3.5
+ */
+public class TokenBucket
+{
+	private final double rate;
+
+	private final int burst;
+
+	private final long interval;
+
+	private final long tolerance;
+
+	private final AtomicLong full;
+
+	private final AtomicLong acquired;
+
+	private final AtomicLong throttled;
+
+	/**
+	 * @param rate
+	 *            The number of tokens added per second.
+	 * @param burst
+	 *            The maximum number of tokens held, i.e. the number of
+	 *            messages which may be sent back to back.
+	 */
+	public TokenBucket(double rate, int burst)
+	{
+		if (rate <= 0) throw new IllegalArgumentException("Rate must be positive: " + rate);
+		if (burst < 1) throw new IllegalArgumentException("Burst must be at least 1: " + burst);
+		this.rate = rate;
+		this.burst = burst;
+		this.interval = Math.max((long) (1000000000L / rate), 1);
+		this.tolerance = this.interval * (burst - 1);
+		this.full = new AtomicLong(System.nanoTime() - this.interval);
+		this.acquired = new AtomicLong();
+		this.throttled = new AtomicLong();
+	}
+
+	/**
+	 * Parses a token bucket from its configuration form, the rate per second
+	 * optionally followed by a comma and the burst size: "50" or "50,10".
+	 * 
+	 * @param spec
+	 *            The configuration string.
+	 * @return The token bucket.
+	 * @throws NumberFormatException
+	 *             The string is malformed.
+	 */
+	public static TokenBucket valueOf(String spec)
+	{
+		int comma = spec.indexOf(',');
+		if (comma == -1) return new TokenBucket(Double.parseDouble(spec.trim()), 1);
+		return new TokenBucket(Double.parseDouble(spec.substring(0, comma).trim()), Integer.parseInt(spec.substring(comma + 1).trim()));
+	}
+
+	public double getRate()
+	{
+		return this.rate;
+	}
+
+	public int getBurst()
+	{
+		return this.burst;
+	}
+
+	/**
+	 * Takes a token if one is available.
+	 * 
+	 * @return 0 if a token was taken, otherwise the time until one is
+	 *         available, in nanoseconds.
+	 */
+	public long tryAcquire()
+	{
+		while (true)
+		{
+			long now = System.nanoTime();
+			long current = this.full.get();
+			long start = (current - now > 0 ? current : now);
+			long wait = start - now - this.tolerance;
+			if (wait > 0)
+			{
+				this.throttled.incrementAndGet();
+				return wait;
+			}
+			if (this.full.compareAndSet(current, start + this.interval))
+			{
+				this.acquired.incrementAndGet();
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Returns a token taken with <code>tryAcquire()</code>, e.g. when another
+	 * limit kept the message from being sent. The bucket never holds more
+	 * than <code>burst</code> tokens, so a token returned to a bucket which
+	 * has refilled in the meantime is dropped.
+	 */
+	public void release()
+	{
+		while (true)
+		{
+			long now = System.nanoTime();
+			long current = this.full.get();
+			long released = current - this.interval;
+			// the bucket is full once the time it would be full has come
+			if (released - now < 0) released = (current - now < 0 ? current : now);
+			if (this.full.compareAndSet(current, released)) break;
+		}
+		this.acquired.decrementAndGet();
+	}
+
+	/**
+	 * @return The number of tokens currently available.
+	 */
+	public double getTokens()
+	{
+		long empty = this.full.get() - this.tolerance - this.interval;
+		double tokens = (double) (System.nanoTime() - empty) / this.interval;
+		return Math.max(0, Math.min(tokens, this.burst));
+	}
+
+	/**
+	 * @return The number of tokens taken so far.
+	 */
+	public long getAcquiredCount()
+	{
+		return this.acquired.get();
+	}
+
+	/**
+	 * @return The number of times a token was asked for but none was
+	 *         available.
+	 */
+	public long getThrottledCount()
+	{
+		return this.throttled.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "TokenBucket [rate=" + this.rate + "/s, burst=" + this.burst + ", tokens=" + (int) getTokens() + ", throttled=" + getThrottledCount() + "]";
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * 
+ */
+package org.ajwcc.pduUtils.gsm3040;
+
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.smslib.OutboundMessage;
+import org.smslib.OutboundWapSIMessage;
+
+public class PduParserTest {
+
+	/**
+	 * Test method for {@link org.ajwcc.pduUtils.gsm3040.PduParser#parsePdu(byte[])}.
+	 */
+	@Test
+	public void testBytesAndHexAgree() throws Exception {
+		OutboundMessage[] messages = { new OutboundMessage("+306974000000", "Hello [world]"),
+				new OutboundMessage("+306974000000", "0123456789012345678901234567890123456789012345678901234567890123456789012345678901234567890123456789012345678901234567890123456789012345678901234567890123456789012345678901234567890123456789"),
+				new OutboundWapSIMessage("+306974000000", new URL("http://smslib.org/"), "SMSLib") };
+		for (OutboundMessage message : messages) {
+			List<String> hex = message.getPdus("+306942190000", 5);
+			List<byte[]> bytes = message.getPduBytes("+306942190000", 5);
+			Assert.assertEquals(hex.size(), bytes.size());
+			for (int i = 0; i < hex.size(); i++) {
+				Assert.assertEquals(hex.get(i), PduUtils.bytesToPdu(bytes.get(i)));
+				Pdu fromHex = new PduParser().parsePdu(hex.get(i));
+				Pdu fromBytes = new PduParser().parsePdu(bytes.get(i));
+				Assert.assertEquals(fromHex.toString(), fromBytes.toString());
+				Assert.assertEquals(hex.get(i), fromBytes.getRawPdu());
+				Assert.assertTrue(Arrays.equals(bytes.get(i), fromHex.getRawPduBytes()));
+				ByteBuffer buffer = ByteBuffer.allocate(bytes.get(i).length + 3);
+				buffer.put(new byte[] { 1, 2, 3 }).put(bytes.get(i)).flip();
+				buffer.position(3);
+				Assert.assertEquals(fromHex.toString(), new PduParser().parsePdu(buffer).toString());
+				Assert.assertFalse(buffer.hasRemaining());
+			}
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * 
+ */
+package org.ajwcc.pduUtils.gsm3040;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class PduUtilsTest {
+
+	// the BitSet packing the lookup tables replaced
+	private static byte[] pack(byte[] septets) {
+		BitSet bits = new BitSet();
+		for (int i = 0; i < septets.length; i++) {
+			for (int j = 0; j < 7; j++) {
+				if ((septets[i] & (1 << j)) != 0) {
+					bits.set(i * 7 + j);
+				}
+			}
+		}
+		byte[] octets = new byte[(septets.length * 7 + 7) / 8];
+		for (int i = 0; i < octets.length; i++) {
+			for (int j = 0; j < 8; j++) {
+				octets[i] |= (byte) ((bits.get(i * 8 + j) ? 1 : 0) << j);
+			}
+		}
+		return octets;
+	}
+
+	/**
+	 * Test method for {@link org.ajwcc.pduUtils.gsm3040.PduUtils#stringToPdu(String)}.
+	 */
+	@Test
+	public void testKnownEncodings() {
+		Assert.assertEquals("E8329BFD4697D9EC37", PduUtils.stringToPdu("hellohello"));
+		Assert.assertEquals("C8329BFD06", PduUtils.stringToPdu("Hello"));
+		Assert.assertEquals("", PduUtils.stringToPdu(""));
+		Assert.assertEquals("hellohello", PduUtils.encodedSeptetsToString(PduUtils.pduToBytes("E8329BFD4697D9EC37")));
+	}
+
+	/**
+	 * Test method for {@link org.ajwcc.pduUtils.gsm3040.PduUtils#stringToUnencodedSeptets(String)}.
+	 */
+	@Test
+	public void testCharacterMapping() {
+		Assert.assertTrue(Arrays.equals(new byte[] { 0x00, 0x01, 0x1b, 0x65, 0x1b, 0x3c, 0x41 }, PduUtils.stringToUnencodedSeptets("@\u00a3\u20ac[A")));
+		// Greek letters map to the capitals of the standard table
+		Assert.assertEquals("\u0393A\u03a3\u03a3", PduUtils.unencodedSeptetsToString(PduUtils.stringToUnencodedSeptets("\u03b3\u03ac\u03c3\u03c2")));
+		// capital C with cedilla is sent as the small letter, unknown chars as a space
+		Assert.assertEquals("\u00e7 x", PduUtils.unencodedSeptetsToString(PduUtils.stringToUnencodedSeptets("\u00c7\u4e2dx")));
+		String ext = "\f^{}\\[~]|\u20ac";
+		Assert.assertEquals(20, PduUtils.stringToUnencodedSeptets(ext).length);
+		Assert.assertEquals(ext, PduUtils.unencodedSeptetsToString(PduUtils.stringToUnencodedSeptets(ext)));
+		// an escape without a known extension char, or at the end, is dropped
+		Assert.assertEquals("AB", PduUtils.unencodedSeptetsToString(new byte[] { 0x41, 0x1b, 0x41, 0x42, 0x1b }));
+	}
+
+	/**
+	 * Test method for {@link org.ajwcc.pduUtils.gsm3040.PduUtils#unencodedSeptetsToEncodedSeptets(byte[])}.
+	 */
+	@Test
+	public void testPacking() {
+		Random random = new Random(7);
+		for (int length = 0; length < 200; length++) {
+			byte[] septets = new byte[length];
+			random.nextBytes(septets);
+			byte[] packed = pack(septets);
+			Assert.assertTrue(Arrays.equals(packed, PduUtils.unencodedSeptetsToEncodedSeptets(septets)));
+			for (int i = 0; i < length; i++) {
+				septets[i] &= 0x7f;
+			}
+			byte[] unpacked = PduUtils.encodedSeptetsToUnencodedSeptets(packed, false);
+			Assert.assertTrue(Arrays.equals(septets, Arrays.copyOf(unpacked, length)));
+			for (int i = length; i < unpacked.length; i++) {
+				Assert.assertEquals(0, unpacked[i]);
+			}
+		}
+		Assert.assertEquals(1, PduUtils.encodedSeptetsToUnencodedSeptets(new byte[0]).length);
+		// a trailing zero septet is padding, unless the octets end on a septet boundary
+		Assert.assertEquals(1, PduUtils.encodedSeptetsToUnencodedSeptets(new byte[] { 0x41 }).length);
+		Assert.assertEquals(8, PduUtils.encodedSeptetsToUnencodedSeptets(new byte[7]).length);
+	}
+
+	/**
+	 * Test method for {@link org.ajwcc.pduUtils.gsm3040.PduUtils#stringToEncodedSeptets(String)}.
+	 */
+	@Test
+	public void testSinglePassEncoder() {
+		String text = "Fee ~\u20ac0.00 {\u0393\u03b5\u03b9\u03b1} \u00c7a va? [x|y] " + "\u4e2d";
+		for (int i = 0; i <= text.length(); i++) {
+			String s = text.substring(0, i);
+			Assert.assertTrue(s, Arrays.equals(pack(PduUtils.stringToUnencodedSeptets(s)), PduUtils.stringToEncodedSeptets(s)));
+		}
+	}
+
+	/**
+	 * Test method for {@link org.ajwcc.pduUtils.gsm3040.PduUtils#pduToBytes(String)}.
+	 */
+	@Test
+	public void testHexCodec() {
+		byte[] all = new byte[256];
+		for (int i = 0; i < 256; i++) {
+			all[i] = (byte) i;
+		}
+		String hex = PduUtils.bytesToPdu(all);
+		Assert.assertEquals(512, hex.length());
+		Assert.assertTrue(hex.startsWith("000102") && hex.contains("7F8081") && hex.endsWith("FDFEFF"));
+		Assert.assertTrue(Arrays.equals(all, PduUtils.pduToBytes(hex)));
+		Assert.assertTrue(Arrays.equals(all, PduUtils.pduToBytes(hex.toLowerCase())));
+		Assert.assertEquals("8081", PduUtils.bytesToPdu(all, 128, 2));
+		Assert.assertTrue(Arrays.equals(new byte[] { 0x0a }, PduUtils.pduToBytes("+CMGS: 0A", 7, 9)));
+		Assert.assertEquals("0A", PduUtils.byteToPdu(10));
+		Assert.assertEquals("FF", PduUtils.byteToPdu(-1));
+		try {
+			PduUtils.pduToBytes("0G");
+			Assert.fail();
+		} catch (NumberFormatException e) {
+			// expected
+		}
+		try {
+			PduUtils.pduToBytes("ABC");
+			Assert.fail();
+		} catch (NumberFormatException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * 
+ */
+package org.smslib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Date;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.smslib.Message.MessageEncodings;
+import org.smslib.OutboundMessage.MessageStatuses;
+import org.smslib.OutboundWapSIMessage.WapSISignals;
+
+public class OutboundMessageCodecTest {
+
+	/**
+	 * Test method for {@link org.smslib.OutboundMessageCodec#decode(byte[])}.
+	 */
+	@Test
+	public void testTextMessage() throws Exception {
+		OutboundMessage message = new OutboundMessage("+306974000000", "\u0393\u03b5\u03b9\u03ac \u03c3\u03bf\u03c5 \u03ba\u03cc\u03c3\u03bc\u03b5 \u20ac \ud83d\ude00");
+		message.setEncoding(MessageEncodings.ENCUCS2);
+		message.setGatewayId("modem.com1");
+		message.setPriority(-2);
+		message.setValidityPeriod(24);
+		message.setStatusReport(true);
+		message.setFlashSms(true);
+		message.setSrcPort(1000);
+		message.setDstPort(2000);
+		message.setRetryCount(3);
+		message.setMessageStatus(MessageStatuses.FAILED);
+		message.setScheduledDeliveryDate(new Date(System.currentTimeMillis() + 60000));
+		message.setPartRefNos(Arrays.asList("12", "13"));
+
+		OutboundMessage decoded = OutboundMessageCodec.decode(OutboundMessageCodec.encode(message));
+		Assert.assertEquals(OutboundMessage.class, decoded.getClass());
+		Assert.assertEquals(message.getUuid(), decoded.getUuid());
+		Assert.assertEquals(message.getText(), decoded.getText());
+		Assert.assertEquals(message.getRecipient(), decoded.getRecipient());
+		Assert.assertEquals(message.getGatewayId(), decoded.getGatewayId());
+		Assert.assertEquals(message.getEncoding(), decoded.getEncoding());
+		Assert.assertEquals(message.getDCSMessageClass(), decoded.getDCSMessageClass());
+		Assert.assertEquals(message.getPriority(), decoded.getPriority());
+		Assert.assertEquals(message.getValidityPeriod(), decoded.getValidityPeriod());
+		Assert.assertEquals(message.getStatusReport(), decoded.getStatusReport());
+		Assert.assertEquals(message.getSrcPort(), decoded.getSrcPort());
+		Assert.assertEquals(message.getDstPort(), decoded.getDstPort());
+		Assert.assertEquals(message.getRetryCount(), decoded.getRetryCount());
+		Assert.assertEquals(message.getMessageStatus(), decoded.getMessageStatus());
+		Assert.assertEquals(message.getDate(), decoded.getDate());
+		Assert.assertEquals(message.getScheduledDeliveryDate(), decoded.getScheduledDeliveryDate());
+		Assert.assertEquals(message.getPartRefNos(), decoded.getPartRefNos());
+		Assert.assertNull(decoded.getDispatchDate());
+		Assert.assertEquals(message.getPdus("", 1), decoded.getPdus("", 1));
+	}
+
+	@Test
+	public void testBinaryMessage() throws Exception {
+		OutboundBinaryMessage message = new OutboundBinaryMessage("306974000000", new byte[] { 0, 1, 2, (byte) 0xff });
+		OutboundMessage decoded = OutboundMessageCodec.decode(OutboundMessageCodec.encode(message));
+		Assert.assertEquals(OutboundBinaryMessage.class, decoded.getClass());
+		Assert.assertTrue(Arrays.equals(message.getDataBytes(), ((OutboundBinaryMessage) decoded).getDataBytes()));
+		Assert.assertEquals(message.getUuid(), decoded.getUuid());
+	}
+
+	@Test
+	public void testWapSIMessage() throws Exception {
+		OutboundWapSIMessage message = new OutboundWapSIMessage("306974000000", new URL("http://smslib.org/"), "SMSLib", new Date(System.currentTimeMillis() + 3600000), WapSISignals.HIGH);
+		message.setSiId("si-1");
+		OutboundWapSIMessage decoded = (OutboundWapSIMessage) OutboundMessageCodec.decode(OutboundMessageCodec.encode(message));
+		Assert.assertEquals(message.getUrl(), decoded.getUrl());
+		Assert.assertEquals(message.getIndicationText(), decoded.getIndicationText());
+		Assert.assertEquals(message.getExpireDate(), decoded.getExpireDate());
+		Assert.assertEquals(message.getSignal(), decoded.getSignal());
+		Assert.assertEquals(message.getSiId(), decoded.getSiId());
+		Assert.assertEquals(message.getRecipient(), decoded.getRecipient());
+		Assert.assertTrue(Arrays.equals(message.getDataBytes(), decoded.getDataBytes()));
+	}
+
+	/**
+	 * Subclasses unknown to the codec, and data written by Java serialization,
+	 * must still decode.
+	 */
+	@Test
+	public void testSerializedMessages() throws Exception {
+		EzTextingOutboundMessage message = new EzTextingOutboundMessage("306974000000", "text", "subject", true);
+		OutboundMessage decoded = OutboundMessageCodec.decode(OutboundMessageCodec.encode(message));
+		Assert.assertEquals(EzTextingOutboundMessage.class, decoded.getClass());
+		Assert.assertEquals(message.getUuid(), decoded.getUuid());
+
+		OutboundMessage legacy = new OutboundMessage("306974000000", "legacy");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(legacy);
+		out.close();
+		decoded = OutboundMessageCodec.decode(bytes.toByteArray());
+		Assert.assertEquals(legacy.getUuid(), decoded.getUuid());
+		Assert.assertEquals(legacy.getText(), decoded.getText());
+	}
+}
@@ -0,0 +1,151 @@
+/**
+ * 
+ */
+package org.smslib;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.smslib.AGateway.GatewayStatuses;
+import org.smslib.OutboundMessage.MessageStatuses;
+import org.smslib.mocks.GatewayMock;
+
+public class SubmitFutureTest {
+
+	/**
+	 * A gateway which takes a while to send, or waits until it is released,
+	 * and records how many messages it had in flight at the same time.
+	 */
+	static class SlowGateway extends GatewayMock {
+
+		final AtomicInteger inFlight = new AtomicInteger();
+
+		final AtomicInteger maxSeen = new AtomicInteger();
+
+		CountDownLatch release;
+
+		public SlowGateway(String id) {
+			super(id);
+		}
+
+		@Override
+		public boolean sendMessage(OutboundMessage msg) throws TimeoutException, GatewayException, IOException, InterruptedException {
+			int now = inFlight.incrementAndGet();
+			while (true) {
+				int seen = maxSeen.get();
+				if (now <= seen || maxSeen.compareAndSet(seen, now)) break;
+			}
+			if (release != null) release.await();
+			else Thread.sleep(50);
+			inFlight.decrementAndGet();
+			if (msg.getRecipient().endsWith("00")) throw new IOException("Bad link.");
+			msg.setMessageStatus(MessageStatuses.SENT);
+			return !msg.getRecipient().endsWith("99");
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.AGateway#submitAll(java.util.Collection)}.
+	 */
+	@Test
+	public void testSubmitAll() throws Exception {
+		SlowGateway gateway = new SlowGateway("G1");
+		gateway.setMaxInFlight(4);
+		gateway.release = new CountDownLatch(1);
+		gateway.startGateway();
+		List<OutboundMessage> batch = new ArrayList<OutboundMessage>();
+		for (int i = 0; i < 16; i++) {
+			batch.add(new OutboundMessage("3069740000" + (10 + i), "test"));
+		}
+		final CountDownLatch completed = new CountDownLatch(batch.size());
+		List<SubmitFuture> futures = gateway.submitAll(batch);
+		for (SubmitFuture future : futures) {
+			future.addListener(new ISubmitListener() {
+				public void completed(SubmitFuture f) {
+					completed.countDown();
+				}
+			});
+		}
+		long deadline = System.currentTimeMillis() + 5000;
+		while (gateway.inFlight.get() < 4 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		Assert.assertEquals("4 messages should be in flight.", 4, gateway.inFlight.get());
+		Assert.assertEquals(16, completed.getCount());
+		gateway.release.countDown();
+		Assert.assertTrue(completed.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals("No more than 4 messages should be in flight.", 4, gateway.maxSeen.get());
+		for (SubmitFuture future : futures) {
+			Assert.assertTrue(future.isDone());
+			Assert.assertSame(gateway, future.getGateway());
+			Assert.assertSame(future.getMessage(), future.get());
+			Assert.assertTrue(future.isSent());
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.SubmitFuture#get()}.
+	 */
+	@Test
+	public void testFailures() throws Exception {
+		SlowGateway gateway = new SlowGateway("G1");
+		gateway.startGateway();
+		SubmitFuture refused = gateway.submit(new OutboundMessage("306974000099", "test"));
+		SubmitFuture failed = gateway.submit(new OutboundMessage("306974000100", "test"));
+		Assert.assertSame(refused.getMessage(), refused.get(5, TimeUnit.SECONDS));
+		Assert.assertFalse(refused.isSent());
+		try {
+			failed.get(5, TimeUnit.SECONDS);
+			Assert.fail("ExecutionException expected.");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IOException);
+		}
+		Assert.assertFalse(failed.isSent());
+		Assert.assertEquals(1, gateway.maxSeen.get());
+	}
+
+	/**
+	 * Test method for {@link org.smslib.AGateway#submit(OutboundMessage)}.
+	 */
+	@Test
+	public void testCancelOnStop() throws Exception {
+		SlowGateway gateway = new SlowGateway("G1");
+		gateway.release = new CountDownLatch(1);
+		gateway.startGateway();
+		SubmitFuture first = gateway.submit(new OutboundMessage("306974000010", "test"));
+		SubmitFuture second = gateway.submit(new OutboundMessage("306974000011", "test"));
+		long deadline = System.currentTimeMillis() + 5000;
+		while (gateway.inFlight.get() < 1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		gateway.setStatus(GatewayStatuses.STOPPING);
+		gateway.release.countDown();
+		// The message being sent finishes; the one waiting is not sent.
+		Assert.assertSame(first.getMessage(), first.get(5, TimeUnit.SECONDS));
+		try {
+			second.get(5, TimeUnit.SECONDS);
+			Assert.fail("CancellationException expected.");
+		} catch (CancellationException e) {
+			// Expected.
+		}
+		Assert.assertTrue(second.isCancelled());
+		// Nor is a message submitted after the stop.
+		SubmitFuture late = gateway.submit(new OutboundMessage("306974000012", "test"));
+		try {
+			late.get(5, TimeUnit.SECONDS);
+			Assert.fail("CancellationException expected.");
+		} catch (CancellationException e) {
+			// Expected.
+		}
+		Assert.assertEquals(1, gateway.maxSeen.get());
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * 
+ */
+package org.smslib.balancing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.smslib.AGateway;
+import org.smslib.OutboundMessage;
+import org.smslib.Service;
+import org.smslib.mocks.GatewayMock;
+
+public class AdaptiveLoadBalancerTest {
+
+	private static final long MILLIS = 1000000;
+
+	private static List<AGateway> createGateways() {
+		List<AGateway> gateways=new ArrayList<AGateway>();
+		gateways.add(new GatewayMock("G1"));
+		gateways.add(new GatewayMock("G2"));
+		return gateways;
+	}
+
+	private static int count(AdaptiveLoadBalancer balancer, List<AGateway> gateways, AGateway gateway, int messages) {
+		OutboundMessage message=new OutboundMessage("77374847", "test");
+		int count=0;
+		for (int i = 0; i < messages; i++)
+			if (balancer.balance(message, gateways) == gateway) count++;
+		return count;
+	}
+
+	private static void send(AdaptiveLoadBalancer balancer, AGateway gateway, boolean sent, long elapsed) {
+		OutboundMessage message=new OutboundMessage("77374847", "test");
+		balancer.sendStarted(gateway, message);
+		balancer.sendCompleted(gateway, message, sent, elapsed);
+	}
+
+	/**
+	 * Test method for {@link org.smslib.balancing.AdaptiveLoadBalancer#balance(org.smslib.OutboundMessage, java.util.Collection)}.
+	 */
+	@Test
+	public void testPrefersFastAndIdleGateways() {
+		List<AGateway> gateways=createGateways();
+		AdaptiveLoadBalancer balancer=new AdaptiveLoadBalancer();
+		for (int i = 0; i < 10; i++) {
+			send(balancer, gateways.get(0), true, 1 * MILLIS);
+			send(balancer, gateways.get(1), true, 100 * MILLIS);
+		}
+		Assert.assertEquals("The fast gateway should take all messages.", 100, count(balancer, gateways, gateways.get(0), 100));
+
+		OutboundMessage message=new OutboundMessage("77374847", "test");
+		for (int i = 0; i < 200; i++)
+			balancer.sendStarted(gateways.get(0), message);
+		Assert.assertEquals("The busy gateway should be avoided.", 100, count(balancer, gateways, gateways.get(1), 100));
+	}
+
+	/**
+	 * Test method for {@link org.smslib.balancing.AdaptiveLoadBalancer#gatewayRemoved(org.smslib.AGateway)}.
+	 */
+	@Test
+	public void testGatewayRemoved() throws Exception {
+		Service service=Service.getInstance();
+		AdaptiveLoadBalancer balancer=new AdaptiveLoadBalancer();
+		balancer.setEjectAfter(1);
+		AGateway gateway=new GatewayMock("G1");
+		service.addGateway(gateway);
+		service.setLoadBalancer(balancer);
+		try {
+			send(balancer, gateway, false, 1 * MILLIS);
+			Assert.assertTrue(balancer.isEjected(gateway));
+		} finally {
+			service.removeGateway(gateway);
+			service.setLoadBalancer(new RoundRobinLoadBalancer());
+		}
+		Assert.assertFalse("The removed gateway should be forgotten.", balancer.isEjected(gateway));
+	}
+
+	/**
+	 * Test method for {@link org.smslib.balancing.AdaptiveLoadBalancer#sendCompleted(org.smslib.AGateway, org.smslib.OutboundMessage, boolean, long)}.
+	 */
+	@Test
+	public void testEjection() {
+		List<AGateway> gateways=createGateways();
+		AdaptiveLoadBalancer balancer=new AdaptiveLoadBalancer();
+		balancer.setEjectAfter(3);
+		send(balancer, gateways.get(1), true, 100 * MILLIS);
+		send(balancer, gateways.get(0), false, 1 * MILLIS);
+		send(balancer, gateways.get(0), false, 1 * MILLIS);
+		send(balancer, gateways.get(0), true, 1 * MILLIS);
+		send(balancer, gateways.get(0), false, 1 * MILLIS);
+		send(balancer, gateways.get(0), false, 1 * MILLIS);
+		Assert.assertFalse("Failures in a row should be counted.", balancer.isEjected(gateways.get(0)));
+		send(balancer, gateways.get(0), false, 1 * MILLIS);
+		Assert.assertTrue("G1 should be ejected.", balancer.isEjected(gateways.get(0)));
+		Assert.assertEquals("The ejected gateway should take no messages.", 100, count(balancer, gateways, gateways.get(1), 100));
+
+		for (int i = 0; i < 3; i++)
+			send(balancer, gateways.get(1), false, 100 * MILLIS);
+		Assert.assertTrue("G2 should be ejected.", balancer.isEjected(gateways.get(1)));
+		Assert.assertNotNull("A gateway should be picked when all are ejected.", balancer.balance(new OutboundMessage("77374847", "test"), gateways));
+	}
+
+	/**
+	 * Test method for {@link org.smslib.balancing.AdaptiveLoadBalancer#balance(org.smslib.OutboundMessage, java.util.Collection)}.
+	 */
+	@Test
+	public void testGradualRecovery() {
+		List<AGateway> gateways=createGateways();
+		AdaptiveLoadBalancer balancer=new AdaptiveLoadBalancer();
+		balancer.setEjectAfter(1);
+		balancer.setEjectTime(0);
+		balancer.setRecoveryTime(3600000);
+		send(balancer, gateways.get(1), true, 100 * MILLIS);
+		send(balancer, gateways.get(0), false, 1 * MILLIS);
+		Assert.assertFalse("The ejection should be over.", balancer.isEjected(gateways.get(0)));
+		Assert.assertTrue("A recovering gateway should take few messages.", count(balancer, gateways, gateways.get(0), 1000) < 50);
+
+		balancer.setRecoveryTime(0);
+		send(balancer, gateways.get(0), false, 1 * MILLIS);
+		for (int i = 0; i < 20; i++)
+			send(balancer, gateways.get(0), true, 1 * MILLIS);
+		Assert.assertEquals("A recovered gateway should take its share.", 100, count(balancer, gateways, gateways.get(0), 100));
+	}
+}
@@ -0,0 +1,193 @@
+/**
+ * 
+ */
+package org.smslib.balancing;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.smslib.AGateway;
+import org.smslib.OutboundBinaryMessage;
+import org.smslib.OutboundMessage;
+import org.smslib.OutboundWapSIMessage;
+import org.smslib.Service;
+import org.smslib.mocks.GatewayMock;
+import org.smslib.queues.AbstractQueueManager;
+import org.smslib.queues.DefaultQueueManager;
+
+public class WeightedLoadBalancerTest {
+
+	private static List<AGateway> addGateways(Service service, int... attributes) throws Exception {
+		List<AGateway> gateways=new ArrayList<AGateway>();
+		for (int i = 0; i < attributes.length; i++) {
+			AGateway gateway=new GatewayMock("G" + (i + 1));
+			gateway.setAttributes(AGateway.GatewayAttributes.SEND | attributes[i]);
+			gateway.setOutbound(true);
+			gateway.startGateway();
+			service.addGateway(gateway);
+			gateways.add(gateway);
+		}
+		service.refreshRoutingTable();
+		return gateways;
+	}
+
+	private static void removeGateways(Service service, List<AGateway> gateways) throws Exception {
+		service.setLoadBalancer(new RoundRobinLoadBalancer());
+		for (AGateway gateway : gateways)
+			service.removeGateway(gateway);
+	}
+
+	private static String route(Service service, OutboundMessage message, int messages) throws Exception {
+		StringBuilder ids=new StringBuilder();
+		for (int i = 0; i < messages; i++)
+			ids.append(service.routeMessage(message).getGatewayId());
+		return ids.toString();
+	}
+
+	/**
+	 * Test method for {@link org.smslib.balancing.WeightedLoadBalancer#balance(org.smslib.OutboundMessage, java.util.Collection)}.
+	 */
+	@Test
+	public void testSmoothWeights() throws Exception {
+		Service service=Service.getInstance();
+		List<AGateway> gateways=addGateways(service, 0, 0, 0);
+		try {
+			service.setLoadBalancer(new WeightedLoadBalancer());
+			gateways.get(0).setWeight(5);
+			OutboundMessage message=new OutboundMessage("77374847", "test");
+			Assert.assertEquals("Weights 5, 1, 1 should be interleaved.", "G1G1G2G1G3G1G1", route(service, message, 7));
+
+			gateways.get(0).setWeight(2);
+			gateways.get(1).setWeight(4);
+			gateways.get(2).setWeight(0);
+			Assert.assertEquals("Weights should be reduced and at least 1.", 1, gateways.get(2).getWeight());
+			Assert.assertEquals("Weights 2, 4, 1 should be interleaved.", "G2G1G2G3G2G1G2", route(service, message, 7));
+		} finally {
+			removeGateways(service, gateways);
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.balancing.WeightedLoadBalancer#getRequiredAttributes(org.smslib.OutboundMessage)}.
+	 */
+	@Test
+	public void testCapabilities() throws Exception {
+		Service service=Service.getInstance();
+		List<AGateway> gateways=addGateways(service, 0, AGateway.GatewayAttributes.BIGMESSAGES, AGateway.GatewayAttributes.WAPSI | AGateway.GatewayAttributes.BIGMESSAGES);
+		try {
+			WeightedLoadBalancer balancer=new WeightedLoadBalancer();
+			service.setLoadBalancer(balancer);
+			Assert.assertEquals("Short messages may go anywhere.", "G1G2G3", route(service, new OutboundMessage("77374847", "test"), 3));
+
+			StringBuilder text=new StringBuilder();
+			for (int i = 0; i < 81; i++)
+				text.append("{");
+			Assert.assertEquals("Extension chars take two septets.", AGateway.GatewayAttributes.BIGMESSAGES, balancer.getRequiredAttributes(new OutboundMessage("77374847", text.toString())));
+			Assert.assertEquals("Big messages need BIGMESSAGES.", "G2G3G2G3", route(service, new OutboundMessage("77374847", text.toString()), 4));
+			Assert.assertEquals("Big binary messages need BIGMESSAGES.", "G2G3", route(service, new OutboundBinaryMessage("77374847", new byte[141]), 2));
+			Assert.assertEquals("WAP SI messages need WAPSI.", "G3G3", route(service, new OutboundWapSIMessage("77374847", new URL("http://smslib.org"), "SMSLib"), 2));
+
+			OutboundMessage flash=new OutboundMessage("77374847", "test");
+			flash.setFlashSms(true);
+			Assert.assertEquals("Without capable gateways all should be used.", "G1G2G3", route(service, flash, 3));
+
+			List<AGateway> candidates=new ArrayList<AGateway>(service.getRoutingTable().getGateways());
+			Assert.assertSame("Other candidate lists should be filtered too.", gateways.get(2), balancer.balance(new OutboundWapSIMessage("77374847", new URL("http://smslib.org"), "SMSLib"), candidates));
+		} finally {
+			removeGateways(service, gateways);
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.balancing.WeightedLoadBalancer#sendStarted(org.smslib.AGateway, org.smslib.OutboundMessage)}.
+	 */
+	@Test
+	public void testConcurrencyCaps() throws Exception {
+		Service service=Service.getInstance();
+		List<AGateway> gateways=addGateways(service, 0, 0);
+		WeightedLoadBalancer balancer=new WeightedLoadBalancer();
+		try {
+			service.setLoadBalancer(balancer);
+			gateways.get(0).setWeight(3);
+			gateways.get(0).setMaxInFlight(2);
+			OutboundMessage message=new OutboundMessage("77374847", "test");
+			balancer.sendStarted(gateways.get(0), message);
+			Assert.assertFalse("G1 may take one more message.", balancer.isFull(gateways.get(0)));
+			balancer.sendStarted(gateways.get(0), message);
+			Assert.assertTrue("G1 should be full.", balancer.isFull(gateways.get(0)));
+			Assert.assertEquals("A full gateway should be skipped.", "G2G2G2", route(service, message, 3));
+
+			balancer.sendStarted(gateways.get(1), message);
+			Assert.assertEquals("If all are full, the scheduled one should be used.", "G1", route(service, message, 1));
+
+			balancer.sendCompleted(gateways.get(0), message, true, 1000000);
+			Assert.assertFalse("G1 should take messages again.", balancer.isFull(gateways.get(0)));
+		} finally {
+			removeGateways(service, gateways);
+		}
+		balancer.gatewayRemoved(gateways.get(1));
+		Assert.assertFalse("A removed gateway's load should be forgotten.", balancer.isFull(gateways.get(1)));
+	}
+
+	/**
+	 * Test method for {@link org.smslib.balancing.WeightedLoadBalancer#isFull(org.smslib.AGateway)}.
+	 */
+	@Test
+	public void testQueuedWeights() throws Exception {
+		Service service=Service.getInstance();
+		AbstractQueueManager previous=service.getQueueManager();
+		AbstractQueueManager queue=new DefaultQueueManager();
+		service.setQueueManager(queue);
+		List<AGateway> gateways=addGateways(service, 0, 0);
+		try {
+			WeightedLoadBalancer balancer=new WeightedLoadBalancer();
+			service.setLoadBalancer(balancer);
+			gateways.get(0).setWeight(3);
+			gateways.get(0).setMaxInFlight(2);
+			int[] counts=new int[2];
+			for (int i = 0; i < 400; i++) {
+				OutboundMessage message=new OutboundMessage("77374847", "test");
+				AGateway gateway=service.routeMessage(message);
+				message.setGatewayId(gateway.getGatewayId());
+				queue.queueMessage(message);
+				counts[gateways.indexOf(gateway)]++;
+			}
+			Assert.assertTrue("A queued gateway should be full.", balancer.isFull(gateways.get(1)));
+			Assert.assertTrue("Queued messages should keep the weights 3, 1, got " + counts[0] + ", " + counts[1] + ".", Math.abs(counts[0] - 300) <= 2);
+		} finally {
+			queue.removeAllPendingMessages();
+			removeGateways(service, gateways);
+			service.setQueueManager(previous);
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.balancing.WeightedLoadBalancer#getWeight(org.smslib.AGateway)}.
+	 */
+	@Test
+	public void testMeasuredWeights() throws Exception {
+		List<AGateway> gateways=new ArrayList<AGateway>();
+		gateways.add(new GatewayMock("G1"));
+		gateways.add(new GatewayMock("G2"));
+		gateways.add(new GatewayMock("G3"));
+		WeightedLoadBalancer balancer=new WeightedLoadBalancer();
+		balancer.setMeasuredWeights(true);
+		Assert.assertEquals("Without samples weights should be equal.", 1, balancer.getWeight(gateways.get(0)));
+
+		OutboundMessage message=new OutboundMessage("77374847", "test");
+		gateways.get(0).setMaxInFlight(4);
+		for (int i = 0; i < 5; i++) {
+			balancer.sendStarted(gateways.get(0), message);
+			balancer.sendCompleted(gateways.get(0), message, true, 10000000);
+			balancer.sendStarted(gateways.get(1), message);
+			balancer.sendCompleted(gateways.get(1), message, true, 20000000);
+		}
+		Assert.assertEquals("G1 sends 400 messages per second.", 100, balancer.getWeight(gateways.get(0)));
+		Assert.assertEquals("G2 sends 50 messages per second.", 13, balancer.getWeight(gateways.get(1)));
+		Assert.assertEquals("G3 should be assumed average.", 17, balancer.getWeight(gateways.get(2)));
+	}
+}
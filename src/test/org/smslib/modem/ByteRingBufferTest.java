@@ -0,0 +1,71 @@
+/**
+ * 
+ */
+package org.smslib.modem;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ByteRingBufferTest {
+
+	/**
+	 * Test method for {@link org.smslib.modem.ByteRingBuffer#indexOf(int, int, long)}.
+	 */
+	@Test
+	public void testLines() throws Exception {
+		ByteRingBuffer ring = new ByteRingBuffer(16);
+		Assert.assertEquals(16, ring.capacity());
+		Assert.assertEquals(-1, ring.peek(10));
+		byte[] data = "\r\nOK\r\n+CSQ: 1".getBytes("ISO-8859-1");
+		Assert.assertEquals(data.length, ring.put(data, 0, data.length));
+		Assert.assertEquals(5, ring.indexOf(0x0a, 2));
+		ring.skip(2);
+		int length = ring.indexOf(0x0a, 0, 10);
+		StringBuffer line = new StringBuffer();
+		ring.take(line, length);
+		ring.skip(1);
+		Assert.assertEquals("OK\r", line.toString());
+		Assert.assertEquals(-1, ring.indexOf(0x0a, 0, 10));
+		// Wraps around the end of the array; only the free space is taken.
+		data = ",99\r\n0123456789".getBytes("ISO-8859-1");
+		Assert.assertEquals(9, ring.put(data, 0, data.length));
+		Assert.assertEquals(11, ring.indexOf(0x0a, 0, 10));
+		ring.clear();
+		Assert.assertEquals(0, ring.size());
+	}
+
+	/**
+	 * Test method for {@link org.smslib.modem.ByteRingBuffer#put(byte[], int, int)}.
+	 */
+	@Test
+	public void testProducerConsumer() throws Exception {
+		final ByteRingBuffer ring = new ByteRingBuffer(64);
+		final int lines = 20000;
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				byte[] chunk = "+CMTI: \"SM\",1\r\n".getBytes();
+				for (int i = 0; i < lines; i++) {
+					int off = 0;
+					while (off < chunk.length) {
+						off += ring.put(chunk, off, chunk.length - off);
+						if (off < chunk.length) Thread.yield();
+					}
+				}
+			}
+		};
+		producer.start();
+		StringBuffer line = new StringBuffer();
+		for (int i = 0; i < lines; i++) {
+			int length = ring.indexOf(0x0a, 0, 5000);
+			Assert.assertTrue("Timed out at line " + i, length >= 0);
+			line.setLength(0);
+			ring.take(line, length);
+			ring.skip(1);
+			Assert.assertEquals("+CMTI: \"SM\",1\r", line.toString());
+		}
+		producer.join();
+		Assert.assertEquals(0, ring.size());
+	}
+}
@@ -0,0 +1,462 @@
+/**
+ * 
+ */
+package org.smslib.modem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.smslib.OutboundMessage;
+import org.smslib.Service;
+import org.smslib.Settings;
+import org.smslib.TimeoutException;
+import org.smslib.AGateway.GatewayStatuses;
+import org.smslib.OutboundMessage.MessageStatuses;
+import org.smslib.modem.ModemGateway.IPProtocols;
+import org.smslib.threading.AServiceScheduler;
+import org.smslib.threading.DefaultServiceScheduler;
+
+public class NIOModemDriverTest {
+
+	/**
+	 * A stand-in modem bank: every connection first sends telnet option
+	 * requests, then answers each command line with OK. AT+URC is also
+	 * answered with an inbound message indication, and AT+CMGS prompts for
+	 * the message. Every command line is recorded.
+	 */
+	static class ModemBank implements Runnable {
+
+		final ServerSocket server;
+
+		final List<Socket> sockets = new ArrayList<Socket>();
+
+		final List<String> commands = new ArrayList<String>();
+
+		/** The number of AT+CMGS commands still answered with a prompt */
+		volatile int prompts = Integer.MAX_VALUE;
+
+		ModemBank() throws IOException {
+			this.server = new ServerSocket(0);
+			Thread thread = new Thread(this, "Modem bank");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		public void run() {
+			try {
+				while (true) {
+					final Socket socket = server.accept();
+					synchronized (sockets) {
+						sockets.add(socket);
+					}
+					Thread thread = new Thread() {
+						@Override
+						public void run() {
+							serve(socket);
+						}
+					};
+					thread.setDaemon(true);
+					thread.start();
+				}
+			} catch (IOException e) {
+				// Closed.
+			}
+		}
+
+		void serve(Socket socket) {
+			try {
+				InputStream in = socket.getInputStream();
+				OutputStream out = socket.getOutputStream();
+				// IAC DO TERMINAL-TYPE, IAC WILL ECHO, IAC DO LINEMODE
+				out.write(new byte[] { (byte) 255, (byte) 253, 24, (byte) 255, (byte) 251, 1, (byte) 255, (byte) 253, 34 });
+				out.flush();
+				int c, refNo = 7;
+				StringBuffer line = new StringBuffer();
+				while ((c = in.read()) != -1) {
+					if (c == 255) {
+						// Skip the option; answers to our requests are not checked here.
+						c = in.read();
+						if (c == 250) {
+							while (in.read() != 240) {
+							}
+						} else {
+							in.read();
+						}
+					} else if (c == 26) {
+						out.write(("\r\n+CMGS: " + (refNo++) + "\r\n\r\nOK\r\n").getBytes());
+						out.flush();
+						line.setLength(0);
+					} else if (c == '\r' && line.toString().startsWith("AT+CMGS=")) {
+						record(line.toString());
+						if (prompts-- > 0) {
+							out.write("\r\n> ".getBytes());
+							out.flush();
+						}
+						line.setLength(0);
+					} else if (c == '\r') {
+						record(line.toString());
+						if (line.toString().equals("AT+URC")) {
+							out.write("\r\n+CMTI: \"SM\",1\r\n".getBytes());
+						}
+						out.write("\r\nOK\r\n".getBytes());
+						out.flush();
+						line.setLength(0);
+					} else if (c == 27) {
+						record("<ESC>");
+						line.setLength(0);
+					} else if (c != 0) {
+						line.append((char) c);
+					}
+				}
+			} catch (IOException e) {
+				// Closed.
+			}
+		}
+
+		void record(String command) {
+			synchronized (commands) {
+				commands.add(command);
+			}
+		}
+
+		void close() throws IOException {
+			server.close();
+			synchronized (sockets) {
+				for (Socket s : sockets) {
+					s.close();
+				}
+			}
+		}
+	}
+
+	private static int reactorThreads() {
+		int count = 0;
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.getName().equals("SMSlib-ModemReactor")) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Test method for {@link org.smslib.modem.NIOModemDriver#received(byte[], int, int)}.
+	 */
+	@Test
+	public void testManyModemsOneThread() throws Exception {
+		ModemBank bank = new ModemBank();
+		List<NIOModemDriver> drivers = new ArrayList<NIOModemDriver>();
+		try {
+			for (int i = 0; i < 50; i++) {
+				NIOModemGateway gateway = new NIOModemGateway("modem" + i, "127.0.0.1", bank.server.getLocalPort(), "", "");
+				if (i % 2 == 0) gateway.setIpProtocol(IPProtocols.TEXT);
+				NIOModemDriver driver = (NIOModemDriver) gateway.getDriver();
+				driver.connectPort();
+				drivers.add(driver);
+			}
+			Assert.assertEquals(1, reactorThreads());
+			for (int round = 0; round < 3; round++) {
+				for (NIOModemDriver driver : drivers) {
+					driver.write("AT\r");
+				}
+				for (NIOModemDriver driver : drivers) {
+					Assert.assertEquals("OK\r", driver.getResponse());
+					Assert.assertEquals(0, driver.getLastError());
+				}
+			}
+		} finally {
+			for (NIOModemDriver driver : drivers) {
+				driver.disconnectPort();
+			}
+			bank.close();
+		}
+		long deadline = System.currentTimeMillis() + 5000;
+		while (reactorThreads() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		Assert.assertEquals("Reactor should stop once idle.", 0, reactorThreads());
+	}
+
+	/**
+	 * Test method for {@link org.smslib.modem.AModemDriver#readUnsolicited()}.
+	 */
+	@Test
+	public void testUnsolicitedWhileIdle() throws Exception {
+		ModemBank bank = new ModemBank();
+		NIOModemGateway gateway = new NIOModemGateway("modem", "127.0.0.1", bank.server.getLocalPort(), "", "");
+		NIOModemDriver driver = (NIOModemDriver) gateway.getDriver();
+		driver.connectPort();
+		driver.setConnected(true);
+		try {
+			synchronized (driver.getSYNCCommander()) {
+				driver.write("AT+URC\r");
+				// The indication is taken out of the response...
+				Assert.assertEquals("OK\r", driver.getResponse());
+			}
+			driver.write("AT+URC\r");
+			long deadline = System.currentTimeMillis() + 2000;
+			while (driver.getRingBuffer().indexOf('O', 0) == -1 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			Thread.sleep(50);
+			// ...and picked up without a command once the modem is idle,
+			// leaving the OK for whoever waits for it.
+			Assert.assertEquals("Indication not dispatched.", -1, driver.getRingBuffer().indexOf('+', 0));
+			Assert.assertEquals("OK\r", driver.getResponse());
+		} finally {
+			driver.setConnected(false);
+			driver.disconnectPort();
+			bank.close();
+		}
+	}
+
+	/**
+	 * Counts the tasks scheduled through it.
+	 */
+	static class CountingScheduler extends AServiceScheduler {
+
+		final AServiceScheduler scheduler = new DefaultServiceScheduler(false);
+
+		final AtomicInteger scheduled = new AtomicInteger();
+
+		@Override
+		public Future<?> schedule(Runnable task, long delay) {
+			scheduled.incrementAndGet();
+			return scheduler.schedule(task, delay);
+		}
+
+		@Override
+		public void shutdown() {
+			scheduler.shutdown();
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.modem.AModemDriver#dataReceived(byte[], int, int)}.
+	 */
+	@Test
+	public void testOneUnsolicitedReaderWhileBusy() throws Exception {
+		ModemBank bank = new ModemBank();
+		NIOModemGateway gateway = new NIOModemGateway("modem", "127.0.0.1", bank.server.getLocalPort(), "", "");
+		NIOModemDriver driver = (NIOModemDriver) gateway.getDriver();
+		CountingScheduler scheduler = new CountingScheduler();
+		AServiceScheduler.setInstance(scheduler);
+		driver.connectPort();
+		driver.setConnected(true);
+		try {
+			byte[] indication = "\r\n+CMTI: \"SM\",1\r\n".getBytes();
+			synchronized (driver.getSYNCCommander()) {
+				for (int i = 0; i < 100; i++) {
+					driver.dataReceived(indication, 0, indication.length);
+					Thread.sleep(1);
+				}
+				// The reader waiting for the command to finish covers every line.
+				Assert.assertEquals(1, scheduler.scheduled.get());
+			}
+			long deadline = System.currentTimeMillis() + 5000;
+			while (driver.getRingBuffer().indexOf('+', 0) != -1 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			Assert.assertEquals("Indications not dispatched.", -1, driver.getRingBuffer().indexOf('+', 0));
+		} finally {
+			driver.setConnected(false);
+			driver.disconnectPort();
+			bank.close();
+			AServiceScheduler.setInstance(null);
+			scheduler.shutdown();
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.modem.AModemDriver#waitForPrompt()}.
+	 */
+	@Test
+	public void testPromptDrivenSend() throws Exception {
+		ModemBank bank = new ModemBank();
+		NIOModemGateway gateway = new NIOModemGateway("modem", "127.0.0.1", bank.server.getLocalPort(), "", "");
+		NIOModemDriver driver = (NIOModemDriver) gateway.getDriver();
+		driver.connectPort();
+		driver.setConnected(true);
+		Settings settings = Service.getInstance().getSettings();
+		settings.AT_WAIT_PROMPT = true;
+		try {
+			long start = System.currentTimeMillis();
+			synchronized (driver.getSYNCCommander()) {
+				Assert.assertEquals(7, gateway.getATHandler().sendMessage(23, "0011000B916407281553F80000AA0AE8329BFD4697D9EC37", null, null));
+			}
+			long elapsed = System.currentTimeMillis() - start;
+			Assert.assertTrue("No fixed waits expected, took " + elapsed + "ms.", elapsed < settings.SERIAL_CLEAR_WAIT);
+		} finally {
+			settings.AT_WAIT_PROMPT = false;
+			driver.setConnected(false);
+			driver.disconnectPort();
+			bank.close();
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.modem.ModemGateway#sendMessage(org.smslib.OutboundMessage)}.
+	 */
+	@Test
+	public void testMultipartOnHeldLink() throws Exception {
+		ModemBank bank = new ModemBank();
+		NIOModemGateway gateway = new NIOModemGateway("modem", "127.0.0.1", bank.server.getLocalPort(), "", "");
+		NIOModemDriver driver = (NIOModemDriver) gateway.getDriver();
+		driver.connectPort();
+		driver.setConnected(true);
+		gateway.setStatus(GatewayStatuses.STARTED);
+		Settings settings = Service.getInstance().getSettings();
+		boolean waitPrompt = settings.AT_WAIT_PROMPT;
+		settings.AT_WAIT_PROMPT = true;
+		try {
+			StringBuffer text = new StringBuffer();
+			while (text.length() < 400) {
+				text.append("Multipart message. ");
+			}
+			OutboundMessage msg = new OutboundMessage("+306974000000", text.toString());
+			long start = System.currentTimeMillis();
+			Assert.assertTrue(gateway.sendMessage(msg));
+			long elapsed = System.currentTimeMillis() - start;
+			Assert.assertEquals(MessageStatuses.SENT, msg.getMessageStatus());
+			Assert.assertEquals("[7, 8, 9]", msg.getPartRefNos().toString());
+			Assert.assertEquals("9", msg.getRefNo());
+			List<String> commands;
+			synchronized (bank.commands) {
+				commands = new ArrayList<String>(bank.commands);
+			}
+			// The parts follow the keep-alive without link commands of their own.
+			int first = commands.indexOf("AT+CMMS=2");
+			Assert.assertTrue(commands.toString(), first >= 0);
+			Assert.assertEquals(first, commands.lastIndexOf("AT+CMMS=2"));
+			Assert.assertFalse(commands.toString(), commands.contains("AT+CMMS=1"));
+			Assert.assertEquals(3, commands.size() - 1 - first);
+			Assert.assertTrue("No fixed waits expected, took " + elapsed + "ms.", elapsed < settings.AT_WAIT_CGMS);
+		} finally {
+			settings.AT_WAIT_PROMPT = waitPrompt;
+			gateway.setStatus(GatewayStatuses.STOPPED);
+			driver.setConnected(false);
+			driver.disconnectPort();
+			bank.close();
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.modem.NIOModemDriver#write(byte[])}.
+	 */
+	@Test
+	public void testWriteToStalledModem() throws Exception {
+		ModemBank bank = new ModemBank();
+		ServerSocket stalled = new ServerSocket();
+		stalled.setReceiveBufferSize(4096);
+		stalled.bind(new InetSocketAddress("127.0.0.1", 0));
+		NIOModemGateway slowGateway = new NIOModemGateway("slow", "127.0.0.1", stalled.getLocalPort(), "", "");
+		slowGateway.setIpProtocol(IPProtocols.RAW);
+		final NIOModemDriver slow = (NIOModemDriver) slowGateway.getDriver();
+		NIOModemGateway gateway = new NIOModemGateway("modem", "127.0.0.1", bank.server.getLocalPort(), "", "");
+		NIOModemDriver driver = (NIOModemDriver) gateway.getDriver();
+		final byte[] data = new byte[8 * 1024 * 1024];
+		final List<Exception> failures = new ArrayList<Exception>();
+		Socket peer = null;
+		try {
+			slow.connectPort();
+			peer = stalled.accept();
+			driver.connectPort();
+			Thread writer = new Thread() {
+				@Override
+				public void run() {
+					try {
+						slow.write(data);
+					} catch (Exception e) {
+						failures.add(e);
+					}
+				}
+			};
+			writer.start();
+			// The peer reads nothing, so the rest of the data waits for the
+			// reactor while it keeps serving the other modem.
+			driver.write("AT\r");
+			Assert.assertEquals("OK\r", driver.getResponse());
+			Assert.assertTrue(writer.isAlive());
+			InputStream in = peer.getInputStream();
+			byte[] b = new byte[65536];
+			long total = 0;
+			int n;
+			while (total < data.length && (n = in.read(b)) != -1) {
+				total += n;
+			}
+			writer.join();
+			Assert.assertEquals(data.length, total);
+			Assert.assertTrue(failures.toString(), failures.isEmpty());
+		} finally {
+			slow.disconnectPort();
+			driver.disconnectPort();
+			if (peer != null) peer.close();
+			stalled.close();
+			bank.close();
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.modem.ModemGateway#sendMessage(org.smslib.OutboundMessage)}.
+	 */
+	@Test
+	public void testMultipartFailure() throws Exception {
+		ModemBank bank = new ModemBank();
+		NIOModemGateway gateway = new NIOModemGateway("modem", "127.0.0.1", bank.server.getLocalPort(), "", "");
+		NIOModemDriver driver = (NIOModemDriver) gateway.getDriver();
+		driver.connectPort();
+		driver.setConnected(true);
+		gateway.setStatus(GatewayStatuses.STARTED);
+		Settings settings = Service.getInstance().getSettings();
+		int timeout = settings.SERIAL_TIMEOUT;
+		settings.SERIAL_TIMEOUT = 500;
+		boolean waitPrompt = settings.AT_WAIT_PROMPT;
+		settings.AT_WAIT_PROMPT = true;
+		try {
+			StringBuffer text = new StringBuffer();
+			while (text.length() < 400) {
+				text.append("Multipart message. ");
+			}
+			// The modem stops answering after the first part.
+			bank.prompts = 1;
+			try {
+				gateway.sendMessage(new OutboundMessage("+306974000000", text.toString()));
+				Assert.fail("Timeout expected.");
+			} catch (TimeoutException e) {
+				// Expected.
+			}
+			bank.prompts = Integer.MAX_VALUE;
+			driver.clearBuffer();
+			OutboundMessage msg = new OutboundMessage("+306974000000", text.toString());
+			Assert.assertTrue(gateway.sendMessage(msg));
+			Assert.assertEquals(MessageStatuses.SENT, msg.getMessageStatus());
+			List<String> commands;
+			synchronized (bank.commands) {
+				commands = new ArrayList<String>(bank.commands);
+			}
+			// The link is asked for again rather than assumed after the failure.
+			int again = commands.lastIndexOf("AT+CMMS=2");
+			Assert.assertTrue(commands.toString(), again > commands.indexOf("AT+CMMS=2"));
+			// The part left without a prompt was cancelled with ESC.
+			int escape = commands.indexOf("<ESC>");
+			Assert.assertTrue(commands.toString(), escape >= 0 && escape < again);
+			Assert.assertEquals(3, commands.size() - 1 - again);
+		} finally {
+			settings.SERIAL_TIMEOUT = timeout;
+			settings.AT_WAIT_PROMPT = waitPrompt;
+			gateway.setStatus(GatewayStatuses.STOPPED);
+			driver.setConnected(false);
+			driver.disconnectPort();
+			bank.close();
+		}
+	}
+}
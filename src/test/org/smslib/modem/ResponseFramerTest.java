@@ -0,0 +1,108 @@
+/**
+ * 
+ */
+package org.smslib.modem;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ResponseFramerTest {
+
+	private ByteRingBuffer ring(String data) throws Exception {
+		ByteRingBuffer ring = new ByteRingBuffer(1024);
+		byte[] b = data.getBytes("ISO-8859-1");
+		ring.put(b, 0, b.length);
+		return ring;
+	}
+
+	private int next(ResponseFramer framer, ByteRingBuffer ring) throws Exception {
+		while (ring.get(0) == '\r' || ring.get(0) == '\n') {
+			ring.skip(1);
+		}
+		if (ring.get(0) == '>' && framer.isEmpty()) {
+			return framer.takePrompt(ring);
+		}
+		return framer.takeLine(ring, ring.indexOf('\n', 0, 0));
+	}
+
+	/**
+	 * Test method for {@link org.smslib.modem.ResponseFramer#takeLine(ByteRingBuffer, int)}.
+	 */
+	@Test
+	public void testFinalResultCodes() throws Exception {
+		IPModemGateway gateway = new IPModemGateway("modem", "127.0.0.1", 2000, "", "");
+		ResponseFramer framer = new ResponseFramer(gateway.getATHandler());
+		ByteRingBuffer ring = ring("\r\n+CSQ: 21,99\r\n\r\nOK\r\n\r\n+CMS ERROR: 500\r\n\r\n+CME ERROR: SIM busy\r\n\r\nNO CARRIER\r\n> \r\n+CPIN: READY\r\n");
+		framer.reset();
+		Assert.assertEquals(ResponseFramer.INTERMEDIATE, next(framer, ring));
+		Assert.assertEquals(ResponseFramer.FINAL, next(framer, ring));
+		Assert.assertEquals("+CSQ: 21,99\rOK\r", framer.getResponse());
+		Assert.assertEquals(0, framer.getError());
+		framer.reset();
+		Assert.assertEquals(ResponseFramer.FINAL, next(framer, ring));
+		Assert.assertEquals(6500, framer.getError());
+		framer.reset();
+		Assert.assertEquals(ResponseFramer.FINAL, next(framer, ring));
+		Assert.assertEquals(9000, framer.getError());
+		framer.reset();
+		Assert.assertEquals(ResponseFramer.FINAL, next(framer, ring));
+		Assert.assertEquals(9000, framer.getError());
+		framer.reset();
+		Assert.assertEquals(ResponseFramer.PROMPT, next(framer, ring));
+		Assert.assertEquals("> ", framer.getResponse());
+		framer.reset();
+		// Handler specific terminator, matched through its regular expression.
+		Assert.assertEquals(ResponseFramer.FINAL, next(framer, ring));
+		Assert.assertEquals("+CPIN: READY\r", framer.getResponse());
+		Assert.assertEquals(0, ring.size());
+	}
+
+	/**
+	 * Test method for {@link org.smslib.modem.ResponseFramer#dropLine()}.
+	 */
+	@Test
+	public void testUnsolicited() throws Exception {
+		IPModemGateway gateway = new IPModemGateway("modem", "127.0.0.1", 2000, "", "");
+		ResponseFramer framer = new ResponseFramer(gateway.getATHandler());
+		ByteRingBuffer ring = ring("\r\n+CMGL: 1,1,,24\r\n07910326040011F0\r\n\r\n+CMTI: \"SM\",3\r\n\r\nOK\r\n");
+		framer.reset();
+		Assert.assertEquals(ResponseFramer.INTERMEDIATE, next(framer, ring));
+		Assert.assertEquals(ResponseFramer.INTERMEDIATE, next(framer, ring));
+		Assert.assertEquals(ResponseFramer.UNSOLICITED, next(framer, ring));
+		Assert.assertEquals("+CMTI: \"SM\",3\r", framer.dropLine());
+		Assert.assertEquals(ResponseFramer.FINAL, next(framer, ring));
+		Assert.assertEquals("+CMGL: 1,1,,24\r07910326040011F0\rOK\r", framer.getResponse());
+	}
+
+	/**
+	 * Test method for {@link org.smslib.modem.ResponseFramer#takeLine(ByteRingBuffer, int)}.
+	 */
+	@Test
+	public void testMessageBodies() throws Exception {
+		IPModemGateway gateway = new IPModemGateway("modem", "127.0.0.1", 2000, "", "");
+		ResponseFramer framer = new ResponseFramer(gateway.getATHandler());
+		ByteRingBuffer ring = ring("\r\n+CMGL: 1,\"REC READ\",\"+3069\",,\"12/01/01,10:00:00+08\"\r\nRING\r\n+CMGL: 2,\"REC READ\",\"+3069\",,\"12/01/01,10:00:00+08\"\r\n+CLIP: \"+3069\",145\r\n\r\nRING\r\n\r\nOK\r\n");
+		framer.reset();
+		for (int i = 0; i < 4; i++) {
+			Assert.assertEquals("Message bodies are not unsolicited.", ResponseFramer.INTERMEDIATE, next(framer, ring));
+		}
+		Assert.assertEquals(ResponseFramer.UNSOLICITED, next(framer, ring));
+		Assert.assertEquals("RING\r", framer.dropLine());
+		Assert.assertEquals(ResponseFramer.FINAL, next(framer, ring));
+		Assert.assertTrue(framer.getResponse(), framer.getResponse().endsWith("\r+CLIP: \"+3069\",145\rOK\r"));
+	}
+
+	/**
+	 * Test method for {@link org.smslib.modem.ResponseFramer#literalPrefix(String)}.
+	 */
+	@Test
+	public void testLiteralPrefix() {
+		Assert.assertEquals("+CMTI:", ResponseFramer.literalPrefix("\\+CMTI:\\s*\\p{Punct}[\\p{ASCII}]+\\p{Punct}\\p{Punct}\\s*\\d+\\s"));
+		Assert.assertEquals("RING", ResponseFramer.literalPrefix("RING\\s"));
+		Assert.assertEquals("+CM", ResponseFramer.literalPrefix("\\+CM[ES]\\s+ERROR:\\s*\\d+\\s"));
+		Assert.assertEquals("", ResponseFramer.literalPrefix("(ERROR|NO CARRIER|NO DIALTONE)\\s"));
+		Assert.assertEquals("", ResponseFramer.literalPrefix("OK\\s|ERROR\\s"));
+		Assert.assertEquals("AB", ResponseFramer.literalPrefix("ABC?D"));
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * 
+ */
+package org.smslib.modem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.smslib.AGateway.GatewayStatuses;
+import org.smslib.InboundMessage;
+import org.smslib.InboundMessage.MessageClasses;
+import org.smslib.Message.MessageTypes;
+import org.smslib.OutboundMessage;
+import org.smslib.OutboundMessage.MessageStatuses;
+import org.smslib.Service;
+import org.smslib.Settings;
+import org.smslib.StatusReportMessage;
+
+public class VirtualModemTest {
+
+	private static void connect(ModemGateway gateway) throws Exception {
+		gateway.getDriver().connect();
+		gateway.setStatus(GatewayStatuses.STARTED);
+	}
+
+	private static void disconnect(ModemGateway gateway) throws Exception {
+		gateway.setStatus(GatewayStatuses.STOPPED);
+		gateway.getDriver().disconnect();
+	}
+
+	/**
+	 * Test method for {@link org.smslib.modem.VirtualModemGateway#VirtualModemGateway(String, VirtualModem)}.
+	 */
+	@Test
+	public void testGateway() throws Exception {
+		VirtualModem modem = new VirtualModem();
+		modem.setStatusReportDelay(0);
+		modem.setUssdResponse("Balance 10.00");
+		VirtualModemGateway gateway = new VirtualModemGateway("virtual", modem);
+		connect(gateway);
+		try {
+			OutboundMessage msg = new OutboundMessage("+306974000000", "Hello from the virtual modem.");
+			msg.setStatusReport(true);
+			Assert.assertTrue(gateway.sendMessage(msg));
+			Assert.assertEquals(MessageStatuses.SENT, msg.getMessageStatus());
+			Assert.assertEquals(1, modem.getSubmittedCount());
+			long deadline = System.currentTimeMillis() + 2000;
+			while (modem.getStoredCount() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+
+			Assert.assertEquals(2, modem.deliver("+306974111111", "Hello back, \u20ac5."));
+			List<InboundMessage> messages = new ArrayList<InboundMessage>();
+			gateway.readMessages(messages, MessageClasses.ALL);
+			Assert.assertEquals(2, messages.size());
+			StatusReportMessage report = (StatusReportMessage) messages.get(0);
+			Assert.assertEquals(msg.getRefNo(), report.getRefNo());
+			Assert.assertEquals("306974000000", report.getRecipient());
+			InboundMessage inbound = messages.get(1);
+			Assert.assertEquals(MessageTypes.INBOUND, inbound.getType());
+			Assert.assertEquals("306974111111", inbound.getOriginator());
+			Assert.assertEquals("Hello back, \u20ac5.", inbound.getText());
+			for (InboundMessage m : messages) {
+				Assert.assertTrue(gateway.deleteMessage(m));
+			}
+			Assert.assertEquals(0, modem.getStoredCount());
+
+			Assert.assertEquals("Balance 10.00", gateway.sendUSSDCommand("*100#"));
+		} finally {
+			disconnect(gateway);
+			modem.close();
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.modem.ModemGateway#sendMessage(OutboundMessage)}.
+	 */
+	@Test
+	public void testMultipartOnPrompt() throws Exception {
+		VirtualModem modem = new VirtualModem();
+		VirtualModemGateway gateway = new VirtualModemGateway("virtual", modem);
+		Settings settings = Service.getInstance().getSettings();
+		boolean waitPrompt = settings.AT_WAIT_PROMPT;
+		int waitCgms = settings.AT_WAIT_CGMS;
+		settings.AT_WAIT_PROMPT = false;
+		settings.AT_WAIT_CGMS = 1500;
+		connect(gateway);
+		try {
+			StringBuilder text = new StringBuilder();
+			while (text.length() < 400) text.append("Multipart message sent back to back. ");
+			OutboundMessage msg = new OutboundMessage("+306974000000", text.toString());
+			long start = System.currentTimeMillis();
+			Assert.assertTrue(gateway.sendMessage(msg));
+			long elapsed = System.currentTimeMillis() - start;
+			Assert.assertEquals(MessageStatuses.SENT, msg.getMessageStatus());
+			Assert.assertEquals(3, modem.getSubmittedCount());
+			Assert.assertEquals(3, msg.getPartRefNos().size());
+			Assert.assertEquals(msg.getPartRefNos().get(2), msg.getRefNo());
+			Assert.assertTrue("Only the first part should wait AT_WAIT_CGMS (" + elapsed + " ms).", elapsed < 3000);
+		} finally {
+			settings.AT_WAIT_PROMPT = waitPrompt;
+			settings.AT_WAIT_CGMS = waitCgms;
+			disconnect(gateway);
+			modem.close();
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.modem.VirtualModem#listen()}.
+	 */
+	@Test
+	public void testErrorsOverTcp() throws Exception {
+		VirtualModem modem = new VirtualModem();
+		NIOModemGateway gateway = new NIOModemGateway("virtual", "127.0.0.1", modem.listen(), "", "");
+		Settings settings = Service.getInstance().getSettings();
+		int retryWait = settings.OUTBOUND_RETRY_WAIT;
+		settings.OUTBOUND_RETRY_WAIT = 10;
+		connect(gateway);
+		try {
+			modem.setSubmitErrorRate(1);
+			OutboundMessage msg = new OutboundMessage("+306974000000", "Lost.");
+			Assert.assertFalse(gateway.sendMessage(msg));
+			Assert.assertEquals(MessageStatuses.FAILED, msg.getMessageStatus());
+			Assert.assertEquals(0, modem.getSubmittedCount());
+
+			modem.setSubmitErrorRate(0);
+			msg = new OutboundMessage("+306974000000", "Sent.");
+			Assert.assertTrue(gateway.sendMessage(msg));
+			Assert.assertEquals(1, modem.getSubmittedCount());
+
+			modem.deliver("+306974111111", "Kept once.");
+			InboundMessage inbound = gateway.readMessage("SM", 1);
+			modem.injectError("AT+CMGD", "+CMS ERROR: 321");
+			Assert.assertFalse(gateway.deleteMessage(inbound));
+			Assert.assertTrue(gateway.deleteMessage(inbound));
+			Assert.assertEquals(0, modem.getStoredCount());
+		} finally {
+			settings.OUTBOUND_RETRY_WAIT = retryWait;
+			disconnect(gateway);
+			modem.close();
+		}
+	}
+}
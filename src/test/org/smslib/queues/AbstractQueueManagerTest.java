@@ -0,0 +1,92 @@
+/**
+ * 
+ */
+package org.smslib.queues;
+
+import java.io.File;
+import java.util.Collection;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.smslib.OutboundMessage;
+
+public class AbstractQueueManagerTest {
+
+	private File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("queue", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		delete(directory);
+	}
+
+	/**
+	 * Test method for {@link org.smslib.queues.AbstractQueueManager#awaitPendingMessage(java.lang.String, long, long)}.
+	 */
+	@Test
+	public void testAwaitPendingMessage() throws Exception {
+		final DefaultQueueManager manager = new DefaultQueueManager(200, directory.getPath());
+		long version = manager.getPendingVersion("G1");
+		Assert.assertNull(manager.pollPendingMessage("G1"));
+		Assert.assertFalse(manager.awaitPendingMessage("G1", version, 50));
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					return;
+				}
+				manager.queueMessage(message("G1", 0));
+			}
+		};
+		producer.start();
+		long start = System.currentTimeMillis();
+		Assert.assertTrue(manager.awaitPendingMessage("G1", version, 10000));
+		Assert.assertTrue("Waiter should wake up on enqueue.", System.currentTimeMillis() - start < 5000);
+		Assert.assertNotNull(manager.pollPendingMessage("G1"));
+		Assert.assertTrue("No wait expected once the version has moved.", manager.awaitPendingMessage("G1", version, 10000));
+		producer.join();
+		manager.stop();
+	}
+
+	/**
+	 * Test method for {@link org.smslib.queues.DefaultQueueManager#getPendingMessages(java.lang.String)}.
+	 */
+	@Test
+	public void testPendingMessagesView() throws Exception {
+		DefaultQueueManager manager = new DefaultQueueManager(200, directory.getPath());
+		Collection<OutboundMessage> view = manager.getPendingMessages("G1");
+		Assert.assertTrue(view.isEmpty());
+		OutboundMessage message = message("G1", 0);
+		manager.queueMessage(message);
+		Assert.assertEquals("A view of an unknown gateway should follow later messages.", 1, view.size());
+		Assert.assertEquals(message.getUuid(), view.iterator().next().getUuid());
+		Assert.assertTrue(manager.getPendingMessages("G2").isEmpty());
+		manager.pollPendingMessage("G1");
+		Assert.assertTrue(view.isEmpty());
+		manager.stop();
+	}
+
+	private static OutboundMessage message(String gatewayId, int priority) {
+		OutboundMessage message = new OutboundMessage("306974000000", "queue test");
+		message.setGatewayId(gatewayId);
+		message.setPriority(priority);
+		return message;
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) for (File f : files) delete(f);
+		file.delete();
+	}
+}
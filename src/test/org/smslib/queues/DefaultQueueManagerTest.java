@@ -0,0 +1,66 @@
+/**
+ *
+ */
+package org.smslib.queues;
+
+import java.io.File;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.smslib.OutboundMessage;
+
+public class DefaultQueueManagerTest {
+
+	private File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("queue", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		delete(directory);
+	}
+
+	/**
+	 * Test method for {@link org.smslib.queues.DefaultQueueManager#DefaultQueueManager(int, java.lang.String)}.
+	 */
+	@Test
+	public void testQueueDirectory() {
+		DefaultQueueManager manager = new DefaultQueueManager(200, directory.getPath());
+		OutboundMessage pending = message("G1");
+		OutboundMessage delayed = message("G1");
+		delayed.setDeliveryDelay(60000);
+		manager.queueMessage(pending);
+		manager.queueMessage(delayed);
+		manager.stop();
+
+		File queue = new File(directory, "queue");
+		Assert.assertTrue("Pending message should be written under the queue directory.", new File(new File(new File(queue, "pending"), "G1"), pending.getUuid() + DefaultQueueManager.MESSAGE_FILE_EXT).isFile());
+		Assert.assertTrue("Delayed message should be written under the queue directory.", new File(new File(queue, "delayed"), delayed.getUuid() + DefaultQueueManager.MESSAGE_FILE_EXT).isFile());
+
+		manager = new DefaultQueueManager(directory.getPath());
+		Assert.assertEquals("Queued messages should be loaded from the queue directory.", 1, manager.pendingQueueSize("G1"));
+		Assert.assertEquals(pending.getUuid(), manager.pollPendingMessage("G1").getUuid());
+		Assert.assertEquals(1, manager.getDelayedMessages().size());
+		manager.stop();
+	}
+
+	private static OutboundMessage message(String gatewayId) {
+		OutboundMessage message = new OutboundMessage("306974000000", "queue test");
+		message.setGatewayId(gatewayId);
+		return message;
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) for (File f : files) delete(f);
+		file.delete();
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * 
+ */
+package org.smslib.queues;
+
+import java.io.File;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.smslib.OutboundMessage;
+
+public class JournalQueueManagerTest {
+
+	private File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("journal", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		delete(directory);
+	}
+
+	/**
+	 * Test method for {@link org.smslib.queues.JournalQueueManager#queueMessage(org.smslib.OutboundMessage)}.
+	 */
+	@Test
+	public void testReplay() {
+		JournalQueueManager manager = new JournalQueueManager(200, directory.getPath());
+		OutboundMessage sent = message("G1", 0);
+		OutboundMessage removed = message("G1", 0);
+		OutboundMessage urgent = message("G1", 1);
+		OutboundMessage other = message("G2", 0);
+		manager.queueMessage(sent);
+		manager.queueMessage(removed);
+		manager.queueMessage(urgent);
+		manager.queueMessage(other);
+		Assert.assertEquals("Every record should be live.", 0, manager.getGarbageBytes());
+		Assert.assertEquals("Highest priority message expected first.", urgent.getUuid(), manager.pollPendingMessage("G1").getUuid());
+		Assert.assertTrue(manager.removePendingMessage(removed.getUuid()));
+		manager.close();
+
+		manager = new JournalQueueManager(200, directory.getPath());
+		Assert.assertEquals(1, manager.pendingQueueSize("G1"));
+		Assert.assertEquals(1, manager.pendingQueueSize("G2"));
+		Assert.assertEquals(sent.getUuid(), manager.pollPendingMessage("G1").getUuid());
+		Assert.assertEquals(other.getUuid(), manager.pollPendingMessage("G2").getUuid());
+		manager.close();
+	}
+
+	/**
+	 * Test method for {@link org.smslib.queues.JournalQueueManager#compact()}.
+	 */
+	@Test
+	public void testCompaction() throws Exception {
+		JournalQueueManager manager = new JournalQueueManager(200, directory.getPath(), 4096);
+		OutboundMessage kept = message("G1", 0);
+		manager.queueMessage(kept);
+		for (int i = 0; i < 50; i++) {
+			manager.queueMessage(message("G1", 1));
+			manager.pollPendingMessage("G1");
+		}
+		manager.queueMessage(message("G2", 0));
+		manager.removeAllPendingMessages("G2");
+		Assert.assertTrue("Journal should be mostly garbage.", manager.needsCompaction());
+		manager.compact();
+		Assert.assertFalse(manager.needsCompaction());
+		Assert.assertEquals("Only live records should be left.", 0, manager.getGarbageBytes());
+		manager.close();
+
+		File[] files = new File(directory, "journal").listFiles();
+		Assert.assertTrue("Old segments should have been deleted.", files.length <= 2);
+		manager = new JournalQueueManager(200, directory.getPath(), 4096);
+		Assert.assertEquals(1, manager.pendingQueueSize("G1"));
+		Assert.assertEquals(0, manager.pendingQueueSize("G2"));
+		Assert.assertEquals(kept.getUuid(), manager.pollPendingMessage("G1").getUuid());
+		manager.close();
+	}
+
+	private static OutboundMessage message(String gatewayId, int priority) {
+		OutboundMessage message = new OutboundMessage("306974000000", "journal test");
+		message.setGatewayId(gatewayId);
+		message.setPriority(priority);
+		return message;
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) for (File f : files) delete(f);
+		file.delete();
+	}
+}
@@ -0,0 +1,204 @@
+/**
+ * 
+ */
+package org.smslib.queues;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.smslib.OutboundMessage;
+
+public class MappedQueueManagerTest {
+
+	private File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("rings", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		delete(directory);
+	}
+
+	/**
+	 * Queues enough messages to wrap around and grow a small ring, then checks
+	 * that a fresh manager recovers exactly the messages left in it.
+	 */
+	@Test
+	public void testRecovery() {
+		MappedQueueManager manager = new MappedQueueManager(200, directory.getPath(), 4096);
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 200; i++) {
+			OutboundMessage message = message("G1", 0);
+			manager.queueMessage(message);
+			expected.add(message.getUuid());
+			if (i % 3 == 0) {
+				Assert.assertTrue(expected.remove(manager.pollPendingMessage("G1").getUuid()));
+			}
+		}
+		OutboundMessage delayed = message("G1", 0);
+		delayed.setDeliveryDelay(60000);
+		manager.queueMessage(delayed);
+		Assert.assertTrue(manager.removePendingMessage(expected.remove(0)));
+		manager.close();
+
+		manager = new MappedQueueManager(200, directory.getPath(), 4096);
+		Assert.assertEquals(expected.size(), manager.pendingQueueSize("G1"));
+		Assert.assertEquals(1, manager.delayedQueueSize("G1"));
+		Assert.assertEquals(delayed.getUuid(), manager.getDelayedMessages().iterator().next().getUuid());
+		List<String> recovered = new ArrayList<String>();
+		OutboundMessage message;
+		while ((message = manager.pollPendingMessage("G1")) != null) {
+			recovered.add(message.getUuid());
+		}
+		Assert.assertEquals(expected.size(), recovered.size());
+		Assert.assertTrue(recovered.containsAll(expected));
+		manager.close();
+	}
+
+	/**
+	 * Test method for {@link org.smslib.queues.MappedQueueManager#pollPendingMessage(java.lang.String)}.
+	 */
+	@Test
+	public void testPriority() {
+		MappedQueueManager manager = new MappedQueueManager(200, directory.getPath());
+		OutboundMessage low = message("G1", -1);
+		OutboundMessage high = message("G1", 1);
+		manager.queueMessage(low);
+		manager.queueMessage(high);
+		manager.close();
+
+		manager = new MappedQueueManager(200, directory.getPath());
+		Assert.assertEquals(high.getUuid(), manager.pollPendingMessage("G1").getUuid());
+		Assert.assertEquals(low.getUuid(), manager.pollPendingMessage("G1").getUuid());
+		Assert.assertNull(manager.pollPendingMessage("G1"));
+		manager.close();
+	}
+
+	/**
+	 * Test method for {@link org.smslib.queues.MappedQueueManager#removeCampaign(java.lang.String)}.
+	 */
+	@Test
+	public void testRemoveCampaign() {
+		MappedQueueManager manager = new MappedQueueManager(200, directory.getPath());
+		OutboundMessage other = message("G1", 0);
+		manager.queueMessage(other);
+		for (int i = 0; i < 10; i++) {
+			OutboundMessage message = message((i % 2 == 0 ? "G1" : "G2"), 0);
+			message.setCampaign("spring");
+			if (i == 9) message.setDeliveryDelay(60000);
+			manager.queueMessage(message);
+		}
+		manager.close();
+
+		manager = new MappedQueueManager(200, directory.getPath());
+		Assert.assertEquals(6, manager.pendingQueueSize("G1"));
+		Assert.assertEquals(10, manager.removeCampaign("spring"));
+		Assert.assertEquals(0, manager.removeCampaign("spring"));
+		Assert.assertEquals(1, manager.pendingQueueSize("G1"));
+		Assert.assertEquals(0, manager.pendingQueueSize("G2"));
+		Assert.assertEquals(0, manager.delayedQueueSize("G1"));
+		Assert.assertEquals(other.getUuid(), manager.getPendingMessages("G1").iterator().next().getUuid());
+		Assert.assertNotNull(manager.getMessage(other.getUuid()));
+		Assert.assertEquals(1, manager.removeMessages(Collections.singletonList(other.getUuid())));
+		Assert.assertNull(manager.getMessage(other.getUuid()));
+		manager.close();
+	}
+
+	/**
+	 * Leaves the files a crash in the middle of growing a ring would leave,
+	 * then checks that a fresh manager completes or rolls back the swap.
+	 */
+	@Test
+	public void testInterruptedGrow() throws Exception {
+		MappedQueueManager manager = new MappedQueueManager(200, directory.getPath());
+		OutboundMessage queued = message("G1", 0);
+		manager.queueMessage(queued);
+		manager.close();
+		File ring = new File(new File(directory, "rings"), "G1" + MappedRing.FILE_EXT);
+		File temp = new File(ring.getPath() + MappedRing.TEMP_EXT);
+
+		//crash after the old file was deleted, before the copy was renamed
+		Assert.assertTrue(ring.renameTo(temp));
+		manager = new MappedQueueManager(200, directory.getPath());
+		Assert.assertEquals(queued.getUuid(), manager.getPendingMessages("G1").iterator().next().getUuid());
+		manager.close();
+		Assert.assertTrue(ring.exists());
+		Assert.assertFalse(temp.exists());
+
+		//crash while the copy was being written
+		FileOutputStream out = new FileOutputStream(temp);
+		out.write(new byte[100]);
+		out.close();
+		manager = new MappedQueueManager(200, directory.getPath());
+		Assert.assertEquals(1, manager.pendingQueueSize("G1"));
+		manager.close();
+		Assert.assertFalse(temp.exists());
+	}
+
+	/**
+	 * Growing a ring on a platform which cannot rename the copy over the
+	 * ring file, nor into its place once the ring file is deleted.
+	 */
+	@Test
+	public void testGrowWithoutRename() throws Exception {
+		MappedQueueManager manager = new MappedQueueManager(200, directory.getPath(), 4096);
+		File ring = new File(new File(directory, "rings"), "G1" + MappedRing.FILE_EXT);
+		File temp = new File(ring.getPath() + MappedRing.TEMP_EXT);
+		MappedRing.Renamer renamer = MappedRing.renamer;
+		MappedRing.renamer = new MappedRing.Renamer() {
+			@Override
+			boolean rename(File from, File to) {
+				return false;
+			}
+		};
+		int queued = 0;
+		try {
+			while (!temp.exists()) {
+				Assert.assertTrue(manager.queueMessage(message("G1", 0)));
+				queued++;
+			}
+			Assert.assertFalse("The ring file should have been deleted.", ring.exists());
+			//the copy cannot grow in place of its temporary file
+			while (manager.queueMessage(message("G1", 0))) {
+				queued++;
+				Assert.assertTrue("The ring should have been full by now.", queued < 1000);
+			}
+			Assert.assertEquals(queued, manager.pendingQueueSize("G1"));
+		} finally {
+			MappedRing.renamer = renamer;
+			manager.close();
+		}
+		manager = new MappedQueueManager(200, directory.getPath(), 4096);
+		Assert.assertEquals(queued, manager.pendingQueueSize("G1"));
+		Assert.assertTrue(manager.queueMessage(message("G1", 0)));
+		manager.close();
+		Assert.assertTrue(ring.exists());
+		Assert.assertFalse(temp.exists());
+	}
+
+	private static OutboundMessage message(String gatewayId, int priority) {
+		OutboundMessage message = new OutboundMessage("306974000000", "ring test");
+		message.setGatewayId(gatewayId);
+		message.setPriority(priority);
+		return message;
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) for (File f : files) delete(f);
+		file.delete();
+	}
+}
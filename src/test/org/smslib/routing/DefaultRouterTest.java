@@ -116,4 +116,30 @@ public class DefaultRouterTest {
 		
 	}
 
+	@Test
+	public void testStepsOutsideRoute() throws TimeoutException, GatewayException, IOException, InterruptedException {
+		List<AGateway> gateways=new ArrayList<AGateway>();
+		AGateway gateway=new GatewayMock("G1");
+		gateway.setAttributes(AGateway.GatewayAttributes.SEND);
+		gateway.setOutbound(true);
+		gateway.startGateway();
+		gateways.add(gateway);
+
+		Router router=new Router();
+		OutboundMessage message=new OutboundMessage("77374847", "test");
+		router.beginRouting();
+		router.preroute(message, gateways);
+		router.customRouting(message);
+		Assert.assertEquals("Steps called outside route() should share one allowed list.", gateways, router.getAllowed());
+		router.finishRouting();
+		Assert.assertEquals("The shared lists should be cleared.", 0, router.getCandidates().size());
+
+		try {
+			router.route(message, gateways).clear();
+			Assert.fail("The routed gateways should not be modifiable.");
+		} catch (UnsupportedOperationException e) {
+			// Expected.
+		}
+	}
+
 }
@@ -0,0 +1,213 @@
+/**
+ * 
+ */
+package org.smslib.routing;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.smslib.AGateway;
+import org.smslib.OutboundMessage;
+import org.smslib.mocks.GatewayMock;
+import org.smslib.threading.AServiceScheduler;
+
+public class PrefixRouterTest {
+
+	private static final String ROUTES = "# test routes\n3069=G1,G2\n30694=G3\n+44=g2\n*=G4\n";
+
+	private static PrefixTrie load(String routes) throws IOException {
+		return PrefixTrie.load(new ByteArrayInputStream(routes.getBytes("ISO-8859-1")));
+	}
+
+	private static void write(File file, String routes) throws IOException {
+		FileOutputStream out=new FileOutputStream(file);
+		try {
+			out.write(routes.getBytes("ISO-8859-1"));
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.routing.PrefixTrie#lookup(java.lang.String)}.
+	 */
+	@Test
+	public void testLongestPrefix() throws Exception {
+		PrefixTrie trie=load(ROUTES);
+		Assert.assertEquals("Four routes expected.", 4, trie.size());
+		Assert.assertEquals("[G1, G2]", trie.lookup("+306974000000").toString());
+		Assert.assertEquals("[G3]", trie.lookup("306945000000").toString());
+		Assert.assertEquals("Exact prefix should match.", "[G3]", trie.lookup("30694").toString());
+		Assert.assertTrue("Gateway ids should ignore case.", trie.lookup("+441234").contains("G2"));
+		Assert.assertEquals("Default route expected.", "[G4]", trie.lookup("+3021").toString());
+		Assert.assertEquals("Default route expected.", "[G4]", trie.lookup(null).toString());
+		Assert.assertEquals("Match should stop at a non digit.", "[G1, G2]", trie.lookup("3069-4").toString());
+		Assert.assertSame("Gateway sets should be shared.", trie.lookup("3069"), trie.lookup("306912"));
+		Assert.assertNull("No default route.", load("3069=G1").lookup("44"));
+		Assert.assertNull("Empty trie.", load("").lookup("44"));
+	}
+
+	/**
+	 * Test method for {@link org.smslib.routing.PrefixTrie#lookup(java.lang.String)}.
+	 */
+	@Test
+	public void testNormalizedNumbers() throws Exception {
+		PrefixTrie trie=load(ROUTES);
+		Assert.assertEquals("International prefix should be dropped.", "[G3]", trie.lookup("00306945000000").toString());
+		Assert.assertTrue(trie.lookup("00441234").contains("G2"));
+		Assert.assertEquals("National numbers need a country code.", "[G4]", trie.lookup("06945000000").toString());
+
+		PrefixTrie national=PrefixTrie.load(new ByteArrayInputStream((ROUTES + "021=G5\n").getBytes("ISO-8859-1")), new NumberNormalizer("30"));
+		Assert.assertEquals("[G3]", national.lookup("+306945000000").toString());
+		Assert.assertEquals("[G3]", national.lookup("00306945000000").toString());
+		Assert.assertEquals("Trunk prefix should become the country code.", "[G3]", national.lookup("06945000000").toString());
+		Assert.assertEquals("National prefix should match international numbers.", "[G5]", national.lookup("+30210000000").toString());
+		Assert.assertEquals("[G5]", national.lookup("0210000000").toString());
+		Assert.assertEquals("[G4]", national.lookup("0031000000").toString());
+
+		NumberNormalizer us=new NumberNormalizer("+1", "1", "011");
+		Assert.assertEquals("306945000000", us.normalize("011306945000000"));
+		Assert.assertEquals("12125550000", us.normalize("12125550000"));
+		Assert.assertEquals("00306945", us.normalize("00306945"));
+	}
+
+	/**
+	 * Test method for {@link org.smslib.routing.PrefixRouter#setNormalizer(org.smslib.routing.NumberNormalizer)}.
+	 */
+	@Test
+	public void testSetNormalizer() throws Exception {
+		PrefixRouter router=new PrefixRouter();
+		NumberNormalizer greek=new NumberNormalizer("30");
+		router.setNormalizer(greek);
+		Assert.assertSame("An empty trie should take the normalizer.", greek, router.getTrie().getNormalizer());
+
+		router.setTrie(load(ROUTES));
+		Assert.assertSame("The router should use the normalizer of its trie.", router.getTrie().getNormalizer(), router.getNormalizer());
+		try {
+			router.setNormalizer(greek);
+			Assert.fail("Routes set without a file cannot be normalized again.");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		Assert.assertNotSame(greek, router.getNormalizer());
+
+		File file=File.createTempFile("routes", ".properties");
+		try {
+			write(file, ROUTES);
+			router.setFile(file);
+			Assert.assertEquals("National numbers need a country code.", "[G4]", router.getTrie().lookup("06945000000").toString());
+			router.setNormalizer(greek);
+			Assert.assertSame(greek, router.getTrie().getNormalizer());
+			Assert.assertEquals("The file should be loaded again with the new normalizer.", "[G3]", router.getTrie().lookup("06945000000").toString());
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.routing.PrefixTrie#PrefixTrie(java.util.Map)}.
+	 */
+	@Test
+	public void testManyPrefixes() throws Exception {
+		Map<String, String[]> routes=new HashMap<String, String[]>();
+		for (int i = 0; i < 100000; i++)
+			routes.put("3069" + (1000000 + i * 7), new String[] { "G" + (i % 30) });
+		PrefixTrie trie=new PrefixTrie(routes);
+		Assert.assertEquals(100000, trie.size());
+		for (int i = 0; i < 100000; i += 997)
+			Assert.assertEquals("[G" + (i % 30) + "]", trie.lookup("+3069" + (1000000 + i * 7) + "123").toString());
+		Assert.assertNull(trie.lookup("30691000001"));
+		Assert.assertTrue("Nodes should be shared between prefixes.", trie.getNodeCount() < 100000 * 3);
+	}
+
+	/**
+	 * Test method for {@link org.smslib.routing.PrefixTrie#PrefixTrie(java.util.Map)}.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPrefix() throws Exception {
+		load("30a9=G1");
+	}
+
+	/**
+	 * Test method for {@link org.smslib.routing.PrefixRouter#customRoute(org.smslib.OutboundMessage, java.util.Collection)}.
+	 */
+	@Test
+	public void testRouteAndReload() throws Exception {
+		List<AGateway> gateways=new ArrayList<AGateway>();
+		for (int i = 1; i <= 4; i++) {
+			AGateway gateway=new GatewayMock("G" + i);
+			gateway.setAttributes(AGateway.GatewayAttributes.SEND);
+			gateway.setOutbound(true);
+			gateway.startGateway();
+			gateways.add(gateway);
+		}
+		File file=File.createTempFile("routes", ".properties");
+		try {
+			write(file, ROUTES);
+			PrefixRouter router=new PrefixRouter(file);
+			OutboundMessage message=new OutboundMessage("+306945000000", "test");
+			Collection<AGateway> allowed=router.route(message, gateways);
+			Assert.assertEquals(1, allowed.size());
+			Assert.assertTrue(allowed.contains(gateways.get(2)));
+			Assert.assertEquals("All gateways without routes.", 4, new PrefixRouter().route(message, gateways).size());
+
+			write(file, "30=G1\n");
+			file.setLastModified(file.lastModified() + 2000);
+			router.reloadIfModified();
+			allowed=router.route(message, gateways);
+			Assert.assertEquals("Routes should be reloaded.", 1, allowed.size());
+			Assert.assertTrue(allowed.contains(gateways.get(0)));
+
+			write(file, "3x=G1\n");
+			file.setLastModified(file.lastModified() + 2000);
+			router.reloadIfModified();
+			Assert.assertEquals("Invalid file should keep the routes.", 1, router.getTrie().size());
+
+			Assert.assertTrue("Adapter should route through the ARouter.", new ARouterAdapter(router).route(message, gateways).contains(gateways.get(0)));
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.routing.PrefixRouter#start()}.
+	 */
+	@Test
+	public void testReloadAfterRestart() throws Exception {
+		File file=File.createTempFile("routes", ".properties");
+		try {
+			write(file, ROUTES);
+			PrefixRouter router=new PrefixRouter(file);
+			ARouterAdapter adapter=new ARouterAdapter(router);
+			router.setReloadInterval(20);
+			Assert.assertTrue(router.isReloading());
+			// What the Service does when it stops and starts again.
+			adapter.stop();
+			AServiceScheduler.shutdownDefault();
+			Assert.assertFalse("Reloader should stop with the service.", router.isReloading());
+			adapter.start();
+			Assert.assertTrue("Reloader should start with the service.", router.isReloading());
+			write(file, "30=G1\n");
+			file.setLastModified(file.lastModified() + 2000);
+			long deadline=System.currentTimeMillis() + 5000;
+			while (router.getTrie().size() != 1 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals("Routes should be reloaded.", 1, router.getTrie().size());
+			router.setReloadInterval(0);
+			Assert.assertFalse(router.isReloading());
+		} finally {
+			file.delete();
+		}
+	}
+}
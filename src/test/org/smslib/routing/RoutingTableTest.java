@@ -0,0 +1,92 @@
+/**
+ * 
+ */
+package org.smslib.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.smslib.AGateway;
+import org.smslib.OutboundMessage;
+import org.smslib.Service;
+import org.smslib.mocks.GatewayMock;
+
+public class RoutingTableTest {
+
+	private static List<AGateway> createGateways() throws Exception {
+		List<AGateway> gateways=new ArrayList<AGateway>();
+		for (int i = 1; i <= 4; i++) {
+			AGateway gateway=new GatewayMock("G" + i);
+			gateway.setAttributes(AGateway.GatewayAttributes.SEND);
+			//G3 is not started, G4 is not outbound
+			gateway.setOutbound(i != 4);
+			if (i != 3) gateway.startGateway();
+			gateways.add(gateway);
+		}
+		return gateways;
+	}
+
+	/**
+	 * Test method for {@link org.smslib.routing.RoutingTable#lookup(java.lang.String)}.
+	 */
+	@Test
+	public void testLookup() throws Exception {
+		List<AGateway> gateways=createGateways();
+		RoutingTable table=new RoutingTable(gateways);
+
+		Assert.assertEquals("G1 and G2 should be routable.", 2, table.lookup("*").size());
+		Assert.assertSame("Gateway order should be kept.", gateways.get(0), table.lookup("*").get(0));
+		Assert.assertSame("Gateway order should be kept.", gateways.get(1), table.lookup("*").get(1));
+		Assert.assertSame("Lookup by id should ignore case.", gateways.get(1), table.lookup("g2").get(0));
+		Assert.assertEquals("G3 is not started.", 0, table.lookup("G3").size());
+		Assert.assertEquals("G4 is not outbound.", 0, table.lookup("G4").size());
+		Assert.assertEquals("Unknown gateway id.", 0, table.lookup("G5").size());
+		Assert.assertSame("Lookups should not create new lists.", table.lookup("*"), table.lookup("*"));
+
+		gateways.get(2).startGateway();
+		Assert.assertEquals("Snapshot should not change.", 0, table.lookup("G3").size());
+		Assert.assertEquals("New snapshot should see G3.", 3, new RoutingTable(gateways).lookup("*").size());
+	}
+
+	/**
+	 * Test method for {@link org.smslib.Service#routeMessage(org.smslib.OutboundMessage)}.
+	 */
+	@Test
+	public void testServiceRouting() throws Exception {
+		List<AGateway> gateways=createGateways();
+		Service service=Service.getInstance();
+		for (AGateway gateway : gateways)
+			service.addGateway(gateway);
+		try {
+			OutboundMessage message=new OutboundMessage("77374847", "test");
+			Assert.assertTrue("Default router should use the routing table.", service.getRouter().isTableRouting());
+			Assert.assertSame("G1 was expected.", gateways.get(0), service.routeMessage(message));
+			Assert.assertSame("G2 was expected.", gateways.get(1), service.routeMessage(message));
+
+			message.setGatewayId("G3");
+			Assert.assertNull("G3 is not started.", service.routeMessage(message));
+			gateways.get(2).startGateway();
+			service.refreshRoutingTable();
+			Assert.assertSame("G3 was expected after refresh.", gateways.get(2), service.routeMessage(message));
+
+			Router custom=new Router() {
+				@Override
+				public void customRouting(OutboundMessage msg) {
+					getAllowed().add(getCandidates().get(getCandidates().size() - 1));
+				}
+			};
+			Assert.assertFalse("Custom router should not use the routing table.", custom.isTableRouting());
+			service.setRouter(custom);
+			message.setGatewayId("*");
+			Assert.assertSame("Custom router should pick G3.", gateways.get(2), service.routeMessage(message));
+		} finally {
+			service.setRouter(new Router());
+			for (AGateway gateway : gateways)
+				service.removeGateway(gateway);
+		}
+		Assert.assertEquals("Routing table should be empty.", 0, service.getRoutingTable().getGateways().size());
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * 
+ */
+package org.smslib.routing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.smslib.AGateway;
+import org.smslib.OutboundMessage;
+import org.smslib.Message.MessageClasses;
+import org.smslib.mocks.GatewayMock;
+
+public class RuleRouterTest {
+
+	private static List<AGateway> createGateways(String... ids) throws Exception {
+		List<AGateway> gateways=new ArrayList<AGateway>();
+		for (String id : ids) {
+			AGateway gateway=new GatewayMock(id);
+			gateway.setAttributes(AGateway.GatewayAttributes.SEND);
+			gateway.setOutbound(true);
+			gateway.startGateway();
+			gateways.add(gateway);
+		}
+		return gateways;
+	}
+
+	private static List<String> ids(Collection<AGateway> gateways) {
+		List<String> ids=new ArrayList<String>();
+		for (AGateway gateway : gateways)
+			ids.add(gateway.getGatewayId());
+		return ids;
+	}
+
+	/**
+	 * Test method for {@link org.smslib.routing.RuleRouter#customRouting(org.smslib.OutboundMessage)}.
+	 */
+	@Test
+	public void testRuleChain() throws Exception {
+		List<AGateway> gateways=createGateways("local1", "local2", "intl", "modem");
+		Map<String, Integer> costs=new HashMap<String, Integer>();
+		costs.put("LOCAL1", 2);
+		costs.put("local2", 2);
+		costs.put("intl", 5);
+		Router router=new RuleRouter(new PrefixRule("+3069", "local1", "local2", "modem"), new SenderIdRule("Bank", "local2"), new MessageClassRule(MessageClasses.MSGCLASS_FLASH, "modem"), new CostRule(costs));
+
+		OutboundMessage message=new OutboundMessage("+306974000000", "test");
+		Assert.assertEquals("The cheapest local gateways were expected.", "[local1, local2]", ids(router.route(message, gateways)).toString());
+
+		message.setRecipient("306974000000");
+		message.setFrom("BANK");
+		Assert.assertEquals("The sender id rule should pick local2.", "[local2]", ids(router.route(message, gateways)).toString());
+
+		message.setFrom(null);
+		message.setFlashSms(true);
+		Assert.assertEquals("Flash messages should go through the modem.", "[modem]", ids(router.route(message, gateways)).toString());
+
+		message.setRecipient("+441234567890");
+		message.setFlashSms(false);
+		Assert.assertEquals("Other prefixes should pick the cheapest gateway.", "[local1, local2]", ids(router.route(message, gateways)).toString());
+
+		message.setFrom("Bank");
+		message.setFlashSms(true);
+		Assert.assertEquals("Conflicting rules should leave no route.", 0, router.route(message, gateways).size());
+
+		Assert.assertEquals("No rules should route like Router.", 4, new RuleRouter().route(message, gateways).size());
+	}
+
+	/**
+	 * Test method for {@link org.smslib.routing.Router#route(org.smslib.OutboundMessage, java.util.Collection)}.
+	 */
+	@Test
+	public void testRouteResultsAreIndependent() throws Exception {
+		List<AGateway> gateways=createGateways("G1", "G2");
+		Router router=new Router();
+		OutboundMessage message=new OutboundMessage("77374847", "test");
+		Collection<AGateway> first=router.route(message, gateways);
+		message.setGatewayId("G2");
+		Collection<AGateway> second=router.route(message, gateways);
+		Assert.assertEquals("The first result should not change.", 2, first.size());
+		Assert.assertEquals("One gateway expected.", 1, second.size());
+		try {
+			first.clear();
+			Assert.fail("Route results should not be modifiable.");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.routing.Router#route(org.smslib.OutboundMessage, java.util.Collection)}.
+	 */
+	@Test
+	public void testConcurrentRouting() throws Exception {
+		final List<AGateway> gateways=createGateways("G1", "G2", "G3");
+		final Router router=new RuleRouter(new PrefixRule("30", "G1"), new PrefixRule("44", "G2", "G3"));
+		final CountDownLatch start=new CountDownLatch(1);
+		final AtomicInteger errors=new AtomicInteger();
+		Thread[] threads=new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final boolean greek=(t % 2 == 0);
+			threads[t]=new Thread() {
+				@Override
+				public void run() {
+					OutboundMessage message=new OutboundMessage(greek ? "+306974000000" : "+441234567890", "test");
+					try {
+						start.await();
+						for (int i = 0; i < 20000; i++) {
+							Collection<AGateway> allowed=router.route(message, gateways);
+							if (allowed.size() != (greek ? 1 : 2)) errors.incrementAndGet();
+						}
+					} catch (InterruptedException e) {
+						errors.incrementAndGet();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+		Assert.assertEquals("Concurrent routing calls should not interfere.", 0, errors.get());
+	}
+
+	/**
+	 * Test method for {@link org.smslib.routing.PrefixRule#PrefixRule(NumberNormalizer, String, String[])}.
+	 */
+	@Test
+	public void testNormalizedRule() throws Exception {
+		List<AGateway> gateways=createGateways("G1", "G2");
+		Router router=new RuleRouter(new PrefixRule(new NumberNormalizer("30"), "069", "G1"));
+		OutboundMessage message=new OutboundMessage("+306974000000", "test");
+		Assert.assertEquals(1, router.route(message, gateways).size());
+		message.setRecipient("00306974000000");
+		Assert.assertEquals(1, router.route(message, gateways).size());
+		message.setRecipient("06974000000");
+		Assert.assertEquals(1, router.route(message, gateways).size());
+		message.setRecipient("0030210000000");
+		Assert.assertEquals("Other prefixes are left to the other rules.", 2, router.route(message, gateways).size());
+	}
+}
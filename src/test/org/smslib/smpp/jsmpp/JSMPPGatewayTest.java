@@ -0,0 +1,423 @@
+/**
+ * 
+ */
+package org.smslib.smpp.jsmpp;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.smslib.GatewayException;
+import org.smslib.OutboundMessage;
+import org.smslib.Service;
+import org.smslib.SubmitFuture;
+import org.smslib.TimeoutException;
+import org.smslib.AGateway.DispatchModes;
+import org.smslib.AGateway.GatewayStatuses;
+import org.smslib.OutboundMessage.MessageStatuses;
+import org.smslib.smpp.BindAttributes;
+import org.smslib.smpp.BindAttributes.BindType;
+
+public class JSMPPGatewayTest {
+
+	/**
+	 * A stand-in SMSC: it binds anyone, and answers each submit_sm after a
+	 * fixed latency, except those for recipients ending in 99. While held,
+	 * it keeps the responses until it is released.
+	 */
+	static class SmscStandIn implements Runnable {
+
+		final ServerSocket server;
+
+		final long latency;
+
+		final ScheduledExecutorService responder = Executors.newSingleThreadScheduledExecutor();
+
+		final AtomicInteger submits = new AtomicInteger();
+
+		final List<Connection> connections = new CopyOnWriteArrayList<Connection>();
+
+		final AtomicInteger outstanding = new AtomicInteger();
+
+		final AtomicInteger maxOutstanding = new AtomicInteger();
+
+		private final List<Runnable> held = new ArrayList<Runnable>();
+
+		private boolean holding;
+
+		SmscStandIn(long latency) throws IOException {
+			this.server = new ServerSocket(0);
+			this.latency = latency;
+			Thread thread = new Thread(this, "SMSC stand-in");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		int getPort() {
+			return server.getLocalPort();
+		}
+
+		public void run() {
+			try {
+				while (true) {
+					Connection connection = new Connection(server.accept());
+					connections.add(connection);
+					Thread thread = new Thread(connection, "SMSC stand-in connection");
+					thread.setDaemon(true);
+					thread.start();
+				}
+			} catch (IOException e) {
+				// Server closed.
+			}
+		}
+
+		synchronized void hold() {
+			holding = true;
+		}
+
+		void release() {
+			List<Runnable> responses;
+			synchronized (this) {
+				holding = false;
+				responses = new ArrayList<Runnable>(held);
+				held.clear();
+			}
+			for (Runnable response : responses) {
+				response.run();
+			}
+		}
+
+		void await(AtomicInteger counter, int value) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (counter.get() < value && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+		}
+
+		void close() throws IOException {
+			responder.shutdownNow();
+			server.close();
+			for (Connection connection : connections) {
+				connection.socket.close();
+			}
+		}
+
+		class Connection implements Runnable {
+
+			final Socket socket;
+
+			final AtomicInteger submits = new AtomicInteger();
+
+			final DataOutputStream out;
+
+			Connection(Socket socket) throws IOException {
+				this.socket = socket;
+				this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			}
+
+			public void run() {
+				try {
+					DataInputStream in = new DataInputStream(socket.getInputStream());
+					while (true) {
+						int length = in.readInt();
+						int id = in.readInt();
+						in.readInt();
+						final int sequence = in.readInt();
+						byte[] body = new byte[length - 16];
+						in.readFully(body);
+						if (id == 0x00000002) {
+							// JSMPP expects sc_interface_version in the bind response.
+							respond(0x80000002, sequence, "SMSC", new byte[] { 0x02, 0x10, 0x00, 0x01, 0x34 });
+						} else if (id == 0x00000015) {
+							respond(0x80000015, sequence, null, null);
+						} else if (id == 0x00000006) {
+							respond(0x80000006, sequence, null, null);
+							socket.close();
+							return;
+						} else if (id == 0x00000004) {
+							submits.incrementAndGet();
+							int now = outstanding.incrementAndGet();
+							while (true) {
+								int seen = maxOutstanding.get();
+								if (now <= seen || maxOutstanding.compareAndSet(seen, now)) break;
+							}
+							final String messageId = "M" + SmscStandIn.this.submits.incrementAndGet();
+							if (!new String(body, "ISO-8859-1").contains("99\0")) {
+								Runnable response = new Runnable() {
+									public void run() {
+										outstanding.decrementAndGet();
+										respond(0x80000004, sequence, messageId, null);
+									}
+								};
+								synchronized (SmscStandIn.this) {
+									if (holding) {
+										held.add(response);
+										continue;
+									}
+								}
+								responder.schedule(response, latency, TimeUnit.MILLISECONDS);
+							}
+						}
+					}
+				} catch (IOException e) {
+					// Connection closed.
+				}
+			}
+
+			synchronized void respond(int id, int sequence, String text, byte[] tlvs) {
+				try {
+					int length = 16 + (text == null ? 0 : text.length() + 1) + (tlvs == null ? 0 : tlvs.length);
+					out.writeInt(length);
+					out.writeInt(id);
+					out.writeInt(0);
+					out.writeInt(sequence);
+					if (text != null) {
+						out.write(text.getBytes("ISO-8859-1"));
+						out.write(0);
+					}
+					if (tlvs != null) {
+						out.write(tlvs);
+					}
+					out.flush();
+				} catch (IOException e) {
+					// Connection closed.
+				}
+			}
+		}
+	}
+
+	private JSMPPGateway bind(SmscStandIn smsc, int window, int binds) throws Exception {
+		JSMPPGateway gateway = new JSMPPGateway("smpp", "127.0.0.1", smsc.getPort(), new BindAttributes("smslib", "smslib", "cp", BindType.TRANSMITTER));
+		gateway.setMaxInFlight(1);
+		gateway.setWindowSize(window);
+		gateway.setBindCount(binds);
+		gateway.startGateway();
+		return gateway;
+	}
+
+	/**
+	 * Test method for {@link org.smslib.smpp.jsmpp.JSMPPGateway#submitAll(java.util.Collection)}.
+	 */
+	@Test
+	public void testWindow() throws Exception {
+		SmscStandIn smsc = new SmscStandIn(0);
+		smsc.hold();
+		final JSMPPGateway gateway = bind(smsc, 4, 1);
+		try {
+			final List<OutboundMessage> batch = new ArrayList<OutboundMessage>();
+			for (int i = 0; i < 10; i++) {
+				batch.add(new OutboundMessage("30697" + (4000000 + 10 * i), "test"));
+			}
+			final List<SubmitFuture> futures = new CopyOnWriteArrayList<SubmitFuture>();
+			// submitAll() blocks while the window is full
+			Thread submitter = new Thread() {
+				@Override
+				public void run() {
+					futures.addAll(gateway.submitAll(batch));
+				}
+			};
+			submitter.start();
+			smsc.await(smsc.submits, 4);
+			Assert.assertEquals("A full window should be outstanding before any response.", 4, smsc.submits.get());
+			Assert.assertTrue("The fifth submission should wait for a free slot.", submitter.isAlive());
+
+			smsc.release();
+			submitter.join(10000);
+			Assert.assertEquals(10, futures.size());
+			for (SubmitFuture future : futures) {
+				future.get(10, TimeUnit.SECONDS);
+				Assert.assertTrue(future.isSent());
+			}
+			for (OutboundMessage msg : batch) {
+				Assert.assertEquals(MessageStatuses.SENT, msg.getMessageStatus());
+				Assert.assertTrue(msg.getRefNo().startsWith("M"));
+			}
+			Assert.assertEquals(10, smsc.submits.get());
+			Assert.assertEquals("The window should never be exceeded.", 4, smsc.maxOutstanding.get());
+		} finally {
+			gateway.stopGateway();
+			smsc.close();
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.smpp.jsmpp.JSMPPGateway#submit(org.smslib.OutboundMessage)}.
+	 */
+	@Test
+	public void testResponseTimeout() throws Exception {
+		SmscStandIn smsc = new SmscStandIn(5);
+		JSMPPGateway gateway = bind(smsc, 4, 1);
+		try {
+			SubmitFuture lost = gateway.submit(new OutboundMessage("306974000099", "test"));
+			SubmitFuture sent = gateway.submit(new OutboundMessage("306974000001", "test"));
+			Assert.assertSame(sent.getMessage(), sent.get(1, TimeUnit.SECONDS));
+			Assert.assertFalse(lost.isDone());
+			try {
+				lost.get(10, TimeUnit.SECONDS);
+				Assert.fail("ExecutionException expected.");
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof TimeoutException);
+			}
+		} finally {
+			gateway.stopGateway();
+			smsc.close();
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.smpp.jsmpp.JSMPPGateway#getBinds()}.
+	 */
+	@Test
+	public void testBindPool() throws Exception {
+		SmscStandIn smsc = new SmscStandIn(20);
+		JSMPPGateway gateway = bind(smsc, 4, 3);
+		try {
+			Assert.assertEquals(3, gateway.getBoundCount());
+			Assert.assertEquals(12, gateway.getMaxInFlight());
+			List<OutboundMessage> batch = new ArrayList<OutboundMessage>();
+			for (int i = 0; i < 60; i++) {
+				batch.add(new OutboundMessage("30697" + (4000000 + 10 * i), "test"));
+			}
+			for (SubmitFuture future : gateway.submitAll(batch)) {
+				Assert.assertTrue(future.get(10, TimeUnit.SECONDS).getMessageStatus() == MessageStatuses.SENT);
+			}
+			long submitted = 0;
+			for (JSMPPGateway.Bind bind : gateway.getBinds()) {
+				Assert.assertTrue("Every bind should take a share.", bind.getSubmittedCount() >= 10);
+				Assert.assertEquals(0, bind.getOutstanding());
+				submitted += bind.getSubmittedCount();
+			}
+			Assert.assertEquals(60, submitted);
+			Assert.assertEquals(60, gateway.getOutboundMessageCount());
+
+			// Drop one bind: the others keep sending and the gateway stays up.
+			smsc.connections.get(1).socket.close();
+			long deadline = System.currentTimeMillis() + 2000;
+			while (gateway.getBoundCount() == 3 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(2, gateway.getBoundCount());
+			Assert.assertEquals(GatewayStatuses.STARTED, gateway.getStatus());
+			Assert.assertTrue(gateway.submit(new OutboundMessage("306974000010", "test")).get(5, TimeUnit.SECONDS).getMessageStatus() == MessageStatuses.SENT);
+			deadline = System.currentTimeMillis() + 10000;
+			while (gateway.getBoundCount() < 3 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+			Assert.assertEquals(3, gateway.getBoundCount());
+			Assert.assertEquals(4, smsc.connections.size());
+			Assert.assertEquals(2, gateway.getBinds().get(1).getConnectCount());
+		} finally {
+			gateway.stopGateway();
+			smsc.close();
+		}
+	}
+
+	/**
+	 * Test method for {@link org.smslib.smpp.jsmpp.JSMPPGateway#isStillConnected()}.
+	 */
+	@Test
+	public void testDropBindInFlight() throws Exception {
+		SmscStandIn smsc = new SmscStandIn(0);
+		smsc.hold();
+		JSMPPGateway gateway = new JSMPPGateway("pool", "127.0.0.1", smsc.getPort(), new BindAttributes("smslib", "smslib", "cp", BindType.TRANSMITTER));
+		gateway.setDispatchMode(DispatchModes.EVENT);
+		gateway.setWindowSize(4);
+		gateway.setBindCount(3);
+		Service service = Service.getInstance();
+		service.addGateway(gateway);
+		service.startService();
+		try {
+			Assert.assertEquals(3, gateway.getBoundCount());
+			List<OutboundMessage> batch = new ArrayList<OutboundMessage>();
+			for (int i = 0; i < 12; i++) {
+				OutboundMessage msg = new OutboundMessage("30697" + (4000000 + 10 * i), "test");
+				batch.add(msg);
+				Assert.assertTrue(service.queueMessage(msg, "pool"));
+			}
+			smsc.await(smsc.submits, 12);
+			Assert.assertEquals("Every bind should have a full window in flight.", 12, smsc.submits.get());
+
+			// Drop a bind with submit_sm PDUs waiting for their responses.
+			SmscStandIn.Connection dropped = smsc.connections.get(1);
+			int lost = dropped.submits.get();
+			Assert.assertTrue(lost > 0);
+			dropped.socket.close();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (retried(batch) < lost && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals("The messages of the lost bind should be queued again.", lost, retried(batch));
+			Assert.assertEquals(2, gateway.getBoundCount());
+			Assert.assertEquals("The gateway should stay up.", GatewayStatuses.STARTED, gateway.getStatus());
+
+			smsc.release();
+			deadline = System.currentTimeMillis() + 10000;
+			while (sent(batch) < batch.size() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals("The requeued messages should go out on the other binds.", batch.size(), sent(batch));
+			Assert.assertEquals(GatewayStatuses.STARTED, gateway.getStatus());
+			Assert.assertEquals("The gateway should not have been restarted.", 1, gateway.getRestartCount());
+		} finally {
+			service.stopService();
+			service.getQueueManager().removeAllPendingMessages("pool");
+			service.removeGateway(gateway);
+			smsc.close();
+		}
+	}
+
+	private static int retried(List<OutboundMessage> batch) {
+		int count = 0;
+		for (OutboundMessage msg : batch) {
+			if (msg.getRetryCount() > 0) count++;
+		}
+		return count;
+	}
+
+	private static int sent(List<OutboundMessage> batch) {
+		int count = 0;
+		for (OutboundMessage msg : batch) {
+			if (msg.getMessageStatus() == MessageStatuses.SENT) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Test method for {@link org.smslib.smpp.jsmpp.JSMPPGateway#sendMessage(org.smslib.OutboundMessage)}.
+	 */
+	@Test
+	public void testNoBoundSession() throws Exception {
+		SmscStandIn smsc = new SmscStandIn(0);
+		JSMPPGateway gateway = bind(smsc, 1, 1);
+		try {
+			smsc.close();
+			long deadline = System.currentTimeMillis() + 2000;
+			while (gateway.getBoundCount() > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(0, gateway.getBoundCount());
+			try {
+				gateway.sendMessage(new OutboundMessage("306974000001", "test"));
+				Assert.fail("GatewayException expected.");
+			} catch (GatewayException e) {
+				// Expected.
+			}
+		} finally {
+			gateway.stopGateway();
+		}
+	}
+}
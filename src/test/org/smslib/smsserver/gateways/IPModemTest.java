@@ -0,0 +1,71 @@
+/**
+ * 
+ */
+package org.smslib.smsserver.gateways;
+
+import java.lang.reflect.Constructor;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.smslib.AGateway.DispatchModes;
+import org.smslib.modem.IPModemGateway;
+import org.smslib.modem.ModemGateway;
+import org.smslib.modem.NIOModemGateway;
+import org.smslib.smsserver.SMSServer;
+
+public class IPModemTest {
+
+	private static Properties configuration(String nio) {
+		Properties props = new Properties();
+		props.setProperty("gateway.0", "modem1, IPModem");
+		props.setProperty("modem1.nio", nio);
+		props.setProperty("modem1.ip", "127.0.0.1");
+		props.setProperty("modem1.port", "2000");
+		props.setProperty("modem1.manufacturer", "Generic");
+		props.setProperty("modem1.model", "Generic");
+		props.setProperty("modem1.protocol", "PDU");
+		props.setProperty("modem1.ipprotocol", "text");
+		props.setProperty("modem1.pin", "1234");
+		props.setProperty("modem1.inbound", "no");
+		props.setProperty("modem1.outbound", "yes");
+		props.setProperty("modem1.dispatch", "event");
+		return props;
+	}
+
+	/**
+	 * Creates the gateway the same way SMSServer does when it reads the
+	 * <code>gateway.N</code> entries of its configuration.
+	 */
+	private static AGateway load(Properties props) throws Exception {
+		Class<?> c = Class.forName("org.smslib.smsserver.gateways.IPModem");
+		Constructor<?> constructor = c.getConstructor(new Class[] { String.class, Properties.class, SMSServer.class });
+		AGateway gtw = (AGateway) constructor.newInstance(new Object[] { "modem1", props, null });
+		gtw.create();
+		gtw.configureDispatch();
+		return gtw;
+	}
+
+	/**
+	 * Test method for {@link org.smslib.smsserver.gateways.IPModem#create()}.
+	 */
+	@Test
+	public void testCreateNIO() throws Exception {
+		AGateway gtw = load(configuration("yes"));
+		Assert.assertTrue(gtw.getGateway() instanceof NIOModemGateway);
+		Assert.assertEquals("1234", ((ModemGateway) gtw.getGateway()).getSimPin());
+		Assert.assertTrue(gtw.getGateway().isOutbound());
+		Assert.assertEquals(DispatchModes.EVENT, gtw.getGateway().getDispatchMode());
+	}
+
+	/**
+	 * Test method for {@link org.smslib.smsserver.gateways.IPModem#create()}.
+	 */
+	@Test
+	public void testCreate() throws Exception {
+		AGateway gtw = load(configuration("no"));
+		Assert.assertTrue(gtw.getGateway() instanceof IPModemGateway);
+		Assert.assertEquals("1234", ((ModemGateway) gtw.getGateway()).getSimPin());
+	}
+}
@@ -0,0 +1,206 @@
+/**
+ * 
+ */
+package org.smslib.threading;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.smslib.AGateway;
+import org.smslib.Service;
+import org.smslib.mocks.GatewayMock;
+
+public class AServiceThreadTest {
+
+	/**
+	 * Many services with short delays should share a handful of threads.
+	 */
+	@Test
+	public void testSharedThreads() throws Exception {
+		List<CountingService> services = new ArrayList<CountingService>();
+		for (int i = 0; i < 200; i++) {
+			services.add(new CountingService("Service " + i, 20, i % 20));
+		}
+		Thread.sleep(500);
+		for (CountingService service : services) {
+			service.cancel();
+		}
+		// Count the threads the services ran on, not whatever else is alive.
+		Set<Thread> used = new HashSet<Thread>();
+		for (CountingService service : services) {
+			used.addAll(service.threads);
+		}
+		int threads = used.size();
+		for (CountingService service : services) {
+			Assert.assertTrue("Every service should have run several cycles.", service.cycles.get() >= 3);
+		}
+		Assert.assertTrue("Expected far fewer threads than services, got " + threads, threads < 50);
+	}
+
+	/**
+	 * Test method for {@link org.smslib.threading.AServiceThread#disable()} and {@link org.smslib.threading.AServiceThread#cancel()}.
+	 */
+	@Test
+	public void testDisableAndCancel() throws Exception {
+		CountingService service = new CountingService("Service", 10);
+		Thread.sleep(100);
+		service.disable();
+		Thread.sleep(30);
+		int cycles = service.cycles.get();
+		Thread.sleep(100);
+		Assert.assertEquals("Disabled service should not run.", cycles, service.cycles.get());
+		service.enable();
+		Thread.sleep(100);
+		Assert.assertTrue(service.cycles.get() > cycles);
+		service.cancel();
+		Assert.assertTrue(service.isCanceled());
+		cycles = service.cycles.get();
+		Thread.sleep(100);
+		Assert.assertEquals("Canceled service should not run.", cycles, service.cycles.get());
+	}
+
+	/**
+	 * Test method for {@link org.smslib.threading.AServiceThread#interrupt()}.
+	 */
+	@Test
+	public void testInterrupt() throws Exception {
+		final CountDownLatch second = new CountDownLatch(2);
+		AServiceThread service = new AServiceThread("Sleeper", 60000, 0, true) {
+			@Override
+			public void process() {
+				second.countDown();
+			}
+		};
+		Thread.sleep(100);
+		Assert.assertEquals("First cycle expected right away.", 1, second.getCount());
+		service.interrupt();
+		Assert.assertTrue("Interrupt should start the next cycle.", second.await(5, TimeUnit.SECONDS));
+		service.cancel();
+	}
+
+	/**
+	 * Cancel interrupts a blocked cycle and waits for it to end.
+	 */
+	@Test
+	public void testCancelBlocked() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicInteger ended = new AtomicInteger();
+		AServiceThread service = new AServiceThread("Blocker", 10, 0, true) {
+			@Override
+			public void process() throws Exception {
+				started.countDown();
+				try {
+					Thread.sleep(60000);
+				} finally {
+					ended.incrementAndGet();
+				}
+			}
+		};
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		service.cancel();
+		Assert.assertEquals(1, ended.get());
+	}
+
+	/**
+	 * Test method for {@link org.smslib.threading.AServiceThread#join()} and {@link org.smslib.threading.AServiceThread#isAlive()}.
+	 */
+	@Test
+	public void testJoin() throws Exception {
+		final CountingService service = new CountingService("Service", 10);
+		Assert.assertTrue(service.isAlive());
+		Thread canceler = new Thread() {
+			@Override
+			public void run() {
+				service.cancel();
+			}
+		};
+		canceler.start();
+		service.join();
+		Assert.assertFalse("Joined service should be dead.", service.isAlive());
+		canceler.join();
+	}
+
+	/**
+	 * Test method for {@link org.smslib.threading.AServiceScheduler#shutdownDefault()}.
+	 */
+	@Test
+	public void testShutdownDefault() throws Exception {
+		AServiceScheduler first = AServiceScheduler.getInstance();
+		AServiceScheduler.shutdownDefault();
+		AServiceScheduler second = AServiceScheduler.getInstance();
+		Assert.assertNotSame("A new default scheduler should be created.", first, second);
+		CountingService service = new CountingService("Service", 10);
+		Thread.sleep(100);
+		service.cancel();
+		Assert.assertTrue("Services should run on the new scheduler.", service.cycles.get() > 0);
+
+		AServiceScheduler custom = new DefaultServiceScheduler();
+		AServiceScheduler.setInstance(custom);
+		try {
+			AServiceScheduler.shutdownDefault();
+			Assert.assertSame("A custom scheduler should be left alone.", custom, AServiceScheduler.getInstance());
+		} finally {
+			AServiceScheduler.setInstance(null);
+			custom.shutdown();
+		}
+		second.shutdown();
+	}
+
+	/**
+	 * Test method for {@link org.smslib.threading.AServiceScheduler#shutdownDefault()}.
+	 */
+	@Test
+	public void testSurviveStopService() throws Exception {
+		Service smslib = Service.getInstance();
+		AGateway gateway = new GatewayMock("G1");
+		smslib.addGateway(gateway);
+		smslib.startService();
+		CountingService service = new CountingService("Service", 10);
+		try {
+			AServiceScheduler scheduler = AServiceScheduler.getInstance();
+			smslib.stopService();
+			Assert.assertSame("The scheduler should keep running a service the Service does not own.", scheduler, AServiceScheduler.getInstance());
+			int cycles = service.cycles.get();
+			Thread.sleep(100);
+			Assert.assertTrue("The service should survive stopService().", service.cycles.get() > cycles);
+			Assert.assertTrue(service.isAlive());
+			Assert.assertFalse(service.isCanceled());
+		} finally {
+			service.cancel();
+			smslib.removeGateway(gateway);
+		}
+		Assert.assertEquals("The Service should have canceled its own services.", 0, AServiceScheduler.getServiceCount());
+		AServiceScheduler scheduler = AServiceScheduler.getInstance();
+		AServiceScheduler.shutdownDefault();
+		Assert.assertNotSame("With no service left, the scheduler should be shut down.", scheduler, AServiceScheduler.getInstance());
+	}
+
+	static class CountingService extends AServiceThread {
+		final AtomicInteger cycles = new AtomicInteger();
+
+		final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+
+		CountingService(String name, int delay) {
+			this(name, delay, 0);
+		}
+
+		CountingService(String name, int delay, int initialDelay) {
+			super(name, delay, initialDelay, true);
+		}
+
+		@Override
+		public void process() {
+			threads.add(Thread.currentThread());
+			cycles.incrementAndGet();
+		}
+	}
+}
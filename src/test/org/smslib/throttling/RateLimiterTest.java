@@ -0,0 +1,87 @@
+/**
+ * 
+ */
+package org.smslib.throttling;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.smslib.AGateway;
+import org.smslib.OutboundMessage;
+import org.smslib.mocks.GatewayMock;
+
+public class RateLimiterTest {
+
+	/**
+	 * Test method for {@link org.smslib.throttling.TokenBucket#tryAcquire()}.
+	 */
+	@Test
+	public void testBurst() {
+		TokenBucket bucket = new TokenBucket(1, 3);
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals("Burst of 3 expected.", 0, bucket.tryAcquire());
+		}
+		long wait = bucket.tryAcquire();
+		Assert.assertTrue("Bucket should be empty.", wait > 0 && wait <= 1000000000L);
+		Assert.assertEquals(3, bucket.getAcquiredCount());
+		Assert.assertEquals(1, bucket.getThrottledCount());
+		Assert.assertTrue(bucket.getTokens() < 1);
+	}
+
+	/**
+	 * Test method for {@link org.smslib.throttling.TokenBucket#release()}.
+	 */
+	@Test
+	public void testRelease() {
+		TokenBucket bucket = new TokenBucket(1, 3);
+		Assert.assertEquals(0, bucket.tryAcquire());
+		bucket.release();
+		bucket.release();
+		bucket.release();
+		Assert.assertEquals("A full bucket should not take more tokens.", 3.0, bucket.getTokens(), 0.01);
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals(0, bucket.tryAcquire());
+		}
+		Assert.assertTrue("Bucket should be empty.", bucket.tryAcquire() > 0);
+	}
+
+	/**
+	 * Test method for {@link org.smslib.throttling.RateLimiter#acquire(org.smslib.AGateway, org.smslib.OutboundMessage)}.
+	 */
+	@Test
+	public void testRate() throws Exception {
+		AGateway gateway = new GatewayMock("G1");
+		gateway.setMaxRate(200);
+		RateLimiter limiter = new RateLimiter();
+		OutboundMessage message = new OutboundMessage("306974000000", "test");
+		long start = System.nanoTime();
+		for (int i = 0; i < 41; i++) {
+			limiter.acquire(gateway, message);
+		}
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		Assert.assertTrue("40 intervals of 5ms expected, took " + elapsed + "ms", elapsed >= 190);
+	}
+
+	/**
+	 * Test method for {@link org.smslib.throttling.RateLimiter#tryAcquire(org.smslib.AGateway, org.smslib.OutboundMessage)}.
+	 */
+	@Test
+	public void testPrefix() {
+		AGateway gateway = new GatewayMock("G1");
+		RateLimiter limiter = new RateLimiter();
+		TokenBucket country = new TokenBucket(1, 1);
+		TokenBucket network = new TokenBucket(1, 2);
+		limiter.setPrefixLimit("30", country);
+		limiter.setPrefixLimit("30697", network);
+		Assert.assertSame(network, limiter.findPrefixLimit("+306974000000"));
+		Assert.assertSame(country, limiter.findPrefixLimit("302100000000"));
+		Assert.assertNull(limiter.findPrefixLimit("44700000000"));
+
+		TokenBucket global = new TokenBucket(1, 1);
+		limiter.setGlobalLimit(global);
+		OutboundMessage message = new OutboundMessage("+306974000000", "test");
+		Assert.assertEquals(0, limiter.tryAcquire(gateway, message));
+		Assert.assertTrue("Global bucket should be empty.", limiter.tryAcquire(gateway, message) > 0);
+		Assert.assertEquals("Token should be given back when another limit applies.", 1, network.getAcquiredCount());
+	}
+}